@@ -0,0 +1,72 @@
+package org.yesworkflow.benchmarks;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.yesworkflow.Language;
+import org.yesworkflow.benchmarks.SyntheticSource.Density;
+
+/** Runs the {@link MatchingBenchmarks} with the GC profiler and reports, for each benchmark,
+ *  language and comment density, the throughput in megabytes (10<sup>6</sup> characters) of
+ *  input per second, and the number of bytes allocated per line of the synthetic source.
+ *  Command line arguments are passed on to JMH, e.g. <code>-p language=PYTHON</code> to
+ *  benchmark a single language, or <code>-f 3</code> for more forks.
+ */
+public class BenchmarkMain {
+
+    private static final String ALLOCATION_RATE_NORM = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws Exception {
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(MatchingBenchmarks.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.println(String.format("%-22s %-8s %-8s %12s %16s",
+                "Benchmark", "Language", "Density", "MB/s", "Bytes/line"));
+
+        for (RunResult result : results) {
+
+            BenchmarkParams params = result.getParams();
+            String benchmark = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1);
+            Language language = Language.valueOf(params.getParam("language"));
+            Density density = Density.valueOf(params.getParam("density"));
+            SyntheticSource source = new SyntheticSource(language, density);
+
+            double operationsPerSecond = result.getPrimaryResult().getScore();
+            double megabytesPerSecond = operationsPerSecond * charactersPerOperation(benchmark, source) / 1e6;
+
+            Map<String,Result> secondaryResults = result.getSecondaryResults();
+            Result allocation = secondaryResults.get(ALLOCATION_RATE_NORM);
+            String bytesPerLine = (allocation == null) ? "n/a" :
+                    String.format("%16.1f", allocation.getScore() / source.lineCount);
+
+            System.out.println(String.format("%-22s %-8s %-8s %12.1f %16s",
+                    benchmark, language, density, megabytesPerSecond, bytesPerLine));
+        }
+    }
+
+    /** Returns the number of characters processed by one operation of the given benchmark. */
+    private static long charactersPerOperation(String benchmark, SyntheticSource source) {
+        switch (benchmark) {
+            case "commentMatcher":      return source.source.length();
+            case "commentStartMatches": return source.source.length();
+            case "matchesKeyword":      return SyntheticSource.totalLength(source.commentWords);
+            case "findCommentsOnLine":  return SyntheticSource.totalLength(source.commentTexts);
+            default:                    throw new IllegalArgumentException("Unknown benchmark: " + benchmark);
+        }
+    }
+}
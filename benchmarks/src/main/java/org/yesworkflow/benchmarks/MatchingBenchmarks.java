@@ -0,0 +1,119 @@
+package org.yesworkflow.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.benchmarks.SyntheticSource.Density;
+import org.yesworkflow.extract.CommentListener;
+import org.yesworkflow.extract.CommentMatcher;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.extract.KeywordMatcher;
+
+/** Benchmarks of the hot paths of comment and keyword matching, parameterized by language
+ *  and by comment density.  Each operation processes all of the relevant input derived from
+ *  one {@link SyntheticSource}:
+ *  <ul>
+ *  <li>{@link #commentMatcher} scans the whole source with a {@link CommentMatcher}, exercising
+ *      its per-character state machine;</li>
+ *  <li>{@link #commentStartMatches} compares the string at every character of the source with
+ *      the comment start delimiters via {@link LanguageModel#commentStartMatches(String)};</li>
+ *  <li>{@link #matchesKeyword} matches every word of every comment against the YW keywords
+ *      via {@link KeywordMatcher#matchesKeyword(String)};</li>
+ *  <li>{@link #findCommentsOnLine} splits every comment into its YW annotations via
+ *      {@link DefaultExtractor#findCommentsOnLine(String, KeywordMatcher)}.</li>
+ *  </ul>
+ *  {@link BenchmarkMain} converts the resulting throughputs into MB/s and, with the GC
+ *  profiler, the bytes allocated per source line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"BASH", "C", "JAVA", "MATLAB", "PYTHON", "R", "SAS"})
+        public Language language;
+
+        @Param({"HIGH", "LOW"})
+        public Density density;
+
+        SyntheticSource source;
+        KeywordMatcher keywordMatcher;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            source = new SyntheticSource(language, density);
+            keywordMatcher = new KeywordMatcher(new YWKeywords().getKeywords());
+        }
+    }
+
+    /** Listener that consumes the lines and comments found without storing them. */
+    private static class ConsumingListener implements CommentListener {
+
+        private final Blackhole blackhole;
+
+        ConsumingListener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void sourceLine(Long sourceId, Long lineNumber, String lineText) {
+            blackhole.consume(lineText);
+        }
+
+        @Override
+        public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) {
+            blackhole.consume(commentText);
+        }
+    }
+
+    @Benchmark
+    public void commentMatcher(Input input, Blackhole blackhole) throws Exception {
+        new CommentMatcher(null, input.source.languageModel)
+            .extractComments(null, input.source.source, new ConsumingListener(blackhole));
+    }
+
+    @Benchmark
+    public void commentStartMatches(Input input, Blackhole blackhole) {
+        LanguageModel languageModel = input.source.languageModel;
+        for (String candidate : input.source.delimiterCandidates) {
+            blackhole.consume(languageModel.commentStartMatches(candidate));
+        }
+    }
+
+    @Benchmark
+    public void matchesKeyword(Input input, Blackhole blackhole) {
+        KeywordMatcher keywordMatcher = input.keywordMatcher;
+        for (String word : input.source.commentWords) {
+            blackhole.consume(keywordMatcher.matchesKeyword(word));
+        }
+    }
+
+    @Benchmark
+    public void findCommentsOnLine(Input input, Blackhole blackhole) {
+        List<String> comments = input.source.commentTexts;
+        for (String comment : comments) {
+            blackhole.consume(DefaultExtractor.findCommentsOnLine(comment, input.keywordMatcher));
+        }
+    }
+}
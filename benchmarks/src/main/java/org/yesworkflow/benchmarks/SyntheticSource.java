@@ -0,0 +1,148 @@
+package org.yesworkflow.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+
+/** Class that generates a deterministic synthetic script in a given language, using the
+ *  comment delimiters of the language's {@link LanguageModel}, along with the derived inputs
+ *  of the individual matching benchmarks.  Code lines contain no characters that begin a
+ *  comment in any supported language.
+ */
+public class SyntheticSource {
+
+    /** Proportion of comment lines, and of YW annotations among them. */
+    public enum Density {
+
+        HIGH(0.5, 0.6),
+        LOW(0.05, 0.1);
+
+        final double commentFraction;
+        final double annotationFraction;
+
+        Density(double commentFraction, double annotationFraction) {
+            this.commentFraction = commentFraction;
+            this.annotationFraction = annotationFraction;
+        }
+    }
+
+    public static final int LINE_COUNT = 5000;
+
+    private static final long SEED = 20151018L;
+
+    public final Language language;
+    public final Density density;
+    public final LanguageModel languageModel;
+
+    /** The source code, with lines separated by newlines. */
+    public final String source;
+
+    /** The number of lines in the source code. */
+    public final int lineCount;
+
+    /** The text of the comments in the source, one element per comment line. */
+    public final List<String> commentTexts;
+
+    /** The whitespace-separated words of the comments in the source. */
+    public final List<String> commentWords;
+
+    /** For every character of the source, the string of up to the maximum delimiter length
+     *  starting there, i.e. the strings a matcher compares with the comment delimiters. */
+    public final List<String> delimiterCandidates;
+
+    public SyntheticSource(Language language, Density density) {
+
+        this.language = language;
+        this.density = density;
+        this.languageModel = new LanguageModel(language);
+
+        Random random = new Random(SEED);
+        StringBuilder sourceBuilder = new StringBuilder();
+        List<String> texts = new ArrayList<String>();
+
+        String singleDelimiter = languageModel.getSingleCommentDelimiters().isEmpty() ?
+                                 null : languageModel.getSingleCommentDelimiters().get(0);
+        Map.Entry<String,String> delimiterPair = languageModel.getPairedCommentDelimiters().isEmpty() ?
+                                 null : languageModel.getPairedCommentDelimiters().entrySet().iterator().next();
+
+        int lines = 0;
+        for (int i = 0; lines < LINE_COUNT; ++i) {
+
+            if (random.nextDouble() >= density.commentFraction) {
+                sourceBuilder.append(codeLine(i)).append('\n');
+                lines++;
+                continue;
+            }
+
+            String text = commentText(i, random);
+            texts.add(text);
+
+            if (delimiterPair != null && (singleDelimiter == null || random.nextInt(4) == 0)) {
+                String body = commentText(i + 1, random);
+                texts.add(body);
+                sourceBuilder.append(delimiterPair.getKey()).append(' ').append(text).append('\n')
+                             .append("    ").append(body).append('\n')
+                             .append(delimiterPair.getValue()).append('\n');
+                lines += 3;
+            } else if (random.nextInt(3) == 0) {
+                sourceBuilder.append(codeLine(i)).append("  ").append(singleDelimiter).append(' ')
+                             .append(text).append('\n');
+                lines++;
+            } else {
+                sourceBuilder.append(singleDelimiter).append(' ').append(text).append('\n');
+                lines++;
+            }
+        }
+
+        this.source = sourceBuilder.toString();
+        this.lineCount = lines;
+        this.commentTexts = Collections.unmodifiableList(texts);
+
+        List<String> words = new ArrayList<String>();
+        for (String text : texts) {
+            for (String word : text.split("\\s+")) {
+                if (!word.isEmpty()) words.add(word);
+            }
+        }
+        this.commentWords = Collections.unmodifiableList(words);
+
+        int maxDelimiterLength = languageModel.getDelimiterTable().getMaxDelimiterLength();
+        List<String> candidates = new ArrayList<String>(source.length());
+        for (int i = 0; i < source.length(); ++i) {
+            candidates.add(source.substring(i, Math.min(source.length(), i + maxDelimiterLength)));
+        }
+        this.delimiterCandidates = Collections.unmodifiableList(candidates);
+    }
+
+    /** Returns the total length of the given strings, i.e. the characters processed by a
+     *  benchmark iterating over them. */
+    public static long totalLength(List<String> strings) {
+        long length = 0;
+        for (String s : strings) length += s.length();
+        return length;
+    }
+
+    private String codeLine(int i) {
+        return "value_" + i + " = compute(alpha_" + (i % 17) + ", beta, " + i + ");";
+    }
+
+    private String commentText(int i, Random random) {
+
+        if (random.nextDouble() >= density.annotationFraction) {
+            return "Computes the value of step " + i + " from the previous values";
+        }
+
+        switch (random.nextInt(5)) {
+            case 0:  return "@begin step_" + i + " @desc Computes step " + i;
+            case 1:  return "@in alpha_" + (i % 17) + " @as input_" + i;
+            case 2:  return "@out value_" + i + " @uri file:values/{step}/value_" + i + ".csv";
+            case 3:  return "@param beta @in gamma_" + i;
+            default: return "@end step_" + i;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.yesworkflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.yesworkflow.LanguageModel.MatchExtent;
+
+/** Transition table compiled from the comment delimiters of a {@link LanguageModel}.
+ *
+ *  <p>The start delimiters of single-line comments and of delimiter pairs are compiled
+ *  into a single trie (prefix tree) whose nodes are identified by integer states.  Each
+ *  state records the {@link MatchExtent MatchExtent} that
+ *  {@link LanguageModel#commentStartMatches(String) commentStartMatches()} reports for the
+ *  characters leading to it, and the end delimiter to expect if those characters form the
+ *  start delimiter of a delimiter pair.  Comment start delimiters thus can be matched one
+ *  character at a time without building strings or searching the delimiter lists.</p>
+ *
+ *  <p>Instances are immutable and may be shared between threads.</p>
+ */
+public class DelimiterTable {
+
+    /** State of the table before any characters have been matched. */
+    public static final int START_STATE = 0;
+
+    /** Pseudo-state for character sequences that are not a prefix of any start delimiter. */
+    public static final int NO_MATCH_STATE = -1;
+
+    /** Sorted characters labeling the trie edges leaving each state. */
+    private final char[][] edgeLabels;
+
+    /** Target states of the trie edges leaving each state, parallel to edgeLabels. */
+    private final int[][] edgeTargets;
+
+    /** Extent to which the characters leading to each state match a start delimiter. */
+    private final MatchExtent[] startMatch;
+
+    /** End delimiter paired with the start delimiter spelled by each state, or null. */
+    private final char[][] endDelimiter;
+
+    /** Length of the longest start or end delimiter. */
+    private final int maxDelimiterLength;
+
+    DelimiterTable(LanguageModel languageModel) {
+
+        List<String> startDelimiters = new ArrayList<String>(languageModel.getSingleCommentDelimiters());
+        Map<String,String> pairedDelimiters = languageModel.getPairedCommentDelimiters();
+        startDelimiters.addAll(pairedDelimiters.keySet());
+
+        // build the trie using temporary per-state edge maps and prefix strings
+        List<TreeMap<Character,Integer>> edges = new ArrayList<TreeMap<Character,Integer>>();
+        List<String> prefixes = new ArrayList<String>();
+        edges.add(new TreeMap<Character,Integer>());
+        prefixes.add("");
+        int longest = 0;
+
+        for (String delimiter : startDelimiters) {
+            int state = START_STATE;
+            for (int i = 0; i < delimiter.length(); ++i) {
+                char c = delimiter.charAt(i);
+                Integer next = edges.get(state).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new TreeMap<Character,Integer>());
+                    prefixes.add(delimiter.substring(0, i + 1));
+                    edges.get(state).put(c, next);
+                }
+                state = next;
+            }
+            longest = Math.max(longest, delimiter.length());
+        }
+        for (String end : pairedDelimiters.values()) {
+            longest = Math.max(longest, end.length());
+        }
+
+        // compile the edge maps into sorted arrays and record the match for each state
+        int stateCount = edges.size();
+        edgeLabels = new char[stateCount][];
+        edgeTargets = new int[stateCount][];
+        startMatch = new MatchExtent[stateCount];
+        endDelimiter = new char[stateCount][];
+        for (int state = 0; state < stateCount; ++state) {
+            TreeMap<Character,Integer> stateEdges = edges.get(state);
+            edgeLabels[state] = new char[stateEdges.size()];
+            edgeTargets[state] = new int[stateEdges.size()];
+            int i = 0;
+            for (Map.Entry<Character,Integer> edge : stateEdges.entrySet()) {
+                edgeLabels[state][i] = edge.getKey();
+                edgeTargets[state][i++] = edge.getValue();
+            }
+            String prefix = prefixes.get(state);
+            startMatch[state] = languageModel.commentStartMatches(prefix);
+            String end = pairedDelimiters.get(prefix);
+            endDelimiter[state] = (end == null) ? null : end.toCharArray();
+        }
+        maxDelimiterLength = longest;
+    }
+
+    /** Extends a start delimiter prefix match by one character.
+     *  @param state The state reached by the characters matched so far,
+     *               or {@link #START_STATE} if nothing has been matched yet.
+     *  @param c The next character.
+     *  @return The state reached, or {@link #NO_MATCH_STATE} if the characters matched
+     *          so far followed by c are not a prefix of any start delimiter.
+     */
+    public int nextState(int state, char c) {
+        if (state == NO_MATCH_STATE) return NO_MATCH_STATE;
+        int i = Arrays.binarySearch(edgeLabels[state], c);
+        return (i < 0) ? NO_MATCH_STATE : edgeTargets[state][i];
+    }
+
+    /** Reports the extent to which the characters leading to the given state
+     *  match the comment start delimiters of the language.
+     *  @param state A state returned by {@link #nextState(int, char) nextState()}.
+     *  @return The extent of the match.
+     */
+    public MatchExtent startMatch(int state) {
+        return (state == NO_MATCH_STATE) ? MatchExtent.NO_MATCH : startMatch[state];
+    }
+
+    /** Provides the end delimiter paired with the start delimiter leading to the given state.
+     *  @param state A state returned by {@link #nextState(int, char) nextState()}.
+     *  @return The characters of the end delimiter, or null if the characters leading
+     *          to the state are not the start delimiter of a delimiter pair.
+     */
+    public char[] endDelimiter(int state) {
+        return (state == NO_MATCH_STATE) ? null : endDelimiter[state];
+    }
+
+    /** @return The length of the longest start or end delimiter in the table. */
+    public int getMaxDelimiterLength() {
+        return maxDelimiterLength;
+    }
+}
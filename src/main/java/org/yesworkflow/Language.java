@@ -1,6 +1,7 @@
 package org.yesworkflow;
 
-/** Enumeration of programming languages recognized by YesWorkflow. */
+/** Enumeration of programming languages recognized by YesWorkflow.  NOTEBOOK denotes
+ *  a Jupyter notebook, the code cells of which are in the language of its kernel. */
 public enum Language {
     
     BASH,
@@ -9,6 +10,7 @@ public enum Language {
     GENERIC,
     JAVA,
     MATLAB,
+    NOTEBOOK,
     PYTHON,
     R,
     SAS;
@@ -25,6 +27,7 @@ public enum Language {
             if (langString.equalsIgnoreCase("GENERIC"))     return Language.GENERIC;
             if (langString.equalsIgnoreCase("JAVA"))        return Language.JAVA;
             if (langString.equalsIgnoreCase("MATLAB"))      return Language.MATLAB;
+            if (langString.equalsIgnoreCase("NOTEBOOK"))    return Language.NOTEBOOK;
             if (langString.equalsIgnoreCase("PYTHON"))      return Language.PYTHON;
             if (langString.equalsIgnoreCase("R"))           return Language.R;
             if (langString.equalsIgnoreCase("SAS"))         return Language.SAS;
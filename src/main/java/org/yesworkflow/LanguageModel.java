@@ -7,6 +7,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
+import org.yesworkflow.util.Compression;
+
 /** 
  * Class that models the programming language of the script analyzed by YesWorkflow.
 
@@ -33,23 +35,40 @@ public class LanguageModel {
     /** Backing for collection of paired comment delimiters. */
     private Map<String,String> pairedCommentDelimiters = new LinkedHashMap<String,String>();
     
+    /** Transition table compiled from the comment delimiters, or null if not yet compiled. */
+    private DelimiterTable delimiterTable = null;
+    
     /** Mapping from recognized source file extensions to programming languages.*/
     private static Map<String,Language> languageForExtension;
     static {
-        languageForExtension = new HashMap<String,Language>();
+        languageForExtension = new LinkedHashMap<String,Language>();
         languageForExtension.put("sh", Language.BASH);
         languageForExtension.put("c", Language.C);
         languageForExtension.put("h", Language.C);
         languageForExtension.put("cpp", Language.CPLUSPLUS);
         languageForExtension.put("java", Language.JAVA);
         languageForExtension.put("m", Language.MATLAB);
+        languageForExtension.put("ipynb", Language.NOTEBOOK);
         languageForExtension.put("py", Language.PYTHON);
         languageForExtension.put("r", Language.R);
         languageForExtension.put("sas", Language.SAS);
     }
+
+    /** Mapping from programming languages to the first extension registered for each. */
+    private static Map<Language,String> extensionForLanguage;
+    static {
+        extensionForLanguage = new HashMap<Language,String>();
+        for (Map.Entry<String,Language> e : languageForExtension.entrySet()) {
+            if (!extensionForLanguage.containsKey(e.getValue())) {
+                extensionForLanguage.put(e.getValue(), e.getKey());
+            }
+        }
+    }
     
     /** Utility method for looking up the programming language
      * associated with the file extension of the provided file name.
+     * The suffix of a compressed file, e.g. the <code>.gz</code> of
+     * <code>script.py.gz</code>, is ignored.
      * @param fileName The name of the file from which to infer the language.
      * @return The inferred programming language, or 
      * {@link org.yesworkflow.Language Language}.GENERIC
@@ -59,6 +78,7 @@ public class LanguageModel {
 
         Language language = null;
         
+        fileName = Compression.stripSuffix(fileName);
         int i = fileName.lastIndexOf(".");
         if (i != -1) {
             String extension = fileName.substring(i+1);
@@ -70,6 +90,16 @@ public class LanguageModel {
         return language;
     }
 
+    /** Utility method for looking up the usual file extension of source files
+     * in the given programming language.
+     * @param language The programming language.
+     * @return The extension without a leading dot, e.g. <code>py</code>, or null
+     * if no extension is recognized for the language.
+     */
+    public static String extensionForLanguage(Language language) {
+        return extensionForLanguage.get(language);
+    }
+
     /** Constructor for models of languages not explicitly supported by 
      *  YesWorkflow. Comment delimiter strings can be assigned using 
      *  the {@link #singleDelimiter(String) delimiter()} and 
@@ -129,16 +159,30 @@ public class LanguageModel {
     /** Adds a single-line comment delimiter string to the model.
      * @param start A string indicating the start of a one-line comment.
      */
-    public void singleDelimiter(String start) {
+    public synchronized void singleDelimiter(String start) {
         singleCommentDelimiters.add(start);
+        delimiterTable = null;
     }
 
     /** Adds a pair of comment-delimiting strings to the model.
      * @param start A string indicating the start of a delimited, possibly multi-line comment.
      * @param end The corresponding string indicating the end of the comment.
      */
-    public void delimiterPair(String start, String end) {
+    public synchronized void delimiterPair(String start, String end) {
         pairedCommentDelimiters.put(start, end);
+        delimiterTable = null;
+    }
+    
+    /** Provides the comment delimiters of the model compiled into a transition table
+     *  that can be stepped one character at a time.  The table is compiled on first
+     *  use and recompiled only if delimiters are added to the model subsequently.
+     *  @return The compiled delimiter table.
+     */
+    public synchronized DelimiterTable getDelimiterTable() {
+        if (delimiterTable == null) {
+            delimiterTable = new DelimiterTable(this);
+        }
+        return delimiterTable;
     }
     
     /** Enumeration of match conditions returned from comment delimiter matching methods.
@@ -268,6 +312,9 @@ public class LanguageModel {
             case GENERIC:
                 break;
 
+            case NOTEBOOK:
+                break;
+
             case JAVA:
                 singleDelimiter("//");
                 delimiterPair("/*", "*/");
@@ -72,6 +72,11 @@ public class YWKeywords {
 
     /** Backing for many-to-one mapping from keyword to tag */
     private Map<String,Tag> tagForKeyword = new HashMap<String,Tag>();
+
+    /** Open-addressed hash table of the keywords, and of their tags, probed by
+     *  {@link #getTag(CharSequence, int, int)} with a hash of the characters of a text range */
+    private String[] keywordSlots;
+    private Tag[] tagSlots;
     
     /** Default constructor that assigns the standard keyword to each tag. */
     public YWKeywords() {
@@ -86,6 +91,7 @@ public class YWKeywords {
         setStandardKeyword(    STANDARD_PARAM_KEYWORD,  Tag.PARAM   );
         setStandardKeyword(    STANDARD_RETURN_KEYWORD, Tag.RETURN  );
         setStandardKeyword(    STANDARD_URI_KEYWORD,    Tag.URI     );
+        indexKeywords();
     }
 
     /** Constructor that assigns alternative keywords to one more tags in addition
@@ -97,6 +103,7 @@ public class YWKeywords {
         for (Map.Entry<String,Tag> e : alternateKeywords.entrySet()) {
             tagForKeyword.put(e.getKey().toLowerCase(), e.getValue());
         }
+        indexKeywords();
     }
 
     /** Constructor that assigns alternative keywords to one more tags, and 
@@ -109,6 +116,7 @@ public class YWKeywords {
         for (String keyword : disabledKeywords) {
             tagForKeyword.remove(keyword.toLowerCase());
         }
+        indexKeywords();
     }
     
     /** Looks up the standard keyword for a tag.
@@ -126,7 +134,28 @@ public class YWKeywords {
     public Tag getTag(String k) {
         return tagForKeyword.get(k.toLowerCase());
     }
-        
+
+    /** Looks up the tag to which the keyword occupying the given range of a text is
+     *  assigned, without copying the keyword out of the text.
+     *  @param text The text containing the keyword.
+     *  @param start The offset of the first character of the keyword.
+     *  @param end The offset following the last character of the keyword.
+     *  @return The tag corresponding to the keyword, or null if it is not a keyword.
+     */
+    public Tag getTag(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; ++i) hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        int mask = keywordSlots.length - 1;
+        for (int slot = spread(hash) & mask; keywordSlots[slot] != null; slot = (slot + 1) & mask) {
+            String keyword = keywordSlots[slot];
+            if (keyword.length() != end - start) continue;
+            int i = 0;
+            while (i < keyword.length() && Character.toLowerCase(text.charAt(start + i)) == keyword.charAt(i)) ++i;
+            if (i == keyword.length()) return tagSlots[slot];
+        }
+        return null;
+    }
+
     /** Determines if the given string has been defined as a YW keyword.
      *  @param k  The potential keyword.
      *  @return true if k is a keyword.
@@ -142,6 +171,26 @@ public class YWKeywords {
         tagForKeyword.put(lowercaseKeyword, tag);
     }
     
+    /** Rebuilds the hash table of keywords probed by {@link #getTag(CharSequence, int, int)}
+     *  from the keyword mapping, keeping the table at most half full. */
+    private void indexKeywords() {
+        int size = 16;
+        while (size < 2 * tagForKeyword.size()) size <<= 1;
+        keywordSlots = new String[size];
+        tagSlots = new Tag[size];
+        for (Map.Entry<String,Tag> e : tagForKeyword.entrySet()) {
+            int slot = spread(e.getKey().hashCode()) & (size - 1);
+            while (keywordSlots[slot] != null) slot = (slot + 1) & (size - 1);
+            keywordSlots[slot] = e.getKey();
+            tagSlots[slot] = e.getValue();
+        }
+    }
+
+    /** Mixes the high bits of a string hash code into the low bits used to select a slot. */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
     /** Returns the keywords defined for this configuration of YW */
     public Set<String> getKeywords() {
         return tagForKeyword.keySet();
@@ -1,6 +1,7 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public abstract class AliasableAnnotation extends Annotation {
 
@@ -10,6 +11,10 @@ public abstract class AliasableAnnotation extends Annotation {
         super(id, sourceId, lineNumber, comment, tag);
     }
 
+    public AliasableAnnotation(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, tag, symbols);
+    }
+
 	public AliasableAnnotation qualifyWith(Qualification qualification) throws Exception {
 		
 		if (qualification instanceof As) {
@@ -1,8 +1,9 @@
 package org.yesworkflow.annotations;
 
-import java.util.StringTokenizer;
+import java.util.NoSuchElementException;
 
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public abstract class Annotation {
 
@@ -17,6 +18,12 @@ public abstract class Annotation {
     protected String description = null;
     
     public Annotation(Long id, Long sourceId, Long lineNumber, String comment, Tag tag) throws Exception {
+        this(id, sourceId, lineNumber, comment, tag, null);
+    }
+
+    /** Constructs an annotation whose keyword and name are interned in the given
+     *  symbol table, so that annotations repeating them share one copy. */
+    public Annotation(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, SymbolTable symbols) throws Exception {
 
         this.id = id;
         this.sourceId = sourceId;
@@ -24,17 +31,19 @@ public abstract class Annotation {
         this.comment = comment;
         this.tag = tag;
         
-        StringTokenizer commentTokens = new StringTokenizer(comment);
-        
-        keyword = commentTokens.nextToken();
-        String expectedKeyword = "@" + tag.toString();
-        if (!keyword.equalsIgnoreCase(expectedKeyword)) {
-            throw new Exception("Wrong keyword for " + expectedKeyword.toLowerCase() + " annotation: " + keyword);
+        AnnotationLexer lexer = new AnnotationLexer(comment);
+
+        if (!lexer.keywordMatches(tag)) {
+            throw new Exception("Wrong keyword for @" + tag.toString().toLowerCase() + " annotation: " + lexer.keyword());
         }
-       
-        name = commentTokens.nextToken();
-        
-        description = buildDescription(commentTokens);
+        keyword = lexer.keyword(tag, symbols);
+
+        if (!lexer.hasName()) {
+            throw new NoSuchElementException("Missing name in " + keyword + " annotation");
+        }
+        name = lexer.name(symbols);
+
+        description = lexer.description();
     }
 
 	public Annotation qualifyWith(Qualification qualification) throws Exception {		
@@ -54,18 +63,5 @@ public abstract class Annotation {
 	public String description() {
 		return description;
 	}
-	
-	private String buildDescription(StringTokenizer commentTokens) {
-        
-        StringBuilder descriptionBuilder = new StringBuilder();
-        
-        while (commentTokens.hasMoreTokens()) {
-            descriptionBuilder.append(' ').append(commentTokens.nextToken());
-        }
-        
-        String description = descriptionBuilder.toString().trim();
-        
-        return (description.length() > 0) ? description : null;
-    }
 
 }
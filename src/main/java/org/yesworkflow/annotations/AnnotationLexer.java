@@ -0,0 +1,184 @@
+package org.yesworkflow.annotations;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
+
+/** Class that splits the text of an annotation into its keyword, its name, and its
+ *  description in a single pass, recording each as a pair of offsets into the original
+ *  text rather than copying it.  Strings are materialized only when requested.
+ *
+ *  <p>Tokens are separated by the same whitespace characters as with a default
+ *  {@link java.util.StringTokenizer}.  The description is the text following the name,
+ *  without surrounding whitespace and with each run of whitespace within it replaced
+ *  by a single space.</p>
+ *
+ *  <p>Given a {@link SymbolTable}, the lexer returns the keyword and name as interned
+ *  strings, copying the characters of a token only if the table does not hold an equal
+ *  string yet.  Descriptions are rarely repeated and are always copied.</p>
+ */
+public final class AnnotationLexer {
+
+    private static final Map<Tag,String> STANDARD_KEYWORDS = new EnumMap<Tag,String>(Tag.class);
+    static {
+        YWKeywords keywords = new YWKeywords();
+        for (Tag tag : Tag.values()) STANDARD_KEYWORDS.put(tag, keywords.getStandardKeyword(tag));
+    }
+
+    private final CharSequence text;
+    private final int keywordStart;
+    private final int keywordEnd;
+    private final int nameStart;
+    private final int nameEnd;
+    private final int descriptionStart;
+    private final int descriptionEnd;
+
+    /** Whether every run of whitespace within the description is a single space, so that
+     *  the description can be taken from the text as is. */
+    private final boolean descriptionSpacedSingly;
+
+    public AnnotationLexer(CharSequence text) {
+        this(text, 0, text.length());
+    }
+
+    /** Lexes the annotation occupying the given range of a text.
+     *  @param text The text containing the annotation.
+     *  @param start The offset of the first character of the annotation.
+     *  @param end The offset following the last character of the annotation.
+     */
+    public AnnotationLexer(CharSequence text, int start, int end) {
+
+        this.text = text;
+
+        int i = skipWhitespace(text, start, end);
+        keywordStart = i;
+        keywordEnd = i = skipToken(text, i, end);
+
+        nameStart = i = skipWhitespace(text, i, end);
+        nameEnd = i = skipToken(text, i, end);
+
+        descriptionStart = i = skipWhitespace(text, i, end);
+        int lastTokenEnd = i;
+        boolean spacedSingly = true;
+        while (i < end) {
+            i = skipToken(text, i, end);
+            lastTokenEnd = i;
+            int nextTokenStart = skipWhitespace(text, i, end);
+            if (nextTokenStart < end && (nextTokenStart - i != 1 || text.charAt(i) != ' ')) {
+                spacedSingly = false;
+            }
+            i = nextTokenStart;
+        }
+        descriptionEnd = lastTokenEnd;
+        descriptionSpacedSingly = spacedSingly;
+    }
+
+    /** Returns true if the text contains at least one token. */
+    public boolean hasKeyword() {
+        return keywordEnd > keywordStart;
+    }
+
+    /** Returns true if the text contains at least two tokens. */
+    public boolean hasName() {
+        return nameEnd > nameStart;
+    }
+
+    /** Returns true if the first token of the text is the keyword for the given tag,
+     *  i.e. the tag name preceded by an at-sign, ignoring case. */
+    public boolean keywordMatches(Tag tag) {
+        String tagName = tag.name();
+        if (keywordEnd - keywordStart != tagName.length() + 1) return false;
+        if (text.charAt(keywordStart) != '@') return false;
+        for (int i = 0; i < tagName.length(); ++i) {
+            char c = text.charAt(keywordStart + 1 + i);
+            if (c != tagName.charAt(i) && Character.toUpperCase(c) != tagName.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /** Looks up the tag of the first token of the text without materializing the token.
+     *  @param keywords The keyword mapping to look the token up in.
+     *  @return The tag corresponding to the token, or null if it is not a keyword.
+     */
+    public Tag tag(YWKeywords keywords) {
+        return keywords.getTag(text, keywordStart, keywordEnd);
+    }
+
+    /** Returns the first token of the text, using the standard keyword of the given tag
+     *  rather than a copy of the token if the two are identical. */
+    public String keyword(Tag tag) {
+        return keyword(tag, null);
+    }
+
+    /** Returns the first token of the text, using the standard keyword of the given tag
+     *  if the two are identical, and otherwise interning the token in the given table.
+     *  @param tag The tag the keyword is expected to be for.
+     *  @param symbols The table to intern the token in, or null to copy the token.
+     *  @return The keyword, or null if there are no tokens.
+     */
+    public String keyword(Tag tag, SymbolTable symbols) {
+        String standardKeyword = STANDARD_KEYWORDS.get(tag);
+        if (standardKeyword.length() == keywordEnd - keywordStart) {
+            int i = 0;
+            while (i < standardKeyword.length() && standardKeyword.charAt(i) == text.charAt(keywordStart + i)) ++i;
+            if (i == standardKeyword.length()) return standardKeyword;
+        }
+        return token(keywordStart, keywordEnd, symbols);
+    }
+
+    /** Returns the first token of the text, or null if there are no tokens. */
+    public String keyword() {
+        return token(keywordStart, keywordEnd, null);
+    }
+
+    /** Returns the second token of the text, or null if there are fewer than two tokens. */
+    public String name() {
+        return name(null);
+    }
+
+    /** Returns the second token of the text, interned in the given table unless null,
+     *  or null if there are fewer than two tokens. */
+    public String name(SymbolTable symbols) {
+        return token(nameStart, nameEnd, symbols);
+    }
+
+    /** Returns the description following the name, or null if there is none. */
+    public String description() {
+
+        if (descriptionSpacedSingly) {
+            return token(descriptionStart, descriptionEnd, null);
+        }
+
+        StringBuilder description = new StringBuilder(descriptionEnd - descriptionStart);
+        int i = descriptionStart;
+        while (i < descriptionEnd) {
+            int tokenEnd = skipToken(text, i, descriptionEnd);
+            if (description.length() > 0) description.append(' ');
+            description.append(text, i, tokenEnd);
+            i = skipWhitespace(text, tokenEnd, descriptionEnd);
+        }
+        return description.toString();
+    }
+
+    private String token(int start, int end, SymbolTable symbols) {
+        if (end <= start) return null;
+        return (symbols == null) ? text.subSequence(start, end).toString() : symbols.intern(text, start, end);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static int skipWhitespace(CharSequence text, int i, int end) {
+        while (i < end && isWhitespace(text.charAt(i))) ++i;
+        return i;
+    }
+
+    private static int skipToken(CharSequence text, int i, int end) {
+        while (i < end && !isWhitespace(text.charAt(i))) ++i;
+        return i;
+    }
+}
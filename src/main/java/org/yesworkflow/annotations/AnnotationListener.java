@@ -0,0 +1,13 @@
+package org.yesworkflow.annotations;
+
+/** Interface for receiving the YW annotations found in source code, in the order
+ *  in which they occur in the sources, as soon as each one has been extracted.
+ */
+public interface AnnotationListener {
+
+    /** Receives one annotation.  Qualifications are delivered immediately after the
+     *  primary annotation they qualify and any earlier qualifications of it.
+     *  @param annotation The annotation extracted.
+     */
+    void annotation(Annotation annotation) throws Exception;
+}
@@ -1,11 +1,17 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
+import org.yesworkflow.util.SymbolTable;
 
 public class As extends Qualification {
     
     public As(Long id, Long sourceId, Long lineNumber, String comment, Annotation primaryAnnotation) throws Exception {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.AS, primaryAnnotation);
     }
+
+    public As(Long id, Long sourceId, Long lineNumber, String comment, Annotation primaryAnnotation,
+              SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.AS, primaryAnnotation, symbols);
+    }
 }
 
@@ -1,11 +1,16 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
+import org.yesworkflow.util.SymbolTable;
 
 public class Begin extends Delimiter {
     
     public Begin(Long id, Long sourceId, Long lineNumber, String comment) throws Exception {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.BEGIN);
     }
+
+    public Begin(Long id, Long sourceId, Long lineNumber, String comment, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.BEGIN, symbols);
+    }
 }
 
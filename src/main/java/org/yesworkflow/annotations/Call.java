@@ -2,6 +2,7 @@ package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public class Call extends Annotation {
 
@@ -13,6 +14,10 @@ public class Call extends Annotation {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.CALL);
     }
 
+    public Call(Long id, Long sourceId, Long lineNumber, String comment, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.CALL, symbols);
+    }
+
     @Override
     public String toString() {
         
@@ -1,12 +1,17 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public abstract class Delimiter extends Annotation {
 
     public Delimiter(Long id, Long sourceId, Long lineNumber, String comment, Tag tag) throws Exception {
     	super(id, sourceId, lineNumber, comment, tag);    	
     }
+
+    public Delimiter(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, tag, symbols);
+    }
     
     @Override
     public String toString() {
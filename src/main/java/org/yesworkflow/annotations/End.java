@@ -1,10 +1,15 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
+import org.yesworkflow.util.SymbolTable;
 
 public class End extends Delimiter {
 
     public End(Long id, Long sourceId, Long lineNumber, String comment) throws Exception {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.END);
     }
+
+    public End(Long id, Long sourceId, Long lineNumber, String comment, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.END, symbols);
+    }
 }
\ No newline at end of file
@@ -1,12 +1,18 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
+import org.yesworkflow.util.SymbolTable;
 
 public class FileUri extends UriAnnotation {
     
     public FileUri(Long id, Long sourceId, Long lineNumber, String comment, Annotation primaryAnnotation) throws Exception {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.FILE, primaryAnnotation);
     }
+
+    public FileUri(Long id, Long sourceId, Long lineNumber, String comment, Annotation primaryAnnotation,
+                   SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.FILE, primaryAnnotation, symbols);
+    }
     
     public String toString() {
         return name;
@@ -1,6 +1,7 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public abstract class Flow extends AliasableAnnotation {
     	
@@ -9,6 +10,10 @@ public abstract class Flow extends AliasableAnnotation {
     public Flow(Long id, Long sourceId, Long lineNumber, String comment, Tag tag) throws Exception {
     	super(id, sourceId, lineNumber, comment, tag);    	
     }
+
+    public Flow(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, tag, symbols);
+    }
 	
     @Override
     public Flow qualifyWith(Qualification qualification) throws Exception {
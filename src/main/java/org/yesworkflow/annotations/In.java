@@ -2,6 +2,7 @@ package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public class In extends Flow {
 
@@ -11,5 +12,13 @@ public class In extends Flow {
 
     public In(Long id, Long sourceId, Long lineNumber, String comment, Tag tag) throws Exception {
         super(id, sourceId, lineNumber, comment, tag);
+    }
+
+    public In(Long id, Long sourceId, Long lineNumber, String comment, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.IN, symbols);
+    }
+
+    public In(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, tag, symbols);
     }    
 }
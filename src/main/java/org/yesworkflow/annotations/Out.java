@@ -2,6 +2,7 @@ package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public class Out extends Flow {
     
@@ -12,4 +13,12 @@ public class Out extends Flow {
     public Out(Long id, Long sourceId, Long lineNumber, String comment, Tag tag) throws Exception {
         super(id, sourceId, lineNumber, comment, tag);
     }
+
+    public Out(Long id, Long sourceId, Long lineNumber, String comment, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.OUT, symbols);
+    }
+
+    public Out(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, tag, symbols);
+    }
 }
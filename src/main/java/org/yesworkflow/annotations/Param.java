@@ -1,10 +1,15 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
+import org.yesworkflow.util.SymbolTable;
 
 public class Param extends In {
 
     public Param(Long id, Long sourceId, Long lineNumber, String comment) throws Exception {        
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.PARAM);
     }
+
+    public Param(Long id, Long sourceId, Long lineNumber, String comment, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.PARAM, symbols);
+    }
 }
@@ -1,14 +1,20 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public class Qualification extends Annotation {
 
     public final Annotation primaryAnnotation;
     
 	public Qualification(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, Annotation primaryAnnotation) throws Exception {
+	    this(id, sourceId, lineNumber, comment, tag, primaryAnnotation, null);
+	}
+
+	public Qualification(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, Annotation primaryAnnotation,
+	                     SymbolTable symbols) throws Exception {
 		
-	    super(id, sourceId, lineNumber,comment, tag);
+	    super(id, sourceId, lineNumber,comment, tag, symbols);
 
 	    if (primaryAnnotation == null) {
 		    throw new Exception("Qualification annotation found before primary annotation.");
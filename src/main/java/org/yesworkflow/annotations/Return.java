@@ -1,10 +1,15 @@
 package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
+import org.yesworkflow.util.SymbolTable;
 
 public class Return extends Out {
     
     public Return(Long id, Long sourceId, Long lineNumber, String comment) throws Exception {        
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.RETURN);
+    }
+
+    public Return(Long id, Long sourceId, Long lineNumber, String comment, SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.RETURN, symbols);
     }  
 }
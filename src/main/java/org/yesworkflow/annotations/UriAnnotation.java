@@ -2,6 +2,7 @@ package org.yesworkflow.annotations;
 
 import org.yesworkflow.YWKeywords;
 import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.util.SymbolTable;
 
 public class UriAnnotation extends Qualification {
     
@@ -12,6 +13,16 @@ public class UriAnnotation extends Qualification {
     protected UriAnnotation(Long id, Long sourceId, Long lineNumber,String comment, Tag tag, Annotation primaryAnnotation) throws Exception {
         super(id, sourceId, lineNumber,comment, tag, primaryAnnotation);
     }
+
+    public UriAnnotation(Long id, Long sourceId, Long lineNumber, String comment, Annotation primaryAnnotation,
+                         SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, YWKeywords.Tag.URI, primaryAnnotation, symbols);
+    }
+
+    protected UriAnnotation(Long id, Long sourceId, Long lineNumber, String comment, Tag tag, Annotation primaryAnnotation,
+                            SymbolTable symbols) throws Exception {
+        super(id, sourceId, lineNumber, comment, tag, primaryAnnotation, symbols);
+    }
     
     public String toString() {
         return name;
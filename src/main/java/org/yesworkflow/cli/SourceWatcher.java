@@ -0,0 +1,205 @@
+package org.yesworkflow.cli;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.yesworkflow.extract.SourceTreeWalker;
+
+/** Class that waits for changes to source files using a {@link WatchService}.
+ *  Source paths naming files are watched via their parent directories, and changes to
+ *  other files in those directories are ignored.  Source paths naming directories are
+ *  watched recursively, including subdirectories created while watching, and changes to
+ *  the files in them are reported only for the files {@link SourceTreeWalker} would
+ *  extract from, so that e.g. a graph written into a watched directory is not taken for
+ *  a changed source.  Changes to the output files of the watched commands, and to the
+ *  journals SQLite writes beside them, are always ignored.
+ *
+ *  <p>Because editors often save a file via several file system operations, the events
+ *  reported within a short settling interval of the first are collected together.</p>
+ */
+public class SourceWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_SETTLE_MILLIS = 10;
+
+    private final WatchService watchService;
+    private final long settleMillis;
+    private final Set<Path> watchedFiles = new HashSet<Path>();
+    private final Map<WatchKey,Path> watchedDirectories = new HashMap<WatchKey,Path>();
+    private final Set<Path> recursiveDirectories = new HashSet<Path>();
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final Set<Path> ignoredPaths = new HashSet<Path>();
+
+    public SourceWatcher(List<String> sourcePaths, List<String> includePatterns,
+                         List<String> excludePatterns, Collection<String> outputPaths) throws IOException {
+        this(sourcePaths, includePatterns, excludePatterns, outputPaths, DEFAULT_SETTLE_MILLIS);
+    }
+
+    /** Constructs a watcher and registers the directories of the given sources.
+     *  @param sourcePaths The paths of the source files and directories to watch.
+     *  @param includePatterns Globs matching the files to watch in source directories.
+     *  @param excludePatterns Globs matching the files and subdirectories not to watch.
+     *  @param outputPaths The paths of the files and directories written by the watched commands.
+     *  @param settleMillis The time to wait for further events after each event received.
+     *  @throws IOException If a directory cannot be registered with the watch service.
+     */
+    public SourceWatcher(List<String> sourcePaths, List<String> includePatterns, List<String> excludePatterns,
+                         Collection<String> outputPaths, long settleMillis) throws IOException {
+
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.settleMillis = settleMillis;
+        this.includes = SourceTreeWalker.pathMatchers(includePatterns);
+        this.excludes = SourceTreeWalker.pathMatchers(excludePatterns);
+
+        for (String outputPath : outputPaths) {
+            ignoredPaths.add(Paths.get(outputPath).toAbsolutePath().normalize());
+        }
+
+        for (String sourcePath : sourcePaths) {
+            Path path = Paths.get(sourcePath).toAbsolutePath().normalize();
+            if (Files.isDirectory(path)) {
+                recursiveDirectories.add(path);
+                registerTree(path, null);
+            } else {
+                watchedFiles.add(path);
+                register(path.getParent());
+            }
+        }
+    }
+
+    /** Waits until at least one watched source changes.
+     *  @return The paths of the files created, modified or deleted, in the order first reported.
+     *  @throws InterruptedException If the calling thread is interrupted while waiting.
+     *  @throws IOException If a directory created while watching cannot be registered.
+     */
+    public Set<Path> awaitChanges() throws InterruptedException, IOException {
+
+        Set<Path> changes = new LinkedHashSet<Path>();
+
+        while (changes.isEmpty()) {
+            WatchKey key = watchService.take();
+            while (key != null) {
+                collectChanges(key, changes);
+                key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return changes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changes) throws IOException {
+
+        Path directory = watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+
+            if (directory == null) continue;
+
+            if (event.kind() == OVERFLOW) {
+                changes.add(directory);
+                continue;
+            }
+
+            Path path = directory.resolve((Path)event.context());
+            if (isIgnored(path)) continue;
+
+            if (watchedFiles.contains(path)) {
+                changes.add(path);
+                continue;
+            }
+
+            Path relativePath = relativeToRecursiveDirectory(path);
+            if (relativePath == null || SourceTreeWalker.isExcluded(excludes, relativePath)) continue;
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                registerTree(path, changes);
+            } else if (SourceTreeWalker.isIncluded(includes, relativePath)) {
+                changes.add(path);
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    /** Returns the path of a file relative to the watched source directory containing it,
+     *  or null if it is in none. */
+    private Path relativeToRecursiveDirectory(Path path) {
+        for (Path directory : recursiveDirectories) {
+            if (path.startsWith(directory)) return directory.relativize(path);
+        }
+        return null;
+    }
+
+    private boolean isIgnored(Path path) {
+        for (Path ignoredPath : ignoredPaths) {
+            if (path.startsWith(ignoredPath)) return true;
+            if (path.getParent().equals(ignoredPath.getParent()) &&
+                path.getFileName().toString().startsWith(ignoredPath.getFileName() + "-")) return true;
+        }
+        return false;
+    }
+
+    private void register(Path directory) throws IOException {
+        if (!watchedDirectories.containsValue(directory)) {
+            WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            watchedDirectories.put(key, directory);
+        }
+    }
+
+    /** Registers a directory and its subdirectories that are not excluded.
+     *  @param changes The changes to which to add the source files already in the tree,
+     *         which were created before it could be registered, or null when first watching.
+     */
+    private void registerTree(final Path root, final Set<Path> changes) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                Path relativePath = relativeToRecursiveDirectory(directory);
+                if (!directory.equals(root) && SourceTreeWalker.isExcluded(excludes, relativePath)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                register(directory);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                Path relativePath = relativeToRecursiveDirectory(file);
+                if (changes != null && !isIgnored(file) && !SourceTreeWalker.isExcluded(excludes, relativePath) &&
+                    SourceTreeWalker.isIncluded(includes, relativePath)) {
+                    changes.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -7,7 +7,9 @@ public enum YWCommand {
     CREATE,
     MODEL,
     GRAPH,
-    RECON;
+    RECON,
+    SEARCH,
+    WATCH;
     
     public static YWCommand toYWCommand(Object ywc) throws Exception {
                 
@@ -21,6 +23,8 @@ public enum YWCommand {
             if (ywcstring.equalsIgnoreCase("model"))    return YWCommand.MODEL;
             if (ywcstring.equalsIgnoreCase("graph"))    return YWCommand.GRAPH;
             if (ywcstring.equalsIgnoreCase("recon"))    return YWCommand.RECON;
+            if (ywcstring.equalsIgnoreCase("search"))   return YWCommand.SEARCH;
+            if (ywcstring.equalsIgnoreCase("watch"))    return YWCommand.WATCH;
         }
         
         throw new Exception("Unrecognized YW command: " + ywc);
@@ -4,8 +4,15 @@ import static java.util.Arrays.asList;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.yesworkflow.annotations.Annotation;
 import org.yesworkflow.config.YWConfiguration;
@@ -16,6 +23,7 @@ import org.yesworkflow.exceptions.YWMarkupException;
 import org.yesworkflow.exceptions.YWToolUsageException;
 import org.yesworkflow.extract.DefaultExtractor;
 import org.yesworkflow.extract.Extractor;
+import org.yesworkflow.extract.SourceScanMemo;
 import org.yesworkflow.graph.DotGrapher;
 import org.yesworkflow.graph.Grapher;
 import org.yesworkflow.model.DefaultModeler;
@@ -24,6 +32,9 @@ import org.yesworkflow.model.Modeler;
 import org.yesworkflow.recon.DefaultReconstructor;
 import org.yesworkflow.recon.Reconstructor;
 import org.yesworkflow.recon.Run;
+import org.yesworkflow.search.DefaultSearcher;
+import org.yesworkflow.search.Searcher;
+import org.yesworkflow.util.MemoryBudget;
 
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
@@ -32,7 +43,7 @@ import joptsimple.OptionSet;
 /** 
  * Class that provides the default command-line interface (CLI) for YesWorkflow.
  * The CLI takes one argument (or option) representing the operation to 
- * be carried out (currently <i>extract</i>, <i>model</i>, or <i>graph</i>),
+ * be carried out (currently <i>extract</i>, <i>model</i>, <i>graph</i>, or <i>watch</i>),
  * along with additional options that specify desired outputs and formats.  
  * Each operation implies and automatically runs the operations that logically 
  * precede it, i.e. the <i>graph</i> command implies the <i>extract</i> and 
@@ -62,7 +73,7 @@ public class YesWorkflowCLI {
     private static final String PROPERTY_FILE_NAME = "yw.properties";
     private static final String YAML_FILE_NAME = "yw.yaml";
     
-    private final YesWorkflowDB ywdb;
+    private YesWorkflowDB ywdb;
     private final PrintStream errStream;
     private final PrintStream outStream;    
     private OptionSet options = null;
@@ -74,6 +85,7 @@ public class YesWorkflowCLI {
     private Model model = null;
     private YWConfiguration config = null;
     private Reconstructor reconstructor;
+    private Searcher searcher = null;
     
     /** Method invoked first when the YesWorkflow CLI is run from the 
      * command line. Creates an instance of {@link YesWorkflowCLI},
@@ -214,14 +226,24 @@ public class YesWorkflowCLI {
                 throw new YWToolUsageException("ERROR: Unrecognized YW command: " + nonOptionArguments.get(0));
             }
 
-            // extract source file paths from remaining non-option arguments
+            // extract source file paths, or the terms to search for, from remaining non-option arguments
             if (nonOptionArguments.size() > 1) {
-                List<String> sourceFiles = new LinkedList<String>();
+                List<String> arguments = new LinkedList<String>();
                 for (int i = 1; i < nonOptionArguments.size(); ++i) {
-                    sourceFiles.add((String) nonOptionArguments.get(i));
+                    arguments.add((String) nonOptionArguments.get(i));
                 }
-                config.applyConfigOption("extract.sources", sourceFiles);
-                config.applyConfigOption("create.sources", sourceFiles);
+                if (command == YWCommand.SEARCH) {
+                    config.applyConfigOption("search.query", arguments);
+                } else {
+                    config.applyConfigOption("extract.sources", arguments);
+                    config.applyConfigOption("create.sources", arguments);
+                }
+            }
+
+            // search the index written by extraction unless another index is given
+            String extractIndex = config.getConfigOptionValue("extract.index");
+            if (extractIndex != null && config.getConfigOptionValue("search.index") == null) {
+                config.applyConfigOption("search.index", extractIndex);
             }
             
             String queryEngine = (String) config.getConfigOptionValue("query.engine");
@@ -231,37 +253,54 @@ public class YesWorkflowCLI {
                 if (config.getConfigOptionValue("recon.queryengine") == null) config.applyConfigOption("recon.queryengine", queryEngine);
             }
             
+            // keep extracted rows in a temporary file-backed DB if extraction has a memory budget;
+            // annotations and the model built from them remain on the heap
+            YesWorkflowDB fileBackedDB = (command == YWCommand.WATCH) ? null : createFileBackedDB();
+            if (fileBackedDB != null) ywdb = fileBackedDB;
+
             // execute sequence of commands through the requested one
-            switch(command) {
+            try {
+                switch(command) {
 
-                case NOOP:
-                    return ExitCode.SUCCESS;
+                    case NOOP:
+                        return ExitCode.SUCCESS;
             
-                case EXTRACT:
-                    extract();
-                    return ExitCode.SUCCESS;
-
-                case CREATE:
-                    extract();
-                    create();
-                    return ExitCode.SUCCESS;
+                    case EXTRACT:
+                        extract();
+                        return ExitCode.SUCCESS;
+
+                    case CREATE:
+                        extract();
+                        create();
+                        return ExitCode.SUCCESS;
     
-                case MODEL:
-                    extract();
-                    model();
-                    return ExitCode.SUCCESS;
+                    case MODEL:
+                        extract();
+                        model();
+                        return ExitCode.SUCCESS;
                     
-                case GRAPH:
-                    extract();
-                    model();
-                    graph();
-                    return ExitCode.SUCCESS;
-
-                case RECON:
-                    extract();
-                    model();
-                    recon();
-                    return ExitCode.SUCCESS;
+                    case GRAPH:
+                        extract();
+                        model();
+                        graph();
+                        return ExitCode.SUCCESS;
+
+                    case RECON:
+                        extract();
+                        model();
+                        recon();
+                        return ExitCode.SUCCESS;
+
+                    case SEARCH:
+                        search();
+                        return ExitCode.SUCCESS;
+
+                    case WATCH:
+                        watch();
+                        return ExitCode.SUCCESS;
+                }
+            } finally {
+                if (fileBackedDB != null) fileBackedDB.close();
             }
             
         } catch (YWToolUsageException e) {
@@ -298,23 +337,40 @@ public class YesWorkflowCLI {
         "extract                    Identify YW comments in script source file(s)"          + EOL +
         "model                      Build workflow model from identified YW comments"       + EOL +
         "recon                      Reconstruct a run from its persisted data products"     + EOL +
-        "graph                      Graphically render workflow model of script"            + EOL;
+        "graph                      Graphically render workflow model of script"            + EOL +
+        "search                     List indexed comments matching the given terms"         + EOL +
+        "watch                      Re-run graph each time the source file(s) change"       + EOL;
 
     public static final String YW_CLI_CONFIG_HELP = 
         "Configuration Name         Value"                                                  + EOL +
         "------------------         -----"                                                  + EOL +
+        "extract.cache              SQLite file caching comments of unchanged sources"      + EOL +
         "extract.comment            Single-line comment delimiter in source files"          + EOL +
+        "extract.dedup              Extract identical source files once: ON or OFF"         + EOL +
+        "extract.exclude            Globs of files and directories to skip in directories"  + EOL +
         "extract.factsfile          File for storing prolog facts about scripts"            + EOL +
+        "extract.gitrepo            Local git repository to read sources from"              + EOL +
+        "extract.include            Globs of files to extract from source directories"      + EOL +
+        "extract.index              SQLite file indexing comments for the search command"   + EOL +
         "extract.language           Language used in source files"                          + EOL +
+        "extract.lines              Source lines to store: ALL or ANNOTATED blocks only"    + EOL +
         "extract.listfile           File for storing flat list of extracted YW markup"      + EOL +
+        "extract.membudget          Memory for buffering sources and DB rows, e.g. 256M"    + EOL +
+        "extract.pipeline           Scan, parse and store sources concurrently: ON or OFF"  + EOL +
+        "extract.revision           Commit of git repository to read sources from"          + EOL +
+        "extract.skeletondir        Directory for storing a skeleton of each source file"   + EOL +
         "extract.skeletonfile       File for storing YW-markup skeleton of source files"    + EOL +  
-        "extract.sources            List of source files to analyze"                        + EOL +        
+        "extract.sources            List of source files and directories to analyze"        + EOL +        
+        "extract.threads            Number of source files to scan concurrently"            + EOL +
         ""                                                                                  + EOL +
         "model.factsfile            File for storing prolog facts describing model"         + EOL +
         "model.workflow             Name of top-level workflow in model"                    + EOL +
         ""                                                                                  + EOL +
         "recon.factsfile            File for storing reconstructed facts about a run"       + EOL +
         ""                                                                                  + EOL +
+        "search.index               SQLite file of comment index to search"                 + EOL +
+        "search.limit               Maximum number of matching comments to list"            + EOL +
+        ""                                                                                  + EOL +
         "graph.datalabel            Info to display in data nodes: NAME, URI, or BOTH"      + EOL +
         "graph.dotcomments          Include comments in dot file (ON or OFF)"               + EOL +
         "graph.dotfile              Name of GraphViz DOT file to write graph to"            + EOL +
@@ -409,6 +465,143 @@ public class YesWorkflowCLI {
                .graph();
     }
 
+    /** Runs the graph command, and then runs it again each time the sources change until
+     *  the calling thread is interrupted.  Each run uses a fresh YesWorkflow DB, prepared in
+     *  the background while waiting for changes, and replays the scans of unchanged source
+     *  files retained in memory from the previous run, so that only changed files are scanned.
+     *  The files reported changed are passed to the extractor, which replays the other files
+     *  without reading them again.
+     *  Errors are reported without ending the watch, e.g. when a source file is deleted
+     *  while being extracted, and the time taken to rebuild is reported only for the runs
+     *  that succeed.  Changes to files that would not be extracted from the watched source
+     *  directories, and to the files the graph command writes, are ignored.
+     */
+    private void watch() throws Exception {
+
+        List<String> sourcePaths = configuredPathList("extract", "sources");
+        if (sourcePaths.isEmpty() || sourcePaths.contains("-")) {
+            throw new YWToolUsageException("ERROR: Watch command requires source files or directories");
+        }
+        SourceScanMemo scanMemo = new SourceScanMemo();
+        ExecutorService dbPreparer = Executors.newSingleThreadExecutor();
+
+        try (SourceWatcher watcher = new SourceWatcher(sourcePaths,
+                                                       configuredPathList("extract", "include"),
+                                                       configuredPathList("extract", "exclude"),
+                                                       outputPathsOfWatch())) {
+
+            YesWorkflowDB cycleDB = this.ywdb;
+            Set<Path> changes = null;
+            long changesReceived = System.nanoTime();
+
+            while (true) {
+
+                Future<YesWorkflowDB> nextDB = dbPreparer.submit(new Callable<YesWorkflowDB>() {
+                    @Override
+                    public YesWorkflowDB call() throws Exception {
+                        return YesWorkflowDB.createInMemoryDB();
+                    }
+                });
+
+                boolean rebuilt = runWatchCycle(cycleDB, scanMemo, changes);
+                if (rebuilt && changes != null) {
+                    errStream.println("Rebuilt in " + (System.nanoTime() - changesReceived) / 1000000 +
+                                      " ms after changes to " + changes);
+                }
+                if (cycleDB != this.ywdb) cycleDB.close();
+
+                try {
+                    changes = watcher.awaitChanges();
+                    changesReceived = System.nanoTime();
+                    cycleDB = nextDB.get();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+        } finally {
+            dbPreparer.shutdownNow();
+        }
+    }
+
+    /** Runs the extract, model and graph commands once for the watch command, reporting
+     *  rather than throwing any error.
+     *  @return True if the commands succeeded, false if an error was reported.
+     */
+    private boolean runWatchCycle(YesWorkflowDB cycleDB, SourceScanMemo scanMemo, Set<Path> changes) {
+
+        try {
+            extractor = new DefaultExtractor(cycleDB, this.outStream, this.errStream).configure("scanmemo", scanMemo);
+            if (changes != null) extractor.configure("changes", changes);
+            modeler = new DefaultModeler(cycleDB, this.outStream, this.errStream);
+            grapher = new DotGrapher(this.outStream, this.errStream);
+            extract();
+            model();
+            graph();
+            return true;
+        } catch (YWToolUsageException e) {
+            printToolUsageErrors(e.getMessage());
+        } catch (YWMarkupException e) {
+            printMarkupErrors(e.getMessage());
+        } catch (Exception e) {
+            errStream.println("ERROR: " + e);
+        }
+        return false;
+    }
+
+    /** Returns the list of paths or globs configured for an option, or an empty list if
+     *  the option is not set. */
+    private List<String> configuredPathList(String section, String option) throws YWToolUsageException {
+
+        Map<String,Object> sectionConfig = config.getSection(section);
+        Object value = (sectionConfig == null) ? null : sectionConfig.get(option);
+
+        try {
+            return (value == null) ? new LinkedList<String>() : DefaultExtractor.toStringList(value, option);
+        } catch (Exception e) {
+            throw new YWToolUsageException("ERROR: " + e.getMessage());
+        }
+    }
+
+    /** Returns the paths of the files and directories written by the commands the watch
+     *  command runs, other than to standard output. */
+    private List<String> outputPathsOfWatch() {
+
+        List<String> outputPaths = new LinkedList<String>();
+        for (String option : asList("extract.listfile", "extract.factsfile", "extract.skeletonfile",
+                                    "extract.skeletondir", "extract.cache", "extract.index",
+                                    "model.factsfile", "graph.dotfile")) {
+            String path = config.getConfigOptionValue(option);
+            if (path != null && !path.equals("-")) outputPaths.add(path);
+        }
+
+        return outputPaths;
+    }
+
+    private YesWorkflowDB createFileBackedDB() throws Exception {
+
+        String budget = config.getConfigOptionValue("extract.membudget");
+        if (budget == null) return null;
+
+        MemoryBudget memoryBudget;
+        try {
+            memoryBudget = MemoryBudget.toMemoryBudget(budget);
+        } catch (Exception e) {
+            throw new YWToolUsageException("ERROR: " + e.getMessage());
+        }
+
+        return YesWorkflowDB.createFileBackedDB(memoryBudget.getDatabaseCacheKB());
+    }
+
+    private void search() throws Exception {
+
+        if (searcher == null) {
+            searcher = new DefaultSearcher(this.outStream, this.errStream);
+        }
+
+        searcher.configure(config.getSection("search")).search();
+    }
+
     private void recon() throws Exception {
 
         if (reconstructor == null) {
@@ -0,0 +1,207 @@
+package org.yesworkflow.db;
+
+import static org.yesworkflow.db.Column.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/** Class for inserting large numbers of source line, comment and annotation rows
+ *  into a {@link YesWorkflowDB} efficiently.  Rows are buffered in JDBC batches on
+ *  prepared statements and flushed together within a single transaction, avoiding
+ *  the per-row statement rendering, auto-commit and generated-key round trips of the
+ *  corresponding insert methods on {@link YesWorkflowDB}.
+ *
+ *  <p>Because generated ids are not retrieved, callers must not depend on the ids of
+ *  rows inserted via this class until {@link #close()} (or {@link #flush()}) has been
+ *  called, unless they assign the ids of comments themselves.  Rows are flushed in
+ *  foreign-key order, i.e. source lines and comments before annotations.</p>
+ *
+ *  <p>Rows are committed only by {@link #commit()}, which callers invoke once all rows
+ *  have been inserted successfully.  Closing the inserter rolls back the rows inserted
+ *  since the last commit, so that an inserter closed because an exception was thrown while
+ *  rows were being inserted leaves none of the rows inserted since then in the database.</p>
+ *
+ *  <p>Optionally each flush is committed, so that a file-backed database need not
+ *  retain the undo information for all rows inserted until the inserter is committed.
+ *  Rows committed by a flush are not rolled back when the inserter is closed.</p>
+ *
+ *  <p>The inserter acquires a connection from the pool of the database when the first row
+ *  is inserted, and holds it until closed.  The connection is lent to the thread inserting
+ *  the first row, so that the other statements that thread executes on the database while
+ *  the inserter is open are part of the transaction of the inserter, while other threads
+ *  execute their statements on connections of their own.</p>
+ */
+public class BatchInserter implements AutoCloseable {
+
+    /** Default number of buffered rows that triggers a flush of all batches. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final YesWorkflowDB ywdb;
+    private final int batchSize;
+    private final boolean commitEachFlush;
+    private Connection connection = null;
+    private boolean restoreAutoCommit;
+    private PreparedStatement sourceLineInsert;
+    private PreparedStatement commentInsert;
+    private PreparedStatement annotationInsert;
+    private int bufferedRows = 0;
+    private boolean closed = false;
+
+    public BatchInserter(YesWorkflowDB ywdb) throws SQLException {
+        this(ywdb, DEFAULT_BATCH_SIZE);
+    }
+
+    public BatchInserter(YesWorkflowDB ywdb, int batchSize) throws SQLException {
+        this(ywdb, batchSize, false);
+    }
+
+    /** Constructs an inserter that buffers the given number of rows between flushes.
+     *  @param ywdb The database to insert rows into.
+     *  @param batchSize The number of buffered rows that triggers a flush of all batches.
+     *  @param commitEachFlush Whether to commit the rows flushed each time the batches fill.
+     */
+    public BatchInserter(YesWorkflowDB ywdb, int batchSize, boolean commitEachFlush) throws SQLException {
+
+        this.ywdb = ywdb;
+        this.batchSize = batchSize;
+        this.commitEachFlush = commitEachFlush;
+    }
+
+    /** Acquires the connection of the inserter and prepares its statements if this has
+     *  not been done yet. */
+    private void connect() throws SQLException {
+
+        if (connection != null) return;
+        if (closed) throw new SQLException("Batch inserter has been closed");
+
+        this.connection = ywdb.acquireConnection();
+
+        this.sourceLineInsert = connection.prepareStatement(
+                ywdb.jooq().insertInto(Table.SOURCE_LINE, SOURCE_ID, LINE_NUMBER, LINE_TEXT)
+                           .values(null, null, null)
+                           .getSQL());
+
+        this.commentInsert = connection.prepareStatement(
+                ywdb.jooq().insertInto(Table.COMMENT, ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                           .values(null, null, null, null, null)
+                           .getSQL());
+
+        this.annotationInsert = connection.prepareStatement(
+                ywdb.jooq().insertInto(Table.ANNOTATION, QUALIFIES, COMMENT_ID, RANK_IN_COMMENT,
+                                       TAG, KEYWORD, VALUE, DESCRIPTION)
+                           .values(null, null, null, null, null, null, null)
+                           .getSQL());
+
+        this.restoreAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+    }
+
+    public void insertSourceLine(Long sourceId, Long lineNumber, String lineText) throws SQLException {
+        connect();
+        sourceLineInsert.setLong(1, sourceId);
+        sourceLineInsert.setLong(2, lineNumber);
+        sourceLineInsert.setString(3, lineText);
+        sourceLineInsert.addBatch();
+        rowBuffered();
+    }
+
+    public void insertComment(Long sourceId, Long lineNumber,
+                              Long rankInLine, String commentText) throws SQLException {
+        insertComment(null, sourceId, lineNumber, rankInLine, commentText);
+    }
+
+    /** Inserts a comment with the given id, or with an id generated by the database if
+     *  the id is null.  A comment inserted with an id already in use is reported as a key
+     *  violation when the batch of comments is flushed. */
+    public void insertComment(Long id, Long sourceId, Long lineNumber,
+                              Long rankInLine, String commentText) throws SQLException {
+        connect();
+        if (id == null) {
+            commentInsert.setNull(1, Types.BIGINT);
+        } else {
+            commentInsert.setLong(1, id);
+        }
+        commentInsert.setLong(2, sourceId);
+        commentInsert.setLong(3, lineNumber);
+        commentInsert.setLong(4, rankInLine);
+        commentInsert.setString(5, commentText);
+        commentInsert.addBatch();
+        rowBuffered();
+    }
+
+    public void insertAnnotation(Long qualifiedAnnotationId, long commentId,
+                                 long rankInComment, String tag, String keyword,
+                                 String value, String description) throws SQLException {
+        connect();
+        if (qualifiedAnnotationId == null) {
+            annotationInsert.setNull(1, Types.BIGINT);
+        } else {
+            annotationInsert.setLong(1, qualifiedAnnotationId);
+        }
+        annotationInsert.setLong(2, commentId);
+        annotationInsert.setLong(3, rankInComment);
+        annotationInsert.setString(4, tag);
+        annotationInsert.setString(5, keyword);
+        annotationInsert.setString(6, value);
+        annotationInsert.setString(7, description);
+        annotationInsert.addBatch();
+        rowBuffered();
+    }
+
+    /** Sends all buffered rows to the database without committing them. */
+    public void flush() throws SQLException {
+        if (bufferedRows > 0) {
+            sourceLineInsert.executeBatch();
+            commentInsert.executeBatch();
+            annotationInsert.executeBatch();
+            bufferedRows = 0;
+        }
+    }
+
+    /** Flushes and commits all buffered rows.  If the flush fails the transaction is
+     *  rolled back. */
+    public void commit() throws SQLException {
+
+        if (closed) throw new SQLException("Batch inserter has been closed");
+        if (connection == null) return;
+
+        try {
+            flush();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            bufferedRows = 0;
+            throw e;
+        }
+    }
+
+    /** Rolls back the rows inserted since the last commit, releases the prepared statements,
+     *  restores the auto-commit mode of the connection, and returns it to the pool.
+     */
+    @Override
+    public void close() throws SQLException {
+
+        if (closed) return;
+        closed = true;
+        if (connection == null) return;
+
+        try {
+            connection.rollback();
+        } finally {
+            sourceLineInsert.close();
+            commentInsert.close();
+            annotationInsert.close();
+            connection.setAutoCommit(restoreAutoCommit);
+            ywdb.releaseConnection(connection);
+        }
+    }
+
+    private void rowBuffered() throws SQLException {
+        if (++bufferedRows >= batchSize) {
+            flush();
+            if (commitEachFlush) connection.commit();
+        }
+    }
+}
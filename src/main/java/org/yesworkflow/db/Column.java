@@ -8,6 +8,7 @@ import org.jooq.Field;
 public class Column {
 
     public static Field ALIAS               = field("alias");
+    public static Field ALIAS_OF            = field("alias_of");
     public static Field BEGIN_ANNOTATION_ID = field("begin_annotation");
     public static Field COMMENT_ID          = field("comment");
     public static Field COMMENT_TEXT        = field("comment_text");
@@ -39,6 +40,21 @@ public class Column {
     public static Field END_LINE            = field("end_line");
     public static Field INPUT               = field("input");
     public static Field OUTPUT              = field("output");
+    public static Field CACHED_SOURCE_ID    = field("cached_source");
+    public static Field CONTENT_HASH        = field("content_hash");
+    public static Field LANGUAGE_MODEL      = field("language_model");
+    public static Field SCAN_STATE          = field("scan_state");
+    public static Field FINAL_SCAN_STATE    = field("final_scan_state");
+    public static Field INDEXED_SOURCE_ID   = field("indexed_source");
+    public static Field INDEXED_COMMENT_ID  = field("indexed_comment");
+    public static Field COMMENT_COUNT       = field("comment_count");
+    public static Field TOKEN_COUNT         = field("token_count");
+    public static Field TERM                = field("term");
+    public static Field POSTINGS            = field("postings");
+    public static Field KERNEL_LANGUAGE     = field("kernel_language");
+    public static Field CELL_INDEX          = field("cell_index");
+    public static Field FIRST_LINE          = field("first_line");
+    public static Field LINE_COUNT          = field("line_count");
 
     public static class DATA {
         public static Field ID                  = field("data.id");
@@ -47,6 +63,7 @@ public class Column {
     public static class SOURCE {
         public static Field ID                  = field("source.id");
         public static Field PATH                = field("source.path");
+        public static Field ALIAS_OF            = field("source.alias_of");
     }
 
     public static class SOURCE_LINE {
@@ -104,6 +121,15 @@ public class Column {
         public static Field IN_CODE_BLOCK       = field("signature.in_code_block");
     }
 
+    public static class INDEXED_SOURCE {
+        public static Field ID                  = field("indexed_source.id");
+    }
+
+    public static class INDEXED_COMMENT {
+        public static Field ID                  = field("indexed_comment.id");
+        public static Field SOURCE_ID           = field("indexed_comment.indexed_source");
+    }
+
     public static class CODE_SNIPPET {
         public static Field ID                  = field("code_snippet.id");
         public static Field LINE_TEXT           = field("code_snippet.line_text");
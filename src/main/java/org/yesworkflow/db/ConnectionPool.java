@@ -0,0 +1,216 @@
+package org.yesworkflow.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.jooq.ConnectionProvider;
+import org.jooq.exception.DataAccessException;
+
+/** Class that lends the connections to a database to the threads using it, so that one
+ *  {@link YesWorkflowDB} can be shared by threads without serializing their queries and
+ *  updates on a single connection.
+ *
+ *  <p>A connection is lent to a thread until the thread has released it as many times as
+ *  it acquired it.  While a thread holds a connection it receives the same connection
+ *  from each further call to {@link #acquire()}, so that all statements a thread executes
+ *  within a transaction, or while a result is being read lazily, run on one connection.
+ *  Connections are opened as they are needed, up to a maximum number, after which a thread
+ *  acquiring a connection waits until another thread releases one, failing if none is
+ *  released within a timeout rather than waiting forever on a thread that may itself be
+ *  waiting on the caller.  Released connections are kept open for reuse until the pool is
+ *  closed.</p>
+ *
+ *  <p>The pool implements the jOOQ {@link ConnectionProvider} interface, so that a
+ *  <code>DSLContext</code> created with it acquires a connection for each query it
+ *  executes, or for the duration of each transaction it runs.</p>
+ */
+public class ConnectionPool implements ConnectionProvider, AutoCloseable {
+
+    /** Default maximum number of connections opened by a pool. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+
+    /** Default time a thread waits for another thread to release a connection. */
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 60000;
+
+    /** Interface for opening new connections to the database of a pool. */
+    public interface ConnectionFactory {
+        Connection newConnection() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxConnections;
+    private final long acquireTimeoutMillis;
+    private final List<Connection> openConnections = new ArrayList<Connection>();
+    private final LinkedList<Connection> idleConnections = new LinkedList<Connection>();
+    private final Map<Thread,Lease> leasesByThread = new HashMap<Thread,Lease>();
+    private final Map<Connection,Lease> leasesByConnection = new IdentityHashMap<Connection,Lease>();
+    private boolean closed = false;
+
+    /** Constructs a pool lending out a single connection that is already open, e.g. to
+     *  an in-memory database that other connections cannot reach.
+     *  @param connection The connection to lend out.
+     */
+    public ConnectionPool(Connection connection) {
+        this(connection, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    /** Constructs a pool lending out a single connection that is already open.
+     *  @param connection The connection to lend out.
+     *  @param acquireTimeoutMillis The time a thread waits for the connection to be released.
+     */
+    public ConnectionPool(Connection connection, long acquireTimeoutMillis) {
+        this.factory = null;
+        this.maxConnections = 1;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        openConnections.add(connection);
+        idleConnections.add(connection);
+    }
+
+    /** Constructs a pool opening connections as they are needed.
+     *  @param factory The factory opening connections to the database.
+     *  @param maxConnections The maximum number of connections open at once.
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxConnections) {
+        this(factory, maxConnections, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    /** Constructs a pool opening connections as they are needed.
+     *  @param factory The factory opening connections to the database.
+     *  @param maxConnections The maximum number of connections open at once.
+     *  @param acquireTimeoutMillis The time a thread waits for a connection to be released.
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxConnections, long acquireTimeoutMillis) {
+        this.factory = factory;
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /** Returns the connection held by the calling thread, or lends it one.
+     *  @throws DataAccessException If a new connection cannot be opened, the pool has been
+     *          closed, no connection is released within the acquire timeout, or the thread
+     *          is interrupted while waiting for a connection.
+     */
+    @Override
+    public synchronized Connection acquire() throws DataAccessException {
+
+        Thread thread = Thread.currentThread();
+        Lease lease = leasesByThread.get(thread);
+        if (lease != null) {
+            lease.count++;
+            return lease.connection;
+        }
+
+        long deadline = System.currentTimeMillis() + acquireTimeoutMillis;
+        while (!closed && idleConnections.isEmpty() && openConnections.size() >= maxConnections) {
+            long remainingMillis = deadline - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                throw new DataAccessException("No database connection was released within " +
+                                              acquireTimeoutMillis + " ms; all " + maxConnections +
+                                              " connections are held by other threads");
+            }
+            try {
+                wait(remainingMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataAccessException("Interrupted while waiting for a database connection", e);
+            }
+        }
+        if (closed) throw new DataAccessException("Connection pool has been closed");
+
+        Connection connection;
+        if (!idleConnections.isEmpty()) {
+            connection = idleConnections.removeFirst();
+        } else {
+            try {
+                connection = factory.newConnection();
+            } catch (SQLException e) {
+                throw new DataAccessException("Error opening database connection", e);
+            }
+            openConnections.add(connection);
+        }
+
+        lease = new Lease(thread, connection);
+        leasesByThread.put(thread, lease);
+        leasesByConnection.put(connection, lease);
+        return connection;
+    }
+
+    /** Releases a connection acquired from the pool.  The connection is returned to the
+     *  pool when it has been released as many times as it was acquired, which need not be
+     *  by the thread that acquired it.  A connection returned with a transaction still open
+     *  has the transaction rolled back and auto-commit restored.
+     *  @throws DataAccessException If the connection was not lent out by this pool.
+     */
+    @Override
+    public synchronized void release(Connection connection) throws DataAccessException {
+
+        Lease lease = leasesByConnection.get(connection);
+        if (lease == null) throw new DataAccessException("Connection was not acquired from this pool");
+        if (--lease.count > 0) return;
+
+        leasesByConnection.remove(connection);
+        leasesByThread.remove(lease.thread);
+
+        try {
+            if (!closed && !connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Error resetting database connection", e);
+        } finally {
+            if (!closed) idleConnections.add(connection);
+            notifyAll();
+        }
+    }
+
+    /** Returns the maximum number of connections the pool lends out at once, and so the
+     *  number of threads that may hold connections concurrently. */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /** Returns the number of connections the pool has opened. */
+    public synchronized int getOpenCount() {
+        return openConnections.size();
+    }
+
+    /** Closes all connections opened by the pool, including those still lent out. */
+    @Override
+    public synchronized void close() throws SQLException {
+
+        if (closed) return;
+        closed = true;
+        notifyAll();
+
+        SQLException firstException = null;
+        for (Connection connection : openConnections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                if (firstException == null) firstException = e;
+            }
+        }
+        idleConnections.clear();
+        if (firstException != null) throw firstException;
+    }
+
+    /** A connection lent to a thread, and the number of times it has been acquired. */
+    private static class Lease {
+
+        final Thread thread;
+        final Connection connection;
+        int count = 1;
+
+        Lease(Thread thread, Connection connection) {
+            this.thread = thread;
+            this.connection = connection;
+        }
+    }
+}
@@ -5,11 +5,20 @@ import static org.jooq.impl.DSL.table;
 public class Table {
 
     public static org.jooq.Table<?> ANNOTATION          = table("annotation");
+    public static org.jooq.Table<?> CACHED_COMMENT      = table("cached_comment");
+    public static org.jooq.Table<?> CACHED_NOTEBOOK_CELL = table("cached_notebook_cell");
+    public static org.jooq.Table<?> CACHED_SOURCE       = table("cached_source");
+    public static org.jooq.Table<?> CACHED_SOURCE_LINE  = table("cached_source_line");
     public static org.jooq.Table<?> CHANNEL             = table("channel");
     public static org.jooq.Table<?> CODE_BLOCK          = table("code_block");
     public static org.jooq.Table<?> CODE_SNIPPET        = table("code_snippet");
     public static org.jooq.Table<?> COMMENT             = table("comment");
     public static org.jooq.Table<?> DATA                = table("data");
+    public static org.jooq.Table<?> INDEX_POSTING       = table("index_posting");
+    public static org.jooq.Table<?> INDEXED_ANNOTATION  = table("indexed_annotation");
+    public static org.jooq.Table<?> INDEXED_COMMENT     = table("indexed_comment");
+    public static org.jooq.Table<?> INDEXED_SOURCE      = table("indexed_source");
+    public static org.jooq.Table<?> NOTEBOOK_CELL       = table("notebook_cell");
     public static org.jooq.Table<?> PORT                = table("port");
     public static org.jooq.Table<?> PROGRAM_BLOCK       = table("program_block");
     public static org.jooq.Table<?> RESOURCE            = table("resource");
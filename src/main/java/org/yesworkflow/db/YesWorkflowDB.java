@@ -3,19 +3,28 @@ package org.yesworkflow.db;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 import java.util.logging.LogManager;
 
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.Insert;
 import org.jooq.Record;
+import org.jooq.exception.DataAccessException;
 import org.yesworkflow.util.FileIO;
 import org.yesworkflow.db.Table;
 
 import static org.yesworkflow.db.Column.*;
 
+/** Base class for the databases storing the products of YesWorkflow.  Connections to the
+ *  database are lent to the threads using it by a {@link ConnectionPool}, so that one
+ *  instance may be shared by threads, each executing its statements on a connection of its
+ *  own, and the ids generated for inserted rows are read from the statement inserting them.
+ */
 @SuppressWarnings("unchecked")
 public abstract class YesWorkflowDB {
 
@@ -24,8 +33,7 @@ public abstract class YesWorkflowDB {
         LogManager.getLogManager().reset();
     }
 
-    protected Connection connection;
-    protected Statement statement;
+    protected final ConnectionPool pool;
     protected DSLContext jooq;
         
     private static YesWorkflowDB globalInstance = null;
@@ -56,6 +64,10 @@ public abstract class YesWorkflowDB {
         return YesWorkflowH2DB.createInMemoryDB();
     }
 
+    public static YesWorkflowDB createFileBackedDB(int cacheSizeKB) throws Exception {
+        return YesWorkflowH2DB.createFileBackedDB(cacheSizeKB);
+    }
+
     public static YesWorkflowDB openFileDB(Path dbFilePath) throws Exception {
         return YesWorkflowSQLiteDB.openFileDB(dbFilePath);
     }
@@ -72,14 +84,12 @@ public abstract class YesWorkflowDB {
         return (String)(record.getValue(field));
     }
 
-    public YesWorkflowDB(Connection connection) throws SQLException {
-        this.connection = connection;
-        this.statement = connection.createStatement();
+    public YesWorkflowDB(ConnectionPool pool) {
+        this.pool = pool;
     }
 
     public void close() throws SQLException {
-        statement.close();
-        connection.close();
+        pool.close();
     }
 
     protected int createDBTables(String createTablesScriptPath) throws Exception {
@@ -93,138 +103,180 @@ public abstract class YesWorkflowDB {
 
         int statementCount = 0;
 
-        for (String sqlStatement : sqlScript.split(";")) {
-            if (sqlStatement.trim().length() > 0) {
-                statement.execute(sqlStatement);
-                statementCount++;
+        Connection connection = acquireConnection();
+        try (Statement statement = connection.createStatement()) {
+            for (String sqlStatement : sqlScript.split(";")) {
+                if (sqlStatement.trim().length() > 0) {
+                    statement.execute(sqlStatement);
+                    statementCount++;
+                }
             }
+        } finally {
+            releaseConnection(connection);
         }
 
         return statementCount;
     }
 
+    /** Returns the connection held by the calling thread, or lends it one from the pool.
+     *  Each call must be matched by a call to {@link #releaseConnection(Connection)}. */
+    protected Connection acquireConnection() throws SQLException {
+        try {
+            return pool.acquire();
+        } catch (DataAccessException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    protected void releaseConnection(Connection connection) throws SQLException {
+        try {
+            pool.release(connection);
+        } catch (DataAccessException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    /** Returns the number of threads that may hold connections to the DB concurrently.
+     *  A thread needing a connection while that many other threads hold one waits for one
+     *  to be released. */
+    public int getMaxConnections() {
+        return pool.getMaxConnections();
+    }
+
     public DSLContext jooq() {
         return jooq;
     }
 
-    public long getGeneratedId() throws SQLException {
-        ResultSet resultSet = statement.getGeneratedKeys();
-        resultSet.next();
-        return resultSet.getLong(1);
+    /** Executes an insert of one row and returns the id generated for the row, read from
+     *  the generated keys of the statement executing the insert. */
+    protected Long insertRow(Insert<?> insert) throws SQLException {
+
+        Connection connection = acquireConnection();
+        try (PreparedStatement statement = connection.prepareStatement(insert.getSQL(),
+                                                                       Statement.RETURN_GENERATED_KEYS)) {
+            List<Object> bindValues = insert.getBindValues();
+            for (int i = 0; i < bindValues.size(); ++i) {
+                statement.setObject(i + 1, bindValues.get(i));
+            }
+            statement.executeUpdate();
+            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                generatedKeys.next();
+                return generatedKeys.getLong(1);
+            }
+        } finally {
+            releaseConnection(connection);
+        }
     }
 
     public Long insertSource(String path) throws SQLException {
 
-       jooq.insertInto(Table.SOURCE)
-           .set(PATH, path)
-           .execute();
+        return insertRow(jooq.insertInto(Table.SOURCE)
+                .set(PATH, path));
+    }
+
+    /** Inserts a source whose contents are identical to those of another source, and
+     *  whose lines, comments and annotations are those stored for the other source. */
+    public Long insertSourceAlias(String path, Long originalSourceId) throws SQLException {
 
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.SOURCE)
+                .set(PATH, path)
+                .set(ALIAS_OF, originalSourceId));
     }
 
     public Long insertSourceLine(Long sourceId, Long lineNumber, String lineText) throws SQLException {
 
-        jooq.insertInto(Table.SOURCE_LINE)
-            .set(SOURCE_ID, sourceId)
-            .set(LINE_NUMBER, lineNumber)
-            .set(LINE_TEXT, lineText)
-            .execute();
+        return insertRow(jooq.insertInto(Table.SOURCE_LINE)
+                .set(SOURCE_ID, sourceId)
+                .set(LINE_NUMBER, lineNumber)
+                .set(LINE_TEXT, lineText));
+    }
 
-        return getGeneratedId();
+    /** Records the range of the lines of a notebook source read from one of its code cells.
+     *  @param sourceId The id of the notebook source.
+     *  @param cellIndex The zero-based index of the cell among all cells of the notebook.
+     *  @param firstLine The line number of the source at which the lines of the cell start.
+     *  @param lineCount The number of lines in the cell.
+     */
+    public Long insertNotebookCell(Long sourceId, long cellIndex, long firstLine, long lineCount) throws SQLException {
+
+        return insertRow(jooq.insertInto(Table.NOTEBOOK_CELL)
+                .set(SOURCE_ID, sourceId)
+                .set(CELL_INDEX, cellIndex)
+                .set(FIRST_LINE, firstLine)
+                .set(LINE_COUNT, lineCount));
     }
 
     public Long insertComment(Long sourceId, Long lineNumber,
                               Long rankInLine, String commentText) throws SQLException {
 
-        jooq.insertInto(Table.COMMENT)
-            .set(SOURCE_ID, sourceId)
-            .set(LINE_NUMBER, lineNumber)
-            .set(RANK_IN_LINE, rankInLine)
-            .set(COMMENT_TEXT, commentText)
-            .execute();
-
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.COMMENT)
+                .set(SOURCE_ID, sourceId)
+                .set(LINE_NUMBER, lineNumber)
+                .set(RANK_IN_LINE, rankInLine)
+                .set(COMMENT_TEXT, commentText));
     }
 
     public Long insertAnnotation(Long qualifiedAnnotationId, long commentId,
                                  long rankInComment, String tag, String keyword,
                                  String value, String description) throws SQLException {
 
-        jooq.insertInto(Table.ANNOTATION)
-            .set(QUALIFIES, qualifiedAnnotationId)
-            .set(COMMENT_ID, commentId)
-            .set(RANK_IN_COMMENT, rankInComment)
-            .set(TAG, tag)
-            .set(KEYWORD, keyword)
-            .set(VALUE, value)
-            .set(DESCRIPTION, description)
-            .execute();
-
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.ANNOTATION)
+                .set(QUALIFIES, qualifiedAnnotationId)
+                .set(COMMENT_ID, commentId)
+                .set(RANK_IN_COMMENT, rankInComment)
+                .set(TAG, tag)
+                .set(KEYWORD, keyword)
+                .set(VALUE, value)
+                .set(DESCRIPTION, description));
     }
 
     public Long insertDefaultProgramBlock(Long inProgramBlockId) throws SQLException {
 
-        jooq.insertInto(Table.PROGRAM_BLOCK)
-            .set(IN_PROGRAM_BLOCK, inProgramBlockId)
-            .execute();
-
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.PROGRAM_BLOCK)
+                .set(IN_PROGRAM_BLOCK, inProgramBlockId));
     }
 
     public Long insertProgramBlock(Long inProgramBlockId, Long beginAnnotationId, Long endAnnotationId,
                               String name, String qualifiedName,
                               boolean isWorkflow, boolean isFunction) throws SQLException {
 
-        jooq.insertInto(Table.PROGRAM_BLOCK)
-            .set(IN_PROGRAM_BLOCK, inProgramBlockId)
-            .set(BEGIN_ANNOTATION_ID, beginAnnotationId)
-            .set(END_ANNOTATION_ID, endAnnotationId)
-            .set(NAME, name)
-            .set(QUALIFIED_NAME, qualifiedName)
-            .set(IS_WORKFLOW, isWorkflow)
-            .set(IS_FUNCTION, isFunction)
-            .execute();
-
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.PROGRAM_BLOCK)
+                .set(IN_PROGRAM_BLOCK, inProgramBlockId)
+                .set(BEGIN_ANNOTATION_ID, beginAnnotationId)
+                .set(END_ANNOTATION_ID, endAnnotationId)
+                .set(NAME, name)
+                .set(QUALIFIED_NAME, qualifiedName)
+                .set(IS_WORKFLOW, isWorkflow)
+                .set(IS_FUNCTION, isFunction));
     }
 
     public Long insertCodeBlock(Long beginLine, Long endLine, String name, String description) throws SQLException {
 
-        jooq.insertInto(Table.CODE_BLOCK)
+        return insertRow(jooq.insertInto(Table.CODE_BLOCK)
                 .set(BEGIN_LINE, beginLine)
                 .set(END_LINE, endLine)
                 .set(NAME, name)
-                .set(DESCRIPTION, description)
-                .execute();
-
-        return getGeneratedId();
+                .set(DESCRIPTION, description));
     }
 
     public Long insertSignature(String inputOrOutput, String variable, String alias, String uri, String inCodeBlock) throws SQLException {
 
-        jooq.insertInto(Table.SIGNATURE)
+        return insertRow(jooq.insertInto(Table.SIGNATURE)
                 .set(INPUT_OR_OUTPUT, inputOrOutput)
                 .set(VARIABLE, variable)
                 .set(ALIAS, alias)
                 .set(URI, uri)
-                .set(IN_CODE_BLOCK, inCodeBlock)
-                .execute();
-
-        return getGeneratedId();
+                .set(IN_CODE_BLOCK, inCodeBlock));
     }
 
     public Long insertCodeSnippet(Long originalLine, String lineText, String name) throws SQLException {
 
-        if (!name.equals("main")){
-            jooq.insertInto(Table.CODE_SNIPPET)
-                    .set(ORIGINAL_LINE, originalLine)
-                    .set(LINE_TEXT, lineText)
-                    .set(NAME, name)
-                    .execute();
-        }
+        if (name.equals("main")) return null;
 
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.CODE_SNIPPET)
+                .set(ORIGINAL_LINE, originalLine)
+                .set(LINE_TEXT, lineText)
+                .set(NAME, name));
     }
 
     public void updateProgramBlock(long id, Long beginAnnotationId, Long endAnnotationId,
@@ -244,24 +296,18 @@ public abstract class YesWorkflowDB {
 
     public Long insertData(String name, String qualifiedName, Long inProgramBlockId) throws SQLException {
 
-        jooq.insertInto(Table.DATA)
-            .set(IN_PROGRAM_BLOCK, inProgramBlockId)
-            .set(NAME, name)
-            .set(QUALIFIED_NAME, qualifiedName)
-            .execute();
-        
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.DATA)
+                .set(IN_PROGRAM_BLOCK, inProgramBlockId)
+                .set(NAME, name)
+                .set(QUALIFIED_NAME, qualifiedName));
     }
     
     public Long insertPort(String name, String qualifiedName, Long programId) throws SQLException {
 
-        jooq.insertInto(Table.DATA)
-            .set(NAME, name)
-            .set(QUALIFIED_NAME, qualifiedName)
-            .set(PROGRAM_ID, programId)
-            .execute();
-        
-        return getGeneratedId();
+        return insertRow(jooq.insertInto(Table.DATA)
+                .set(NAME, name)
+                .set(QUALIFIED_NAME, qualifiedName)
+                .set(PROGRAM_ID, programId));
     }
 
     
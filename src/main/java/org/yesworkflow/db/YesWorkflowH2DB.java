@@ -1,34 +1,88 @@
 package org.yesworkflow.db;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jooq.SQLDialect;
 import org.jooq.conf.RenderNameStyle;
 import org.jooq.conf.Settings;
 import org.jooq.impl.DSL;
+import org.yesworkflow.util.FileIO;
 
 public class YesWorkflowH2DB extends YesWorkflowDB {
     
     private static String IN_MEMORY_DB_URL = "jdbc:h2:mem:";
+    private static AtomicInteger inMemoryDBCount = new AtomicInteger();
     private static String CREATE_TABLES_SCRIPT  = "org/yesworkflow/db/h2/createtables.h2";
 
+    private Path temporaryDirectory = null;
+
     public YesWorkflowH2DB(Connection connection) throws SQLException {
-        super(connection);
+        this(new ConnectionPool(connection));
+    }
+
+    public YesWorkflowH2DB(ConnectionPool pool) {
+        super(pool);
         
         // Note the disabling of quotes around schema/table/column names to avoid bug in H2.
         // See http://stackoverflow.com/questions/25975401/jooq-error-with-alias-and-quotes
         this.jooq = DSL.using(
-                this.connection, 
+                this.pool, 
                 SQLDialect.H2, 
                 new Settings().withRenderNameStyle(RenderNameStyle.AS_IS)
         );
     }
-    
+
+    /** Creates an in-memory DB.  The DB is named uniquely so that each connection opened
+     *  to it by the pool of the DB reaches the same DB, which lasts until the pool is closed.
+     */
     public static YesWorkflowDB createInMemoryDB() throws Exception {
-        YesWorkflowDB ywdb = new YesWorkflowH2DB(DriverManager.getConnection(IN_MEMORY_DB_URL));
+        String url = IN_MEMORY_DB_URL + "ywdb" + inMemoryDBCount.incrementAndGet();
+        YesWorkflowDB ywdb = new YesWorkflowH2DB(connectionPool(url));
         ywdb.createDBTables(CREATE_TABLES_SCRIPT);
         return ywdb;
     }
+
+    /** Creates a DB stored in a temporary directory that is deleted when the DB is closed.
+     *  Only the given amount of the DB is cached in memory, so rows that have been committed
+     *  need not remain on the heap.  The transaction log is disabled since the DB does not
+     *  outlive the process.
+     *  @param cacheSizeKB The size of the page cache in kilobytes.
+     *  @return The new DB.
+     */
+    public static YesWorkflowDB createFileBackedDB(int cacheSizeKB) throws Exception {
+        Path directory = Files.createTempDirectory("ywdb");
+        String url = "jdbc:h2:file:" + directory.resolve("yw").toAbsolutePath() +
+                     ";CACHE_SIZE=" + cacheSizeKB + ";LOG=0";
+        YesWorkflowH2DB ywdb = new YesWorkflowH2DB(connectionPool(url));
+        ywdb.temporaryDirectory = directory;
+        ywdb.createDBTables(CREATE_TABLES_SCRIPT);
+        return ywdb;
+    }
+
+    private static ConnectionPool connectionPool(final String url) {
+        return new ConnectionPool(new ConnectionPool.ConnectionFactory() {
+            @Override
+            public Connection newConnection() throws SQLException {
+                return DriverManager.getConnection(url);
+            }
+        }, ConnectionPool.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        super.close();
+        if (temporaryDirectory != null) {
+            try {
+                FileIO.deleteDirectory(temporaryDirectory);
+            } catch (IOException e) {
+                throw new SQLException("Error deleting " + temporaryDirectory, e);
+            }
+        }
+    }
 }
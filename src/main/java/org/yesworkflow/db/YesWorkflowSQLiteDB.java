@@ -5,21 +5,54 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
+import org.yesworkflow.util.FileIO;
 
 public class YesWorkflowSQLiteDB extends YesWorkflowDB {
 
     private static String IN_MEMORY_DB_URL = "jdbc:sqlite::memory:";
     private static String CREATE_TABLES_SCRIPT  = "org/yesworkflow/db/sqlite/createtables.sqlite";
+    private static String MIGRATIONS_DIRECTORY  = "org/yesworkflow/db/sqlite/migrations/";
+
+    /** Scripts bringing the schema of an existing database file from one version to the next,
+     *  in order.  The schema created by {@link #CREATE_TABLES_SCRIPT} is that of the last one.
+     *  Files created before the schema was versioned are at version 0. */
+    private static String[] MIGRATION_SCRIPTS = {
+        "001-cache-index-alias.sqlite",
+        "002-secondary-indexes.sqlite",
+        "003-notebook-cells.sqlite",
+        "004-indexed-annotations.sqlite",
+        "005-cached-scan-states.sqlite"
+    };
+
+    public static final int SCHEMA_VERSION = MIGRATION_SCRIPTS.length;
+
+    private static Pattern ADD_COLUMN_PATTERN =
+            Pattern.compile("\\s*ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+COLUMN\\s+(\\w+).*",
+                            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /** Milliseconds a connection waits for another connection to the same file to finish
+     *  writing before failing with SQLITE_BUSY. */
+    private static int BUSY_TIMEOUT = 30000;
 
     public YesWorkflowSQLiteDB(Connection connection) throws SQLException {
-        super(connection);
-        this.jooq = DSL.using(this.connection, SQLDialect.SQLITE);
+        this(new ConnectionPool(connection));
+    }
+
+    public YesWorkflowSQLiteDB(ConnectionPool pool) {
+        super(pool);
+        this.jooq = DSL.using(this.pool, SQLDialect.SQLITE);
     }
     
+    /** Creates an in-memory DB.  An in-memory SQLite DB is reachable only through the
+     *  connection that created it, so the pool of the DB lends out that one connection. */
     public static YesWorkflowDB createInMemoryDB() throws Exception {
         YesWorkflowDB ywdb = new YesWorkflowSQLiteDB(DriverManager.getConnection(IN_MEMORY_DB_URL));
         ywdb.createDBTables(CREATE_TABLES_SCRIPT);
@@ -31,7 +64,7 @@ public class YesWorkflowSQLiteDB extends YesWorkflowDB {
         YesWorkflowDB ywdb;
         
         if (!(dbFilePath.toFile().exists())) {
-            Path parentDirectory = dbFilePath.getParent();
+            Path parentDirectory = dbFilePath.toAbsolutePath().getParent();
             if (Files.exists(parentDirectory)) {
                 if (! Files.isDirectory(parentDirectory)) {
                     throw new Exception("Cannot create " + dbFilePath + " because " + parentDirectory + " is not a directory");
@@ -39,17 +72,112 @@ public class YesWorkflowSQLiteDB extends YesWorkflowDB {
             } else {
                 Files.createDirectories(parentDirectory);
             }
-            ywdb = new YesWorkflowSQLiteDB(DriverManager.getConnection("jdbc:sqlite:" + dbFilePath));
+            ywdb = new YesWorkflowSQLiteDB(connectionPool(dbFilePath));
             ywdb.createDBTables(CREATE_TABLES_SCRIPT);
+            ywdb.executeSqlScript("INSERT INTO schema_version (version, script) VALUES ("
+                                  + SCHEMA_VERSION + ", 'createtables.sqlite')");
         } else {
-            ywdb = new YesWorkflowSQLiteDB(DriverManager.getConnection("jdbc:sqlite:" + dbFilePath));
+            ywdb = new YesWorkflowSQLiteDB(connectionPool(dbFilePath));
+            ((YesWorkflowSQLiteDB)ywdb).migrateSchema();
         }
         
         return ywdb;
     }
+
+    private static ConnectionPool connectionPool(Path dbFilePath) {
+        final String url = "jdbc:sqlite:" + dbFilePath;
+        return new ConnectionPool(new ConnectionPool.ConnectionFactory() {
+            @Override
+            public Connection newConnection() throws SQLException {
+                Connection connection = DriverManager.getConnection(url);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT);
+                }
+                return connection;
+            }
+        }, ConnectionPool.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /** Returns the version of the schema of the database, or 0 if the database predates
+     *  schema versioning. */
+    public int getSchemaVersion() throws SQLException {
+        Connection connection = acquireConnection();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet tables = statement.executeQuery(
+                    "SELECT name FROM sqlite_master WHERE type = 'table' AND name = 'schema_version'")) {
+                if (!tables.next()) return 0;
+            }
+            try (ResultSet version = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+                return version.next() ? version.getInt(1) : 0;
+            }
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    /** Applies in order the migrations to versions above that of the schema of the database,
+     *  each in a transaction of its own that also records the version migrated to.
+     *  @return The number of migrations applied.
+     */
+    public int migrateSchema() throws Exception {
+
+        int version = getSchemaVersion();
+        if (version > SCHEMA_VERSION) {
+            throw new Exception("Database schema version " + version + " is newer than the latest version "
+                                + SCHEMA_VERSION + " supported");
+        }
+
+        Connection connection = acquireConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            for (int nextVersion = version + 1; nextVersion <= SCHEMA_VERSION; ++nextVersion) {
+                String scriptName = MIGRATION_SCRIPTS[nextVersion - 1];
+                String sqlScript = FileIO.readTextFileOnClasspath(MIGRATIONS_DIRECTORY + scriptName);
+                try {
+                    for (String sqlStatement : sqlScript.split(";")) {
+                        if (sqlStatement.trim().length() > 0 && !addsExistingColumn(statement, sqlStatement)) {
+                            statement.execute(sqlStatement);
+                        }
+                    }
+                    statement.execute("INSERT INTO schema_version (version, script) VALUES ("
+                                      + nextVersion + ", '" + scriptName + "')");
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new Exception("Error migrating database schema to version " + nextVersion
+                                        + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            releaseConnection(connection);
+        }
+
+        return SCHEMA_VERSION - version;
+    }
+
+    /** Returns true if the statement adds a column the table already has.  SQLite has no
+     *  form of ALTER TABLE ADD COLUMN conditional on the column not existing. */
+    private static boolean addsExistingColumn(Statement statement, String sqlStatement) throws SQLException {
+        Matcher matcher = ADD_COLUMN_PATTERN.matcher(stripComments(sqlStatement));
+        if (!matcher.matches()) return false;
+        try (ResultSet columns = statement.executeQuery("PRAGMA table_info(" + matcher.group(1) + ")")) {
+            while (columns.next()) {
+                if (columns.getString("name").equalsIgnoreCase(matcher.group(2))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripComments(String sqlStatement) {
+        return sqlStatement.replaceAll("(?s)/\\*.*?\\*/", "");
+    }
     
     public Long getLong(Object value) {
-        if (value instanceof Long) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Long) {
             return (Long)value;
         } else return new Long((Integer)value); 
     }
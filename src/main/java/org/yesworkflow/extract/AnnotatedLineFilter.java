@@ -0,0 +1,66 @@
+package org.yesworkflow.extract;
+
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
+import org.yesworkflow.annotations.Begin;
+import org.yesworkflow.annotations.Create;
+import org.yesworkflow.annotations.End;
+
+/** Class that passes on to another {@link CommentListener} only those source lines that
+ *  fall within annotated blocks, i.e. from a line bearing a @begin or @create annotation
+ *  through the line bearing the matching @end annotation.  Comments are passed on unchanged.
+ *
+ *  <p>Because the annotations on a line are only known after the line itself has been
+ *  received, the most recent line is held back until the next line (or the end of the
+ *  sources) is reached.  The filter therefore must receive the annotations built from
+ *  the comments it passes on, and {@link #flush()} must be called after the last source.</p>
+ */
+public class AnnotatedLineFilter implements CommentListener, AnnotationListener {
+
+    private final CommentListener target;
+    private int blockDepth = 0;
+    private Long pendingSourceId = null;
+    private Long pendingLineNumber = null;
+    private String pendingLineText = null;
+    private boolean pendingLineAnnotated = false;
+
+    public AnnotatedLineFilter(CommentListener target) {
+        this.target = target;
+    }
+
+    @Override
+    public void sourceLine(Long sourceId, Long lineNumber, String lineText) throws Exception {
+        flush();
+        if (sourceId == null || !sourceId.equals(pendingSourceId)) blockDepth = 0;
+        pendingSourceId = sourceId;
+        pendingLineNumber = lineNumber;
+        pendingLineText = lineText;
+        pendingLineAnnotated = blockDepth > 0;
+    }
+
+    @Override
+    public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws Exception {
+        target.comment(sourceId, lineNumber, rankInLine, commentText);
+    }
+
+    @Override
+    public void annotation(Annotation annotation) {
+        if (annotation instanceof Begin || annotation instanceof Create) {
+            blockDepth++;
+            pendingLineAnnotated = true;
+        } else if (annotation instanceof End) {
+            if (blockDepth > 0) blockDepth--;
+            pendingLineAnnotated = true;
+        }
+    }
+
+    /** Passes on the line held back, if it is within an annotated block. */
+    public void flush() throws Exception {
+        if (pendingLineText != null) {
+            if (pendingLineAnnotated) {
+                target.sourceLine(pendingSourceId, pendingLineNumber, pendingLineText);
+            }
+            pendingLineText = null;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.yesworkflow.extract;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.annotations.*;
+import org.yesworkflow.util.SymbolTable;
+
+/** Class that extracts YW annotations from comments as they are received from a
+ *  {@link CommentMatcher} (or replayed from a {@link SourceScan}), and passes each
+ *  annotation on to the subscribed {@link AnnotationListener}s as soon as it is built.
+ *  Comments must be received in the order in which they occur in the sources.
+ *
+ *  <p>Annotation ids are assigned consecutively, starting from the id given to the
+ *  constructor, in the order in which the annotations are built.</p>
+ *
+ *  <p>The keywords and names of the annotations are interned in a {@link SymbolTable}
+ *  shared by all annotations built, so that a binding name repeated across many
+ *  annotations is held in memory only once.</p>
+ */
+public class AnnotationBuilder implements CommentListener {
+
+    private final YWKeywords keywordMapping;
+    private final KeywordMatcher keywordMatcher;
+    private final SymbolTable symbols = new SymbolTable();
+    private final List<AnnotationListener> listeners = new ArrayList<AnnotationListener>();
+    private final List<Annotation> allAnnotations = new LinkedList<Annotation>();
+    private final List<Annotation> primaryAnnotations = new LinkedList<Annotation>();
+    private Annotation primaryAnnotation = null;
+    private Long nextAnnotationId;
+
+    public AnnotationBuilder(YWKeywords keywordMapping, KeywordMatcher keywordMatcher, Long firstAnnotationId) {
+        this.keywordMapping = keywordMapping;
+        this.keywordMatcher = keywordMatcher;
+        this.nextAnnotationId = firstAnnotationId;
+    }
+
+    /** Subscribes a listener to the annotations built.  Listeners receive each
+     *  annotation in the order in which they were subscribed.
+     *  @param listener The listener to subscribe.
+     *  @return This builder.
+     */
+    public AnnotationBuilder listener(AnnotationListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    @Override
+    public void sourceLine(Long sourceId, Long lineNumber, String lineText) {
+    }
+
+    @Override
+    public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws Exception {
+
+        for (String annotationString : DefaultExtractor.findCommentsOnLine(commentText, keywordMatcher)) {
+
+            Tag tag = KeywordMatcher.extractInitialKeyword(annotationString, keywordMapping);
+            Annotation annotation = null;
+            Long id = nextAnnotationId++;
+
+            switch(tag) {
+
+                case BEGIN:     annotation = new Begin(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case CALL:      annotation = new Call(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case CREATE:    annotation = new Create(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case END:       annotation = new End(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case FILE:      annotation = new FileUri(id, sourceId, lineNumber, annotationString, primaryAnnotation, symbols);
+                                break;
+                case IN:        annotation = new In(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case OUT:       annotation = new Out(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case AS:        annotation = new As(id, sourceId, lineNumber, annotationString, primaryAnnotation, symbols);
+                                break;
+                case PARAM:     annotation = new Param(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case RETURN:    annotation = new Return(id, sourceId, lineNumber, annotationString, symbols);
+                                break;
+                case URI:       annotation = new UriAnnotation(id, sourceId, lineNumber, annotationString, primaryAnnotation, symbols);
+                                break;
+            }
+
+            allAnnotations.add(annotation);
+
+            if (!(annotation instanceof Qualification)) {
+                primaryAnnotation = annotation;
+                primaryAnnotations.add(annotation);
+            }
+
+            for (AnnotationListener listener : listeners) {
+                listener.annotation(annotation);
+            }
+        }
+    }
+
+    /** Returns all annotations built so far, including qualifications. */
+    public List<Annotation> getAllAnnotations() {
+        return allAnnotations;
+    }
+
+    /** Returns the primary (i.e. non-qualification) annotations built so far. */
+    public List<Annotation> getPrimaryAnnotations() {
+        return primaryAnnotations;
+    }
+
+    /** Returns the id that will be assigned to the next annotation built. */
+    public Long getNextAnnotationId() {
+        return nextAnnotationId;
+    }
+}
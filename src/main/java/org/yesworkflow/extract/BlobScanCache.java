@@ -0,0 +1,84 @@
+package org.yesworkflow.extract;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Class that retains in memory the scans of source files read from a git repository,
+ *  keyed by the id of the blob holding the contents of each file and by the language model
+ *  used to scan it.  Shared by the extractions of successive revisions of a repository, so
+ *  that a file unchanged between revisions, or moved or copied within the tree, is scanned
+ *  only once.  When more than the maximum number of scans are retained, the least recently
+ *  used scan is discarded.  All methods are synchronized so that one instance may be shared
+ *  by concurrent extractions.
+ */
+public class BlobScanCache {
+
+    public static final int DEFAULT_MAX_SCANS = 10000;
+
+    private final Map<String,SourceScan> scans;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    /** Constructs a cache retaining up to {@value #DEFAULT_MAX_SCANS} scans. */
+    public BlobScanCache() {
+        this(DEFAULT_MAX_SCANS);
+    }
+
+    /** Constructs a cache retaining up to the given number of scans.
+     *  @param maxScans The maximum number of scans to retain.
+     */
+    @SuppressWarnings("serial")
+    public BlobScanCache(final int maxScans) {
+        this.scans = new LinkedHashMap<String,SourceScan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,SourceScan> eldest) {
+                return size() > maxScans;
+            }
+        };
+    }
+
+    /** Looks up the retained scan of a blob, counting a hit or a miss.
+     *  @param blobId The id of the blob.
+     *  @param languageModelKey The key of the language model used to scan the blob, as computed by
+     *         {@link ExtractionCache#languageModelKey(org.yesworkflow.LanguageModel) languageModelKey()}.
+     *  @return The retained scan, or null if the blob has not been scanned with the language model.
+     */
+    public synchronized SourceScan lookup(String blobId, String languageModelKey) {
+        SourceScan scan = scans.get(key(blobId, languageModelKey));
+        if (scan != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return scan;
+    }
+
+    /** Retains the scan of a blob made with the given language model. */
+    public synchronized void store(String blobId, String languageModelKey, SourceScan scan) {
+        scans.put(key(blobId, languageModelKey), scan);
+    }
+
+    /** Returns the number of scans retained. */
+    public synchronized int size() {
+        return scans.size();
+    }
+
+    /** Returns the number of lookups that found a retained scan. */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /** Returns the number of lookups that did not find a retained scan. */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    private static String key(String blobId, String languageModelKey) {
+        return blobId + " " + languageModelKey;
+    }
+
+    @Override
+    public String toString() {
+        return "Blob scan cache: " + getHitCount() + " hits, " + getMissCount() + " misses";
+    }
+}
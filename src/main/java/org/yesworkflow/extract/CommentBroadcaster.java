@@ -0,0 +1,30 @@
+package org.yesworkflow.extract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Class that passes each source line and comment it receives on to a list of
+ *  {@link CommentListener}s, in the order in which the listeners are given.
+ */
+public class CommentBroadcaster implements CommentListener {
+
+    private final List<CommentListener> listeners;
+
+    public CommentBroadcaster(List<CommentListener> listeners) {
+        this.listeners = new ArrayList<CommentListener>(listeners);
+    }
+
+    @Override
+    public void sourceLine(Long sourceId, Long lineNumber, String lineText) throws Exception {
+        for (CommentListener listener : listeners) {
+            listener.sourceLine(sourceId, lineNumber, lineText);
+        }
+    }
+
+    @Override
+    public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws Exception {
+        for (CommentListener listener : listeners) {
+            listener.comment(sourceId, lineNumber, rankInLine, commentText);
+        }
+    }
+}
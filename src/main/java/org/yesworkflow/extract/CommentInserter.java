@@ -0,0 +1,27 @@
+package org.yesworkflow.extract;
+
+import java.sql.SQLException;
+
+import org.yesworkflow.db.BatchInserter;
+
+/** Class that stores the source lines and comments it receives
+ *  in the YesWorkflow DB via a {@link BatchInserter}. 
+ */
+public class CommentInserter implements CommentListener {
+
+    private final BatchInserter inserter;
+
+    public CommentInserter(BatchInserter inserter) {
+        this.inserter = inserter;
+    }
+
+    @Override
+    public void sourceLine(Long sourceId, Long lineNumber, String lineText) throws SQLException {
+        inserter.insertSourceLine(sourceId, lineNumber, lineText);
+    }
+
+    @Override
+    public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws SQLException {
+        inserter.insertComment(sourceId, lineNumber, rankInLine, commentText);
+    }
+}
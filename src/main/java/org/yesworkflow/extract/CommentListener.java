@@ -0,0 +1,22 @@
+package org.yesworkflow.extract;
+
+/** Interface for receiving the source lines and comments found by a
+ *  {@link CommentMatcher} in the order they occur in the source code.
+ */
+public interface CommentListener {
+
+    /** Receives one line of source code.
+     *  @param sourceId The id of the source containing the line.
+     *  @param lineNumber The one-based number of the line within the source.
+     *  @param lineText The full text of the line.
+     */
+    void sourceLine(Long sourceId, Long lineNumber, String lineText) throws Exception;
+
+    /** Receives the trimmed, non-blank text of one comment found on a line.
+     *  @param sourceId The id of the source containing the comment.
+     *  @param lineNumber The number of the line on which the comment text occurs.
+     *  @param rankInLine The one-based position of the comment among those on the line.
+     *  @param commentText The text of the comment without delimiters.
+     */
+    void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws Exception;
+}
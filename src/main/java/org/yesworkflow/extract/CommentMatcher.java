@@ -1,17 +1,28 @@
 package org.yesworkflow.extract;
 
 import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.yesworkflow.DelimiterTable;
 import org.yesworkflow.LanguageModel;
+import org.yesworkflow.db.BatchInserter;
 import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.util.LineDiff;
 
 /** Class for matching and retrieving comments from source code implemented
  *  in a particular programming language.  Uses a simple finite state machine
  *  and the comment delimiter strings defined for the language to identify
  *  the portions of the source code that are contained in comments.
+ *
+ *  <p>Comment delimiters are matched by stepping the {@link DelimiterTable} compiled
+ *  by the language model one character at a time, so scanning a line does not
+ *  allocate any objects beyond the text of the comments found.</p>
+ *
+ *  <p>A listener that also implements {@link ScanStateListener} receives the state of the
+ *  machine at the start of each line, which lets a later scan of an edited version of the
+ *  source resume mid-source; see {@link #rescan(SourceScan, CharSequence)}.</p>
  */
 public class CommentMatcher {
 
@@ -19,11 +30,122 @@ public class CommentMatcher {
     
     private YesWorkflowDB ywdb;
     private LanguageModel languageModel;
+    private DelimiterTable delimiterTable;
     private State currentState;
-    private String commentStartToken;
-    private String lastFullMatch;
+    private int startState;
+    private char[] commentEnd;
+    private int lastFullMatchState;
     private boolean lastFullMatchWasSingle;
-    private StringBuffer buffer = new StringBuffer();
+    private char[] pending;
+    private int pendingLength;
+    private int endMatchLength;
+    private final StringBuilder commentText = new StringBuilder();
+    private CommentListener listener;
+    private ScanStateListener stateListener;
+
+    /** Interface for listeners that record the state of the matcher between lines. */
+    public interface ScanStateListener {
+
+        /** Receives the state of the matcher before a line is scanned.  Called before
+         *  the line is passed to {@link CommentListener#sourceLine sourceLine()}, and once more
+         *  after the last line, with the line number following it.
+         *  @param lineNumber The number of the line about to be scanned.
+         *  @param state The state of the matcher, or null if it is outside of any comment or
+         *         comment delimiter, as at the start of a source.
+         */
+        void scanState(Long lineNumber, ScanState state);
+    }
+
+    /** Immutable snapshot of the state of the matcher between two lines, e.g. within a
+     *  multi-line comment and the delimiter that will end it. */
+    public static final class ScanState {
+
+        private final State currentState;
+        private final int startState;
+        private final char[] commentEnd;
+        private final int lastFullMatchState;
+        private final boolean lastFullMatchWasSingle;
+        private final char[] pending;
+        private final int endMatchLength;
+
+        private ScanState(State currentState, int startState, char[] commentEnd, int lastFullMatchState,
+                          boolean lastFullMatchWasSingle, char[] pending, int endMatchLength) {
+            this.currentState = currentState;
+            this.startState = startState;
+            this.commentEnd = commentEnd;
+            this.lastFullMatchState = lastFullMatchState;
+            this.lastFullMatchWasSingle = lastFullMatchWasSingle;
+            this.pending = pending;
+            this.endMatchLength = endMatchLength;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ScanState)) return false;
+            ScanState that = (ScanState)other;
+            return currentState == that.currentState &&
+                   startState == that.startState &&
+                   Arrays.equals(commentEnd, that.commentEnd) &&
+                   lastFullMatchState == that.lastFullMatchState &&
+                   lastFullMatchWasSingle == that.lastFullMatchWasSingle &&
+                   Arrays.equals(pending, that.pending) &&
+                   endMatchLength == that.endMatchLength;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * currentState.hashCode() + Arrays.hashCode(commentEnd);
+        }
+
+        /** Compares two states either of which may be the null initial state. */
+        static boolean same(ScanState a, ScanState b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
+
+        /** Encodes a state, which may be the null initial state, as a string, e.g. for storing
+         *  it in an {@link ExtractionCache}.  The encoding is meaningful only to a matcher
+         *  using the same comment delimiters as the matcher that reached the state.
+         *  @return The encoded state, the empty string encoding the initial state.
+         */
+        static String encode(ScanState state) {
+            if (state == null) return "";
+            return state.currentState.name() + "," + state.startState + "," +
+                   encodeChars(state.commentEnd) + "," + state.lastFullMatchState + "," +
+                   (state.lastFullMatchWasSingle ? 1 : 0) + "," +
+                   encodeChars(state.pending) + "," + state.endMatchLength;
+        }
+
+        /** Decodes a state encoded by {@link #encode(ScanState)}. */
+        static ScanState decode(String encoded) {
+            if (encoded.isEmpty()) return null;
+            String[] fields = encoded.split(",", -1);
+            return new ScanState(State.valueOf(fields[0]), Integer.parseInt(fields[1]),
+                                 decodeChars(fields[2]), Integer.parseInt(fields[3]),
+                                 fields[4].equals("1"), decodeChars(fields[5]),
+                                 Integer.parseInt(fields[6]));
+        }
+
+        /** Encodes each character as four hexadecimal digits, and a null array as a dash. */
+        private static String encodeChars(char[] chars) {
+            if (chars == null) return "-";
+            StringBuilder hex = new StringBuilder(chars.length * 4);
+            for (char c : chars) {
+                String digits = Integer.toHexString(c);
+                for (int i = digits.length(); i < 4; ++i) hex.append('0');
+                hex.append(digits);
+            }
+            return hex.toString();
+        }
+
+        private static char[] decodeChars(String hex) {
+            if (hex.equals("-")) return null;
+            char[] chars = new char[hex.length() / 4];
+            for (int i = 0; i < chars.length; ++i) {
+                chars[i] = (char)Integer.parseInt(hex.substring(4 * i, 4 * i + 4), 16);
+            }
+            return chars;
+        }
+    }
     
     /**
      * Constructs a CommentMatcher for the given programming language model.
@@ -36,54 +158,249 @@ public class CommentMatcher {
     
     /** Extracts the contents of all comments found in the source code provided via
      *  a {@link java.io.BufferedReader BufferedReader}
-     *  and returns each line of each comment as a string.  Comments that span multiple lines
-     *  in the source are represented as multiple strings in the return value.
+     *  and stores each line of the source and each line of each comment in the YesWorkflow DB.
+     *  Comments that span multiple lines in the source are stored as multiple comment rows.
+     *  Rows are inserted in batches committed together once the whole source has been read.
+     * 
+     * @param reader The BufferedReader used to read the source file.
+     * @throws Exception 
+     */
+    public void extractComments(Long sourceId, BufferedReader reader) throws Exception {
+
+        if (sourceId == null) sourceId = ywdb.insertSource(null);
+        
+        try (BatchInserter inserter = new BatchInserter(ywdb)) {
+            extractComments(sourceId, reader, new CommentInserter(inserter));
+            inserter.commit();
+        }
+    }
+
+    /** Extracts the contents of all comments found in the source code provided via
+     *  a {@link java.io.BufferedReader BufferedReader} and passes each line of the source, 
+     *  and each line of each comment, to the given listener.  Does not access the
+     *  YesWorkflow DB.
      * 
+     * @param sourceId The id of the source passed on to the listener.
      * @param reader The BufferedReader used to read the source file.
-     * @return  A List of Strings representing the comments in the source code.
-     * @throws IOException 
-     * @throws SQLException 
+     * @param listener The listener to receive source lines and comments.
+     * @throws Exception 
      */
-    public void extractComments(Long sourceId, BufferedReader reader) throws IOException, SQLException {
+    public void extractComments(Long sourceId, BufferedReader reader, CommentListener listener) throws Exception {
 
         String lineText;
         Long lineNumber = 1L;
-        lastFullMatch = null;
-        this.currentState = State.IN_CODE;
-        this.commentStartToken = null;
-        this.buffer = new StringBuffer();
+        startScan(listener);
         
+        try {
+            while ((lineText = reader.readLine()) != null) {
+                if (stateListener != null) stateListener.scanState(lineNumber, scanState());
+                listener.sourceLine(sourceId, lineNumber, lineText);
+                scanLine(sourceId, lineNumber++, lineText, 0, lineText.length());
+            }
+            if (stateListener != null) stateListener.scanState(lineNumber, scanState());
+        } finally {
+            endScan();
+        }
+    }
+
+    /** Extracts the contents of all comments found in source code already held in memory,
+     *  e.g. in a {@link java.nio.CharBuffer CharBuffer} filled by a
+     *  {@link org.yesworkflow.util.SourceFileReader SourceFileReader},
+     *  and stores each line of the source and each line of each comment in the YesWorkflow DB.
+     *  Rows are inserted in batches committed together once the whole source has been scanned.
+     * 
+     * @param sourceId The id of the source, or null to insert a new anonymous source.
+     * @param source The source code to scan.
+     * @throws Exception 
+     */
+    public void extractComments(Long sourceId, CharSequence source) throws Exception {
+
         if (sourceId == null) sourceId = ywdb.insertSource(null);
         
-        while ((lineText = reader.readLine()) != null) {
-            ywdb.insertSourceLine(sourceId, lineNumber, lineText);
-            StringBuffer commentText = new StringBuffer();
-            Long rankInLine = 1L;
-            for (int i = 0; i < lineText.length(); ++i) {
-                int c = lineText.charAt(i);
-                String newCommentChars = processNextChar((char)c);
-                commentText.append(newCommentChars);
-                if (newCommentChars.equals(EOL)) {
-                    rankInLine = insertTrimmedComment(sourceId, lineNumber, rankInLine, commentText.toString());
-                    commentText = new StringBuffer();          
+        try (BatchInserter inserter = new BatchInserter(ywdb)) {
+            extractComments(sourceId, source, new CommentInserter(inserter));
+            inserter.commit();
+        }
+    }
+    
+    /** Extracts the contents of all comments found in source code already held in memory
+     *  and passes each line of the source, and each line of each comment, to the given listener.
+     *  The source is scanned in place, line boundaries being recognized as by
+     *  {@link java.io.BufferedReader#readLine() BufferedReader.readLine()}, and only the text
+     *  of each line passed to the listener and of each comment is copied out of it.
+     *  Does not access the YesWorkflow DB.
+     * 
+     * @param sourceId The id of the source passed on to the listener.
+     * @param source The source code to scan.
+     * @param listener The listener to receive source lines and comments.
+     * @throws Exception 
+     */
+    public void extractComments(Long sourceId, CharSequence source, CommentListener listener) throws Exception {
+
+        Long lineNumber = 1L;
+        int length = source.length();
+        int lineStart = 0;
+        startScan(listener);
+        
+        try {
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                char c = 0;
+                while (lineEnd < length && (c = source.charAt(lineEnd)) != '\n' && c != '\r') ++lineEnd;
+                if (stateListener != null) stateListener.scanState(lineNumber, scanState());
+                listener.sourceLine(sourceId, lineNumber, source.subSequence(lineStart, lineEnd).toString());
+                scanLine(sourceId, lineNumber++, source, lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+                if (c == '\r' && lineStart < length && source.charAt(lineStart) == '\n') ++lineStart;
+            }
+            if (stateListener != null) stateListener.scanState(lineNumber, scanState());
+        } finally {
+            endScan();
+        }
+    }
+
+    /** Scans an edited version of a source against a previous scan of it, rescanning only
+     *  the lines that differ from the previous version of the source.
+     *
+     *  <p>The lines of the two versions are matched by a {@link LineDiff}.  A line matched to
+     *  a line of the previous version is not scanned again, but its comments are copied from
+     *  the previous scan, provided that the matcher would reach the line in the same state as
+     *  before, e.g. not within a multi-line comment opened by an edited line above it.  Any
+     *  other line is scanned, starting from the state recorded in the previous scan or reached
+     *  scanning the line above, until the scan is back in step with the previous one.
+     *  The result is identical to a full scan of the edited source.</p>
+     *
+     * @param previous A scan recording the state of the matcher at the start of each line,
+     *        as returned by {@link SourceScan#hasScanStates()}, made with the same language model.
+     * @param source The edited source code to scan.
+     * @return The scan of the edited source.
+     * @throws Exception
+     */
+    public SourceScan rescan(SourceScan previous, CharSequence source) throws Exception {
+
+        List<String> lines = new ArrayList<String>();
+        int length = source.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            char c = 0;
+            while (lineEnd < length && (c = source.charAt(lineEnd)) != '\n' && c != '\r') ++lineEnd;
+            lines.add(source.subSequence(lineStart, lineEnd).toString());
+            lineStart = lineEnd + 1;
+            if (c == '\r' && lineStart < length && source.charAt(lineStart) == '\n') ++lineStart;
+        }
+
+        int[] previousLines = LineDiff.match(previous.getLineTexts(), lines);
+        SourceScan scan = new SourceScan();
+        startScan(scan);
+
+        try {
+            ScanState state = null;
+            for (int i = 0; i < lines.size(); ++i) {
+                Long lineNumber = (long)(i + 1);
+                int previousLine = previousLines[i];
+                if (previousLine != -1 && ScanState.same(state, previous.getScanState(previousLine))) {
+                    previous.copyLine(previousLine, lineNumber, scan);
+                    state = previous.getScanState(previousLine + 1);
+                } else {
+                    restoreScanState(state);
+                    scan.scanState(lineNumber, state);
+                    scan.sourceLine(null, lineNumber, lines.get(i));
+                    scanLine(null, lineNumber, lines.get(i), 0, lines.get(i).length());
+                    scan.lineRescanned();
+                    state = scanState();
                 }
             }
-            commentText.append(processNextChar('\n'));
-            insertTrimmedComment(sourceId, lineNumber++, rankInLine, commentText.toString());
+            scan.scanState((long)(lines.size() + 1), state);
+        } finally {
+            endScan();
         }
+
+        return scan;
     }
-        
-    public void extractComments(String code) throws IOException, SQLException {
-        extractComments(null, new BufferedReader(new StringReader(code)));
+    
+    public void extractComments(String code) throws Exception {
+        extractComments(null, code);
+    }
+
+    /** Resets the state machine before scanning a new source. */
+    private void startScan(CommentListener listener) {
+        this.delimiterTable = languageModel.getDelimiterTable();
+        this.currentState = State.IN_CODE;
+        this.commentEnd = null;
+        this.lastFullMatchState = DelimiterTable.NO_MATCH_STATE;
+        this.pending = new char[delimiterTable.getMaxDelimiterLength() + 2];
+        clearPending();
+        this.listener = listener;
+        this.stateListener = (listener instanceof ScanStateListener) ? (ScanStateListener)listener : null;
+    }
+
+    private void endScan() {
+        this.listener = null;
+        this.stateListener = null;
+    }
+
+    /** Returns a snapshot of the state machine, or null if it is in its initial state. */
+    private ScanState scanState() {
+        if (currentState == State.IN_CODE && startState == DelimiterTable.START_STATE && pendingLength == 0) {
+            return null;
+        }
+        // the end delimiter and the last full start delimiter matched are not used again
+        // outside of a comment and a delimiter prefix respectively, so they are left out
+        // of the snapshot for states within and after other comments to compare equal
+        boolean inPrefix = (currentState == State.IN_PREFIX);
+        return new ScanState(currentState, startState,
+                             (currentState == State.IN_CODE) ? null : commentEnd,
+                             inPrefix ? lastFullMatchState : DelimiterTable.NO_MATCH_STATE,
+                             inPrefix && lastFullMatchWasSingle,
+                             Arrays.copyOf(pending, pendingLength), endMatchLength);
+    }
+
+    /** Puts the state machine into a state returned by {@link #scanState()}. */
+    private void restoreScanState(ScanState state) {
+        if (state == null) {
+            currentState = State.IN_CODE;
+            lastFullMatchState = DelimiterTable.NO_MATCH_STATE;
+            clearPending();
+        } else {
+            currentState = state.currentState;
+            startState = state.startState;
+            commentEnd = state.commentEnd;
+            lastFullMatchState = state.lastFullMatchState;
+            lastFullMatchWasSingle = state.lastFullMatchWasSingle;
+            if (pending.length < state.pending.length) pending = new char[state.pending.length];
+            System.arraycopy(state.pending, 0, pending, 0, state.pending.length);
+            pendingLength = state.pending.length;
+            endMatchLength = state.endMatchLength;
+        }
+    }
+
+    /** Feeds the characters of one source line to the state machine followed by a line
+     *  terminator, passing each comment completed on the line to the listener. */
+    private void scanLine(Long sourceId, Long lineNumber, CharSequence text, int start, int end) throws Exception {
+        commentText.setLength(0);
+        Long rankInLine = 1L;
+        for (int i = start; i < end; ++i) {
+            if (processNextChar(text.charAt(i))) {
+                rankInLine = insertTrimmedComment(sourceId, lineNumber, rankInLine);
+            }
+        }
+        processNextChar('\n');
+        insertTrimmedComment(sourceId, lineNumber, rankInLine);
     }
         
-    /** Helper method for inserting non-blank comments in YesWorkflow DB 
-     * @throws SQLException */
-    private Long insertTrimmedComment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws SQLException {
-        String trimmedCommentText = commentText.toString().trim();
-        if (trimmedCommentText.length() > 0) {
-            ywdb.insertComment(sourceId, lineNumber, rankInLine++, trimmedCommentText);
+    /** Helper method for passing the comment text accumulated for the current line
+     *  to the listener if it is non-blank, and then clearing it.
+     * @throws Exception */
+    private Long insertTrimmedComment(Long sourceId, Long lineNumber, Long rankInLine) throws Exception {
+        int start = 0;
+        int end = commentText.length();
+        while (start < end && commentText.charAt(start) <= ' ') ++start;
+        while (end > start && commentText.charAt(end - 1) <= ' ') --end;
+        if (start < end) {
+            listener.comment(sourceId, lineNumber, rankInLine++, commentText.substring(start, end));
         }
+        commentText.setLength(0);
         return rankInLine;
     }
     
@@ -95,31 +412,34 @@ public class CommentMatcher {
         IN_MULTI_LINE_COMMENT,
     }
     
-    /** Updates the state of the comment-matching finite state machine. */
+    /** Updates the state of the comment-matching finite state machine.  Appends any
+     *  characters found to be within a comment to the comment text for the current line.
+     *  @return true if the character completed a comment, false otherwise.
+     */
     @SuppressWarnings("incomplete-switch")
-    private String processNextChar(int c) {
+    private boolean processNextChar(char c) {
         
-        String newCommentCharacters = "";
+        boolean commentEnded = false;
         State nextState = currentState;
-        buffer.append((char)c);
         
         switch(currentState) {
         
         case IN_CODE:
             
-            lastFullMatch = null;
+            lastFullMatchState = DelimiterTable.NO_MATCH_STATE;
+            startState = delimiterTable.nextState(startState, c);
             
-            switch(languageModel.commentStartMatches(buffer.toString())) {
+            switch(delimiterTable.startMatch(startState)) {
                 
                 case FULL_MATCH_SINGLE:
                     nextState = State.IN_SINGLE_LINE_COMMENT;
-                    buffer.setLength(0);
+                    clearPending();
                     break;
                 
                 case FULL_MATCH_PAIRED:
                     nextState = State.IN_MULTI_LINE_COMMENT;
-                    commentStartToken = buffer.toString();
-                    buffer.setLength(0);
+                    commentEnd = delimiterTable.endDelimiter(startState);
+                    clearPending();
                     break;
 
                 case PREFIX_MATCH:
@@ -127,50 +447,54 @@ public class CommentMatcher {
                     break;
 
                 case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
-                    lastFullMatch = buffer.toString();
+                    lastFullMatchState = startState;
                     lastFullMatchWasSingle = true;
                     nextState = State.IN_PREFIX;
                     break;                    
 
                 case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
-                    lastFullMatch = buffer.toString();
+                    lastFullMatchState = startState;
                     lastFullMatchWasSingle = false;
                     nextState = State.IN_PREFIX;
                     break;                    
                     
                 default:
                     nextState = State.IN_CODE;
-                    buffer.setLength(0);
+                    clearPending();
             }
             
             break;
 
         case IN_PREFIX:
             
-            switch(languageModel.commentStartMatches(buffer.toString())) {
+            startState = delimiterTable.nextState(startState, c);
+            
+            switch(delimiterTable.startMatch(startState)) {
                 
                 case FULL_MATCH_SINGLE:
                     nextState = State.IN_SINGLE_LINE_COMMENT;
-                    buffer.setLength(0);
+                    clearPending();
                     break;
                 
                 case FULL_MATCH_PAIRED:
                     nextState = State.IN_MULTI_LINE_COMMENT;
-                    commentStartToken = buffer.toString();
-                    buffer.setLength(0);
+                    commentEnd = delimiterTable.endDelimiter(startState);
+                    clearPending();
                     break;
 
                 case NO_MATCH:
-                    if (lastFullMatch == null) {
-                        nextState = State.IN_CODE;                    
+                    // the character that broke the prefix match is carried into the next state
+                    if (lastFullMatchState == DelimiterTable.NO_MATCH_STATE) {
+                        nextState = State.IN_CODE;
                     } else {
-                        commentStartToken = lastFullMatch;
+                        commentEnd = delimiterTable.endDelimiter(lastFullMatchState);
                         nextState = (lastFullMatchWasSingle) ? 
                                 State.IN_SINGLE_LINE_COMMENT :
                                 State.IN_MULTI_LINE_COMMENT;
                     }
-                    buffer.setLength(0);
-                    buffer.append((char)c);
+                    clearPending();
+                    startState = delimiterTable.nextState(DelimiterTable.START_STATE, c);
+                    appendPending(c);
                     break;
                     
                 case PREFIX_MATCH:
@@ -179,13 +503,13 @@ public class CommentMatcher {
 
                 case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
                 case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
-                    lastFullMatch = buffer.toString();
+                    lastFullMatchState = startState;
                     nextState = State.IN_PREFIX;
                     break;
                     
                 default:
                     nextState = State.IN_CODE;
-                    buffer.setLength(0);
+                    clearPending();
             }
             
             break;
@@ -195,28 +519,26 @@ public class CommentMatcher {
             
             if (c == '\r' || c == '\n') {
                 nextState = State.IN_CODE;
-                newCommentCharacters = EOL;
+                commentEnded = true;
             } else {
-                newCommentCharacters = buffer.toString();
+                commentText.append(pending, 0, pendingLength);
+                commentText.append(c);
             }
-            buffer.setLength(0);
+            clearPending();
 
             break;
             
         case IN_MULTI_LINE_COMMENT:
             
-            switch(languageModel.commentEndMatches(buffer.toString(), commentStartToken)) {
+            appendPending(c);
             
-                case NO_MATCH:
-                    newCommentCharacters = buffer.toString();
-                    buffer.setLength(0);
-                    break;
-                
-                case FULL_MATCH_PAIRED:
-                    nextState = State.IN_CODE;
-                    newCommentCharacters = EOL;
-                    buffer.setLength(0);
-                    break;
+            if (endMatchLength == -1) {
+                commentText.append(pending, 0, pendingLength);
+                clearPending();
+            } else if (endMatchLength == commentEnd.length) {
+                nextState = State.IN_CODE;
+                commentEnded = true;
+                clearPending();
             }
             
             break;
@@ -224,6 +546,26 @@ public class CommentMatcher {
         
         currentState = nextState;
         
-        return newCommentCharacters;
+        return commentEnded;
+    }
+    
+    /** Discards the pending characters and resets the start and end delimiter matches. */
+    private void clearPending() {
+        pendingLength = 0;
+        endMatchLength = 0;
+        startState = DelimiterTable.START_STATE;
+    }
+    
+    /** Appends a character to the pending characters, extending the end delimiter match
+     *  if the pending characters still are a prefix of the expected end delimiter. */
+    private void appendPending(char c) {
+        if (pendingLength == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[pendingLength++] = c;
+        if (endMatchLength != -1) {
+            endMatchLength = (commentEnd != null && endMatchLength < commentEnd.length &&
+                              commentEnd[endMatchLength] == c) ? endMatchLength + 1 : -1;
+        }
     }
 }
@@ -1,30 +1,54 @@
 package org.yesworkflow.extract;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.jooq.Cursor;
 import org.jooq.Record;
 import org.jooq.Result;
+import org.jooq.impl.DSL;
 import org.yesworkflow.Language;
 import org.yesworkflow.LanguageModel;
 import org.yesworkflow.YWKeywords;
 import org.yesworkflow.YWKeywords.Tag;
 import org.yesworkflow.annotations.*;
 import org.yesworkflow.config.YWConfiguration;
+import org.yesworkflow.db.BatchInserter;
 import org.yesworkflow.db.Column;
 import org.yesworkflow.db.Table;
 import org.yesworkflow.db.Signature;
 import org.yesworkflow.db.YesWorkflowDB;
 import org.yesworkflow.exceptions.YWToolUsageException;
+import org.yesworkflow.extract.SourceTreeWalker.SourceFile;
 import org.yesworkflow.query.QueryEngine;
 import org.yesworkflow.query.QueryEngineModel;
+import org.yesworkflow.search.SearchIndex;
+import org.yesworkflow.search.SearchIndexer;
+import org.yesworkflow.util.Compression;
+import org.yesworkflow.util.MemoryBudget;
+import org.yesworkflow.util.ReadAheadReader;
+import org.yesworkflow.util.SourceFileReader;
 
 import static org.yesworkflow.db.Table.*;
 import static org.yesworkflow.db.Column.*;
@@ -32,7 +56,10 @@ import static org.yesworkflow.db.Column.*;
 public class DefaultExtractor implements Extractor {
 
     static private Language DEFAULT_LANGUAGE = Language.GENERIC;
+    static private Language DEFAULT_NOTEBOOK_LANGUAGE = Language.PYTHON;
     static private QueryEngine DEFAULT_QUERY_ENGINE = QueryEngine.SWIPL;
+    static private int DEFAULT_THREAD_COUNT = 1;
+    static private String DEFAULT_GIT_REVISION = "HEAD";
 
     private YesWorkflowDB ywdb;
     private LanguageModel globalLanguageModel = null;
@@ -40,13 +67,40 @@ public class DefaultExtractor implements Extractor {
     private QueryEngine queryEngine = DEFAULT_QUERY_ENGINE;
     private BufferedReader sourceReader = null;
     private List<String> sourcePaths;
+    private List<String> includePatterns = null;
+    private List<String> excludePatterns = null;
     private List<Annotation> allAnnotations;
     private List<Annotation> primaryAnnotations;
     private YWKeywords keywordMapping;
     private KeywordMatcher keywordMatcher;
     private String commentListingPath;
+    private int threadCount = DEFAULT_THREAD_COUNT;
+    private String cachePath = null;
+    private String indexPath = null;
+    private LineStorage lineStorage = LineStorage.ALL;
+    private ExtractionCache extractionCache = null;
+    private SourceScanMemo scanMemo = null;
+
+    /** The files changed since the scan memo was last used, or null if not known. */
+    private Collection<Path> changedPaths = null;
+    private String gitRepositoryPath = null;
+    private String gitRevision = DEFAULT_GIT_REVISION;
+    private boolean pipelined = false;
+    private boolean deduplicated = true;
+    private Map<String,Long> sourceIdsByContent = new HashMap<String,Long>();
+
+    /** The ids of the sources duplicated by the deduplicated sources, by path. */
+    private Map<String,Long> sourceAliases = new LinkedHashMap<String,Long>();
+
+    /** The languages in which the code cells of the notebook sources were scanned, by source id. */
+    private Map<Long,Language> notebookLanguages = new HashMap<Long,Language>();
+    private BlobScanCache blobScanCache = null;
+    private MemoryBudget memoryBudget = null;
+    private List<CommentListener> commentListeners = new ArrayList<CommentListener>();
+    private List<AnnotationListener> annotationListeners = new ArrayList<AnnotationListener>();
     private String factsFile = null;
     private String skeletonFile = null;
+    private String skeletonDirectory = null;
     private String skeleton = null;
     private String extractFacts = null;
     private PrintStream stdoutStream = null;
@@ -54,6 +108,14 @@ public class DefaultExtractor implements Extractor {
 
     private YesWorkflowDB pdb;
 
+    /** Per-thread readers whose character buffers are reused for successive source files. */
+    private final ThreadLocal<SourceFileReader> sourceFileReader = new ThreadLocal<SourceFileReader>() {
+        @Override
+        protected SourceFileReader initialValue() {
+            return new SourceFileReader();
+        }
+    };
+
     private Long nextAnnotationId = 1L;
 
     public DefaultExtractor() throws Exception {
@@ -91,18 +153,11 @@ public class DefaultExtractor implements Extractor {
     @Override
     public DefaultExtractor configure(String key, Object value) throws Exception {
         if (key.equalsIgnoreCase("sources")) {
-            sourcePaths = new LinkedList<String>();
-            if (value instanceof String) {
-                for (String token : ((String) value).split("\\s")) {
-                    if (!token.trim().isEmpty()) {
-                        sourcePaths.add(token);
-                    }
-                }
-            } else if (value instanceof List) {
-                sourcePaths.addAll((List<? extends String>) value);
-            } else {
-                throw new Exception("Value of sources property must be one or more strings");
-            }
+            sourcePaths = toStringList(value, "sources");
+        } else if (key.equalsIgnoreCase("include")) {
+            includePatterns = toStringList(value, "include");
+        } else if (key.equalsIgnoreCase("exclude")) {
+            excludePatterns = toStringList(value, "exclude");
         } else if (key.equalsIgnoreCase("language")) {
             Language language = Language.toLanguage(value);
             globalLanguageModel = new LanguageModel(language);
@@ -117,13 +172,79 @@ public class DefaultExtractor implements Extractor {
             factsFile = (String)value;
         } else if (key.equalsIgnoreCase("skeletonfile")) {
             skeletonFile = (String)value;
+        } else if (key.equalsIgnoreCase("skeletondir")) {
+            skeletonDirectory = (String)value;
         } else if (key.equalsIgnoreCase("queryengine")) {
             queryEngine = QueryEngine.toQueryEngine((String)value);
+        } else if (key.equalsIgnoreCase("lines")) {
+            lineStorage = LineStorage.toLineStorage(value);
+        } else if (key.equalsIgnoreCase("cache")) {
+            cachePath = (String)value;
+        } else if (key.equalsIgnoreCase("index")) {
+            indexPath = (String)value;
+        } else if (key.equalsIgnoreCase("membudget")) {
+            memoryBudget = MemoryBudget.toMemoryBudget(value);
+        } else if (key.equalsIgnoreCase("scanmemo")) {
+            scanMemo = (SourceScanMemo)value;
+        } else if (key.equalsIgnoreCase("changes")) {
+            changedPaths = (Collection<Path>)value;
+        } else if (key.equalsIgnoreCase("gitrepo")) {
+            gitRepositoryPath = (String)value;
+        } else if (key.equalsIgnoreCase("revision")) {
+            gitRevision = (String)value;
+        } else if (key.equalsIgnoreCase("blobcache")) {
+            blobScanCache = (BlobScanCache)value;
+        } else if (key.equalsIgnoreCase("dedup")) {
+            deduplicated = toSwitch(value, "dedup");
+        } else if (key.equalsIgnoreCase("pipeline")) {
+            pipelined = toSwitch(value, "pipeline");
+        } else if (key.equalsIgnoreCase("threads")) {
+            threadCount = Integer.parseInt(value.toString().trim());
+            if (threadCount < 1) throw new Exception("Value of threads property must be a positive integer");
         }
 
         return this;
     }
 
+    private static boolean toSwitch(Object value, String property) throws Exception {
+        if (value instanceof Boolean) return (Boolean)value;
+        String setting = value.toString().trim();
+        if (setting.equalsIgnoreCase("on") || setting.equalsIgnoreCase("true")) return true;
+        if (setting.equalsIgnoreCase("off") || setting.equalsIgnoreCase("false")) return false;
+        throw new Exception("Value of " + property + " property must be ON or OFF");
+    }
+
+    /** Converts the value of a configuration property to a list of strings.
+     *  @param value A string of whitespace-separated tokens, or a list of strings.
+     *  @param property The name of the property, for reporting an invalid value.
+     *  @return The strings given by the value.
+     *  @throws Exception If the value is neither a string nor a list.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> toStringList(Object value, String property) throws Exception {
+        List<String> strings = new LinkedList<String>();
+        if (value instanceof String) {
+            for (String token : ((String) value).split("\\s")) {
+                if (!token.trim().isEmpty()) {
+                    strings.add(token);
+                }
+            }
+        } else if (value instanceof List) {
+            strings.addAll((List<? extends String>) value);
+        } else {
+            throw new Exception("Value of " + property + " property must be one or more strings");
+        }
+        return strings;
+    }
+
+    /** Provides access to the extraction cache used by the last extraction, e.g. to report
+     *  its hit and miss counts.
+     *  @return The extraction cache, or null if none was configured.
+     */
+    public ExtractionCache getExtractionCache() {
+        return extractionCache;
+    }
+
     @Override
     public Language getLanguage() {
         return lastLanguage;
@@ -138,11 +259,15 @@ public class DefaultExtractor implements Extractor {
     public String getSkeleton() {
 
 	    if (skeleton == null) {
-            SkeletonBuilder sb = new SkeletonBuilder( getSkeletonCommentDelimiter() + " ");
-            for (Annotation annotation : allAnnotations) {
-                sb.add(annotation);
+            SkeletonBuilder sb = new SkeletonBuilder( getSkeletonCommentDelimiter(skeletonFile) + " ");
+            try {
+                for (Annotation annotation : allAnnotations) {
+                    sb.add(annotation);
+                }
+                sb.end();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
             }
-            sb.end();
             skeleton = sb.toString();
  	    }
 
@@ -160,10 +285,10 @@ public class DefaultExtractor implements Extractor {
     @Override
     public DefaultExtractor extract() throws Exception {
 
-        extractCommentsFromSources();
+        extractCommentsAndAnnotations();
         writeCommentListing();
-        extractAnnotations();
         writeSkeletonFile();
+        writeSourceSkeletons();
         extractCodeBlock();
 
 //        System.out.println("extracting");
@@ -207,6 +332,11 @@ public class DefaultExtractor implements Extractor {
             stderrStream.println("WARNING: No YW comments found in source code.");
         }
 
+        if (extractionCache != null) {
+            stderrStream.println("Extraction cache: " + extractionCache.getHitCount() + " hits, " +
+                                 extractionCache.getMissCount() + " misses");
+        }
+
         if (factsFile != null) {
             QueryEngineModel queryEngineModel = new QueryEngineModel(queryEngine);
             writeTextToFileOrStdout(factsFile, getFacts(queryEngineModel));
@@ -215,15 +345,30 @@ public class DefaultExtractor implements Extractor {
         return this;
     }
 
-    @SuppressWarnings({ "unchecked" })
+    /** Span of source lines delimited by a @begin or @create annotation and its matching @end. */
+    private static class CodeBlockSpan {
+        final Tag tag;
+        final String name;
+        final Long sourceId;
+        final Long beginLine;
+        Long endLine = null;
+        CodeBlockSpan(Annotation beginAnnotation) {
+            this.tag = beginAnnotation.tag;
+            this.name = beginAnnotation.name;
+            this.sourceId = beginAnnotation.sourceId;
+            this.beginLine = beginAnnotation.lineNumber;
+        }
+    }
+
+    /** Computes the spans and signatures of all code blocks in a single pass over the
+     *  annotations extracted, using a stack to match each @end with the innermost open block.
+     *  The source lines of new @begin blocks are then fetched with one range query per source.
+     */
     private void extractCodeBlock() throws SQLException {
-        Result<Record> begin_rows = ywdb.jooq().select(TAG, VALUE)
-                .from(Table.ANNOTATION)
-                .orderBy(COMMENT_ID)
-                .fetch();
 
         // Get a list of exciting code blocks in the persistent database in order to avoid duplicated blocks
         // todo: how find existing code blocks with signature
+        @SuppressWarnings("unchecked")
         Result<Record> existing_rows = pdb.jooq().select(NAME)
                 .from(Table.CODE_BLOCK)
                 .fetch();
@@ -231,98 +376,566 @@ public class DefaultExtractor implements Extractor {
         for(Record existing_row : existing_rows) existing_blocks.add(ywdb.getStringValue(existing_row, NAME));
 
         // the order of @begin, @in, @as in the annotated script must be maintained
-        String block_name = null;
-        String block_tag = null;
+        List<CodeBlockSpan> spans = new ArrayList<CodeBlockSpan>();
+        Deque<CodeBlockSpan> openSpans = new ArrayDeque<CodeBlockSpan>();
         Signature sig = null;
-        for (Record comment : begin_rows) {
-            String tag = ywdb.getStringValue(comment, TAG);
-            String value = ywdb.getStringValue(comment, VALUE);
-
-            if (tag.equals(Tag.BEGIN.toString()) || tag.equals(Tag.CREATE.toString())) {
-                sig = insertSignature(sig, block_tag);
-                block_name = value;
-                block_tag = tag;
-
-                // get the @begin and @end line numbers
-                Result<Record> beginAndEndLineNumber = ywdb.jooq().select(Column.COMMENT.LINE_NUMBER, Column.ANNOTATION.TAG)
-                        .from(Table.COMMENT)
-                        .join(Table.ANNOTATION)
-                        .on(Column.COMMENT.ID.equal(Column.ANNOTATION.COMMENT_ID))
-                        .where(Column.ANNOTATION.VALUE.equal(block_name))
-                        .orderBy(COMMENT_ID)
-                        .fetch();
-
-                Long begin_line = null;
-                Long end_line = null;
-                for (Record line : beginAndEndLineNumber) {
-                    String line_tag = ywdb.getStringValue(line, Column.ANNOTATION.TAG);
-                    Long line_number = ywdb.getLongValue(line, Column.COMMENT.LINE_NUMBER);
-
-                    if (line_tag.equals(tag)) begin_line = line_number;
-                    else if (line_tag.equals(YWKeywords.Tag.END.toString())) end_line = line_number;
-                    else System.out.println("tag: " + line_tag + " is neither BEGIN nor END in extractCodeBlock");
+        for (Annotation annotation : allAnnotations) {
+            CodeBlockSpan block = openSpans.peek();
+            switch (annotation.tag) {
+                case BEGIN:
+                case CREATE:
+                    sig = insertSignature(sig, block);
+                    block = new CodeBlockSpan(annotation);
+                    spans.add(block);
+                    openSpans.push(block);
+                    break;
+                case IN:
+                case OUT:
+                    sig = insertSignature(sig, block);
+                    if (block != null) {
+                        sig = new Signature(block.name).setInputOrOutput(annotation.tag.toString()).setVariable(annotation.name);
+                    }
+                    break;
+                case AS:
+                    if (sig != null) sig.setAlias(annotation.name);
+                    break;
+                case URI:
+                    if (sig != null) sig.setURI(annotation.name);
+                    break;
+                case END:
+                    sig = insertSignature(sig, block);
+                    if (block != null) openSpans.pop().endLine = annotation.lineNumber;
+                    break;
+                default:
+                    break;
+            }
+        }
+        insertSignature(sig, openSpans.peek());
+
+        Map<Long,List<CodeBlockSpan>> snippetSpansInSource = new LinkedHashMap<Long,List<CodeBlockSpan>>();
+        for (CodeBlockSpan span : spans) {
+            if (span.tag == Tag.BEGIN && !existing_blocks.contains(span.name)) {
+                pdb.insertCodeBlock(span.beginLine, span.endLine, span.name, null);
+                if (span.endLine != null) {
+                    List<CodeBlockSpan> snippetSpans = snippetSpansInSource.get(span.sourceId);
+                    if (snippetSpans == null) {
+                        snippetSpans = new ArrayList<CodeBlockSpan>();
+                        snippetSpansInSource.put(span.sourceId, snippetSpans);
+                    }
+                    snippetSpans.add(span);
                 }
+            } else if (span.tag == Tag.CREATE) {
+                ywdb.insertCodeBlock(span.beginLine, span.endLine, span.name, null);
+            }
+        }
 
-                if(tag.equals(Tag.BEGIN.toString()) && !existing_blocks.contains(block_name)){
-                    pdb.insertCodeBlock(begin_line, end_line, block_name, null);
-                    Result<Record> code_rows = ywdb.jooq().select(LINE_NUMBER, LINE_TEXT)
-                            .from(Table.SOURCE_LINE)
-                            .where(Column.SOURCE_LINE.LINE_NUMBER.between(begin_line, end_line))
-                            .orderBy(LINE_NUMBER)
-                            .fetch();
+        for (Map.Entry<Long,List<CodeBlockSpan>> snippetSpans : snippetSpansInSource.entrySet()) {
+            insertCodeSnippets(snippetSpans.getKey(), snippetSpans.getValue());
+        }
+    }
 
-                    for(Record code_row : code_rows) {
-                        pdb.insertCodeSnippet(pdb.getLongValue(code_row, LINE_NUMBER), pdb.getStringValue(code_row, LINE_TEXT), block_name);
-                    }
+    /** Stores the lines of the given blocks of one source as code snippets, fetching the lines
+     *  spanned by all of the blocks with a single query.  Lines are read from the query one at
+     *  a time and passed to each block spanning them, so that they are not all held in memory.
+     *  @param sourceId The source containing the blocks.
+     *  @param spans The spans of the blocks, in order of their first lines.
+     */
+    @SuppressWarnings("unchecked")
+    private void insertCodeSnippets(Long sourceId, List<CodeBlockSpan> spans) throws SQLException {
+
+        Long firstLine = spans.get(0).beginLine;
+        Long lastLine = firstLine;
+        for (CodeBlockSpan span : spans) lastLine = Math.max(lastLine, span.endLine);
+
+        List<CodeBlockSpan> openSpans = new LinkedList<CodeBlockSpan>();
+        int nextSpan = 0;
+
+        Cursor<Record> code_rows = ywdb.jooq().select(LINE_NUMBER, LINE_TEXT)
+                .from(Table.SOURCE_LINE)
+                .where(Column.SOURCE_LINE.SOURCE_ID.equal(sourceId))
+                .and(Column.SOURCE_LINE.LINE_NUMBER.between(firstLine, lastLine))
+                .orderBy(LINE_NUMBER)
+                .fetchLazy();
+
+        try {
+            for (Record code_row = code_rows.fetchOne(); code_row != null; code_row = code_rows.fetchOne()) {
+
+                Long lineNumber = ywdb.getLongValue(code_row, LINE_NUMBER);
+                String lineText = ywdb.getStringValue(code_row, LINE_TEXT);
+
+                while (nextSpan < spans.size() && spans.get(nextSpan).beginLine <= lineNumber) {
+                    openSpans.add(spans.get(nextSpan++));
                 }
-                if(tag.equals(Tag.CREATE.toString())) ywdb.insertCodeBlock(begin_line, end_line, block_name, null);
 
-            } else if (tag.equals(Tag.IN.toString())){
-                sig = insertSignature(sig, block_tag);
-                sig = new Signature(block_name).setInputOrOutput(tag.toString()).setVariable(value);
-            } else if (tag.equals(Tag.OUT.toString())){
-                sig = insertSignature(sig, block_tag);
-                sig = new Signature(block_name).setInputOrOutput(tag.toString()).setVariable(value);
-            } else if (tag.equals(Tag.AS.toString())){
-                sig.setAlias(value);
-            } else if (tag.equals(Tag.URI.toString())){
-                sig.setURI(value);
-            } else if (tag.equals(Tag.END.toString())){
-                sig = insertSignature(sig, block_tag);
+                for (Iterator<CodeBlockSpan> i = openSpans.iterator(); i.hasNext(); ) {
+                    CodeBlockSpan span = i.next();
+                    if (span.endLine < lineNumber) {
+                        i.remove();
+                    } else {
+                        pdb.insertCodeSnippet(lineNumber, lineText, span.name);
+                    }
+                }
             }
+        } finally {
+            code_rows.close();
         }
     }
 
-    private Signature insertSignature(Signature sig, String block_tag) throws SQLException {
-        if (sig != null){
-            if (block_tag.equals(Tag.BEGIN.toString())) pdb.insertSignature(sig.inputOrOutput, sig.variable, sig.alias, sig.uri, sig.inBlock);
-            else if (block_tag.equals(Tag.CREATE.toString())) ywdb.insertSignature(sig.inputOrOutput, sig.variable, sig.alias, sig.uri, sig.inBlock);
-            else System.out.println("tag: " + block_tag + " is neither BEGIN nor END in extractCodeBlock");
+    private Signature insertSignature(Signature sig, CodeBlockSpan block) throws SQLException {
+        if (sig != null && block != null){
+            if (block.tag == Tag.BEGIN) pdb.insertSignature(sig.inputOrOutput, sig.variable, sig.alias, sig.uri, sig.inBlock);
+            else if (block.tag == Tag.CREATE) ywdb.insertSignature(sig.inputOrOutput, sig.variable, sig.alias, sig.uri, sig.inBlock);
         }
         return null;
     }
 
-    private void extractCommentsFromSources() throws IOException, YWToolUsageException, SQLException {
+    /** Scans the sources for comments and extracts annotations from each comment as soon
+     *  as it is found.  Lines, comments and annotations are stored in the YesWorkflow DB by
+     *  an {@link ExtractionInserter} subscribed ahead of the {@link AnnotationBuilder} and of
+     *  any listeners subscribed via {@link #commentListener(CommentListener) commentListener()}
+     *  and {@link #annotationListener(AnnotationListener) annotationListener()}.
+     *  If an index file is configured, the comments are also added to the comment index
+     *  searched by the <i>search</i> command as each source is completed.
+     */
+    private void extractCommentsAndAnnotations() throws Exception {
+
+        try (BatchInserter inserter = (memoryBudget == null) ? new BatchInserter(ywdb) :
+                                      new BatchInserter(ywdb, memoryBudget.getBatchRows(), true);
+             SearchIndex searchIndex = (indexPath == null) ? null :
+                                       new SearchIndex(YesWorkflowDB.openFileDB(Paths.get(indexPath)))) {
+
+            // comments are inserted with ids assigned from above the largest id in use, so that
+            // annotations can be attributed to them before the batches are flushed
+            ExtractionInserter extractionInserter = new ExtractionInserter(inserter, nextCommentId());
+
+            AnnotationBuilder annotationBuilder = new AnnotationBuilder(keywordMapping, keywordMatcher, nextAnnotationId);
+            List<AnnotationListener> builtAnnotationListeners = new ArrayList<AnnotationListener>();
+            builtAnnotationListeners.add(extractionInserter);
+
+            // store only the source lines within annotated blocks if requested
+            AnnotatedLineFilter lineFilter = null;
+            if (lineStorage == LineStorage.ANNOTATED) {
+                lineFilter = new AnnotatedLineFilter(extractionInserter);
+                builtAnnotationListeners.add(lineFilter);
+            }
+
+            // index the comments of each source, attributing their terms to their annotations
+            SearchIndexer indexer = null;
+            if (searchIndex != null) {
+                indexer = new SearchIndexer(searchIndex, ywdb);
+                builtAnnotationListeners.add(indexer);
+            }
+
+            builtAnnotationListeners.addAll(annotationListeners);
+
+            List<CommentListener> storeListeners = new ArrayList<CommentListener>();
+            storeListeners.add((lineFilter == null) ? extractionInserter : lineFilter);
+            if (indexer != null) storeListeners.add(indexer);
+
+            // the writer stage holds the connection of the inserter while the sources are
+            // inserted on the calling thread, so a DB lending out only one connection is
+            // extracted sequentially
+            if (pipelined && ywdb.getMaxConnections() > 1) {
+                extractCommentsFromSourcesPipelined(annotationBuilder, builtAnnotationListeners, storeListeners);
+            } else {
+                for (AnnotationListener listener : builtAnnotationListeners) {
+                    annotationBuilder.listener(listener);
+                }
+                List<CommentListener> listeners = new ArrayList<CommentListener>(storeListeners);
+                listeners.add(annotationBuilder);
+                listeners.addAll(commentListeners);
+                extractCommentsFromSources(new CommentBroadcaster(listeners));
+            }
+
+            if (lineFilter != null) lineFilter.flush();
+            if (indexer != null) {
+                indexer.flush();
+                for (Map.Entry<String,Long> alias : sourceAliases.entrySet()) {
+                    indexer.sourceAlias(alias.getKey(), alias.getValue());
+                }
+            }
+            inserter.commit();
+
+            allAnnotations = annotationBuilder.getAllAnnotations();
+            primaryAnnotations = annotationBuilder.getPrimaryAnnotations();
+            nextAnnotationId = annotationBuilder.getNextAnnotationId();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Long nextCommentId() {
+        Object maxId = ywdb.jooq().select(DSL.max(ID)).from(Table.COMMENT).fetchOne().getValue(0);
+        return (maxId == null) ? 1L : ((Number)maxId).longValue() + 1;
+    }
+
+    /** Extracts comments and annotations in a pipeline of three stages, each running on a
+     *  thread of its own and joined to the next by a bounded queue: the sources are read and
+     *  scanned for comments on the calling thread (behind a thread reading ahead of each
+     *  source streamed), the annotations are parsed from the comments by the annotation
+     *  builder on a parser stage, and the source lines, comments and annotations are stored
+     *  and passed to the listeners subscribed to the extractor on a writer stage.  Events
+     *  reach the writer in the order in which a sequential extraction delivers them.
+     */
+    private void extractCommentsFromSourcesPipelined(AnnotationBuilder annotationBuilder,
+                                                     List<AnnotationListener> builtAnnotationListeners,
+                                                     List<CommentListener> storeListeners) throws Exception {
+
+        try (PipelineStage writer = new PipelineStage("extract-writer");
+             PipelineStage parser = new PipelineStage("extract-parser")) {
+
+            for (AnnotationListener listener : builtAnnotationListeners) {
+                annotationBuilder.listener(writer.annotationListener(listener));
+            }
+
+            List<CommentListener> listeners = new ArrayList<CommentListener>();
+            listeners.add(writer.commentListener(new CommentBroadcaster(storeListeners)));
+            listeners.add(annotationBuilder);
+            if (!commentListeners.isEmpty()) {
+                listeners.add(writer.commentListener(new CommentBroadcaster(commentListeners)));
+            }
+
+            extractCommentsFromSources(parser.commentListener(new CommentBroadcaster(listeners)));
+        }
+    }
+
+    private void extractCommentsFromSources(CommentListener listener) throws Exception {
+
+        sourceIdsByContent.clear();
+        sourceAliases.clear();
+        notebookLanguages.clear();
+        if (scanMemo != null && changedPaths != null) scanMemo.changed(changedPaths);
 
         // read source code from reader if provided
         if (sourceReader != null) {
 
-            extractLinesCommentsFromReader(null, sourceReader, globalLanguageModel);
+            extractLinesCommentsFromReader(sourceReader, globalLanguageModel, listener);
+
+        // else read source code from the tree of a revision of a git repository if one is configured
+        } else if (gitRepositoryPath != null) {
+
+            if (cachePath != null) {
+                try (ExtractionCache cache = new ExtractionCache(YesWorkflowDB.openFileDB(Paths.get(cachePath)))) {
+                    extractionCache = cache;
+                    extractCommentsFromGitTree(listener);
+                }
+            } else {
+                extractCommentsFromGitTree(listener);
+            }
 
         // otherwise read source code from stdin if source path is empty or just a dash
         } else if (sourcePathsEmptyOrDash(sourcePaths)) {
 
             Reader reader = new InputStreamReader(System.in);
-            extractLinesCommentsFromReader(null, new BufferedReader(reader), globalLanguageModel);
+            extractLinesCommentsFromReader(new BufferedReader(reader), globalLanguageModel, listener);
 
-        // else read source code from each file in the list of source paths
+        // else replay unchanged files from the extraction cache and scan the rest if a cache is configured
+        } else if (cachePath != null) {
+
+            try (ExtractionCache cache = new ExtractionCache(YesWorkflowDB.openFileDB(Paths.get(cachePath)))) {
+                extractionCache = cache;
+                extractCommentsFromSourcesInParallel(listener);
+            }
+
+        // else scan the files in the list of source paths concurrently if more than one thread is allowed,
+        // or if scans are retained in memory from one extraction to the next
+        } else if (threadCount > 1 || scanMemo != null) {
+
+            extractCommentsFromSourcesInParallel(listener);
+
+        // else read source code from each file in the list of source paths as the directories are walked
         } else {
 
-            for (String path : sourcePaths) {
-                Long sourceId = ywdb.insertSource(path);
-                LanguageModel languageModel = languageModelForSourceFile(path);
-                extractLinesCommentsFromReader(sourceId, fileReaderForPath(path), languageModel);
+            try (SourceTreeWalker walker = sourceTreeWalker()) {
+                for (SourceFile sourceFile = walker.next(); sourceFile != null; sourceFile = walker.next()) {
+                    LanguageModel languageModel = languageModelForSourceFile(sourceFile);
+                    Long sourceId = insertSourceUnlessDuplicate(sourceFile.path,
+                                                                sourceContentKey(sourceFile.path, languageModel));
+                    if (sourceId != null) {
+                        extractLinesCommentsFromFile(sourceId, sourceFile.path, languageModel, listener);
+                    }
+                }
+            }
+        }
+    }
+
+    private SourceTreeWalker sourceTreeWalker() {
+        return new SourceTreeWalker(sourcePaths, includePatterns, excludePatterns, threadCount);
+    }
+
+    /** Scans the source files on a pool of worker threads, buffering the lines and comments
+     *  of each file in memory, and stores the results in the order of the source paths so that
+     *  source, line and comment ids are identical to those assigned in a sequential run.
+     *  At most two files per thread are scanned ahead of the file currently being stored.
+     *  Files found in the extraction cache, if one is open, are replayed from the cache instead.
+     *  Files too large to buffer within the memory budget, if one is set, are not scanned ahead
+     *  but streamed directly to the listener when their turn comes.  The contents of each file
+     *  are hashed once, by the worker scanning it, for both deduplication and the caches.
+     */
+    private void extractCommentsFromSourcesInParallel(CommentListener listener) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        LinkedList<SourceFile> pendingFiles = new LinkedList<SourceFile>();
+        LinkedList<Future<HashedScan>> pendingScans = new LinkedList<Future<HashedScan>>();
+        Set<String> contentKeysClaimed = Collections.synchronizedSet(new HashSet<String>());
+
+        try (SourceTreeWalker walker = sourceTreeWalker()) {
+
+            SourceFile fileToScan = walker.next();
+            while (fileToScan != null || !pendingScans.isEmpty()) {
+
+                while (fileToScan != null && pendingScans.size() < 2 * threadCount) {
+                    boolean streamed = isStreamedSource(fileToScan.path, 2 * threadCount + 1);
+                    pendingFiles.add(fileToScan);
+                    pendingScans.add(executor.submit(sourceScanTask(fileToScan, streamed, contentKeysClaimed)));
+                    fileToScan = walker.next();
+                }
+
+                SourceFile sourceFile = pendingFiles.removeFirst();
+                HashedScan hashedScan = awaitTask(pendingScans.removeFirst());
+                LanguageModel languageModel = languageModelForSourceFile(sourceFile);
+                Long sourceId = insertSourceUnlessDuplicate(sourceFile.path, hashedScan.contentKey);
+                if (sourceId == null) continue;
+                lastLanguage = languageModel.getLanguage();
+                if (hashedScan.streamed) {
+                    streamLinesCommentsFromFile(sourceId, sourceFile.path, languageModel, listener);
+                } else {
+                    // a file whose contents another worker claimed first is scanned here if it
+                    // is stored first, and so turns out to be the original of the two
+                    SourceScan scan = (hashedScan.scan != null) ? hashedScan.scan :
+                            scanSourceFile(sourceFile.path, languageModel, hashedScan.contentHash);
+                    replaySourceScan(scan, sourceId, listener);
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Returns a task hashing a source file and, unless the file is to be streamed or another
+     *  task has already claimed a file with identical contents, scanning it. */
+    private Callable<HashedScan> sourceScanTask(final SourceFile sourceFile, final boolean streamed,
+                                                final Set<String> contentKeysClaimed) {
+        return new Callable<HashedScan>() {
+            @Override
+            public HashedScan call() throws Exception {
+
+                LanguageModel languageModel = languageModelForSourceFile(sourceFile);
+                String contentHash = unchangedContentHash(sourceFile.path, languageModel);
+                if (contentHash == null && (deduplicated || (!streamed && (extractionCache != null || scanMemo != null)))) {
+                    ByteBuffer bytes = sourceFileReader.get().map(sourceFilePath(sourceFile.path));
+                    contentHash = ExtractionCache.contentHash(bytes);
+                }
+                String contentKey = deduplicated ? contentKey(contentHash, sourceFile.path, languageModel) : null;
+
+                SourceScan scan = null;
+                if (!streamed && (contentKey == null || contentKeysClaimed.add(contentKey))) {
+                    scan = scanSourceFile(sourceFile.path, languageModel, contentHash);
+                }
+                return new HashedScan(contentHash, contentKey, streamed, scan);
+            }
+        };
+    }
+
+    /** Returns the hash of the contents of a source file retained in the scan memo with its
+     *  scan, if the file is known not to have changed since, so that the file need not be read. */
+    private String unchangedContentHash(String path, LanguageModel languageModel) {
+        if (scanMemo == null || changedPaths == null) return null;
+        return scanMemo.unchangedContentHash(path, ExtractionCache.languageModelKey(languageModel));
+    }
+
+    /** The scan of a source file by a worker, with the hash of the file's contents. */
+    private static class HashedScan {
+
+        final String contentHash;
+        final String contentKey;
+        final boolean streamed;
+        final SourceScan scan;
+
+        HashedScan(String contentHash, String contentKey, boolean streamed, SourceScan scan) {
+            this.contentHash = contentHash;
+            this.contentKey = contentKey;
+            this.streamed = streamed;
+            this.scan = scan;
+        }
+    }
+
+    /** Scans a source file into memory, or retrieves a previous scan of the file from
+     *  the scan memo if one is configured, or from the extraction cache if one is open, if
+     *  the file is unchanged.  A file changed since its scan was retained in the memo, or
+     *  failing that since its scan was cached, is rescanned incrementally, only in the lines
+     *  that differ from the previous scan.
+     *  New scans are added to the memo and to the cache.
+     *  @param contentHash The hash of the contents of the file, or null if not yet computed.
+     */
+    private SourceScan scanSourceFile(String path, LanguageModel languageModel, String contentHash) throws Exception {
+
+        SourceFileReader reader = sourceFileReader.get();
+        ByteBuffer bytes = null;
+
+        String languageModelKey = null;
+        if (extractionCache != null || scanMemo != null) {
+            if (contentHash == null) {
+                bytes = reader.map(sourceFilePath(path));
+                contentHash = ExtractionCache.contentHash(bytes);
+            }
+            languageModelKey = ExtractionCache.languageModelKey(languageModel);
+        }
+
+        if (scanMemo != null) {
+            SourceScan retainedScan = scanMemo.lookup(path, contentHash, languageModelKey);
+            if (retainedScan != null) return retainedScan;
+        }
+
+        if (bytes == null) bytes = reader.map(sourceFilePath(path));
+
+        SourceScan scan = null;
+        if (extractionCache != null) {
+            scan = extractionCache.lookup(path, contentHash, languageModelKey);
+        }
+
+        SourceScan previousScan = (scanMemo == null) ? null : scanMemo.previous(path, languageModelKey);
+        if (scan == null && (previousScan == null || !previousScan.hasScanStates()) &&
+                extractionCache != null && isPlainTextSource(path)) {
+            previousScan = extractionCache.previous(path, languageModelKey);
+        }
+
+        if (scan == null && previousScan != null && previousScan.hasScanStates() && isPlainTextSource(path)) {
+            scan = new CommentMatcher(ywdb, languageModel).rescan(previousScan, reader.decode(bytes));
+            if (extractionCache != null) {
+                extractionCache.store(path, contentHash, languageModelKey, scan);
+            }
+        }
+
+        if (scan == null) {
+            scan = new SourceScan();
+            if (isPlainTextSource(path)) {
+                new CommentMatcher(ywdb, languageModel).extractComments(null, reader.decode(bytes), scan);
+            } else {
+                try (BufferedReader sourceReader = openSourceReader(path)) {
+                    extractCommentsFromSourceReader(null, path, sourceReader, languageModel, scan);
+                }
+            }
+            if (extractionCache != null) {
+                extractionCache.store(path, contentHash, languageModelKey, scan);
+            }
+        }
+
+        if (scanMemo != null) {
+            scanMemo.store(path, contentHash, languageModelKey, scan);
+        }
+
+        return scan;
+    }
+
+    /** Reads the source files in the tree of the configured revision of a git repository
+     *  directly from the repository's object database.  The scans of blobs found in the blob
+     *  scan cache, if one is configured, or in the extraction cache, if one is open, are
+     *  replayed rather than scanned again, so that only the files changed since a revision
+     *  previously extracted need be scanned.
+     */
+    private void extractCommentsFromGitTree(CommentListener listener) throws Exception {
+
+        try (GitSourceTree tree = new GitSourceTree(gitRepositoryPath, gitRevision, sourcePaths,
+                                                    includePatterns, excludePatterns)) {
+
+            for (GitSourceTree.SourceBlob blob = tree.next(); blob != null; blob = tree.next()) {
+                LanguageModel languageModel = languageModelForSourceFile(blob);
+                Long sourceId = insertSourceUnlessDuplicate(blob.path, deduplicated ?
+                        contentKey(blob.blobId, blob.path, languageModel) : null);
+                if (sourceId == null) continue;
+                lastLanguage = languageModel.getLanguage();
+                if (blobScanCache == null && extractionCache == null) {
+                    try (BufferedReader reader = decompressingReader(blob.path, tree.openBlob(blob))) {
+                        extractCommentsFromSourceReader(sourceId, blob.path, reader, languageModel, listener);
+                    }
+                } else {
+                    replaySourceScan(scanSourceBlob(tree, blob, languageModel), sourceId, listener);
+                }
+            }
+        }
+    }
+
+    /** Retrieves the scan of a blob from the blob scan cache or the extraction cache,
+     *  scanning the blob and adding the scan to the caches if not found.  Blobs are cached
+     *  in the extraction cache under their ids in place of file paths. */
+    private SourceScan scanSourceBlob(GitSourceTree tree, GitSourceTree.SourceBlob blob,
+                                      LanguageModel languageModel) throws Exception {
+
+        String languageModelKey = ExtractionCache.languageModelKey(languageModel);
+        String cachedPath = "git:" + blob.blobId;
+
+        SourceScan scan = null;
+        if (blobScanCache != null) {
+            scan = blobScanCache.lookup(blob.blobId, languageModelKey);
+            if (scan != null) return scan;
+        }
+
+        if (extractionCache != null) {
+            scan = extractionCache.lookup(cachedPath, blob.blobId, languageModelKey);
+        }
+
+        if (scan == null) {
+            scan = new SourceScan();
+            try (BufferedReader reader = decompressingReader(blob.path, tree.openBlob(blob))) {
+                extractCommentsFromSourceReader(null, blob.path, reader, languageModel, scan);
             }
+            if (extractionCache != null) {
+                extractionCache.store(cachedPath, blob.blobId, languageModelKey, scan);
+            }
+        }
+
+        if (blobScanCache != null) {
+            blobScanCache.store(blob.blobId, languageModelKey, scan);
+        }
+
+        return scan;
+    }
+
+    /** Inserts a source file into the YesWorkflow DB, or, if a file with identical contents
+     *  has already been extracted with the same language model during this extraction,
+     *  inserts the file as an alias of that file, sharing its lines, comments and annotations.
+     *  @param path The path of the source file.
+     *  @param contentKey The key identifying the contents of the file, or null not to look
+     *         for an identical file.
+     *  @return The id of the source inserted, or null if it was inserted as an alias.
+     */
+    private Long insertSourceUnlessDuplicate(String path, String contentKey) throws SQLException {
+
+        Long originalSourceId = (contentKey == null) ? null : sourceIdsByContent.get(contentKey);
+        if (originalSourceId != null) {
+            ywdb.insertSourceAlias(path, originalSourceId);
+            sourceAliases.put(path, originalSourceId);
+            return null;
+        }
+
+        Long sourceId = ywdb.insertSource(path);
+        if (contentKey != null) sourceIdsByContent.put(contentKey, sourceId);
+        return sourceId;
+    }
+
+    /** Computes the key identifying the contents of a source file, and how they are scanned,
+     *  for detecting duplicate source files, or returns null if deduplication is disabled. */
+    private String sourceContentKey(String path, LanguageModel languageModel) throws Exception {
+        if (!deduplicated) return null;
+        ByteBuffer bytes = sourceFileReader.get().map(sourceFilePath(path));
+        return contentKey(ExtractionCache.contentHash(bytes), path, languageModel);
+    }
+
+    private static String contentKey(String contentHash, String path, LanguageModel languageModel) {
+        return contentHash + " " + Compression.forFileName(path) + " " + ExtractionCache.languageModelKey(languageModel);
+    }
+
+    private static <T> T awaitTask(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing source files", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception)cause;
+            throw new IOException(cause);
         }
     }
 
@@ -333,36 +946,153 @@ public class DefaultExtractor implements Extractor {
                                             sourcePaths.get(0).trim().equals("-"));
     }
 
-    private LanguageModel languageModelForSourceFile(String sourcePath) {
-        LanguageModel languageModel = null;
+    private LanguageModel languageModelForSourceFile(SourceFile sourceFile) {
         if (globalLanguageModel != null) {
-            languageModel = globalLanguageModel;
+            return globalLanguageModel;
+        } else if (sourceFile.language != null) {
+            return new LanguageModel(sourceFile.language);
         } else {
-            Language language = LanguageModel.languageForFileName(sourcePath);
-            if (language != null) {
-                languageModel = new LanguageModel(language);
-            }
+            return new LanguageModel(DEFAULT_LANGUAGE);
         }
-        return languageModel;
     }
 
-    private void extractLinesCommentsFromReader(Long sourceId, BufferedReader reader, LanguageModel languageModel) throws IOException, SQLException {
+    private void extractLinesCommentsFromReader(BufferedReader reader, LanguageModel languageModel, CommentListener listener) throws Exception {
+        if (languageModel == null)  languageModel = new LanguageModel(DEFAULT_LANGUAGE);
+        lastLanguage = languageModel.getLanguage();
+        Long sourceId = ywdb.insertSource(null);
+        extractCommentsFromSourceReader(sourceId, null, reader, languageModel, listener);
+    }
+
+    private void extractLinesCommentsFromFile(Long sourceId, String path, LanguageModel languageModel, CommentListener listener) throws Exception {
         if (languageModel == null)  languageModel = new LanguageModel(DEFAULT_LANGUAGE);
         lastLanguage = languageModel.getLanguage();
+        if (pipelined || isStreamedSource(path, 1) || !isPlainTextSource(path)) {
+            streamLinesCommentsFromFile(sourceId, path, languageModel, listener);
+        } else {
+            CharBuffer source = readSourceFile(path);
+            CommentMatcher commentMatcher = new CommentMatcher(ywdb, languageModel);
+            commentMatcher.extractComments(sourceId, source, listener);
+        }
+    }
+
+    /** Scans a source file one line at a time, so that only the current line is held in memory. */
+    private void streamLinesCommentsFromFile(Long sourceId, String path, LanguageModel languageModel, CommentListener listener) throws Exception {
+        try (BufferedReader reader = openSourceReader(path)) {
+            extractCommentsFromSourceReader(sourceId, path, reader, languageModel, listener);
+        }
+    }
+
+    /** Scans the text read from a source file, or from standard input if the path is null,
+     *  for comments.  Only the code cells of a notebook are scanned, using the comment
+     *  delimiters of the notebook's kernel language unless another language is configured
+     *  for all sources.  The range of lines read from each code cell is recorded in the
+     *  scan if the listener is a {@link SourceScan}, and stored for the source otherwise. */
+    private void extractCommentsFromSourceReader(Long sourceId, String path, BufferedReader reader,
+            LanguageModel languageModel, CommentListener listener) throws Exception {
+        NotebookReader notebook = null;
+        if (isNotebook(path)) {
+            notebook = new NotebookReader(reader);
+            if (globalLanguageModel == null || globalLanguageModel.getLanguage() == Language.NOTEBOOK) {
+                Language kernelLanguage = notebook.getKernelLanguage();
+                languageModel = new LanguageModel(kernelLanguage != null ? kernelLanguage : DEFAULT_NOTEBOOK_LANGUAGE);
+            }
+            reader = new BufferedReader(notebook);
+        }
         CommentMatcher commentMatcher = new CommentMatcher(ywdb, languageModel);
-        commentMatcher.extractComments(sourceId, reader);
+        if (pipelined) {
+            try (ReadAheadReader readAhead = new ReadAheadReader(reader)) {
+                commentMatcher.extractComments(sourceId, new BufferedReader(readAhead), listener);
+            }
+        } else {
+            commentMatcher.extractComments(sourceId, reader, listener);
+        }
+        if (notebook != null) {
+            if (listener instanceof SourceScan) {
+                ((SourceScan)listener).notebook(languageModel.getLanguage(), notebook.getCells());
+            } else {
+                lastLanguage = languageModel.getLanguage();
+                storeNotebookCells(sourceId, lastLanguage, notebook.getCells());
+            }
+        }
+    }
+
+    /** Replays the scan of a source to a listener.  If the scan is of a notebook, the ranges
+     *  of lines read from its code cells are stored for the source, and the language of the
+     *  source is taken to be the kernel language of the notebook. */
+    private void replaySourceScan(SourceScan scan, Long sourceId, CommentListener listener) throws Exception {
+        scan.replay(sourceId, listener);
+        if (scan.getKernelLanguage() != null) {
+            lastLanguage = scan.getKernelLanguage();
+            storeNotebookCells(sourceId, lastLanguage, scan.getNotebookCells());
+        }
     }
 
-    private BufferedReader fileReaderForPath(String path) throws YWToolUsageException {
+    private void storeNotebookCells(Long sourceId, Language kernelLanguage,
+                                    List<NotebookReader.Cell> cells) throws SQLException {
+        notebookLanguages.put(sourceId, kernelLanguage);
+        for (NotebookReader.Cell cell : cells) {
+            ywdb.insertNotebookCell(sourceId, cell.index, cell.firstLine, cell.lineCount);
+        }
+    }
 
-        BufferedReader reader = null;
+    private boolean isNotebook(String path) {
+        return (path != null && LanguageModel.languageForFileName(path) == Language.NOTEBOOK) ||
+               (globalLanguageModel != null && globalLanguageModel.getLanguage() == Language.NOTEBOOK);
+    }
+
+    /** Determines whether a source file can be scanned as it is stored, i.e. is neither
+     *  compressed nor a notebook. */
+    private boolean isPlainTextSource(String path) {
+        return Compression.forFileName(path) == Compression.NONE && !isNotebook(path);
+    }
+
+    /** Opens a reader over the text of a source file, decompressing the file as it is read
+     *  if its name ends with the suffix of a supported compression format. */
+    private BufferedReader openSourceReader(String path) throws IOException, YWToolUsageException {
+        return decompressingReader(path, Files.newInputStream(sourceFilePath(path)));
+    }
+
+    /** Wraps a stream of the contents of a source file in a reader, decompressing the
+     *  contents as they are read if the name of the file ends with a compression suffix. */
+    private BufferedReader decompressingReader(String path, InputStream stream) throws IOException {
         try {
-            reader = new BufferedReader(new FileReader(path));
-        } catch (FileNotFoundException e) {
+            stream = Compression.forFileName(path).decompress(stream);
+        } catch (IOException e) {
+            stream.close();
+            throw new IOException("Error decompressing source file " + path + ": " + e.getMessage(), e);
+        }
+        return new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()));
+    }
+
+    /** Determines whether a source file is too large to read into memory in full within the
+     *  memory budget, given the number of files that may be held in memory at once.
+     *  Compressed files and notebooks are always streamed under a budget, as the size of
+     *  the text scanned is not known in advance. */
+    private boolean isStreamedSource(String path, int filesHeld) throws YWToolUsageException, IOException {
+        return memoryBudget != null &&
+               (!isPlainTextSource(path) ||
+                Files.size(sourceFilePath(path)) > memoryBudget.getStreamingThreshold(filesHeld));
+    }
+
+    /** Reads the contents of a source file into the character buffer of the
+     *  calling thread's reader, which is overwritten by the next file read. */
+    private CharBuffer readSourceFile(String path) throws IOException, YWToolUsageException {
+        return sourceFileReader.get().read(sourceFilePath(path));
+    }
+
+    private Path sourceFilePath(String path) throws YWToolUsageException {
+
+        Path file;
+        try {
+            file = Paths.get(path);
+        } catch (InvalidPathException e) {
+            file = null;
+        }
+        if (file == null || !Files.isRegularFile(file)) {
             throw new YWToolUsageException("ERROR: Input file not found: " + path);
         }
 
-        return reader;
+        return file;
     }
 
     private void writeCommentListing() throws IOException {
@@ -371,10 +1101,157 @@ public class DefaultExtractor implements Extractor {
         }
     }
 
+    /** Writes the skeleton of all sources to the skeleton file, if one is configured,
+     *  building it annotation by annotation on a buffered writer unless it was built already. */
     private void writeSkeletonFile() throws IOException {
-        if (skeletonFile != null) {
-            writeTextToFileOrStdout(skeletonFile, this.getSkeleton());
+
+        if (skeletonFile == null) return;
+
+        if (skeleton != null) {
+            writeTextToFileOrStdout(skeletonFile, skeleton);
+            return;
+        }
+
+        boolean toStdout = skeletonFile.equals(YWConfiguration.EMPTY_VALUE) || skeletonFile.equals("-");
+        Writer writer = toStdout ? new BufferedWriter(new OutputStreamWriter(stdoutStream)) :
+                                   Files.newBufferedWriter(Paths.get(skeletonFile), Charset.defaultCharset());
+        try {
+            writeSkeleton(allAnnotations, getSkeletonCommentDelimiter(skeletonFile), writer);
+        } finally {
+            if (toStdout) writer.flush(); else writer.close();
+        }
+    }
+
+    /** Writes one skeleton for each source file, if a skeleton directory is configured,
+     *  to the path of the source file relative to that directory.  Absolute source paths are
+     *  taken relative to their root, and sources read from standard input are skipped.
+     *  Aliases of deduplicated source files are written the skeletons of their originals.
+     *  A source whose skeleton path is already taken by another source file is written to
+     *  a numbered variant of the path, with a warning; one file listed under two spellings
+     *  of its path is written once.  The skeletons are written in parallel, one source per
+     *  task, on a pool with one thread per available processor. */
+    @SuppressWarnings("unchecked")
+    private void writeSourceSkeletons() throws Exception {
+
+        if (skeletonDirectory == null) return;
+
+        Map<Long,List<Annotation>> annotationsForSource = new LinkedHashMap<Long,List<Annotation>>();
+        for (Annotation annotation : allAnnotations) {
+            List<Annotation> annotations = annotationsForSource.get(annotation.sourceId);
+            if (annotations == null) {
+                annotations = new ArrayList<Annotation>();
+                annotationsForSource.put(annotation.sourceId, annotations);
+            }
+            annotations.add(annotation);
+        }
+        if (annotationsForSource.isEmpty()) return;
+
+        Path directory = Paths.get(skeletonDirectory);
+        Map<Path,String> sourceForSkeleton = new HashMap<Path,String>();
+        int poolSize = Math.min(annotationsForSource.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        List<Future<Void>> pendingSkeletons = new ArrayList<Future<Void>>();
+
+        try {
+            // aliases of deduplicated sources are given the skeletons of their originals
+            Result<Record> sources = ywdb.jooq().select(ID, PATH, ALIAS_OF).from(SOURCE).orderBy(ID).fetch();
+            for (Record source : sources) {
+                String sourcePath = ywdb.getStringValue(source, PATH);
+                Long originalSourceId = ywdb.getLongValue(source, ALIAS_OF);
+                Long annotatedSourceId = (originalSourceId != null) ? originalSourceId : ywdb.getLongValue(source, ID);
+                List<Annotation> annotations = annotationsForSource.get(annotatedSourceId);
+                if (sourcePath == null || annotations == null) continue;
+
+                Path skeletonPath = skeletonPath(directory, sourcePath, notebookLanguages.get(annotatedSourceId));
+                String collidingSource = sourceForSkeleton.get(skeletonPath);
+                if (collidingSource != null) {
+                    if (isSameFile(collidingSource, sourcePath)) continue;
+                    skeletonPath = unusedSkeletonPath(skeletonPath, sourceForSkeleton);
+                    stderrStream.println("WARNING: Skeleton of " + sourcePath + " written to " + skeletonPath +
+                                         " as its path is taken by the skeleton of " + collidingSource);
+                }
+                sourceForSkeleton.put(skeletonPath, sourcePath);
+
+                pendingSkeletons.add(executor.submit(sourceSkeletonTask(skeletonPath, annotations)));
+            }
+            for (Future<Void> pendingSkeleton : pendingSkeletons) {
+                awaitTask(pendingSkeleton);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<Void> sourceSkeletonTask(final Path skeletonPath, final List<Annotation> annotations) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Path parent = skeletonPath.getParent();
+                if (parent != null) Files.createDirectories(parent);
+                try (Writer writer = Files.newBufferedWriter(skeletonPath, Charset.defaultCharset())) {
+                    writeSkeleton(annotations, getSkeletonCommentDelimiter(skeletonPath.toString()), writer);
+                }
+                return null;
+            }
+        };
+    }
+
+    private static boolean isSameFile(String path, String otherPath) {
+        return Paths.get(path).toAbsolutePath().normalize().equals(Paths.get(otherPath).toAbsolutePath().normalize());
+    }
+
+    /** Returns the first of the variants <i>name</i>-2.<i>ext</i>, <i>name</i>-3.<i>ext</i>, ...
+     *  of a skeleton path not yet taken by another skeleton. */
+    private static Path unusedSkeletonPath(Path skeletonPath, Map<Path,String> sourceForSkeleton) {
+        String fileName = skeletonPath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String name = (dot > 0) ? fileName.substring(0, dot) : fileName;
+        String extension = (dot > 0) ? fileName.substring(dot) : "";
+        Path variant = skeletonPath;
+        for (int i = 2; sourceForSkeleton.containsKey(variant); ++i) {
+            variant = skeletonPath.resolveSibling(name + "-" + i + extension);
+        }
+        return variant;
+    }
+
+    private static void writeSkeleton(List<Annotation> annotations, String commentDelimiter,
+                                      Writer writer) throws IOException {
+        SkeletonBuilder sb = new SkeletonBuilder(commentDelimiter + " ", writer);
+        for (Annotation annotation : annotations) {
+            sb.add(annotation);
         }
+        sb.end();
+    }
+
+    /** Returns the path within the skeleton directory for the skeleton of a source file. */
+    static Path skeletonPath(Path directory, String sourcePath) {
+        return skeletonPath(directory, sourcePath, null);
+    }
+
+    /** Returns the path within the skeleton directory for the skeleton of a source file.
+     *  The suffix of a compressed source is dropped, and the extension of a notebook is
+     *  replaced with that of the language in which its code cells were scanned.
+     *  @param directory The skeleton directory.
+     *  @param sourcePath The path of the source file.
+     *  @param notebookLanguage The kernel language of a notebook, or null for the default.
+     */
+    static Path skeletonPath(Path directory, String sourcePath, Language notebookLanguage) {
+        String skeletonName = Compression.stripSuffix(sourcePath);
+        if (LanguageModel.languageForFileName(skeletonName) == Language.NOTEBOOK) {
+            String extension = LanguageModel.extensionForLanguage(
+                    (notebookLanguage != null) ? notebookLanguage : DEFAULT_NOTEBOOK_LANGUAGE);
+            if (extension != null) {
+                skeletonName = skeletonName.substring(0, skeletonName.lastIndexOf('.') + 1) + extension;
+            }
+        }
+        Path relativePath = Paths.get(skeletonName).normalize();
+        if (relativePath.isAbsolute()) {
+            relativePath = relativePath.getRoot().relativize(relativePath);
+        }
+        while (relativePath.getNameCount() > 1 && relativePath.getName(0).toString().equals("..")) {
+            relativePath = relativePath.subpath(1, relativePath.getNameCount());
+        }
+        return directory.resolve(relativePath.toString());
     }
 
     private void writeTextToFileOrStdout(String path, String text) throws IOException {
@@ -386,115 +1263,83 @@ public class DefaultExtractor implements Extractor {
         }
     }
 
-    @SuppressWarnings({ "unchecked" })
-    private void extractAnnotations() throws Exception {
+    /** Splits a comment line into the annotations it contains, each starting with a
+     *  YW keyword and extending up to the next keyword or the end of the line.
+     *  Text preceding the first keyword is discarded.  The line is scanned once, 
+     *  character by character, by stepping the keyword automaton of the given matcher; 
+     *  a failed partial match resumes scanning at the character after the one that failed.
+     *  @param line The comment line to split.
+     *  @param keywordMatcher The matcher defining the keywords to search for.
+     *  @return The trimmed annotation strings found on the line.
+     */
+    public static List<String> findCommentsOnLine(String line, KeywordMatcher keywordMatcher) {
 
-    	allAnnotations = new LinkedList<Annotation>();
-        primaryAnnotations = new LinkedList<Annotation>();
-        Annotation primaryAnnotation = null;
+        List<String> comments = new LinkedList<String>();
+        int state = KeywordMatcher.START_STATE;
+        int prefixStart = 0;
+        int currentCommentStart = -1;
 
-        Result<Record> rows = ywdb.jooq().select(ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
-                                         .from(Table.COMMENT)
-                                         .orderBy(SOURCE_ID, LINE_NUMBER, RANK_IN_LINE)
-                                         .fetch();
+        for (int i = 0; i < line.length(); ++i) {
 
-        for (Record comment : rows) {
-            Long sourceId = ywdb.getLongValue(comment, SOURCE_ID);
-            Long lineNumber = ywdb.getLongValue(comment, LINE_NUMBER);
-            String commentText = (String)comment.getValue(COMMENT_TEXT);
-        	List<String> annotationStrings = findCommentsOnLine(commentText, keywordMatcher);
-        	Long rankInComment = 1L;
-
-        	for (String annotationString: annotationStrings) {
-        		Tag tag = KeywordMatcher.extractInitialKeyword(annotationString, keywordMapping);
-                Annotation annotation = null;
-                Long id = nextAnnotationId++;
-
-                switch(tag) {
-
-                    case BEGIN:     annotation = new Begin(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case CALL:      annotation = new Call(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case CREATE:    annotation = new Create(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case END:       annotation = new End(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case FILE:      annotation = new FileUri(id, sourceId, lineNumber, annotationString, primaryAnnotation);
-                                    break;
-                    case IN:        annotation = new In(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case OUT:       annotation = new Out(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case AS:        annotation = new As(id, sourceId, lineNumber, annotationString, primaryAnnotation);
-                                    break;
-                    case PARAM:     annotation = new Param(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case RETURN:    annotation = new Return(id, sourceId, lineNumber, annotationString);
-                                    break;
-                    case URI:       annotation = new UriAnnotation(id, sourceId, lineNumber, annotationString, primaryAnnotation);
-                                    break;
-                }
+            state = keywordMatcher.nextState(state, line.charAt(i));
 
-                allAnnotations.add(annotation);
+            switch(keywordMatcher.matchExtent(state)) {
 
-                Long qualifiedAnnotationId = null;
-                if (annotation instanceof Qualification) {
-                    qualifiedAnnotationId = primaryAnnotation.id;
-                } else {
-                	primaryAnnotation = annotation;
-                    primaryAnnotations.add(annotation);
-                }
+                case NO_MATCH:
 
-                ywdb.insertAnnotation(qualifiedAnnotationId, ywdb.getLongValue(comment, ID), rankInComment++,
-                                      tag.toString(), annotation.keyword, annotation.name,
-                                      annotation.description());
+                    state = KeywordMatcher.START_STATE;
+                    prefixStart = i + 1;
+                    break;
 
+                case FULL_MATCH:
+
+                    if (currentCommentStart != -1) {
+                        comments.add(trimmedSubstring(line, currentCommentStart, prefixStart));
+                    }
+                    currentCommentStart = prefixStart;
+                    state = KeywordMatcher.START_STATE;
+                    prefixStart = i + 1;
+                    break;
+
+                default:
+
+                    break;
             }
         }
+
+        if (currentCommentStart != -1) {
+            comments.add(trimmedSubstring(line, currentCommentStart, line.length()));
+        }
+
+        return comments;
     }
-    
-    public static List<String> findCommentsOnLine(String line, KeywordMatcher keywordMatcher) {
-    	
-    	List<String> comments = new LinkedList<String>();
-    	StringBuilder buffer = new StringBuilder();
-    	StringBuilder currentComment = new StringBuilder();
-    	
-    	for (int i = 0; i < line.length(); ++i) {
-    		
-    		char c = line.charAt(i);
-    		buffer.append(c);
-    	
-    		switch(keywordMatcher.matchesKeyword(buffer.toString())) {
-    		
-	    		case NO_MATCH:
-	    			
-	    			if (currentComment.length() > 0) currentComment.append(buffer);
-	    			buffer.setLength(0);
-	    			break;
-	    		
-	    		case FULL_MATCH:
-	    			
-	    			if (currentComment.length() > 0) {
-	    				comments.add(currentComment.toString().trim());
-	    				currentComment.setLength(0);
-	    			}
-    				currentComment.append(buffer);
-    				buffer.setLength(0);
-    				break;
-	    			
-	    		default:
-	    			
-	    			break;
-    		}
-    	}
-    	
-    	if (currentComment.length() > 0) {
-    		currentComment.append(buffer);
-    		comments.add(currentComment.toString().trim());
-    	}
-    	
-    	return comments;
+
+    /** Returns the given range of a string without leading and trailing whitespace,
+     *  as {@link String#trim()} would, but copying the characters only once. */
+    private static String trimmedSubstring(String s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') ++start;
+        while (end > start && s.charAt(end - 1) <= ' ') --end;
+        return s.substring(start, end);
+    }
+
+    /** Subscribes a listener to the source lines and comments found during extraction.
+     *  Listeners receive lines and comments after they have been passed to the
+     *  YesWorkflow DB and to the annotation builder.
+     */
+    @Override
+    public DefaultExtractor commentListener(CommentListener listener) {
+        commentListeners.add(listener);
+        return this;
+    }
+
+    /** Subscribes a listener to the annotations found during extraction.
+     *  Listeners receive each annotation as soon as it has been extracted from its comment
+     *  and passed to the YesWorkflow DB.
+     */
+    @Override
+    public DefaultExtractor annotationListener(AnnotationListener listener) {
+        annotationListeners.add(listener);
+        return this;
     }
 
     @Override
@@ -503,12 +1348,12 @@ public class DefaultExtractor implements Extractor {
         return this;
     }
     
-    private String getSkeletonCommentDelimiter() {
+    private String getSkeletonCommentDelimiter(String skeletonPath) {
         
         // try to infer language from skeleton file name and return the
         // the single-line comment delimiter if successful
-        if (skeletonFile != null) {
-            Language language = LanguageModel.languageForFileName(skeletonFile);
+        if (skeletonPath != null) {
+            Language language = LanguageModel.languageForFileName(skeletonPath);
             if (language != null) {
                 LanguageModel languageModel = new LanguageModel(language);
                 if (languageModel.getSingleCommentDelimiters().size() > 0) {
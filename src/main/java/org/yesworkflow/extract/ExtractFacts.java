@@ -1,5 +1,6 @@
 package org.yesworkflow.extract;
 
+import static org.yesworkflow.db.Column.ALIAS_OF;
 import static org.yesworkflow.db.Column.ID;
 import static org.yesworkflow.db.Column.PATH;
 
@@ -20,6 +21,7 @@ public class ExtractFacts {
     private final List<Annotation> annotations;
     private String factsString = null;
     private FactsBuilder sourceFileFacts;
+    private FactsBuilder sourceAliasFacts;
     private FactsBuilder annotationFacts;
     private FactsBuilder descriptionFacts;
     private FactsBuilder qualificationFacts;
@@ -30,6 +32,7 @@ public class ExtractFacts {
         this.annotations = annotations;
         
         this.sourceFileFacts  = new FactsBuilder(queryEngineModel, "extract_source", "source_id", "source_path");
+        this.sourceAliasFacts = new FactsBuilder(queryEngineModel, "extract_source_alias", "source_id", "original_source_id");
         this.annotationFacts  = new FactsBuilder(queryEngineModel, "annotation", "annotation_id", "source_id", "line_number", "tag", "keyword", "value");
         this.descriptionFacts  = new FactsBuilder(queryEngineModel, "annotation_description", "annotation_id", "description");
         this.qualificationFacts = new FactsBuilder(queryEngineModel, "annotation_qualifies", "qualifying_annotation_id", "primary_annotation_id");
@@ -42,6 +45,7 @@ public class ExtractFacts {
         
         StringBuilder sb = new StringBuilder();
         sb.append(sourceFileFacts)
+          .append(sourceAliasFacts)
           .append(annotationFacts)
           .append(descriptionFacts)
           .append(qualificationFacts);
@@ -58,7 +62,7 @@ public class ExtractFacts {
     @SuppressWarnings("unchecked")
     private void buildSourceFileFacts() {
         
-        Result<Record> results = ywdb.jooq().select(ID, PATH)
+        Result<Record> results = ywdb.jooq().select(ID, PATH, ALIAS_OF)
                                      .from(Table.SOURCE)
                                      .fetch();
         
@@ -67,6 +71,10 @@ public class ExtractFacts {
             String path = (String)record.getValue(PATH);
             if (path == null) path = "";
             sourceFileFacts.add(id, path);
+            
+            // deduplicated sources share the annotations of the source they duplicate
+            Long originalId = ywdb.getLongValue(record, ALIAS_OF);
+            if (originalId != null) sourceAliasFacts.add(id, originalId);
         }
     }
     
@@ -0,0 +1,464 @@
+package org.yesworkflow.extract;
+
+import static org.yesworkflow.db.Column.*;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jooq.BatchBindStep;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.TransactionalRunnable;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.db.Table;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.extract.CommentMatcher.ScanState;
+import org.yesworkflow.util.LineDiff;
+
+/** Class that caches the source lines and comments found in source files, keyed by
+ *  file path, by a hash of the file contents, and by the comment delimiters used to scan
+ *  the file.  Backed by a persistent (SQLite) YesWorkflow DB so that sources unchanged since
+ *  a previous run can be replayed without being scanned by a {@link CommentMatcher} again.
+ *  The kernel language and code cells of a scanned notebook are cached with its lines, and
+ *  the state of the comment matcher at the start of each line with the line, so that a
+ *  source changed since it was cached can be rescanned only where it changed.
+ *  Annotations are not cached because they are re-extracted quickly from the replayed
+ *  comments, and because qualifying annotations may refer to comments in other sources.
+ *
+ *  <p>Counts of cache hits and misses are kept for reporting. All methods are synchronized
+ *  so that one instance may be shared by threads scanning sources concurrently.</p>
+ */
+public class ExtractionCache implements AutoCloseable {
+
+    /** Incremented whenever the way sources are scanned changes, invalidating cached scans. */
+    private static final int SCAN_FORMAT_VERSION = 2;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final YesWorkflowDB cacheDB;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    /** Constructs a cache backed by the given database, which must provide the
+     *  cached_source, cached_source_line, cached_comment and cached_notebook_cell tables.
+     *  @param cacheDB The database in which to store cached scans.
+     */
+    public ExtractionCache(YesWorkflowDB cacheDB) {
+        this.cacheDB = cacheDB;
+    }
+
+    /** Computes the hash identifying the contents of a source file.
+     *  @param bytes The contents of the file. The position of the buffer is not changed.
+     *  @return The SHA-256 digest of the contents as a hexadecimal string.
+     */
+    public static String contentHash(ByteBuffer bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(bytes.duplicate());
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; ++i) {
+            hex[2*i] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            hex[2*i + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /** Describes the comment delimiters of a language model, so that scans of the same
+     *  file made with different delimiters are cached separately.
+     *  @param languageModel The language model used to scan a source file.
+     *  @return A string identifying the language and comment delimiters of the model.
+     */
+    public static String languageModelKey(LanguageModel languageModel) {
+        return SCAN_FORMAT_VERSION + ":" + languageModel.getLanguage() + ":" +
+               languageModel.getSingleCommentDelimiters() + ":" +
+               new TreeMap<String,String>(languageModel.getPairedCommentDelimiters());
+    }
+
+    /** Looks up a previous scan of a source file, counting a hit or a miss.
+     *  @param path The path of the source file.
+     *  @param contentHash The hash of the current contents of the file.
+     *  @param languageModelKey The key of the language model used to scan the file.
+     *  @return The cached scan, or null if the file has not been scanned with the same
+     *          contents and language model before.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized SourceScan lookup(String path, String contentHash, String languageModelKey) throws SQLException {
+
+        Record cachedSource = cacheDB.jooq().select(ID, KERNEL_LANGUAGE, FINAL_SCAN_STATE)
+                                            .from(Table.CACHED_SOURCE)
+                                            .where(PATH.equal(path))
+                                            .and(CONTENT_HASH.equal(contentHash))
+                                            .and(LANGUAGE_MODEL.equal(languageModelKey))
+                                            .fetchOne();
+        if (cachedSource == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return readScan(cachedSource);
+    }
+
+    /** Returns the scan cached for a source file regardless of whether the file has changed
+     *  since, e.g. to rescan the changed file incrementally, without counting a lookup.
+     *  @param path The path of the source file.
+     *  @param languageModelKey The key of the language model used to scan the file.
+     *  @return The cached scan, or null if no scan recording the state of the comment matcher
+     *          at the start of each line was cached for the path with the language model.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized SourceScan previous(String path, String languageModelKey) throws SQLException {
+
+        Record cachedSource = cacheDB.jooq().select(ID, KERNEL_LANGUAGE, FINAL_SCAN_STATE)
+                                            .from(Table.CACHED_SOURCE)
+                                            .where(PATH.equal(path))
+                                            .and(LANGUAGE_MODEL.equal(languageModelKey))
+                                            .and(FINAL_SCAN_STATE.isNotNull())
+                                            .fetchAny();
+
+        return (cachedSource == null) ? null : readScan(cachedSource);
+    }
+
+    @SuppressWarnings("unchecked")
+    private SourceScan readScan(Record cachedSource) {
+
+        Long cachedSourceId = cacheDB.getLongValue(cachedSource, ID);
+        String finalScanState = cacheDB.getStringValue(cachedSource, FINAL_SCAN_STATE);
+        SourceScan scan = new SourceScan();
+
+        Result<Record> lines = cacheDB.jooq().select(LINE_NUMBER, LINE_TEXT, SCAN_STATE)
+                                             .from(Table.CACHED_SOURCE_LINE)
+                                             .where(CACHED_SOURCE_ID.equal(cachedSourceId))
+                                             .orderBy(LINE_NUMBER)
+                                             .fetch();
+        for (Record line : lines) {
+            Long lineNumber = cacheDB.getLongValue(line, LINE_NUMBER);
+            if (finalScanState != null) {
+                scan.scanState(lineNumber, ScanState.decode(cacheDB.getStringValue(line, SCAN_STATE)));
+            }
+            scan.sourceLine(null, lineNumber, cacheDB.getStringValue(line, LINE_TEXT));
+        }
+        if (finalScanState != null) {
+            scan.scanState((long)(lines.size() + 1), ScanState.decode(finalScanState));
+        }
+
+        Result<Record> comments = cacheDB.jooq().select(LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                                                .from(Table.CACHED_COMMENT)
+                                                .where(CACHED_SOURCE_ID.equal(cachedSourceId))
+                                                .orderBy(LINE_NUMBER, RANK_IN_LINE)
+                                                .fetch();
+        for (Record comment : comments) {
+            scan.comment(null, cacheDB.getLongValue(comment, LINE_NUMBER),
+                               cacheDB.getLongValue(comment, RANK_IN_LINE),
+                               cacheDB.getStringValue(comment, COMMENT_TEXT));
+        }
+
+        String kernelLanguage = cacheDB.getStringValue(cachedSource, KERNEL_LANGUAGE);
+        if (kernelLanguage != null) {
+            List<NotebookReader.Cell> cells = new ArrayList<NotebookReader.Cell>();
+            Result<Record> cachedCells = cacheDB.jooq().select(CELL_INDEX, FIRST_LINE, LINE_COUNT)
+                                                       .from(Table.CACHED_NOTEBOOK_CELL)
+                                                       .where(CACHED_SOURCE_ID.equal(cachedSourceId))
+                                                       .orderBy(FIRST_LINE)
+                                                       .fetch();
+            for (Record cell : cachedCells) {
+                cells.add(new NotebookReader.Cell(cacheDB.getLongValue(cell, CELL_INDEX).intValue(),
+                                                  cacheDB.getLongValue(cell, FIRST_LINE),
+                                                  cacheDB.getLongValue(cell, LINE_COUNT)));
+            }
+            scan.notebook(Language.valueOf(kernelLanguage), cells);
+        }
+
+        return scan;
+    }
+
+    /** Stores the scan of a source file, replacing any scans previously cached for the path.
+     *  A scan replacing one made with the same language model is stored as the differences
+     *  between the two, so that the rows of the lines and comments left unchanged keep their ids.
+     *  @param path The path of the source file.
+     *  @param contentHash The hash of the contents of the file that was scanned.
+     *  @param languageModelKey The key of the language model used to scan the file.
+     *  @param scan The lines and comments found in the file.
+     */
+    public synchronized void store(final String path, final String contentHash,
+                                   final String languageModelKey, final SourceScan scan) throws SQLException {
+        try {
+            cacheDB.jooq().transaction(new TransactionalRunnable() {
+                @Override
+                public void run(Configuration configuration) throws Exception {
+                    storeInTransaction(DSL.using(configuration), path, contentHash, languageModelKey, scan);
+                }
+            });
+        } catch (DataAccessException e) {
+            throw new SQLException("Error caching scan of " + path, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeInTransaction(DSLContext jooq, String path, String contentHash,
+                                    String languageModelKey, SourceScan scan) throws Exception {
+
+        Long cachedSourceId = null;
+        Result<Record> staleSources = jooq.select(ID, LANGUAGE_MODEL)
+                                          .from(Table.CACHED_SOURCE)
+                                          .where(PATH.equal(path))
+                                          .fetch();
+        for (Record staleSource : staleSources) {
+            Long staleSourceId = cacheDB.getLongValue(staleSource, ID);
+            if (cachedSourceId == null && languageModelKey.equals(cacheDB.getStringValue(staleSource, LANGUAGE_MODEL))) {
+                cachedSourceId = staleSourceId;
+            } else {
+                jooq.delete(Table.CACHED_SOURCE_LINE).where(CACHED_SOURCE_ID.equal(staleSourceId)).execute();
+                jooq.delete(Table.CACHED_COMMENT).where(CACHED_SOURCE_ID.equal(staleSourceId)).execute();
+                jooq.delete(Table.CACHED_NOTEBOOK_CELL).where(CACHED_SOURCE_ID.equal(staleSourceId)).execute();
+                jooq.delete(Table.CACHED_SOURCE).where(ID.equal(staleSourceId)).execute();
+            }
+        }
+
+        String kernelLanguage = (scan.getKernelLanguage() == null) ? null : scan.getKernelLanguage().name();
+        String finalScanState = scan.hasScanStates() ? ScanState.encode(scan.getScanState(scan.getLineCount())) : null;
+
+        if (cachedSourceId == null) {
+            jooq.insertInto(Table.CACHED_SOURCE)
+                .set(PATH, path)
+                .set(CONTENT_HASH, contentHash)
+                .set(LANGUAGE_MODEL, languageModelKey)
+                .set(KERNEL_LANGUAGE, kernelLanguage)
+                .set(FINAL_SCAN_STATE, finalScanState)
+                .execute();
+            cachedSourceId = jooq.lastID().longValue();
+            insertLines(jooq, cachedSourceId, scan);
+        } else {
+            jooq.update(Table.CACHED_SOURCE)
+                .set(CONTENT_HASH, contentHash)
+                .set(KERNEL_LANGUAGE, kernelLanguage)
+                .set(FINAL_SCAN_STATE, finalScanState)
+                .where(ID.equal(cachedSourceId))
+                .execute();
+            jooq.delete(Table.CACHED_NOTEBOOK_CELL).where(CACHED_SOURCE_ID.equal(cachedSourceId)).execute();
+            updateLines(jooq, cachedSourceId, scan);
+        }
+
+        for (NotebookReader.Cell cell : scan.getNotebookCells()) {
+            jooq.insertInto(Table.CACHED_NOTEBOOK_CELL, CACHED_SOURCE_ID, CELL_INDEX, FIRST_LINE, LINE_COUNT)
+                .values(cachedSourceId, (long)cell.index, cell.firstLine, cell.lineCount)
+                .execute();
+        }
+    }
+
+    /** Inserts all of the lines and comments of a scan. */
+    private void insertLines(DSLContext jooq, Long cachedSourceId, SourceScan scan) {
+
+        RowBatch rows = new RowBatch(jooq);
+        for (int i = 0; i < scan.getLineCount(); ++i) {
+            Long lineNumber = (long)(i + 1);
+            rows.insertLine(cachedSourceId, lineNumber, scan.getLineTexts().get(i), lineScanState(scan, i));
+            for (int c = scan.firstCommentOfLine(i); c < scan.firstCommentOfLine(i + 1); ++c) {
+                rows.insertComment(cachedSourceId, lineNumber, scan.getCommentRank(c), scan.getCommentText(c));
+            }
+        }
+        rows.execute();
+    }
+
+    /** Replaces the cached lines and comments of a source with those of a new scan of it,
+     *  matching the lines of the two scans, and updating the rows of the matched lines and of
+     *  their comments if unchanged rather than deleting them and inserting new rows. */
+    @SuppressWarnings("unchecked")
+    private void updateLines(DSLContext jooq, Long cachedSourceId, SourceScan scan) {
+
+        Result<Record> cachedLines = jooq.select(ID, LINE_NUMBER, LINE_TEXT, SCAN_STATE)
+                                         .from(Table.CACHED_SOURCE_LINE)
+                                         .where(CACHED_SOURCE_ID.equal(cachedSourceId))
+                                         .orderBy(LINE_NUMBER)
+                                         .fetch();
+        Result<Record> cachedComments = jooq.select(ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                                            .from(Table.CACHED_COMMENT)
+                                            .where(CACHED_SOURCE_ID.equal(cachedSourceId))
+                                            .orderBy(LINE_NUMBER, RANK_IN_LINE)
+                                            .fetch();
+
+        List<String> cachedTexts = new ArrayList<String>(cachedLines.size());
+        for (Record line : cachedLines) cachedTexts.add(cacheDB.getStringValue(line, LINE_TEXT));
+        Map<Long,List<Record>> commentsOfLine = new HashMap<Long,List<Record>>();
+        for (Record comment : cachedComments) {
+            Long lineNumber = cacheDB.getLongValue(comment, LINE_NUMBER);
+            List<Record> comments = commentsOfLine.get(lineNumber);
+            if (comments == null) {
+                comments = new ArrayList<Record>();
+                commentsOfLine.put(lineNumber, comments);
+            }
+            comments.add(comment);
+        }
+
+        int[] cachedLineOfLine = LineDiff.match(cachedTexts, scan.getLineTexts());
+        boolean[] cachedLineKept = new boolean[cachedLines.size()];
+        RowBatch rows = new RowBatch(jooq);
+
+        for (int i = 0; i < scan.getLineCount(); ++i) {
+
+            Long lineNumber = (long)(i + 1);
+            String scanState = lineScanState(scan, i);
+            int firstComment = scan.firstCommentOfLine(i);
+            int endComment = scan.firstCommentOfLine(i + 1);
+
+            if (cachedLineOfLine[i] == -1) {
+                rows.insertLine(cachedSourceId, lineNumber, scan.getLineTexts().get(i), scanState);
+                for (int c = firstComment; c < endComment; ++c) {
+                    rows.insertComment(cachedSourceId, lineNumber, scan.getCommentRank(c), scan.getCommentText(c));
+                }
+                continue;
+            }
+
+            Record cachedLine = cachedLines.get(cachedLineOfLine[i]);
+            cachedLineKept[cachedLineOfLine[i]] = true;
+            Long cachedLineNumber = cacheDB.getLongValue(cachedLine, LINE_NUMBER);
+            if (!cachedLineNumber.equals(lineNumber) || !equal(scanState, cacheDB.getStringValue(cachedLine, SCAN_STATE))) {
+                rows.updateLine(cacheDB.getLongValue(cachedLine, ID), lineNumber, scanState);
+            }
+
+            List<Record> comments = commentsOfLine.get(cachedLineNumber);
+            if (comments == null) comments = Collections.emptyList();
+            boolean commentsUnchanged = (comments.size() == endComment - firstComment);
+            for (int c = firstComment; commentsUnchanged && c < endComment; ++c) {
+                Record comment = comments.get(c - firstComment);
+                commentsUnchanged = scan.getCommentRank(c).equals(cacheDB.getLongValue(comment, RANK_IN_LINE)) &&
+                                    scan.getCommentText(c).equals(cacheDB.getStringValue(comment, COMMENT_TEXT));
+            }
+            if (commentsUnchanged) {
+                if (!cachedLineNumber.equals(lineNumber)) {
+                    for (Record comment : comments) rows.updateComment(cacheDB.getLongValue(comment, ID), lineNumber);
+                }
+            } else {
+                for (Record comment : comments) rows.deleteComment(cacheDB.getLongValue(comment, ID));
+                for (int c = firstComment; c < endComment; ++c) {
+                    rows.insertComment(cachedSourceId, lineNumber, scan.getCommentRank(c), scan.getCommentText(c));
+                }
+            }
+        }
+
+        for (int j = 0; j < cachedLines.size(); ++j) {
+            if (cachedLineKept[j]) continue;
+            Record cachedLine = cachedLines.get(j);
+            rows.deleteLine(cacheDB.getLongValue(cachedLine, ID));
+            List<Record> comments = commentsOfLine.get(cacheDB.getLongValue(cachedLine, LINE_NUMBER));
+            if (comments != null) {
+                for (Record comment : comments) rows.deleteComment(cacheDB.getLongValue(comment, ID));
+            }
+        }
+
+        // rows are deleted first so that no two rows of a source share a line number at once
+        rows.execute();
+    }
+
+    /** Returns the encoded state of the comment matcher at the start of a line of a scan,
+     *  or null if the scan did not record the states. */
+    private static String lineScanState(SourceScan scan, int lineIndex) {
+        return scan.hasScanStates() ? ScanState.encode(scan.getScanState(lineIndex)) : null;
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    /** Returns the number of lookups that found a cached scan. */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /** Returns the number of lookups that did not find a cached scan. */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /** Closes the database backing the cache. */
+    @Override
+    public synchronized void close() throws SQLException {
+        cacheDB.close();
+    }
+
+    /** The batched inserts, updates and deletes of the cached lines and comments of a source. */
+    private static class RowBatch {
+
+        private final BatchBindStep lineDeletes;
+        private final BatchBindStep commentDeletes;
+        private final BatchBindStep lineUpdates;
+        private final BatchBindStep commentUpdates;
+        private final BatchBindStep lineInserts;
+        private final BatchBindStep commentInserts;
+        private final int[] counts = new int[6];
+
+        @SuppressWarnings("unchecked")
+        RowBatch(DSLContext jooq) {
+            lineDeletes = jooq.batch(jooq.delete(Table.CACHED_SOURCE_LINE).where(ID.equal((Object)null)));
+            commentDeletes = jooq.batch(jooq.delete(Table.CACHED_COMMENT).where(ID.equal((Object)null)));
+            lineUpdates = jooq.batch(jooq.update(Table.CACHED_SOURCE_LINE)
+                                         .set(LINE_NUMBER, (Object)null)
+                                         .set(SCAN_STATE, (Object)null)
+                                         .where(ID.equal((Object)null)));
+            commentUpdates = jooq.batch(jooq.update(Table.CACHED_COMMENT)
+                                            .set(LINE_NUMBER, (Object)null)
+                                            .where(ID.equal((Object)null)));
+            lineInserts = jooq.batch(jooq.insertInto(Table.CACHED_SOURCE_LINE, CACHED_SOURCE_ID, LINE_NUMBER, LINE_TEXT, SCAN_STATE)
+                                         .values(null, null, null, null));
+            commentInserts = jooq.batch(jooq.insertInto(Table.CACHED_COMMENT, CACHED_SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                                            .values(null, null, null, null));
+        }
+
+        void deleteLine(Long id) {
+            lineDeletes.bind(id);
+            counts[0]++;
+        }
+
+        void deleteComment(Long id) {
+            commentDeletes.bind(id);
+            counts[1]++;
+        }
+
+        void updateLine(Long id, Long lineNumber, String scanState) {
+            lineUpdates.bind(lineNumber, scanState, id);
+            counts[2]++;
+        }
+
+        void updateComment(Long id, Long lineNumber) {
+            commentUpdates.bind(lineNumber, id);
+            counts[3]++;
+        }
+
+        void insertLine(Long cachedSourceId, Long lineNumber, String lineText, String scanState) {
+            lineInserts.bind(cachedSourceId, lineNumber, lineText, scanState);
+            counts[4]++;
+        }
+
+        void insertComment(Long cachedSourceId, Long lineNumber, Long rankInLine, String commentText) {
+            commentInserts.bind(cachedSourceId, lineNumber, rankInLine, commentText);
+            counts[5]++;
+        }
+
+        /** Executes the deletes, then the updates, then the inserts. */
+        void execute() {
+            BatchBindStep[] batches = { lineDeletes, commentDeletes, lineUpdates,
+                                        commentUpdates, lineInserts, commentInserts };
+            for (int i = 0; i < batches.length; ++i) {
+                if (counts[i] > 0) batches[i].execute();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.yesworkflow.extract;
+
+import java.sql.SQLException;
+
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
+import org.yesworkflow.annotations.Qualification;
+import org.yesworkflow.db.BatchInserter;
+
+/** Class that stores the source lines, comments and annotations it receives in the
+ *  YesWorkflow DB via a {@link BatchInserter}.  Each annotation is attributed to the
+ *  comment received most recently, so it must be subscribed to an
+ *  {@link AnnotationBuilder} that receives comments after this inserter does.
+ *
+ *  <p>Because the batch inserter does not retrieve generated ids, the inserter assigns
+ *  comment ids itself, consecutively from the id given to the constructor, and inserts
+ *  each comment with the id it attributes annotations to.  The ids must not be in use:
+ *  if another writer inserts comments into the same DB while the inserter is in use, the
+ *  batch containing a clashing id fails with a key violation instead of annotations
+ *  being attributed to the wrong comments.</p>
+ */
+public class ExtractionInserter extends CommentInserter implements AnnotationListener {
+
+    private final BatchInserter inserter;
+    private Long nextCommentId;
+    private Long currentCommentId = null;
+    private long nextRankInComment = 1;
+
+    public ExtractionInserter(BatchInserter inserter, Long firstCommentId) {
+        super(inserter);
+        this.inserter = inserter;
+        this.nextCommentId = firstCommentId;
+    }
+
+    @Override
+    public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws SQLException {
+        currentCommentId = nextCommentId++;
+        inserter.insertComment(currentCommentId, sourceId, lineNumber, rankInLine, commentText);
+        nextRankInComment = 1;
+    }
+
+    @Override
+    public void annotation(Annotation annotation) throws SQLException {
+
+        if (currentCommentId == null) {
+            throw new IllegalStateException("Annotation received before any comment.");
+        }
+
+        Long qualifiedAnnotationId = (annotation instanceof Qualification) ?
+                ((Qualification)annotation).primaryAnnotation.id : null;
+
+        inserter.insertAnnotation(qualifiedAnnotationId, currentCommentId, nextRankInComment++,
+                                  annotation.tag.toString(), annotation.keyword, annotation.name,
+                                  annotation.description());
+    }
+}
@@ -7,12 +7,15 @@ import java.util.Map;
 import org.yesworkflow.Language;
 import org.yesworkflow.YWStage;
 import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
 import org.yesworkflow.query.QueryEngineModel;
 
 public interface Extractor extends YWStage {
     Extractor configure(String key, Object value) throws Exception;
     Extractor configure(Map<String, Object> config) throws Exception;
     Extractor reader(Reader reader);
+    Extractor commentListener(CommentListener listener);
+    Extractor annotationListener(AnnotationListener listener);
     Extractor extract() throws Exception;
     Language getLanguage();
     String getSkeleton();
@@ -0,0 +1,186 @@
+package org.yesworkflow.extract;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.exceptions.YWToolUsageException;
+import org.yesworkflow.extract.SourceTreeWalker.SourceFile;
+
+/** Class that lists the source files in the tree of a commit of a local git repository,
+ *  reading their contents directly from the object database of the repository so that
+ *  no working tree need be checked out.  Source paths are relative to the root of the
+ *  tree, and are expanded into source files as by a {@link SourceTreeWalker}: paths naming
+ *  files are passed on as given, and paths naming directories are walked recursively,
+ *  applying the include and exclude patterns to paths relative to the directory.  The
+ *  whole tree is walked if no source paths are given.
+ *
+ *  <p>Each source file is returned with the id of the blob holding its contents, which
+ *  identifies the contents across revisions of the repository.  Instances are not thread
+ *  safe; blobs are read on the thread walking the tree.</p>
+ */
+public class GitSourceTree implements AutoCloseable {
+
+    /** A source file found in the tree, and the id of the blob holding its contents. */
+    public static class SourceBlob extends SourceFile {
+
+        public final String blobId;
+
+        public SourceBlob(String path, Language language, String blobId) {
+            super(path, language);
+            this.blobId = blobId;
+        }
+    }
+
+    private final Repository repository;
+    private final ObjectReader reader;
+    private final ObjectId treeId;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final LinkedList<String> pendingPaths = new LinkedList<String>();
+    private TreeWalk walk = null;
+    private String walkPrefix = null;
+
+    /** Opens a git repository and resolves the tree of the given revision.
+     *  @param repositoryPath The path of the working tree or git directory of the repository.
+     *  @param revision The commit or tree to list, in any form accepted by <code>git rev-parse</code>.
+     *  @param sourcePaths The paths of the source files and directories within the tree.
+     *  @param includePatterns Globs matching the files to include from directories.
+     *  @param excludePatterns Globs matching the files and subdirectories to skip.
+     *  @throws YWToolUsageException if the repository or revision is not found.
+     */
+    public GitSourceTree(String repositoryPath, String revision, List<String> sourcePaths,
+                         List<String> includePatterns, List<String> excludePatterns) throws Exception {
+
+        FileRepositoryBuilder builder = new FileRepositoryBuilder().findGitDir(new File(repositoryPath));
+        if (builder.getGitDir() == null) {
+            throw new YWToolUsageException("ERROR: Git repository not found: " + repositoryPath);
+        }
+
+        this.repository = builder.setMustExist(true).build();
+        this.reader = repository.newObjectReader();
+        this.includes = SourceTreeWalker.pathMatchers(includePatterns);
+        this.excludes = SourceTreeWalker.pathMatchers(excludePatterns);
+
+        try {
+            this.treeId = repository.resolve(revision + "^{tree}");
+        } catch (RevisionSyntaxException | IOException e) {
+            close();
+            throw new YWToolUsageException("ERROR: Invalid revision of git repository: " + revision);
+        }
+        if (treeId == null) {
+            close();
+            throw new YWToolUsageException("ERROR: Revision not found in git repository: " + revision);
+        }
+
+        if (sourcePaths == null || sourcePaths.isEmpty()) {
+            pendingPaths.add("");
+        } else {
+            pendingPaths.addAll(sourcePaths);
+        }
+    }
+
+    /** Returns the id of the tree being listed. */
+    public String getTreeId() {
+        return treeId.name();
+    }
+
+    /** Returns the next source file in the tree.
+     *  @return The next source file, or null if all source files have been returned.
+     *  @throws YWToolUsageException If a source path is not found in the tree.
+     */
+    public SourceBlob next() throws Exception {
+
+        while (true) {
+
+            if (walk == null) {
+                if (pendingPaths.isEmpty()) return null;
+                SourceBlob blob = startWalk(pendingPaths.removeFirst());
+                if (blob != null) return blob;
+                continue;
+            }
+
+            if (!walk.next()) {
+                walk.close();
+                walk = null;
+                continue;
+            }
+
+            String relativePath = walk.getPathString();
+            if (SourceTreeWalker.matchesAny(excludes, Paths.get(relativePath))) continue;
+
+            if (walk.isSubtree()) {
+                walk.enterSubtree();
+            } else if (isFile(walk.getFileMode(0))) {
+                Language language = LanguageModel.languageForFileName(walk.getNameString());
+                if (includes.isEmpty() ? language != Language.GENERIC :
+                                         SourceTreeWalker.matchesAny(includes, Paths.get(relativePath))) {
+                    return new SourceBlob(walkPrefix + relativePath, language, walk.getObjectId(0).name());
+                }
+            }
+        }
+    }
+
+    /** Opens a stream over the contents of a source file found in the tree.
+     *  @param blob The source file.
+     *  @return A stream reading the blob from the object database.
+     */
+    public InputStream openBlob(SourceBlob blob) throws IOException {
+        return reader.open(ObjectId.fromString(blob.blobId), Constants.OBJ_BLOB).openStream();
+    }
+
+    /** Closes the repository. */
+    @Override
+    public void close() {
+        if (walk != null) walk.close();
+        reader.close();
+        repository.close();
+    }
+
+    /** Looks up a source path in the tree, returning the source file it names, or
+     *  starting a walk of the directory it names and returning null. */
+    private SourceBlob startWalk(String sourcePath) throws Exception {
+
+        String path = sourcePath.trim();
+        while (path.startsWith("./")) path = path.substring(2);
+        while (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+
+        if (path.isEmpty() || path.equals(".")) {
+            walk = new TreeWalk(reader);
+            walk.addTree(treeId);
+            walkPrefix = "";
+            return null;
+        }
+
+        try (TreeWalk found = TreeWalk.forPath(reader, path, treeId)) {
+            if (found == null) {
+                throw new YWToolUsageException("ERROR: Input file not found in git revision: " + sourcePath);
+            } else if (found.isSubtree()) {
+                walk = new TreeWalk(reader);
+                walk.addTree(found.getObjectId(0));
+                walkPrefix = path + "/";
+                return null;
+            } else {
+                return new SourceBlob(path, LanguageModel.languageForFileName(path), found.getObjectId(0).name());
+            }
+        }
+    }
+
+    private static boolean isFile(FileMode mode) {
+        return mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE;
+    }
+}
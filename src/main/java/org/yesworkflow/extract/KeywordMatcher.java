@@ -1,9 +1,13 @@
 package org.yesworkflow.extract;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.yesworkflow.YWKeywords;
 import org.yesworkflow.YWKeywords.Tag;
@@ -11,45 +15,163 @@ import org.yesworkflow.YWKeywords.Tag;
 /** Simple class for searching a list of comment lines for those
  *  containing YW keywords.  Optionally trims from each line
  *  characters preceding the first YW keyword.
+ *
+ *  <p>The keywords are compiled once into a trie (prefix tree) whose nodes are
+ *  identified by integer states.  Failure links computed over the trie turn it into
+ *  an Aho-Corasick automaton, so that a comment line can be searched for all keywords
+ *  in a single pass.  Matching is case-insensitive and does not allocate any objects
+ *  per character scanned.</p>
  */
 public class KeywordMatcher {
-    
-    /** storage for the collection of YW keywords to match lines against */
-    private Set<String> keywords = new HashSet<String>();
-    
+
+    /** State of the automaton before any characters have been matched. */
+    public static final int START_STATE = 0;
+
+    /** Pseudo-state returned when a character cannot extend the current keyword prefix. */
+    public static final int NO_MATCH_STATE = -1;
+
+    /** Characters separating the tokens of an annotation, as for a default StringTokenizer. */
+    private static final String TOKEN_DELIMITERS = " \t\n\r\f";
+
+    /** Sorted characters labeling the trie edges leaving each state. */
+    private final char[][] edgeLabels;
+
+    /** Target states of the trie edges leaving each state, parallel to edgeLabels. */
+    private final int[][] edgeTargets;
+
+    /** Aho-Corasick failure link for each state, i.e. the state for the longest proper
+     *  suffix of the state's prefix that is also a keyword prefix. */
+    private final int[] failure;
+
+    /** Length of the longest keyword that is a suffix of each state's prefix, or 0 if none. */
+    private final int[] matchLength;
+
+    /** Whether each state corresponds to a complete keyword. */
+    private final boolean[] isKeyword;
+
+    /** Length of the longest keyword. */
+    private final int maxKeywordLength;
+
     /** Constructs an instance configured to match comment lines against the
      *  provided collection of keywords.
      *  @param keywords The YW keywords against which comment lines are matched.
      */
     public KeywordMatcher(Collection<String> keywords) {
-        this.keywords.addAll(keywords);
+
+        // build the trie using temporary per-state edge maps
+        List<TreeMap<Character,Integer>> edges = new ArrayList<TreeMap<Character,Integer>>();
+        List<Boolean> keywordStates = new ArrayList<Boolean>();
+        edges.add(new TreeMap<Character,Integer>());
+        keywordStates.add(false);
+        int longest = 0;
+
+        for (String keyword : new TreeSet<String>(keywords)) {
+            int state = START_STATE;
+            for (int i = 0; i < keyword.length(); ++i) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                Integer next = edges.get(state).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new TreeMap<Character,Integer>());
+                    keywordStates.add(false);
+                    edges.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (keyword.length() > 0) keywordStates.set(state, true);
+            longest = Math.max(longest, keyword.length());
+        }
+
+        // compile the edge maps into sorted arrays
+        int stateCount = edges.size();
+        edgeLabels = new char[stateCount][];
+        edgeTargets = new int[stateCount][];
+        isKeyword = new boolean[stateCount];
+        for (int state = 0; state < stateCount; ++state) {
+            TreeMap<Character,Integer> stateEdges = edges.get(state);
+            edgeLabels[state] = new char[stateEdges.size()];
+            edgeTargets[state] = new int[stateEdges.size()];
+            int i = 0;
+            for (Map.Entry<Character,Integer> edge : stateEdges.entrySet()) {
+                edgeLabels[state][i] = edge.getKey();
+                edgeTargets[state][i++] = edge.getValue();
+            }
+            isKeyword[state] = keywordStates.get(state);
+        }
+        maxKeywordLength = longest;
+
+        // compute failure links and match lengths breadth-first from the start state
+        failure = new int[stateCount];
+        matchLength = new int[stateCount];
+        int[] depth = new int[stateCount];
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        queue.add(START_STATE);
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            for (int i = 0; i < edgeLabels[state].length; ++i) {
+                int child = edgeTargets[state][i];
+                depth[child] = depth[state] + 1;
+                failure[child] = (state == START_STATE) ? START_STATE :
+                                 searchTransition(failure[state], edgeLabels[state][i]);
+                matchLength[child] = isKeyword[child] ? depth[child] : matchLength[failure[child]];
+                queue.add(child);
+            }
+        }
     }
-    
+
+    /** Constructs an instance configured to match comment lines against
+     *  all of the keywords defined in the given keyword mapping.
+     *  @param keywords The YW keyword mapping to match comment lines against.
+     */
+    public KeywordMatcher(YWKeywords keywords) {
+        this(keywords.getKeywords());
+    }
+
     public static enum MatchExtent {
         NO_MATCH,
         PREFIX_MATCH,
         FULL_MATCH
     }
-    
+
+    /** Extends a keyword prefix match by one character.
+     *  @param state The state reached by the prefix matched so far,
+     *               or {@link #START_STATE} if nothing has been matched yet.
+     *  @param c The next character.
+     *  @return The state reached, or {@link #NO_MATCH_STATE} if the prefix followed by
+     *          c is not a prefix of any keyword.
+     */
+    public int nextState(int state, char c) {
+        if (state == NO_MATCH_STATE) return NO_MATCH_STATE;
+        int i = Arrays.binarySearch(edgeLabels[state], Character.toLowerCase(c));
+        return (i < 0) ? NO_MATCH_STATE : edgeTargets[state][i];
+    }
+
+    /** Reports the extent to which the characters leading to the given state match a keyword.
+     *  A string equal to a keyword is reported as a full match even if it also is a
+     *  prefix of a longer keyword.
+     *  @param state A state returned by {@link #nextState(int, char) nextState()}.
+     *  @return The extent of the match.
+     */
+    public MatchExtent matchExtent(int state) {
+        if (state == NO_MATCH_STATE) return MatchExtent.NO_MATCH;
+        if (isKeyword[state]) return MatchExtent.FULL_MATCH;
+        return (edgeLabels[state].length > 0) ? MatchExtent.PREFIX_MATCH : MatchExtent.NO_MATCH;
+    }
+
     public MatchExtent matchesKeyword(String s) {
-        
-        String sl = s.toLowerCase();
-        
-        // look for a match with single-line comment start delimiter
-        for (String keyword : keywords) {
-            if (keyword.startsWith(sl)) {
-                return (s.length() == keyword.length()) ? MatchExtent.FULL_MATCH : MatchExtent.PREFIX_MATCH;
-            }
+        int state = START_STATE;
+        for (int i = 0; i < s.length() && state != NO_MATCH_STATE; ++i) {
+            state = nextState(state, s.charAt(i));
         }
-        return MatchExtent.NO_MATCH;
+        return matchExtent(state);
     }
-    
+
     /** Searches a comment line for YW keywords.  Returns the line if
      *  a keyword is found and null otherwise.  Trims characters
      *  preceding the first keyword in the return value if requested.
      * @param line The comment line to search for YW keywords.
      * @param trim Characters preceding first keyword are trimmed in the return value if true.
-     * @return The (optionally trimmed) comment line if it contains a YW keyword, or null otherwise. 
+     * @return The (optionally trimmed) comment line if it contains a YW keyword, or null otherwise.
      */
     public String match(String line, boolean trim) {
         int start = findKeyword(line);
@@ -59,32 +181,54 @@ public class KeywordMatcher {
             return null;
         }
     }
-    
+
     /** Finds the first occurrence of a YW keyword in a comment line.
      *  Returns the index of the start of the keyword or -1 if no keyword is found.
-     *  
-     *  <p><i>TODO: If the performance of this method proves unsatisfactory, replace it
-     *  with an implementation that uses a trie (prefix tree) to represent the set of
-     *  keywords.</i></p>
-     *  
+     *  Scans the line once using the failure links of the keyword automaton, stopping
+     *  as soon as no keyword ending further along the line could start earlier than
+     *  one already found.
+     *
      *  @param line The comment line to search for YW keywords.
-     *  @return The start index of the first keyword found, or -1 if no keyword is found. 
+     *  @return The start index of the first keyword found, or -1 if no keyword is found.
      */
     public int findKeyword(String line) {
-        String lineLowerCase = line.toLowerCase();
         int firstKeywordStart = -1;
-        for (String keyword : keywords) {
-            int start = lineLowerCase.indexOf(keyword);
-            if (start == -1) continue;
-            if (firstKeywordStart == -1 || start < firstKeywordStart) {
-                firstKeywordStart = start;
+        int state = START_STATE;
+        for (int i = 0; i < line.length(); ++i) {
+            if (firstKeywordStart != -1 && i - maxKeywordLength + 1 >= firstKeywordStart) break;
+            state = searchTransition(state, Character.toLowerCase(line.charAt(i)));
+            if (matchLength[state] > 0) {
+                int start = i - matchLength[state] + 1;
+                if (firstKeywordStart == -1 || start < firstKeywordStart) {
+                    firstKeywordStart = start;
+                }
             }
         }
         return firstKeywordStart;
     }
-    
+
+    /** Looks up the tag of the first whitespace-delimited token of a string without
+     *  copying the token.
+     *  @param s The string beginning with a YW keyword.
+     *  @param keywords The keyword mapping to look the token up in.
+     *  @return The tag corresponding to the first token, or null if it is not a keyword.
+     */
     public static Tag extractInitialKeyword(String s, YWKeywords keywords) {
-        String firstToken = new StringTokenizer(s).nextToken();
-        return keywords.getTag(firstToken);
+        int start = 0;
+        while (start < s.length() && TOKEN_DELIMITERS.indexOf(s.charAt(start)) != -1) ++start;
+        int end = start;
+        while (end < s.length() && TOKEN_DELIMITERS.indexOf(s.charAt(end)) == -1) ++end;
+        return keywords.getTag(s, start, end);
+    }
+
+    /** Follows the trie edge labeled c from state, falling back along failure links
+     *  until such an edge is found or the start state is reached. */
+    private int searchTransition(int state, char c) {
+        while (true) {
+            int i = Arrays.binarySearch(edgeLabels[state], c);
+            if (i >= 0) return edgeTargets[state][i];
+            if (state == START_STATE) return START_STATE;
+            state = failure[state];
+        }
     }
 }
@@ -0,0 +1,20 @@
+package org.yesworkflow.extract;
+
+public enum LineStorage {
+    
+    ALL,
+    ANNOTATED;
+    
+    public static LineStorage toLineStorage(Object ls) throws Exception {
+                
+        if (ls instanceof LineStorage) return (LineStorage)ls;
+        
+        if (ls instanceof String) {
+            String lsstring = (String)ls; 
+            if (lsstring.equalsIgnoreCase("all")) return LineStorage.ALL;
+            if (lsstring.equalsIgnoreCase("annotated")) return LineStorage.ANNOTATED;
+        }
+        
+        throw new Exception("Unrecognized LineStorage: " + ls);
+    }
+}
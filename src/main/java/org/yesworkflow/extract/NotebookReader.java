@@ -0,0 +1,332 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.util.JsonPullParser;
+import org.yesworkflow.util.JsonPullParser.Token;
+
+/** Class that reads the source code of the code cells of a Jupyter notebook, presenting
+ *  the lines of the code cells, in order, as plain text to be scanned for comments.
+ *  The notebook is parsed with a {@link JsonPullParser} as it is read, and the outputs and
+ *  other contents of the cells are skipped without being held in memory.
+ *
+ *  <p>The language of the notebook's kernel is taken from the notebook metadata, which
+ *  usually follows the cells.  The constructor reads ahead until the kernel language is
+ *  known, buffering the code, but not the outputs, of the cells read so far.  Both the
+ *  current (version 4) and the version 3 notebook formats are supported.</p>
+ *
+ *  <p>Each line of the text read corresponds to one line of a code cell.  The cells read
+ *  so far are available from {@link #getCells()}, each with its index among all cells of
+ *  the notebook and the range of line numbers its lines occupy in the text.</p>
+ */
+public class NotebookReader extends Reader {
+
+    /** A code cell, and the range of lines its source occupies in the text read. */
+    public static class Cell {
+
+        /** The zero-based index of the cell among all cells of the notebook. */
+        public final int index;
+
+        /** The line number in the text read of the first line of the cell. */
+        public final long firstLine;
+
+        /** The number of lines of source code in the cell. */
+        public final long lineCount;
+
+        Cell(int index, long firstLine, long lineCount) {
+            this.index = index;
+            this.firstLine = firstLine;
+            this.lineCount = lineCount;
+        }
+
+        /** Returns the one-based line number within the cell of a line number of the text. */
+        public long lineInCell(long lineNumber) {
+            return lineNumber - firstLine + 1;
+        }
+
+        @Override
+        public String toString() {
+            return "cell " + index + " (lines " + firstLine + "-" + (firstLine + lineCount - 1) + ")";
+        }
+    }
+
+    private enum State { START, TOP, WORKSHEETS, WORKSHEET, CELLS, CELLS_IN_WORKSHEET, END }
+
+    private final Reader json;
+    private final JsonPullParser parser;
+    private final LinkedList<String> pendingLines = new LinkedList<String>();
+    private final List<Cell> cells = new ArrayList<Cell>();
+    private State state = State.START;
+    private Language kernelLanguage = null;
+    private int nextCellIndex = 0;
+    private long linesRead = 0;
+    private String currentLine = "";
+    private int currentLinePosition = 0;
+
+    /** Creates a reader of the code cells of the notebook read from the given reader,
+     *  reading ahead until the kernel language of the notebook is known.
+     *  @param json The reader of the notebook document.
+     *  @throws IOException if the notebook cannot be read or is not a valid notebook.
+     */
+    public NotebookReader(Reader json) throws IOException {
+        this.json = json;
+        this.parser = new JsonPullParser(json);
+        while (kernelLanguage == null && state != State.END) {
+            advance();
+        }
+    }
+
+    /** Returns the language of the notebook's kernel, or null if it is not given in the
+     *  notebook or is not recognized. */
+    public Language getKernelLanguage() {
+        return kernelLanguage;
+    }
+
+    /** Returns the code cells whose lines have been read so far. */
+    public List<Cell> getCells() {
+        return Collections.unmodifiableList(cells);
+    }
+
+    /** Finds the code cell containing the given line of the text read.
+     *  @param cells The code cells of a notebook.
+     *  @param lineNumber The one-based line number in the text read from the notebook.
+     *  @return The cell containing the line, or null if no cell contains it.
+     */
+    public static Cell cellForLine(List<Cell> cells, long lineNumber) {
+        int low = 0;
+        int high = cells.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Cell cell = cells.get(middle);
+            if (lineNumber < cell.firstLine) {
+                high = middle - 1;
+            } else if (lineNumber >= cell.firstLine + cell.lineCount) {
+                low = middle + 1;
+            } else {
+                return cell;
+            }
+        }
+        return null;
+    }
+
+    /** Maps the name of a kernel language given in notebook metadata to a language.
+     *  @param name The language name, e.g. <code>python</code> or <code>R</code>.
+     *  @return The corresponding language, or null if the name is not recognized.
+     */
+    public static Language languageForKernel(String name) {
+        if (name == null) return null;
+        String lowerName = name.trim().toLowerCase();
+        if (lowerName.startsWith("python") || lowerName.equals("ipython")) return Language.PYTHON;
+        if (lowerName.equals("r"))                                           return Language.R;
+        if (lowerName.equals("matlab") || lowerName.equals("octave"))       return Language.MATLAB;
+        if (lowerName.equals("bash") || lowerName.equals("sh"))             return Language.BASH;
+        if (lowerName.equals("sas"))                                         return Language.SAS;
+        if (lowerName.equals("java"))                                        return Language.JAVA;
+        if (lowerName.equals("c++") || lowerName.equals("cpp"))             return Language.CPLUSPLUS;
+        if (lowerName.equals("c"))                                           return Language.C;
+        return null;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+
+        if (length == 0) return 0;
+
+        while (currentLinePosition == currentLine.length()) {
+            if (!pendingLines.isEmpty()) {
+                currentLine = pendingLines.removeFirst();
+                currentLinePosition = 0;
+            } else if (state == State.END) {
+                return -1;
+            } else {
+                advance();
+            }
+        }
+
+        int count = Math.min(length, currentLine.length() - currentLinePosition);
+        currentLine.getChars(currentLinePosition, currentLinePosition + count, buffer, offset);
+        currentLinePosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+        state = State.END;
+        pendingLines.clear();
+        currentLine = "";
+        currentLinePosition = 0;
+    }
+
+    /** Reads the next unit of the notebook, i.e. one cell or one top-level field. */
+    private void advance() throws IOException {
+
+        Token token = parser.next();
+        if (token == null) {
+            if (state != State.END && state != State.START) {
+                throw new IOException("Unexpected end of notebook");
+            }
+            state = State.END;
+            return;
+        }
+
+        switch (state) {
+
+            case START:
+                expect(token, Token.START_OBJECT);
+                state = State.TOP;
+                break;
+
+            case TOP:
+                if (token == Token.END_OBJECT) {
+                    state = State.END;
+                    break;
+                }
+                expect(token, Token.FIELD_NAME);
+                String field = parser.getText();
+                token = parser.next();
+                if (field.equals("cells") && token == Token.START_ARRAY) {
+                    state = State.CELLS;
+                } else if (field.equals("worksheets") && token == Token.START_ARRAY) {
+                    state = State.WORKSHEETS;
+                } else if (field.equals("metadata") && token == Token.START_OBJECT) {
+                    readMetadata();
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+
+            case WORKSHEETS:
+                if (token == Token.END_ARRAY) {
+                    state = State.TOP;
+                } else {
+                    expect(token, Token.START_OBJECT);
+                    state = State.WORKSHEET;
+                }
+                break;
+
+            case WORKSHEET:
+                if (token == Token.END_OBJECT) {
+                    state = State.WORKSHEETS;
+                    break;
+                }
+                expect(token, Token.FIELD_NAME);
+                boolean isCells = parser.getText().equals("cells");
+                token = parser.next();
+                if (isCells && token == Token.START_ARRAY) {
+                    state = State.CELLS_IN_WORKSHEET;
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+
+            case CELLS:
+            case CELLS_IN_WORKSHEET:
+                if (token == Token.END_ARRAY) {
+                    state = (state == State.CELLS) ? State.TOP : State.WORKSHEET;
+                } else if (token == Token.START_OBJECT) {
+                    readCell();
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /** Reads the notebook metadata, taking the kernel language from the
+     *  <code>language_info</code> or <code>kernelspec</code> field. */
+    private void readMetadata() throws IOException {
+        String kernelspecLanguage = null;
+        String languageInfoName = null;
+        for (Token token = parser.next(); token == Token.FIELD_NAME; token = parser.next()) {
+            String field = parser.getText();
+            token = parser.next();
+            if (token != Token.START_OBJECT) {
+                parser.skipChildren();
+            } else if (field.equals("kernelspec")) {
+                kernelspecLanguage = readStringField("language");
+            } else if (field.equals("language_info")) {
+                languageInfoName = readStringField("name");
+            } else {
+                parser.skipChildren();
+            }
+        }
+        Language language = languageForKernel(languageInfoName);
+        if (language == null) language = languageForKernel(kernelspecLanguage);
+        if (language != null) kernelLanguage = language;
+    }
+
+    /** Reads the remainder of an object, returning the value of the given string field. */
+    private String readStringField(String name) throws IOException {
+        String value = null;
+        for (Token token = parser.next(); token == Token.FIELD_NAME; token = parser.next()) {
+            boolean isField = parser.getText().equals(name);
+            token = parser.next();
+            if (isField && token == Token.STRING) {
+                value = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    /** Reads a cell, skipping everything but its type and source, and queues the lines of
+     *  its source if it is a code cell. */
+    private void readCell() throws IOException {
+
+        int index = nextCellIndex++;
+        String cellType = null;
+        String cellLanguage = null;
+        StringBuilder source = new StringBuilder();
+
+        for (Token token = parser.next(); token == Token.FIELD_NAME; token = parser.next()) {
+            String field = parser.getText();
+            token = parser.next();
+            if (field.equals("cell_type") && token == Token.STRING) {
+                cellType = parser.getText();
+            } else if (field.equals("language") && token == Token.STRING) {
+                cellLanguage = parser.getText();
+            } else if ((field.equals("source") || field.equals("input")) && token == Token.STRING) {
+                source.append(parser.getText());
+            } else if ((field.equals("source") || field.equals("input")) && token == Token.START_ARRAY) {
+                for (token = parser.next(); token == Token.STRING; token = parser.next()) {
+                    source.append(parser.getText());
+                }
+                if (token != Token.END_ARRAY) throw new IOException("Invalid source in notebook cell " + index);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (!"code".equals(cellType) || source.length() == 0) return;
+
+        if (kernelLanguage == null) kernelLanguage = languageForKernel(cellLanguage);
+
+        long firstLine = linesRead + 1;
+        int lineStart = 0;
+        while (lineStart < source.length()) {
+            int lineEnd = source.indexOf("\n", lineStart);
+            lineEnd = (lineEnd == -1) ? source.length() : lineEnd;
+            pendingLines.add(source.substring(lineStart, lineEnd) + "\n");
+            linesRead++;
+            lineStart = lineEnd + 1;
+        }
+        cells.add(new Cell(index, firstLine, linesRead - firstLine + 1));
+    }
+
+    private void expect(Token token, Token expected) throws IOException {
+        if (token != expected) {
+            throw new IOException("Invalid notebook: expected " + expected + " but found " + token);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
+
+/** Class that runs one stage of a pipelined extraction on a thread of its own.  The
+ *  source lines, comments and annotations sent to the listeners returned by
+ *  {@link #commentListener(CommentListener)} and {@link #annotationListener(AnnotationListener)}
+ *  are placed on a bounded queue, and delivered to the listeners they were sent to by the
+ *  thread of the stage, in the order in which they were sent.
+ *
+ *  <p>A thread sending to a stage whose queue is full blocks until the stage catches up,
+ *  so a slow stage holds back the stages feeding it instead of letting events accumulate
+ *  in memory.  If a listener of the stage throws an exception the stage discards all
+ *  further events, and the exception is rethrown to the next thread sending to the stage,
+ *  or by {@link #close()}.</p>
+ */
+public class PipelineStage implements AutoCloseable {
+
+    /** Default number of events that can be queued for a stage. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final Event END = new Event(null, null, null, null, null, null, null);
+
+    private final BlockingQueue<Event> queue;
+    private final Thread thread;
+    private volatile Exception failure = null;
+    private boolean closed = false;
+
+    public PipelineStage(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    /** Constructs and starts a stage.
+     *  @param name The name of the thread running the stage.
+     *  @param capacity The number of events that can be queued before senders block.
+     */
+    public PipelineStage(String name, int capacity) {
+        this.queue = new ArrayBlockingQueue<Event>(capacity);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deliverEvents();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Returns a listener passing the source lines and comments it receives to the given
+     *  listener on the thread of this stage. */
+    public CommentListener commentListener(final CommentListener listener) {
+        return new CommentListener() {
+            @Override
+            public void sourceLine(Long sourceId, Long lineNumber, String lineText) throws Exception {
+                send(new Event(listener, null, sourceId, lineNumber, null, lineText, null));
+            }
+            @Override
+            public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws Exception {
+                send(new Event(listener, null, sourceId, lineNumber, rankInLine, commentText, null));
+            }
+        };
+    }
+
+    /** Returns a listener passing the annotations it receives to the given listener on
+     *  the thread of this stage. */
+    public AnnotationListener annotationListener(final AnnotationListener listener) {
+        return new AnnotationListener() {
+            @Override
+            public void annotation(Annotation annotation) throws Exception {
+                send(new Event(null, listener, null, null, null, null, annotation));
+            }
+        };
+    }
+
+    /** Waits for the stage to deliver all events sent to it and stops its thread.
+     *  @throws Exception The first exception thrown by a listener of the stage, if any.
+     */
+    @Override
+    public void close() throws Exception {
+        if (!closed) {
+            closed = true;
+            try {
+                queue.put(END);
+                thread.join();
+            } catch (InterruptedException e) {
+                thread.interrupt();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for pipeline stage " + thread.getName(), e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void send(Event event) throws Exception {
+        if (failure != null) throw failure;
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending to pipeline stage " + thread.getName(), e);
+        }
+    }
+
+    private void deliverEvents() {
+        try {
+            for (Event event = queue.take(); event != END; event = queue.take()) {
+                if (failure == null) {
+                    try {
+                        event.deliver();
+                    } catch (Exception e) {
+                        failure = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            if (failure == null) failure = new IOException("Pipeline stage " + thread.getName() + " interrupted", e);
+        }
+    }
+
+    /** A source line, comment or annotation, and the listener it is to be delivered to. */
+    private static class Event {
+
+        final CommentListener commentListener;
+        final AnnotationListener annotationListener;
+        final Long sourceId;
+        final Long lineNumber;
+        final Long rankInLine;
+        final String text;
+        final Annotation annotation;
+
+        Event(CommentListener commentListener, AnnotationListener annotationListener, Long sourceId,
+              Long lineNumber, Long rankInLine, String text, Annotation annotation) {
+            this.commentListener = commentListener;
+            this.annotationListener = annotationListener;
+            this.sourceId = sourceId;
+            this.lineNumber = lineNumber;
+            this.rankInLine = rankInLine;
+            this.text = text;
+            this.annotation = annotation;
+        }
+
+        void deliver() throws Exception {
+            if (annotationListener != null) {
+                annotationListener.annotation(annotation);
+            } else if (rankInLine == null) {
+                commentListener.sourceLine(sourceId, lineNumber, text);
+            } else {
+                commentListener.comment(sourceId, lineNumber, rankInLine, text);
+            }
+        }
+    }
+}
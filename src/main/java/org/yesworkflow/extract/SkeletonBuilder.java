@@ -1,53 +1,80 @@
 package org.yesworkflow.extract;
 
+import java.io.IOException;
+import java.io.Writer;
+
 import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
 import org.yesworkflow.annotations.Begin;
 import org.yesworkflow.annotations.End;
 import org.yesworkflow.annotations.Qualification;
 
-public class SkeletonBuilder {
+/** Class that builds a skeleton of the YW markup in source code, i.e. the annotations
+ *  alone, indented according to block nesting.  Annotations can be added one at a time or
+ *  streamed from an {@link Extractor} by subscribing the builder as an annotation listener;
+ *  {@link #end()} must be called after the last annotation.
+ *
+ *  <p>A builder constructed with a {@link Writer} writes each annotation to it as soon as
+ *  the annotation is added, and flushes the writer when {@link #end()} is called, so the
+ *  skeleton is never held in memory as a whole.  Otherwise the skeleton is accumulated
+ *  and returned by {@link #toString()}.</p>
+ */
+public class SkeletonBuilder implements AnnotationListener {
 
     public static final String EOL = System.getProperty("line.separator");
 
-    private StringBuilder sb = new StringBuilder();
+    private final Appendable out;
+    private final Writer writer;
+    private boolean empty = true;
     private String indent = "";
     private boolean lastAnnotationWasEnd = false;
     
     public SkeletonBuilder(String commentDelimiter) {
         this.indent = commentDelimiter;
+        this.out = new StringBuilder();
+        this.writer = null;
+    }
+
+    /** Constructs a builder writing the skeleton incrementally to the given writer,
+     *  which should be buffered.  The writer is flushed but not closed by {@link #end()}. */
+    public SkeletonBuilder(String commentDelimiter, Writer writer) {
+        this.indent = commentDelimiter;
+        this.out = writer;
+        this.writer = writer;
     }
     
-    public void add(Annotation annotation) {
+    public void add(Annotation annotation) throws IOException {
         
         // separate consecutive annotations by two spaces if on 
         // the same line, by two new lines if this annotation starts
         // a new block, or by one new line otherwise
-        if (sb.length() > 0) {
+        if (!empty) {
             if (annotation instanceof Qualification) {
-                sb.append("  ");
+                out.append("  ");
             } else {
-                sb.append(EOL);
-                if (annotation instanceof Begin) sb.append(EOL);
+                out.append(EOL);
+                if (annotation instanceof Begin) out.append(EOL);
             }
         }
         
         // insert a blank line between consecutive End comments
         if (annotation instanceof End && lastAnnotationWasEnd) {
-            sb.append(EOL);
+            out.append(EOL);
         }
         
         // indent further at the start of each non-initial block
-        if (annotation instanceof Begin && sb.length() > 0) {
+        if (annotation instanceof Begin && !empty) {
             indent += "    ";
         }
 
         // insert the current indentation unless annotation is on the same line as previous
         if (!(annotation instanceof Qualification)) {
-            sb.append(indent); 
+            out.append(indent); 
         }
         
         // insert the comment source for the annotation
-        sb.append(annotation.comment);
+        out.append(annotation.comment);
+        empty = false;
         
         // un-indent after each block ends
         if (annotation instanceof End && indent.length() >= 4) {
@@ -57,12 +84,25 @@ public class SkeletonBuilder {
         lastAnnotationWasEnd = annotation instanceof End;
     }
     
-    public void end() {
-        if (sb.length() > 0) sb.append(EOL);
+    @Override
+    public void annotation(Annotation annotation) throws IOException {
+        add(annotation);
+    }
+    
+    public void end() throws IOException {
+        if (!empty) out.append(EOL);
+        if (writer != null) writer.flush();
+    }
+
+    /** Returns true if no annotations have been added. */
+    public boolean isEmpty() {
+        return empty;
     }
     
+    /** Returns the skeleton built so far, or an empty string if the skeleton was
+     *  written to a writer. */
     public String toString() {       
-        return sb.toString();
+        return (writer == null) ? out.toString() : "";
     }
 
 }
@@ -0,0 +1,169 @@
+package org.yesworkflow.extract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.extract.CommentMatcher.ScanState;
+import org.yesworkflow.extract.CommentMatcher.ScanStateListener;
+
+/** Class that buffers in memory the source lines and comments found in one
+ *  source so that they can be replayed later, in order, to another
+ *  {@link CommentListener}. Used to scan sources concurrently while still storing
+ *  their lines and comments in the YesWorkflow DB in a deterministic order.
+ *
+ *  <p>A scan made by a {@link CommentMatcher} also records the state of the matcher at
+ *  the start of each line, so that an edited version of the source can be scanned
+ *  incrementally against it by {@link CommentMatcher#rescan(SourceScan, CharSequence)}.
+ *  The states are cached with the scan by an {@link ExtractionCache}, so scans read back
+ *  from the cache can be rescanned too.</p>
+ *
+ *  <p>A scan of a notebook also records the kernel language of the notebook and the range
+ *  of lines read from each of its code cells.</p>
+ */
+public class SourceScan implements CommentListener, ScanStateListener {
+
+    private final List<String> lineTexts = new ArrayList<String>();
+    private final List<Long> commentLineNumbers = new ArrayList<Long>();
+    private final List<Long> commentRanks = new ArrayList<Long>();
+    private final List<String> commentTexts = new ArrayList<String>();
+    private final List<ScanState> scanStates = new ArrayList<ScanState>();
+    private Language kernelLanguage = null;
+    private List<NotebookReader.Cell> notebookCells = Collections.emptyList();
+    private int rescannedLineCount = 0;
+    private int[] firstComments = null;
+
+    @Override
+    public void sourceLine(Long sourceId, Long lineNumber, String lineText) {
+        lineTexts.add(lineText);
+    }
+
+    @Override
+    public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) {
+        commentLineNumbers.add(lineNumber);
+        commentRanks.add(rankInLine);
+        commentTexts.add(commentText);
+    }
+
+    @Override
+    public void scanState(Long lineNumber, ScanState state) {
+        scanStates.add(state);
+    }
+
+    /** Records that the scanned lines were read from the code cells of a notebook.
+     *  @param kernelLanguage The language in which the cells were scanned.
+     *  @param cells The code cells of the notebook, in order.
+     */
+    public void notebook(Language kernelLanguage, List<NotebookReader.Cell> cells) {
+        this.kernelLanguage = kernelLanguage;
+        this.notebookCells = new ArrayList<NotebookReader.Cell>(cells);
+    }
+
+    /** Returns the language in which the code cells of a notebook were scanned, or null
+     *  if the scan is not of a notebook. */
+    public Language getKernelLanguage() {
+        return kernelLanguage;
+    }
+
+    /** Returns the code cells of the notebook scanned, or an empty list if the scan is not
+     *  of a notebook. */
+    public List<NotebookReader.Cell> getNotebookCells() {
+        return Collections.unmodifiableList(notebookCells);
+    }
+
+    /** Returns true if the state of the matcher was recorded for every line, and after the last. */
+    public boolean hasScanStates() {
+        return scanStates.size() == lineTexts.size() + 1;
+    }
+
+    /** Returns the number of lines scanned by the comment matcher when this scan was made
+     *  incrementally from a previous scan, or zero otherwise. */
+    public int getRescannedLineCount() {
+        return rescannedLineCount;
+    }
+
+    /** Returns the number of source lines buffered. */
+    public int getLineCount() {
+        return lineTexts.size();
+    }
+
+    /** Returns the number of comments buffered. */
+    public int getCommentCount() {
+        return commentTexts.size();
+    }
+
+    List<String> getLineTexts() {
+        return Collections.unmodifiableList(lineTexts);
+    }
+
+    /** Returns the state recorded at the start of the line with the given zero-based index,
+     *  or after the last line if the index equals the number of lines. */
+    ScanState getScanState(int lineIndex) {
+        return scanStates.get(lineIndex);
+    }
+
+    /** Returns the index of the first comment on the line with the given zero-based index,
+     *  or the number of comments if the index equals the number of lines. */
+    int firstCommentOfLine(int lineIndex) {
+        return firstComments()[lineIndex];
+    }
+
+    Long getCommentRank(int commentIndex) {
+        return commentRanks.get(commentIndex);
+    }
+
+    String getCommentText(int commentIndex) {
+        return commentTexts.get(commentIndex);
+    }
+
+    void lineRescanned() {
+        rescannedLineCount++;
+    }
+
+    /** Appends a line of this scan, its comments and the state recorded at its start to
+     *  another scan, renumbering them to the given line number. */
+    void copyLine(int lineIndex, Long lineNumber, SourceScan target) {
+        int[] firstComments = firstComments();
+        target.scanState(lineNumber, scanStates.get(lineIndex));
+        target.sourceLine(null, lineNumber, lineTexts.get(lineIndex));
+        for (int i = firstComments[lineIndex]; i < firstComments[lineIndex + 1]; ++i) {
+            target.comment(null, lineNumber, commentRanks.get(i), commentTexts.get(i));
+        }
+    }
+
+    /** Returns the index of the first comment on each line, and the comment count. */
+    private synchronized int[] firstComments() {
+        if (firstComments == null) {
+            int[] indexes = new int[lineTexts.size() + 1];
+            int commentIndex = 0;
+            for (int i = 0; i <= lineTexts.size(); ++i) {
+                while (commentIndex < commentLineNumbers.size() && commentLineNumbers.get(commentIndex) <= i) {
+                    commentIndex++;
+                }
+                indexes[i] = commentIndex;
+            }
+            firstComments = indexes;
+        }
+        return firstComments;
+    }
+
+    /** Sends the buffered lines and comments to the given listener, attributing
+     *  them to the given source. Each line is followed by the comments found on it,
+     *  the same order in which a {@link CommentMatcher} reports them.
+     *  @param sourceId The id of the source to assign to the replayed lines and comments.
+     *  @param listener The listener to replay the lines and comments to.
+     */
+    public void replay(Long sourceId, CommentListener listener) throws Exception {
+        int commentIndex = 0;
+        for (int i = 0; i < lineTexts.size(); ++i) {
+            Long lineNumber = (long)(i + 1);
+            listener.sourceLine(sourceId, lineNumber, lineTexts.get(i));
+            while (commentIndex < commentTexts.size() && 
+                   commentLineNumbers.get(commentIndex).equals(lineNumber)) {
+                listener.comment(sourceId, lineNumber, commentRanks.get(commentIndex), commentTexts.get(commentIndex));
+                commentIndex++;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.yesworkflow.extract;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Class that retains in memory the most recent scan of each source file, keyed by
+ *  file path and valid only while the contents of the file and the language model used
+ *  to scan it are unchanged.  Shared by successive extractions, e.g. in watch mode, so
+ *  that only the source files changed since the last extraction are scanned again, and
+ *  those only in the regions changed.  When told of the files changed since each scan was
+ *  retained, e.g. by a watch service, the memo vouches for the contents of the other files,
+ *  so that they need not even be read to be found unchanged.
+ *  All methods are synchronized so that one instance may be shared by threads scanning
+ *  sources concurrently.
+ */
+public class SourceScanMemo {
+
+    private static class Entry {
+        final Path file;
+        final String contentHash;
+        final String languageModelKey;
+        final SourceScan scan;
+        boolean changed = false;
+        Entry(Path file, String contentHash, String languageModelKey, SourceScan scan) {
+            this.file = file;
+            this.contentHash = contentHash;
+            this.languageModelKey = languageModelKey;
+            this.scan = scan;
+        }
+    }
+
+    private final Map<String,Entry> entries = new HashMap<String,Entry>();
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    /** Looks up the retained scan of a source file, counting a hit or a miss.
+     *  @param path The path of the source file.
+     *  @param contentHash The hash of the current contents of the file, as computed by
+     *         {@link ExtractionCache#contentHash(java.nio.ByteBuffer) contentHash()}.
+     *  @param languageModelKey The key of the language model used to scan the file, as computed by
+     *         {@link ExtractionCache#languageModelKey(org.yesworkflow.LanguageModel) languageModelKey()}.
+     *  @return The retained scan, or null if the file has changed since it was last scanned.
+     */
+    public synchronized SourceScan lookup(String path, String contentHash, String languageModelKey) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.contentHash.equals(contentHash) &&
+                entry.languageModelKey.equals(languageModelKey)) {
+            hitCount++;
+            return entry.scan;
+        }
+        missCount++;
+        return null;
+    }
+
+    /** Returns the scan retained for a source file regardless of whether the file has
+     *  changed since, e.g. to scan the changed file incrementally, without counting a lookup.
+     *  @return The retained scan, or null if none was made with the given language model.
+     */
+    public synchronized SourceScan previous(String path, String languageModelKey) {
+        Entry entry = entries.get(path);
+        return (entry != null && entry.languageModelKey.equals(languageModelKey)) ? entry.scan : null;
+    }
+
+    /** Returns the hash of the contents of a source file when its scan was retained, if
+     *  the file has not been reported changed since.  Valid only if every change to the
+     *  file since its scan was retained has been reported via {@link #changed(Collection) changed()}.
+     *  @return The hash of the unchanged contents, or null if the file may have changed or
+     *          no scan of it was made with the given language model.
+     */
+    public synchronized String unchangedContentHash(String path, String languageModelKey) {
+        Entry entry = entries.get(path);
+        return (entry != null && !entry.changed && entry.file != null &&
+                entry.languageModelKey.equals(languageModelKey)) ? entry.contentHash : null;
+    }
+
+    /** Records changes to source files since their scans were retained.
+     *  @param changedPaths The absolute, normalized paths of the files changed, or of
+     *         directories in which any file may have changed.
+     */
+    public synchronized void changed(Collection<Path> changedPaths) {
+        for (Entry entry : entries.values()) {
+            if (entry.file == null) continue;
+            for (Path changedPath : changedPaths) {
+                if (entry.file.startsWith(changedPath)) {
+                    entry.changed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Retains the scan of a source file, replacing any scan retained for the path. */
+    public synchronized void store(String path, String contentHash, String languageModelKey, SourceScan scan) {
+        entries.put(path, new Entry(absoluteFile(path), contentHash, languageModelKey, scan));
+    }
+
+    private static Path absoluteFile(String path) {
+        try {
+            return Paths.get(path).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /** Returns the number of lookups that found a retained scan. */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /** Returns the number of lookups that did not find a retained scan. */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+}
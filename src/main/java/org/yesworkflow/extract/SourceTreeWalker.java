@@ -0,0 +1,237 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+
+/** Class that expands a list of source paths into the source files to extract from.
+ *  Paths naming files are passed on as given.  Paths naming directories are walked
+ *  recursively, yielding the files whose paths relative to the directory match one of the
+ *  include patterns and none of the exclude patterns, and skipping subdirectories matching
+ *  an exclude pattern.  Patterns are globs as accepted by
+ *  {@link java.nio.file.FileSystem#getPathMatcher(String) getPathMatcher()}; a pattern
+ *  without a '/' is also matched against the bare file or directory name.  If no include
+ *  patterns are given, only files with an extension of a recognized language are included.
+ *  The language of each file is detected from its name as it is found.
+ *
+ *  <p>Directories are listed concurrently on a pool of worker threads, each listing
+ *  submitting the listings of its subdirectories as soon as they are found, so that the
+ *  first files can be extracted before the walk is complete.  Files are nevertheless
+ *  returned by {@link #next()} in a deterministic order: source paths in the order given,
+ *  and the entries of each directory sorted by name, depth first.</p>
+ */
+public class SourceTreeWalker implements AutoCloseable {
+
+    /** A source file found by the walker, and the language detected from its name. */
+    public static class SourceFile {
+
+        public final String path;
+        public final Language language;
+
+        public SourceFile(String path, Language language) {
+            this.path = path;
+            this.language = language;
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final ExecutorService executor;
+
+    /** Source files and futures of directory listings not yet returned, next entry first. */
+    private final Deque<Object> pendingEntries = new LinkedList<Object>();
+
+    /** Constructs a walker and starts listing any directories among the source paths.
+     *  @param sourcePaths The paths of the source files and directories to walk.
+     *  @param includePatterns Globs matching the files to include from directories.
+     *  @param excludePatterns Globs matching the files and subdirectories to skip.
+     *  @param threadCount The number of threads listing directories concurrently.
+     */
+    public SourceTreeWalker(List<String> sourcePaths, List<String> includePatterns,
+                            List<String> excludePatterns, int threadCount) {
+
+        this.includes = pathMatchers(includePatterns);
+        this.excludes = pathMatchers(excludePatterns);
+        this.executor = Executors.newFixedThreadPool(threadCount);
+
+        for (String sourcePath : sourcePaths) {
+            Path path = toPath(sourcePath);
+            if (path != null && Files.isDirectory(path)) {
+                pendingEntries.add(executor.submit(listingTask(path, path)));
+            } else {
+                pendingEntries.add(new SourceFile(sourcePath, LanguageModel.languageForFileName(sourcePath)));
+            }
+        }
+    }
+
+    /** Returns the next source file, waiting for the directory containing it to be listed.
+     *  @return The next source file, or null if all source files have been returned.
+     *  @throws IOException If a directory cannot be listed.
+     */
+    public SourceFile next() throws IOException {
+
+        while (!pendingEntries.isEmpty()) {
+
+            Object entry = pendingEntries.removeFirst();
+            if (entry instanceof SourceFile) return (SourceFile)entry;
+
+            @SuppressWarnings("unchecked")
+            List<Object> listing = awaitListing((Future<List<Object>>)entry);
+            for (int i = listing.size() - 1; i >= 0; --i) {
+                pendingEntries.addFirst(listing.get(i));
+            }
+        }
+
+        return null;
+    }
+
+    /** Stops listing directories. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Callable<List<Object>> listingTask(final Path root, final Path directory) {
+        return new Callable<List<Object>>() {
+            @Override
+            public List<Object> call() throws Exception {
+                return listDirectory(root, directory);
+            }
+        };
+    }
+
+    /** Lists the included files and the subdirectories of a directory, submitting the
+     *  listing of each subdirectory found.
+     *  @return The source files and futures of subdirectory listings, sorted by name.
+     */
+    private List<Object> listDirectory(Path root, Path directory) throws IOException {
+
+        Map<String,Object> entries = new TreeMap<String,Object>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+
+                Path relativePath = root.relativize(entry);
+                if (matchesAny(excludes, relativePath)) continue;
+
+                String fileName = entry.getFileName().toString();
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    entries.put(fileName, executor.submit(listingTask(root, entry)));
+                } else if (Files.isRegularFile(entry)) {
+                    if (isIncluded(includes, relativePath)) {
+                        entries.put(fileName, new SourceFile(entry.toString(), LanguageModel.languageForFileName(fileName)));
+                    }
+                }
+            }
+        }
+
+        return new ArrayList<Object>(entries.values());
+    }
+
+    private List<Object> awaitListing(Future<List<Object>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing source directories", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /** Returns whether a file found in a source directory is included as a source file.
+     *  @param includes The matchers of the include globs, or an empty list to include
+     *         the files named for a language other than {@link Language#GENERIC}.
+     *  @param relativePath The path of the file relative to the source directory.
+     */
+    public static boolean isIncluded(List<PathMatcher> includes, Path relativePath) {
+        if (includes.isEmpty()) {
+            return LanguageModel.languageForFileName(relativePath.getFileName().toString()) != Language.GENERIC;
+        }
+        return matchesAny(includes, relativePath);
+    }
+
+    /** Returns whether a file or directory found in a source directory is skipped, either
+     *  because it matches an exclude glob or because a directory containing it does.
+     *  @param excludes The matchers of the exclude globs.
+     *  @param relativePath The path of the file or directory relative to the source directory.
+     */
+    public static boolean isExcluded(List<PathMatcher> excludes, Path relativePath) {
+        for (Path path = relativePath; path != null; path = path.getParent()) {
+            if (matchesAny(excludes, path)) return true;
+        }
+        return false;
+    }
+
+    static boolean matchesAny(List<PathMatcher> matchers, Path relativePath) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relativePath)) return true;
+        }
+        return false;
+    }
+
+    /** Returns matchers of include or exclude globs, matching relative paths, and also bare
+     *  file names if a glob contains no '/'.
+     *  @param patterns The globs, or null for none.
+     */
+    public static List<PathMatcher> pathMatchers(List<String> patterns) {
+        if (patterns == null) return Collections.emptyList();
+        List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+        for (String pattern : patterns) {
+            matchers.add(new NameOrPathMatcher(pattern));
+        }
+        return matchers;
+    }
+
+    private static Path toPath(String path) {
+        try {
+            return Paths.get(path);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Matches a glob against relative paths, and against bare names if the glob has no '/'. */
+    private static class NameOrPathMatcher implements PathMatcher {
+
+        private final PathMatcher matcher;
+        private final boolean matchesNames;
+
+        NameOrPathMatcher(String pattern) {
+            this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            this.matchesNames = pattern.indexOf('/') == -1;
+        }
+
+        @Override
+        public boolean matches(Path path) {
+            return matcher.matches(path) || matchesNames && matcher.matches(path.getFileName());
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Stack;
 
 import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
 import org.yesworkflow.annotations.Begin;
 import org.yesworkflow.annotations.End;
 import org.yesworkflow.annotations.In;
@@ -18,7 +19,7 @@ import org.yesworkflow.db.YesWorkflowDB;
 import org.yesworkflow.exceptions.YWMarkupException;
 import org.yesworkflow.query.QueryEngine;
 
-public class DefaultModeler implements Modeler {
+public class DefaultModeler implements Modeler, AnnotationListener {
 
     static private QueryEngine DEFAULT_QUERY_ENGINE = QueryEngine.SWIPL;
 
@@ -76,6 +77,19 @@ public class DefaultModeler implements Modeler {
         return this;
     }
 
+    /** Receives annotations streamed from an extractor to which this modeler has been
+     *  subscribed, as an alternative to passing them all at once to 
+     *  {@link #annotations(List) annotations()}.  The model is built from the annotations
+     *  received when {@link #model()} is called.
+     */
+    @Override
+    public void annotation(Annotation annotation) {
+        if (annotations == null) {
+            annotations = new LinkedList<Annotation>();
+        }
+        annotations.add(annotation);
+    }
+
     @Override
     public Modeler model() throws Exception {	
     	buildModel();
@@ -0,0 +1,121 @@
+package org.yesworkflow.search;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.exceptions.YWToolUsageException;
+
+/** Class that searches the comment index built by extractions configured with an
+ *  index file, and lists the comments matching the query in order of relevance, one per
+ *  line, each preceded by the path of its source and its line number.
+ *
+ *  <p>A query given as a single string is split at whitespace into terms, except that
+ *  text enclosed in double quotes is a phrase.  A query given as a list, e.g. the
+ *  arguments following the <i>search</i> command on the command line, takes each element
+ *  containing more than one term as a phrase.</p>
+ */
+public class DefaultSearcher implements Searcher {
+
+    static private int DEFAULT_LIMIT = 20;
+
+    private PrintStream stdoutStream = null;
+    @SuppressWarnings("unused")
+    private PrintStream stderrStream = null;
+    private String indexPath = null;
+    private List<String> query = new ArrayList<String>();
+    private int limit = DEFAULT_LIMIT;
+    private List<SearchHit> hits = null;
+
+    public DefaultSearcher(PrintStream stdoutStream, PrintStream stderrStream) {
+        this.stdoutStream = stdoutStream;
+        this.stderrStream = stderrStream;
+    }
+
+    @Override
+    public DefaultSearcher configure(Map<String,Object> config) throws Exception {
+        if (config != null) {
+            for (Map.Entry<String, Object> entry : config.entrySet()) {
+                configure(entry.getKey(), entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public DefaultSearcher configure(String key, Object value) throws Exception {
+        if (key.equalsIgnoreCase("index")) {
+            indexPath = (String)value;
+        } else if (key.equalsIgnoreCase("query")) {
+            if (value instanceof String) {
+                query = parseQuery((String)value);
+            } else if (value instanceof List) {
+                query = new ArrayList<String>((List<String>)value);
+            } else {
+                throw new Exception("Value of query property must be one or more strings");
+            }
+        } else if (key.equalsIgnoreCase("limit")) {
+            limit = Integer.parseInt(value.toString().trim());
+            if (limit < 1) throw new Exception("Value of limit property must be a positive integer");
+        }
+        return this;
+    }
+
+    @Override
+    public DefaultSearcher search() throws Exception {
+
+        if (indexPath == null) {
+            throw new YWToolUsageException("ERROR: No comment index to search. Set search.index or extract.index");
+        }
+
+        Path indexFile = Paths.get(indexPath);
+        if (!Files.isRegularFile(indexFile)) {
+            throw new YWToolUsageException("ERROR: Comment index not found: " + indexPath);
+        }
+
+        if (query.isEmpty()) {
+            throw new YWToolUsageException("ERROR: No terms to search for");
+        }
+
+        try (SearchIndex index = new SearchIndex(YesWorkflowDB.openFileDB(indexFile))) {
+            hits = index.search(query, limit);
+        }
+
+        for (SearchHit hit : hits) {
+            stdoutStream.println(hit);
+        }
+
+        return this;
+    }
+
+    @Override
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+
+    /** Splits a query string at whitespace outside of double-quoted phrases. */
+    static List<String> parseQuery(String query) {
+        List<String> clauses = new ArrayList<String>();
+        StringBuilder clause = new StringBuilder();
+        boolean inPhrase = false;
+        for (int i = 0; i < query.length(); ++i) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                inPhrase = !inPhrase;
+            } else if (Character.isWhitespace(c) && !inPhrase) {
+                if (clause.length() > 0) clauses.add(clause.toString());
+                clause.setLength(0);
+            } else {
+                clause.append(c);
+            }
+        }
+        if (clause.length() > 0) clauses.add(clause.toString());
+        return clauses;
+    }
+}
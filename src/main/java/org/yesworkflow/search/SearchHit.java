@@ -0,0 +1,56 @@
+package org.yesworkflow.search;
+
+import java.util.List;
+
+/** A comment matching a search of a {@link SearchIndex}, and its relevance to the search. */
+public class SearchHit {
+
+    public final String path;
+    public final Long lineNumber;
+    public final Long rankInLine;
+    public final String commentText;
+
+    /** The annotations in the comment containing the terms matched, in order of rank. */
+    public final List<MatchedAnnotation> annotations;
+
+    /** The BM25 score of the comment for the terms searched for. */
+    public final double score;
+
+    public SearchHit(String path, Long lineNumber, Long rankInLine, String commentText,
+                     List<MatchedAnnotation> annotations, double score) {
+        this.path = path;
+        this.lineNumber = lineNumber;
+        this.rankInLine = rankInLine;
+        this.commentText = commentText;
+        this.annotations = annotations;
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return path + ":" + lineNumber + ": " + commentText;
+    }
+
+    /** An annotation containing terms matched by a search, identified by its position in
+     *  the comment of the hit rather than by an id assigned by any one extraction. */
+    public static class MatchedAnnotation {
+
+        /** The one-based rank of the annotation among the annotations in its comment. */
+        public final Long rankInComment;
+        public final String tag;
+        public final String keyword;
+        public final String value;
+
+        public MatchedAnnotation(Long rankInComment, String tag, String keyword, String value) {
+            this.rankInComment = rankInComment;
+            this.tag = tag;
+            this.keyword = keyword;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return (value == null) ? keyword : keyword + " " + value;
+        }
+    }
+}
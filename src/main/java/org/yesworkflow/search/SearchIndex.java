@@ -0,0 +1,647 @@
+package org.yesworkflow.search;
+
+import static org.yesworkflow.db.Column.*;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jooq.BatchBindStep;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.TransactionalRunnable;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.yesworkflow.db.Column;
+import org.yesworkflow.db.Table;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.search.SearchHit.MatchedAnnotation;
+
+/** Class that maintains a persistent inverted index of the terms in the comments found in
+ *  source files, and answers ranked searches for terms and phrases using the index.
+ *  Backed by a (SQLite) YesWorkflow DB providing the indexed_source, indexed_comment,
+ *  indexed_annotation and index_posting tables.  Each source is indexed by a
+ *  {@link SearchIndexer} during extraction, replacing any earlier index entries for the same path.
+ *
+ *  <p>The postings of each term in each source are stored together in one compact row, with
+ *  the number of comments containing the term, each occurrence of the term encoded as
+ *  variable-length integers giving the comment containing it (as the difference from the
+ *  previous comment), the number of terms in the comment, the position of the term in the
+ *  comment, and the rank in the comment of the annotation containing it.  The annotations
+ *  themselves are stored by tag, keyword and value, so that hits remain meaningful after
+ *  the extraction that indexed them.</p>
+ *
+ *  <p>A search first reads the postings of the term found in the fewest comments, and then
+ *  reads the postings of each other term only in the sources containing all of the terms
+ *  read so far, decoding the occurrences of a term only in comments still matching.  The
+ *  comments themselves are read only for the hits returned.  Comments are ranked by their
+ *  BM25 scores for the terms searched for.</p>
+ */
+public class SearchIndex implements AutoCloseable {
+
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    private final YesWorkflowDB indexDB;
+
+    /** Constructs an index backed by the given database.
+     *  @param indexDB The database in which the index is stored.
+     */
+    public SearchIndex(YesWorkflowDB indexDB) {
+        this.indexDB = indexDB;
+    }
+
+    /** Returns the comments containing all of the terms and phrases searched for, in order
+     *  of decreasing relevance.
+     *  @param query The terms and phrases to search for.  Each string containing more than
+     *         one term is a phrase, matching only comments containing its terms consecutively.
+     *  @param limit The maximum number of comments to return.
+     *  @return The most relevant comments matching the query.
+     */
+    public List<SearchHit> search(List<String> query, int limit) throws SQLException {
+
+        List<List<String>> phrases = new ArrayList<List<String>>();
+        Set<String> terms = new LinkedHashSet<String>();
+        for (String clause : query) {
+            List<String> clauseTerms = Tokenizer.terms(clause);
+            if (clauseTerms.size() > 1) phrases.add(clauseTerms);
+            terms.addAll(clauseTerms);
+        }
+        if (terms.isEmpty() || limit < 1) return Collections.emptyList();
+
+        // evaluate the terms in order of increasing number of comments containing them
+        final Map<String,Long> frequencies = commentFrequencies(terms);
+        if (frequencies.size() < terms.size()) return Collections.emptyList();
+        List<String> termsByFrequency = new ArrayList<String>(terms);
+        Collections.sort(termsByFrequency, new Comparator<String>() {
+            @Override
+            public int compare(String t1, String t2) {
+                return Long.compare(frequencies.get(t1), frequencies.get(t2));
+            }
+        });
+
+        Map<String,Integer> termIndex = new HashMap<String,Integer>();
+        for (int i = 0; i < termsByFrequency.size(); ++i) termIndex.put(termsByFrequency.get(i), i);
+
+        Map<Long,Occurrences[]> candidates = readCandidates(termsByFrequency);
+
+        double[] counts = commentAndTokenCounts();
+        double commentCount = counts[0];
+        double averageLength = (counts[0] == 0) ? 1 : counts[1] / counts[0];
+        double[] idf = new double[termsByFrequency.size()];
+        for (int i = 0; i < idf.length; ++i) {
+            double df = frequencies.get(termsByFrequency.get(i));
+            idf[i] = Math.log(1 + (commentCount - df + 0.5) / (df + 0.5));
+        }
+
+        PriorityQueue<Candidate> best = new PriorityQueue<Candidate>(Math.min(limit, 1024) + 1);
+
+        candidates:
+        for (Map.Entry<Long,Occurrences[]> entry : candidates.entrySet()) {
+
+            Long commentId = entry.getKey();
+            Occurrences[] matched = entry.getValue();
+
+            for (List<String> phrase : phrases) {
+                if (!containsPhrase(matched, phrase, termIndex)) continue candidates;
+            }
+
+            double score = 0;
+            for (int i = 0; i < matched.length; ++i) {
+                double tf = matched[i].count;
+                double lengthNorm = 1 - BM25_B + BM25_B * matched[i].tokenCount / averageLength;
+                score += idf[i] * tf * (BM25_K1 + 1) / (tf + BM25_K1 * lengthNorm);
+            }
+
+            Candidate candidate = new Candidate(commentId, score);
+            if (best.size() < limit || candidate.compareTo(best.peek()) > 0) {
+                candidate.annotationRanks = annotationRanks(matched);
+                best.add(candidate);
+                if (best.size() > limit) best.poll();
+            }
+        }
+
+        List<Candidate> ranked = new ArrayList<Candidate>(best);
+        Collections.sort(ranked, Collections.reverseOrder());
+        return hits(ranked);
+    }
+
+    /** Returns the id to assign to the next comment indexed. */
+    @SuppressWarnings("unchecked")
+    long nextCommentId() {
+        Object maxId = indexDB.jooq().select(DSL.max(ID)).from(Table.INDEXED_COMMENT).fetchOne().getValue(0);
+        return (maxId == null) ? 1L : ((Number)maxId).longValue() + 1;
+    }
+
+    /** Stores the comments and postings of one source, replacing any index entries for the path.
+     *  @param path The path of the source.
+     *  @param comments The comments found in the source, with ids assigned consecutively.
+     *  @param postings The postings of each term found in the comments.
+     *  @param tokenCount The total number of terms in the comments.
+     */
+    void store(final String path, final List<IndexedComment> comments,
+               final Map<String,Postings> postings, final long tokenCount) throws SQLException {
+        try {
+            indexDB.jooq().transaction(new TransactionalRunnable() {
+                @Override
+                public void run(Configuration configuration) throws Exception {
+                    storeInTransaction(DSL.using(configuration), path, comments, postings, tokenCount);
+                }
+            });
+        } catch (DataAccessException e) {
+            throw new SQLException("Error indexing comments of " + path, e);
+        }
+    }
+
+    /** Stores copies of the comments and postings indexed for one source under the path of a
+     *  source with identical contents, replacing any index entries for that path.  The copied
+     *  comments are given new ids above those in use, so that each is found under its own path.
+     *  @param path The path of the source duplicating the indexed source.
+     *  @param originalPath The path of the indexed source.
+     */
+    void storeAlias(final String path, final String originalPath) throws SQLException {
+        try {
+            indexDB.jooq().transaction(new TransactionalRunnable() {
+                @Override
+                public void run(Configuration configuration) throws Exception {
+                    storeAliasInTransaction(DSL.using(configuration), path, originalPath);
+                }
+            });
+        } catch (DataAccessException e) {
+            throw new SQLException("Error indexing comments of " + path, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeAliasInTransaction(DSLContext jooq, String path, String originalPath) throws Exception {
+
+        Record original = jooq.select(ID, TOKEN_COUNT)
+                              .from(Table.INDEXED_SOURCE)
+                              .where(PATH.equal(originalPath))
+                              .fetchOne();
+        if (original == null) return;
+        Long originalId = indexDB.getLongValue(original, ID);
+
+        Result<Record> comments = jooq.select(ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                                      .from(Table.INDEXED_COMMENT)
+                                      .where(INDEXED_SOURCE_ID.equal(originalId))
+                                      .orderBy(ID)
+                                      .fetch();
+        long idOffset = 0;
+        if (!comments.isEmpty()) {
+            Object maxId = jooq.select(DSL.max(ID)).from(Table.INDEXED_COMMENT).fetchOne().getValue(0);
+            idOffset = ((Number)maxId).longValue() + 1 - indexDB.getLongValue(comments.get(0), ID);
+        }
+        List<IndexedComment> copies = new ArrayList<IndexedComment>();
+        Map<Long,IndexedComment> copyOfComment = new HashMap<Long,IndexedComment>();
+        for (Record comment : comments) {
+            Long commentId = indexDB.getLongValue(comment, ID);
+            IndexedComment copy = new IndexedComment(commentId + idOffset,
+                                                     indexDB.getLongValue(comment, LINE_NUMBER),
+                                                     indexDB.getLongValue(comment, RANK_IN_LINE),
+                                                     indexDB.getStringValue(comment, COMMENT_TEXT));
+            copies.add(copy);
+            copyOfComment.put(commentId, copy);
+        }
+
+        Result<Record> annotations = jooq.select(INDEXED_COMMENT_ID, RANK_IN_COMMENT, TAG, KEYWORD, VALUE)
+                                         .from(Table.INDEXED_ANNOTATION)
+                                         .where(INDEXED_COMMENT_ID.in(jooq.select(ID)
+                                                                          .from(Table.INDEXED_COMMENT)
+                                                                          .where(INDEXED_SOURCE_ID.equal(originalId))))
+                                         .orderBy(INDEXED_COMMENT_ID, RANK_IN_COMMENT)
+                                         .fetch();
+        for (Record annotation : annotations) {
+            copyOfComment.get(indexDB.getLongValue(annotation, INDEXED_COMMENT_ID)).annotations.add(
+                    new IndexedAnnotation(((Number)annotation.getValue(RANK_IN_COMMENT)).intValue(),
+                                          indexDB.getStringValue(annotation, TAG),
+                                          indexDB.getStringValue(annotation, KEYWORD),
+                                          indexDB.getStringValue(annotation, VALUE)));
+        }
+
+        Map<String,Postings> postings = new HashMap<String,Postings>();
+        Result<Record> rows = jooq.select(TERM, COMMENT_COUNT, POSTINGS)
+                                  .from(Table.INDEX_POSTING)
+                                  .where(INDEXED_SOURCE_ID.equal(originalId))
+                                  .fetch();
+        for (Record row : rows) {
+            postings.put(indexDB.getStringValue(row, TERM),
+                         Postings.withCommentIdsOffset((byte[])row.getValue(POSTINGS),
+                                                       ((Number)row.getValue(COMMENT_COUNT)).intValue(),
+                                                       idOffset));
+        }
+
+        storeInTransaction(jooq, path, copies, postings, ((Number)original.getValue(TOKEN_COUNT)).longValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeInTransaction(DSLContext jooq, String path, List<IndexedComment> comments,
+                                    Map<String,Postings> postings, long tokenCount) throws Exception {
+
+        Result<Record> staleSources = jooq.select(ID)
+                                          .from(Table.INDEXED_SOURCE)
+                                          .where(PATH.equal(path))
+                                          .fetch();
+        for (Record staleSource : staleSources) {
+            Long staleSourceId = indexDB.getLongValue(staleSource, ID);
+            jooq.delete(Table.INDEX_POSTING).where(INDEXED_SOURCE_ID.equal(staleSourceId)).execute();
+            jooq.delete(Table.INDEXED_ANNOTATION)
+                .where(INDEXED_COMMENT_ID.in(jooq.select(ID)
+                                                 .from(Table.INDEXED_COMMENT)
+                                                 .where(INDEXED_SOURCE_ID.equal(staleSourceId))))
+                .execute();
+            jooq.delete(Table.INDEXED_COMMENT).where(INDEXED_SOURCE_ID.equal(staleSourceId)).execute();
+            jooq.delete(Table.INDEXED_SOURCE).where(ID.equal(staleSourceId)).execute();
+        }
+
+        jooq.insertInto(Table.INDEXED_SOURCE)
+            .set(PATH, path)
+            .set(COMMENT_COUNT, comments.size())
+            .set(TOKEN_COUNT, tokenCount)
+            .execute();
+        Long sourceId = jooq.lastID().longValue();
+
+        if (!comments.isEmpty()) {
+            BatchBindStep commentInserts = jooq.batch(
+                    jooq.insertInto(Table.INDEXED_COMMENT, ID, INDEXED_SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                        .values(null, null, null, null, null));
+            BatchBindStep annotationInserts = jooq.batch(
+                    jooq.insertInto(Table.INDEXED_ANNOTATION, INDEXED_COMMENT_ID, RANK_IN_COMMENT, TAG, KEYWORD, VALUE)
+                        .values(null, null, null, null, null));
+            int annotationCount = 0;
+            for (IndexedComment comment : comments) {
+                commentInserts.bind(comment.id, sourceId, comment.lineNumber, comment.rankInLine, comment.text);
+                for (IndexedAnnotation annotation : comment.annotations) {
+                    annotationInserts.bind(comment.id, annotation.rankInComment, annotation.tag,
+                                           annotation.keyword, annotation.value);
+                    annotationCount++;
+                }
+            }
+            commentInserts.execute();
+            if (annotationCount > 0) annotationInserts.execute();
+        }
+
+        if (!postings.isEmpty()) {
+            BatchBindStep postingInserts = jooq.batch(
+                    jooq.insertInto(Table.INDEX_POSTING, TERM, INDEXED_SOURCE_ID, COMMENT_COUNT, POSTINGS)
+                        .values(null, null, null, null));
+            for (Map.Entry<String,Postings> termPostings : postings.entrySet()) {
+                Postings encoded = termPostings.getValue();
+                postingInserts.bind(termPostings.getKey(), sourceId, encoded.commentCount, encoded.toByteArray());
+            }
+            postingInserts.execute();
+        }
+    }
+
+    /** Returns the number of comments containing each of the given terms found in the index. */
+    @SuppressWarnings("unchecked")
+    private Map<String,Long> commentFrequencies(Set<String> terms) {
+        Map<String,Long> frequencies = new HashMap<String,Long>();
+        Result<Record> rows = indexDB.jooq().select(TERM, DSL.sum(COMMENT_COUNT))
+                                            .from(Table.INDEX_POSTING)
+                                            .where(TERM.in(terms))
+                                            .groupBy(TERM)
+                                            .fetch();
+        for (Record row : rows) {
+            frequencies.put(indexDB.getStringValue(row, TERM), ((Number)row.getValue(1)).longValue());
+        }
+        return frequencies;
+    }
+
+    /** Reads the occurrences of the given terms in the comments containing all of them.
+     *  The postings of the first term are decoded in full, and those of each further term
+     *  only in the sources containing the first term, and only for the comments containing
+     *  all of the terms read before it.
+     *  @param terms The terms, in the order in which they are to be read.
+     *  @return The occurrences of each term in each comment containing all of the terms,
+     *          in the order of the terms, keyed by comment id.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long,Occurrences[]> readCandidates(List<String> terms) {
+
+        int termCount = terms.size();
+        Map<Long,Occurrences[]> candidates = new HashMap<Long,Occurrences[]>();
+        Result<Record> rows = indexDB.jooq().select(POSTINGS)
+                                            .from(Table.INDEX_POSTING)
+                                            .where(TERM.equal(terms.get(0)))
+                                            .fetch();
+        for (Record row : rows) {
+            decodePostings((byte[])row.getValue(POSTINGS), 0, termCount, candidates, true, Long.MAX_VALUE);
+        }
+
+        for (int i = 1; i < termCount && !candidates.isEmpty(); ++i) {
+
+            long maxCommentId = Collections.max(candidates.keySet());
+            rows = indexDB.jooq().select(POSTINGS)
+                                 .from(Table.INDEX_POSTING)
+                                 .where(TERM.equal(terms.get(i)))
+                                 .and(INDEXED_SOURCE_ID.in(indexDB.jooq().select(INDEXED_SOURCE_ID)
+                                                                         .from(Table.INDEX_POSTING)
+                                                                         .where(TERM.equal(terms.get(0)))))
+                                 .fetch();
+            for (Record row : rows) {
+                decodePostings((byte[])row.getValue(POSTINGS), i, termCount, candidates, false, maxCommentId);
+            }
+
+            Iterator<Occurrences[]> matches = candidates.values().iterator();
+            while (matches.hasNext()) {
+                if (matches.next()[i] == null) matches.remove();
+            }
+        }
+
+        return candidates;
+    }
+
+    /** Decodes the occurrences of a term in one source into the occurrences of the candidates.
+     *  @param encoded The encoded postings of the term in the source.
+     *  @param termIndex The index of the term among the terms searched for.
+     *  @param termCount The number of terms searched for.
+     *  @param candidates The occurrences of the terms in each candidate comment.
+     *  @param addCandidates Whether to add the comments containing the term as candidates,
+     *         rather than only recording the occurrences in comments already candidates.
+     *  @param maxCommentId The largest comment id of interest.
+     */
+    private static void decodePostings(byte[] encoded, int termIndex, int termCount,
+                                       Map<Long,Occurrences[]> candidates,
+                                       boolean addCandidates, long maxCommentId) {
+
+        PostingsReader reader = new PostingsReader(encoded);
+        long commentId = 0;
+        Occurrences current = null;
+        while (reader.hasNext()) {
+            long delta = reader.next();
+            if (delta > 0) {
+                commentId += delta;
+                if (commentId > maxCommentId) return;
+                int tokenCount = (int)reader.next();
+                Occurrences[] matched = candidates.get(commentId);
+                if (matched == null && addCandidates) {
+                    matched = new Occurrences[termCount];
+                    candidates.put(commentId, matched);
+                }
+                current = (matched == null) ? null : (matched[termIndex] = new Occurrences(tokenCount));
+            }
+            int position = (int)reader.next();
+            int annotationRank = (int)reader.next();
+            if (current != null) current.add(position, annotationRank);
+        }
+    }
+
+    private static boolean containsPhrase(Occurrences[] matched, List<String> phrase, Map<String,Integer> termIndex) {
+        Occurrences first = matched[termIndex.get(phrase.get(0))];
+        starts:
+        for (int i = 0; i < first.count; ++i) {
+            for (int j = 1; j < phrase.size(); ++j) {
+                Occurrences next = matched[termIndex.get(phrase.get(j))];
+                if (!next.hasPosition(first.positions[i] + j)) continue starts;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static List<Integer> annotationRanks(Occurrences[] matched) {
+        Set<Integer> ranks = new TreeSet<Integer>();
+        for (Occurrences occurrences : matched) {
+            for (int i = 0; i < occurrences.count; ++i) {
+                if (occurrences.annotations[i] > 0) ranks.add(occurrences.annotations[i]);
+            }
+        }
+        return new ArrayList<Integer>(ranks);
+    }
+
+    private double[] commentAndTokenCounts() {
+        Record counts = indexDB.jooq().select(DSL.sum(COMMENT_COUNT), DSL.sum(TOKEN_COUNT))
+                                      .from(Table.INDEXED_SOURCE)
+                                      .fetchOne();
+        Object comments = counts.getValue(0);
+        Object tokens = counts.getValue(1);
+        return new double[] { (comments == null) ? 0 : ((Number)comments).doubleValue(),
+                              (tokens == null) ? 0 : ((Number)tokens).doubleValue() };
+    }
+
+    /** Reads the comments of the given candidates, returning hits in the same order. */
+    @SuppressWarnings("unchecked")
+    private List<SearchHit> hits(List<Candidate> ranked) {
+
+        if (ranked.isEmpty()) return Collections.emptyList();
+
+        Long[] ids = new Long[ranked.size()];
+        for (int i = 0; i < ids.length; ++i) ids[i] = ranked.get(i).commentId;
+
+        Result<Record> rows = indexDB.jooq().select(Column.INDEXED_COMMENT.ID, PATH, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                                            .from(Table.INDEXED_COMMENT)
+                                            .join(Table.INDEXED_SOURCE)
+                                            .on(Column.INDEXED_COMMENT.SOURCE_ID.equal(Column.INDEXED_SOURCE.ID))
+                                            .where(Column.INDEXED_COMMENT.ID.in(Arrays.asList(ids)))
+                                            .fetch();
+        Map<Long,Record> rowOfComment = new HashMap<Long,Record>();
+        for (Record row : rows) {
+            rowOfComment.put(indexDB.getLongValue(row, Column.INDEXED_COMMENT.ID), row);
+        }
+
+        Map<Long,Map<Integer,MatchedAnnotation>> annotationsOfComment = new HashMap<Long,Map<Integer,MatchedAnnotation>>();
+        Result<Record> annotationRows = indexDB.jooq().select(INDEXED_COMMENT_ID, RANK_IN_COMMENT, TAG, KEYWORD, VALUE)
+                                                      .from(Table.INDEXED_ANNOTATION)
+                                                      .where(INDEXED_COMMENT_ID.in(Arrays.asList(ids)))
+                                                      .fetch();
+        for (Record row : annotationRows) {
+            Long commentId = indexDB.getLongValue(row, INDEXED_COMMENT_ID);
+            Map<Integer,MatchedAnnotation> annotations = annotationsOfComment.get(commentId);
+            if (annotations == null) {
+                annotations = new HashMap<Integer,MatchedAnnotation>();
+                annotationsOfComment.put(commentId, annotations);
+            }
+            Long rank = indexDB.getLong(row.getValue(RANK_IN_COMMENT));
+            annotations.put(rank.intValue(), new MatchedAnnotation(rank,
+                                                                   indexDB.getStringValue(row, TAG),
+                                                                   indexDB.getStringValue(row, KEYWORD),
+                                                                   indexDB.getStringValue(row, VALUE)));
+        }
+
+        List<SearchHit> hits = new ArrayList<SearchHit>();
+        for (Candidate candidate : ranked) {
+            Record row = rowOfComment.get(candidate.commentId);
+            List<MatchedAnnotation> matchedAnnotations = new ArrayList<MatchedAnnotation>();
+            Map<Integer,MatchedAnnotation> annotations = annotationsOfComment.get(candidate.commentId);
+            for (Integer rank : candidate.annotationRanks) {
+                MatchedAnnotation annotation = (annotations == null) ? null : annotations.get(rank);
+                if (annotation != null) matchedAnnotations.add(annotation);
+            }
+            hits.add(new SearchHit(indexDB.getStringValue(row, PATH),
+                                   indexDB.getLongValue(row, LINE_NUMBER),
+                                   indexDB.getLongValue(row, RANK_IN_LINE),
+                                   indexDB.getStringValue(row, COMMENT_TEXT),
+                                   matchedAnnotations,
+                                   candidate.score));
+        }
+        return hits;
+    }
+
+    /** Closes the database backing the index. */
+    @Override
+    public void close() throws SQLException {
+        indexDB.close();
+    }
+
+    /** A comment to be stored in the index, with its annotations in order of rank. */
+    static class IndexedComment {
+        final long id;
+        final Long lineNumber;
+        final Long rankInLine;
+        final String text;
+        final List<IndexedAnnotation> annotations = new ArrayList<IndexedAnnotation>();
+        IndexedComment(long id, Long lineNumber, Long rankInLine, String text) {
+            this.id = id;
+            this.lineNumber = lineNumber;
+            this.rankInLine = rankInLine;
+            this.text = text;
+        }
+    }
+
+    /** An annotation of a comment to be stored in the index. */
+    static class IndexedAnnotation {
+        final int rankInComment;
+        final String tag;
+        final String keyword;
+        final String value;
+        IndexedAnnotation(int rankInComment, String tag, String keyword, String value) {
+            this.rankInComment = rankInComment;
+            this.tag = tag;
+            this.keyword = keyword;
+            this.value = value;
+        }
+    }
+
+    /** Encoder of the postings of one term in one source, appended in order of comment id. */
+    static class Postings {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        private long lastCommentId = 0;
+        private int commentCount = 0;
+
+        /** Appends an occurrence of the term.
+         *  @param commentId The id of the comment containing the term.
+         *  @param tokenCount The number of terms in the comment.
+         *  @param position The zero-based position of the term among the terms of the comment.
+         *  @param annotationRank The one-based rank in the comment of the annotation containing
+         *         the term, or zero.
+         */
+        void add(long commentId, int tokenCount, int position, int annotationRank) {
+            long delta = commentId - lastCommentId;
+            writeVarLong(delta);
+            if (delta > 0) {
+                writeVarLong(tokenCount);
+                commentCount++;
+            }
+            writeVarLong(position);
+            writeVarLong(annotationRank);
+            lastCommentId = commentId;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        /** Returns a copy of encoded postings with each comment id increased by an offset.
+         *  Only the first comment id is stored as such, the rest being differences. */
+        static Postings withCommentIdsOffset(byte[] encoded, int commentCount, long offset) {
+            PostingsReader reader = new PostingsReader(encoded);
+            Postings copy = new Postings();
+            copy.writeVarLong(reader.next() + offset);
+            copy.bytes.write(encoded, reader.offset, encoded.length - reader.offset);
+            copy.commentCount = commentCount;
+            return copy;
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7fL) != 0) {
+                bytes.write((int)((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int)value);
+        }
+    }
+
+    /** Decoder of the variable-length integers of an encoded postings list. */
+    private static class PostingsReader {
+
+        private final byte[] bytes;
+        private int offset = 0;
+
+        PostingsReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean hasNext() {
+            return offset < bytes.length;
+        }
+
+        long next() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[offset++];
+                value |= (long)(b & 0x7f) << shift;
+                if (b >= 0) return value;
+            }
+        }
+    }
+
+    /** The occurrences of one term in one comment. */
+    private static class Occurrences {
+
+        final int tokenCount;
+        int count = 0;
+        int[] positions = new int[2];
+        int[] annotations = new int[2];
+
+        Occurrences(int tokenCount) {
+            this.tokenCount = tokenCount;
+        }
+
+        void add(int position, int annotation) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                annotations = Arrays.copyOf(annotations, count * 2);
+            }
+            positions[count] = position;
+            annotations[count++] = annotation;
+        }
+
+        boolean hasPosition(int position) {
+            return Arrays.binarySearch(positions, 0, count, position) >= 0;
+        }
+    }
+
+    /** A comment matching a search, ordered by score and then by decreasing id. */
+    private static class Candidate implements Comparable<Candidate> {
+
+        final Long commentId;
+        final double score;
+        List<Integer> annotationRanks = null;
+
+        Candidate(Long commentId, double score) {
+            this.commentId = commentId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int byScore = Double.compare(score, other.score);
+            return (byScore != 0) ? byScore : other.commentId.compareTo(commentId);
+        }
+    }
+}
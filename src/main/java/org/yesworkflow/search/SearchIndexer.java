@@ -0,0 +1,171 @@
+package org.yesworkflow.search;
+
+import static org.yesworkflow.db.Column.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jooq.Record;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
+import org.yesworkflow.db.Table;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.extract.CommentListener;
+import org.yesworkflow.search.SearchIndex.IndexedAnnotation;
+import org.yesworkflow.search.SearchIndex.IndexedComment;
+import org.yesworkflow.search.SearchIndex.Postings;
+
+/** Class that adds the comments it receives during extraction to a {@link SearchIndex},
+ *  one source at a time.  The comments and postings of each source are buffered until
+ *  the next source begins (or {@link #flush()} is called after the last source), and then
+ *  stored together, replacing any earlier index entries for the path of the source.
+ *  Deduplicated sources are indexed afterwards with copies of the entries of the sources
+ *  they duplicate, so that searches find the comments under every path containing them.
+ *
+ *  <p>Each term is attributed to the annotation whose text contains it, so the indexer
+ *  must receive the annotations built from the comments it receives, and must receive
+ *  each comment before the {@link org.yesworkflow.extract.AnnotationBuilder AnnotationBuilder} does.
+ *  Annotations are recorded by their rank in the comment, tag, keyword and value rather than
+ *  by the ids assigned by the extraction, which mean nothing once the extraction is over.</p>
+ */
+public class SearchIndexer implements CommentListener, AnnotationListener {
+
+    /** Path under which sources read from standard input are indexed. */
+    public static final String STDIN_PATH = "-";
+
+    private final SearchIndex index;
+    private final YesWorkflowDB ywdb;
+    private long nextCommentId;
+
+    private Long sourceId = null;
+    private List<IndexedComment> comments = new ArrayList<IndexedComment>();
+    private Map<String,Postings> postings = new HashMap<String,Postings>();
+    private long tokenCount = 0;
+
+    private IndexedComment pendingComment = null;
+    private final List<String> pendingTerms = new ArrayList<String>();
+    private final List<Integer> pendingStarts = new ArrayList<Integer>();
+    private final List<Integer> pendingAnnotationRanks = new ArrayList<Integer>();
+    private int annotationSearchStart = 0;
+
+    /** Constructs an indexer adding to the given index the comments of sources stored in
+     *  the given YesWorkflow DB, from which the paths of the sources are read. */
+    public SearchIndexer(SearchIndex index, YesWorkflowDB ywdb) {
+        this.index = index;
+        this.ywdb = ywdb;
+        this.nextCommentId = index.nextCommentId();
+    }
+
+    @Override
+    public void sourceLine(Long sourceId, Long lineNumber, String lineText) throws Exception {
+        startSource(sourceId);
+    }
+
+    @Override
+    public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws Exception {
+
+        startSource(sourceId);
+        finishComment();
+
+        pendingComment = new IndexedComment(nextCommentId++, lineNumber, rankInLine, commentText);
+        Tokenizer tokenizer = new Tokenizer(commentText);
+        while (tokenizer.next()) {
+            pendingTerms.add(tokenizer.term());
+            pendingStarts.add(tokenizer.start());
+            pendingAnnotationRanks.add(0);
+        }
+        annotationSearchStart = 0;
+    }
+
+    /** Records an annotation of the current comment, attributing the terms of the comment
+     *  within the text of the annotation to it. */
+    @Override
+    public void annotation(Annotation annotation) {
+
+        if (pendingComment == null) return;
+
+        int rank = pendingComment.annotations.size() + 1;
+        pendingComment.annotations.add(new IndexedAnnotation(rank, annotation.tag.toString(),
+                                                             annotation.keyword, annotation.name));
+
+        int start = pendingComment.text.indexOf(annotation.comment, annotationSearchStart);
+        if (start == -1) return;
+        int end = start + annotation.comment.length();
+
+        for (int i = 0; i < pendingStarts.size(); ++i) {
+            int termStart = pendingStarts.get(i);
+            if (termStart >= start && termStart < end) pendingAnnotationRanks.set(i, rank);
+        }
+        annotationSearchStart = end;
+    }
+
+    /** Stores the comments of the last source received in the index. */
+    public void flush() throws Exception {
+        finishSource();
+    }
+
+    /** Indexes a deduplicated source, which receives no comments of its own, under its own
+     *  path with the comments of the source it duplicates.  Must be called after the
+     *  duplicated source has been flushed to the index.
+     *  @param path The path of the deduplicated source.
+     *  @param originalSourceId The id of the source it duplicates.
+     */
+    public void sourceAlias(String path, Long originalSourceId) throws Exception {
+        index.storeAlias(path, sourcePath(originalSourceId));
+    }
+
+    private void startSource(Long sourceId) throws Exception {
+        if (this.sourceId == null || !this.sourceId.equals(sourceId)) {
+            finishSource();
+            this.sourceId = sourceId;
+        }
+    }
+
+    private void finishComment() {
+
+        if (pendingComment == null) return;
+
+        int termCount = pendingTerms.size();
+        for (int i = 0; i < termCount; ++i) {
+            Postings termPostings = postings.get(pendingTerms.get(i));
+            if (termPostings == null) {
+                termPostings = new Postings();
+                postings.put(pendingTerms.get(i), termPostings);
+            }
+            termPostings.add(pendingComment.id, termCount, i, pendingAnnotationRanks.get(i));
+        }
+
+        comments.add(pendingComment);
+        tokenCount += termCount;
+
+        pendingComment = null;
+        pendingTerms.clear();
+        pendingStarts.clear();
+        pendingAnnotationRanks.clear();
+    }
+
+    private void finishSource() throws Exception {
+
+        finishComment();
+        if (sourceId == null) return;
+
+        index.store(sourcePath(sourceId), comments, postings, tokenCount);
+
+        sourceId = null;
+        comments = new ArrayList<IndexedComment>();
+        postings = new HashMap<String,Postings>();
+        tokenCount = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private String sourcePath(Long sourceId) {
+        Record source = ywdb.jooq().select(PATH)
+                                   .from(Table.SOURCE)
+                                   .where(ID.equal(sourceId))
+                                   .fetchOne();
+        String path = (source == null) ? null : ywdb.getStringValue(source, PATH);
+        return (path == null) ? STDIN_PATH : path;
+    }
+}
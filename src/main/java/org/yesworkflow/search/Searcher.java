@@ -0,0 +1,13 @@
+package org.yesworkflow.search;
+
+import java.util.List;
+import java.util.Map;
+
+import org.yesworkflow.YWStage;
+
+public interface Searcher extends YWStage {
+    Searcher configure(String key, Object value) throws Exception;
+    Searcher configure(Map<String, Object> config) throws Exception;
+    Searcher search() throws Exception;
+    List<SearchHit> getHits();
+}
@@ -0,0 +1,58 @@
+package org.yesworkflow.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Class that splits text into the terms indexed and searched for by a {@link SearchIndex}.
+ *  A term is a maximal run of letters, digits and underscores, so that identifiers such as
+ *  <code>raw_data</code> are single terms, and is lower-cased so that searches ignore case.
+ *  The text is scanned once, and each term found is identified by its offsets in the text.
+ */
+public final class Tokenizer {
+
+    private final CharSequence text;
+    private int start = 0;
+    private int end = 0;
+
+    public Tokenizer(CharSequence text) {
+        this.text = text;
+    }
+
+    /** Advances to the next term in the text.
+     *  @return true if a term was found, or false at the end of the text.
+     */
+    public boolean next() {
+        start = end;
+        while (start < text.length() && !isTermChar(text.charAt(start))) ++start;
+        end = start;
+        while (end < text.length() && isTermChar(text.charAt(end))) ++end;
+        return start < end;
+    }
+
+    /** Returns the offset in the text of the first character of the current term. */
+    public int start() {
+        return start;
+    }
+
+    /** Returns the offset in the text following the last character of the current term. */
+    public int end() {
+        return end;
+    }
+
+    /** Returns the current term, lower-cased. */
+    public String term() {
+        return text.subSequence(start, end).toString().toLowerCase();
+    }
+
+    /** Returns the terms in the given text, in order. */
+    public static List<String> terms(CharSequence text) {
+        List<String> terms = new ArrayList<String>();
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) terms.add(tokenizer.term());
+        return terms;
+    }
+
+    private static boolean isTermChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
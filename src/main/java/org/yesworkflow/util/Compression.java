@@ -0,0 +1,74 @@
+package org.yesworkflow.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/** Enumeration of the compression formats in which source files may be stored,
+ *  each recognized by the suffix following the name of the uncompressed file,
+ *  e.g. <code>script.py.gz</code>.  Compressed sources are decompressed as they
+ *  are read, without writing the uncompressed source to disk.
+ */
+public enum Compression {
+
+    NONE,
+    GZIP(".gz", ".gzip"),
+    BZIP2(".bz2", ".bzip2");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String[] suffixes;
+
+    private Compression(String... suffixes) {
+        this.suffixes = suffixes;
+    }
+
+    /** Infers the compression format of a file from the suffix of its name.
+     *  @param fileName The name or path of the file.
+     *  @return The compression format, or NONE if the suffix is not recognized.
+     */
+    public static Compression forFileName(String fileName) {
+        for (Compression compression : values()) {
+            if (compression.suffixLength(fileName) > 0) return compression;
+        }
+        return NONE;
+    }
+
+    /** Removes the suffix of a recognized compression format from a file name.
+     *  @param fileName The name or path of the file.
+     *  @return The name of the file without its compression suffix, if any.
+     */
+    public static String stripSuffix(String fileName) {
+        for (Compression compression : values()) {
+            int length = compression.suffixLength(fileName);
+            if (length > 0) return fileName.substring(0, fileName.length() - length);
+        }
+        return fileName;
+    }
+
+    /** Wraps a stream of compressed bytes in a stream that decompresses them.
+     *  @param stream The stream of bytes in this compression format.
+     *  @return The stream of decompressed bytes, or the given stream for NONE.
+     *  @throws IOException if the stream does not begin with a valid header for this format.
+     */
+    public InputStream decompress(InputStream stream) throws IOException {
+        switch (this) {
+            case GZIP:  return new GZIPInputStream(stream, BUFFER_SIZE);
+            case BZIP2: return new BZip2CompressorInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+            default:    return stream;
+        }
+    }
+
+    private int suffixLength(String fileName) {
+        for (String suffix : suffixes) {
+            if (fileName.length() > suffix.length() &&
+                fileName.regionMatches(true, fileName.length() - suffix.length(), suffix, 0, suffix.length())) {
+                return suffix.length();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,234 @@
+package org.yesworkflow.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/** Class that reads a JSON document one token at a time, holding in memory only the
+ *  token being read.  String values are read from the underlying reader only if their
+ *  text is requested via {@link #getText()}, so that large strings that are not needed,
+ *  e.g. base64-encoded images, are skipped without being materialized.
+ *
+ *  <p>The parser is lenient: commas and colons are treated as whitespace, and the
+ *  structure of the document is not validated beyond the nesting of containers.</p>
+ */
+public class JsonPullParser {
+
+    public enum Token {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        FIELD_NAME,
+        STRING,
+        NUMBER,
+        TRUE,
+        FALSE,
+        NULL
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /** Whether each enclosing container is an object, indexed by depth. */
+    private boolean[] inObject = new boolean[32];
+    private int depth = 0;
+    private boolean expectingFieldName = false;
+
+    private Token token = null;
+    private String text = null;
+    private boolean stringUnread = false;
+
+    public JsonPullParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** Advances to the next token, skipping the unread characters of the current one.
+     *  @return The next token, or null at the end of the document.
+     *  @throws IOException if the document cannot be read or is not well formed JSON.
+     */
+    public Token next() throws IOException {
+
+        if (stringUnread) skipString();
+        text = null;
+
+        int c = read();
+        while (c == ',' || c == ':' || isWhitespace(c)) c = read();
+
+        switch (c) {
+            case -1:
+                if (depth > 0) throw new IOException("Unexpected end of JSON document");
+                return token = null;
+            case '{':
+                push(true);
+                return token = Token.START_OBJECT;
+            case '[':
+                push(false);
+                return token = Token.START_ARRAY;
+            case '}':
+            case ']':
+                if (depth == 0 || inObject[depth - 1] != (c == '}')) {
+                    throw new IOException("Unexpected '" + (char)c + "' in JSON document");
+                }
+                depth--;
+                valueRead();
+                return token = (c == '}') ? Token.END_OBJECT : Token.END_ARRAY;
+            case '"':
+                stringUnread = true;
+                if (expectingFieldName) {
+                    expectingFieldName = false;
+                    return token = Token.FIELD_NAME;
+                }
+                valueRead();
+                return token = Token.STRING;
+            case 't':
+                readLiteral("rue");
+                valueRead();
+                return token = Token.TRUE;
+            case 'f':
+                readLiteral("alse");
+                valueRead();
+                return token = Token.FALSE;
+            case 'n':
+                readLiteral("ull");
+                valueRead();
+                return token = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    text = readNumber((char)c);
+                    valueRead();
+                    return token = Token.NUMBER;
+                }
+                throw new IOException("Unexpected character '" + (char)c + "' in JSON document");
+        }
+    }
+
+    /** Returns the current token, or null before the first token and at the end of the document. */
+    public Token getToken() {
+        return token;
+    }
+
+    /** Returns the text of the current field name, string or number, reading it if necessary,
+     *  or null for other tokens. */
+    public String getText() throws IOException {
+        if (stringUnread) {
+            text = readString();
+        }
+        return text;
+    }
+
+    /** Skips the children of the current token if it starts an object or array, leaving
+     *  the matching end token as the current token.  Does nothing for other tokens. */
+    public void skipChildren() throws IOException {
+        if (token != Token.START_OBJECT && token != Token.START_ARRAY) return;
+        int startDepth = depth;
+        while (depth >= startDepth) {
+            if (next() == null) throw new IOException("Unexpected end of JSON document");
+        }
+    }
+
+    private void push(boolean isObject) {
+        if (depth == inObject.length) {
+            boolean[] deeper = new boolean[depth * 2];
+            System.arraycopy(inObject, 0, deeper, 0, depth);
+            inObject = deeper;
+        }
+        inObject[depth++] = isObject;
+        expectingFieldName = isObject;
+    }
+
+    /** Records that a value has been read, after which a field name is expected if the
+     *  enclosing container is an object. */
+    private void valueRead() {
+        expectingFieldName = depth > 0 && inObject[depth - 1];
+    }
+
+    private String readString() throws IOException {
+        stringUnread = false;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = read();
+            switch (c) {
+                case -1:
+                    throw new IOException("Unterminated string in JSON document");
+                case '"':
+                    return sb.toString();
+                case '\\':
+                    int escaped = read();
+                    switch (escaped) {
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'u': sb.append(readUnicodeEscape()); break;
+                        case -1:  throw new IOException("Unterminated string in JSON document");
+                        default:  sb.append((char)escaped);
+                    }
+                    break;
+                default:
+                    sb.append((char)c);
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        stringUnread = false;
+        while (true) {
+            if (position == limit && !fill()) throw new IOException("Unterminated string in JSON document");
+            char c = buffer[position++];
+            if (c == '"') return;
+            if (c == '\\') {
+                if (read() == -1) throw new IOException("Unterminated string in JSON document");
+            }
+        }
+    }
+
+    private char readUnicodeEscape() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; ++i) {
+            int digit = Character.digit(read(), 16);
+            if (digit == -1) throw new IOException("Invalid unicode escape in JSON document");
+            value = value * 16 + digit;
+        }
+        return (char)value;
+    }
+
+    private String readNumber(char first) throws IOException {
+        StringBuilder sb = new StringBuilder().append(first);
+        while (true) {
+            if (position == limit && !fill()) break;
+            char c = buffer[position];
+            if (!(c >= '0' && c <= '9') && c != '.' && c != 'e' && c != 'E' && c != '+' && c != '-') break;
+            sb.append(c);
+            position++;
+        }
+        return sb.toString();
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); ++i) {
+            if (read() != rest.charAt(i)) throw new IOException("Invalid literal in JSON document");
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        int count = reader.read(buffer, 0, buffer.length);
+        if (count <= 0) return false;
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+}
@@ -0,0 +1,117 @@
+package org.yesworkflow.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Class for matching the lines of an edited text to the lines of its previous version.
+ *  Lines are matched by patience diffing: the common leading and trailing lines of the two
+ *  versions are matched first, then the lines occurring exactly once in what remains of
+ *  both versions, in the longest sequence in which they occur in the same order, and the
+ *  ranges between those lines are matched in the same way, recursively.  A single edit to
+ *  a long text is thus found without comparing more than the lines around it, and
+ *  independent edits are found as separate regions of unmatched lines.
+ */
+public final class LineDiff {
+
+    private LineDiff() {}
+
+    /** Matches the lines of two versions of a text.
+     *  @param oldLines The lines of the previous version.
+     *  @param newLines The lines of the edited version.
+     *  @return For each line of the edited version the index of the identical line of the
+     *          previous version it is matched to, or -1 if it was inserted or changed.
+     *          Matched indexes increase with the index of the edited line.
+     */
+    public static int[] match(List<String> oldLines, List<String> newLines) {
+        int[] matches = new int[newLines.size()];
+        Arrays.fill(matches, -1);
+        match(oldLines, 0, oldLines.size(), newLines, 0, newLines.size(), matches);
+        return matches;
+    }
+
+    private static void match(List<String> oldLines, int oldStart, int oldEnd,
+                              List<String> newLines, int newStart, int newEnd, int[] matches) {
+
+        while (oldStart < oldEnd && newStart < newEnd && oldLines.get(oldStart).equals(newLines.get(newStart))) {
+            matches[newStart++] = oldStart++;
+        }
+        while (oldStart < oldEnd && newStart < newEnd && oldLines.get(oldEnd - 1).equals(newLines.get(newEnd - 1))) {
+            matches[--newEnd] = --oldEnd;
+        }
+        if (oldStart == oldEnd || newStart == newEnd) return;
+
+        List<int[]> anchors = uniqueCommonLines(oldLines, oldStart, oldEnd, newLines, newStart, newEnd);
+        if (anchors.isEmpty()) return;
+
+        int oldFrom = oldStart;
+        int newFrom = newStart;
+        for (int[] anchor : anchors) {
+            match(oldLines, oldFrom, anchor[0], newLines, newFrom, anchor[1], matches);
+            matches[anchor[1]] = anchor[0];
+            oldFrom = anchor[0] + 1;
+            newFrom = anchor[1] + 1;
+        }
+        match(oldLines, oldFrom, oldEnd, newLines, newFrom, newEnd, matches);
+    }
+
+    /** Returns the longest sequence of pairs of indexes of lines occurring exactly once in
+     *  each of the two ranges, increasing in both ranges. */
+    private static List<int[]> uniqueCommonLines(List<String> oldLines, int oldStart, int oldEnd,
+                                                 List<String> newLines, int newStart, int newEnd) {
+
+        // count occurrences in both ranges, remembering the index of the last one in each
+        Map<String,int[]> occurrences = new HashMap<String,int[]>();
+        for (int i = oldStart; i < oldEnd; ++i) {
+            int[] counts = occurrences.get(oldLines.get(i));
+            if (counts == null) {
+                counts = new int[] { 0, -1, 0, -1 };
+                occurrences.put(oldLines.get(i), counts);
+            }
+            counts[0]++;
+            counts[1] = i;
+        }
+        for (int i = newStart; i < newEnd; ++i) {
+            int[] counts = occurrences.get(newLines.get(i));
+            if (counts != null) {
+                counts[2]++;
+                counts[3] = i;
+            }
+        }
+
+        // old indexes of the lines unique in both ranges, in the order of the new range
+        List<int[]> pairs = new ArrayList<int[]>();
+        for (int i = newStart; i < newEnd; ++i) {
+            int[] counts = occurrences.get(newLines.get(i));
+            if (counts != null && counts[0] == 1 && counts[2] == 1) {
+                pairs.add(new int[] { counts[1], i });
+            }
+        }
+        if (pairs.isEmpty()) return pairs;
+
+        // longest subsequence increasing in old indexes, by patience sorting
+        int[] pileTops = new int[pairs.size()];
+        int[] predecessors = new int[pairs.size()];
+        int pileCount = 0;
+        for (int p = 0; p < pairs.size(); ++p) {
+            int oldIndex = pairs.get(p)[0];
+            int low = 0;
+            int high = pileCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (pairs.get(pileTops[middle])[0] < oldIndex) low = middle + 1; else high = middle;
+            }
+            predecessors[p] = (low > 0) ? pileTops[low - 1] : -1;
+            pileTops[low] = p;
+            if (low == pileCount) pileCount++;
+        }
+
+        int[][] sequence = new int[pileCount][];
+        for (int p = pileTops[pileCount - 1], k = pileCount - 1; p != -1; p = predecessors[p], --k) {
+            sequence[k] = pairs.get(p);
+        }
+        return Arrays.asList(sequence);
+    }
+}
@@ -0,0 +1,85 @@
+package org.yesworkflow.util;
+
+/** Class representing the amount of heap memory that extraction may use for buffering
+ *  source files and database rows, and deriving from it the sizes of the buffers used.
+ *  Budgets are given as a number of bytes, optionally followed by a K, M or G suffix.
+ *  The budget does not bound the annotations parsed from the sources, which are held on
+ *  the heap in full, together with the skeleton built from them, for building the model.
+ */
+public class MemoryBudget {
+
+    /** Estimated heap footprint of a buffered source line or comment row, in bytes. */
+    private static final int BYTES_PER_BUFFERED_ROW = 512;
+
+    private static final int MIN_BATCH_ROWS = 100;
+    private static final int MAX_BATCH_ROWS = 10000;
+    private static final long MIN_BUDGET = 16 * 1024;
+
+    private final long bytes;
+
+    /** Constructs a budget of the given size, or of the minimum size if smaller.
+     *  @throws IllegalArgumentException If the size is negative.
+     */
+    public MemoryBudget(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Memory budget must not be negative: " + bytes);
+        this.bytes = Math.max(bytes, MIN_BUDGET);
+    }
+
+    public static MemoryBudget toMemoryBudget(Object budget) throws Exception {
+
+        if (budget instanceof MemoryBudget) return (MemoryBudget)budget;
+        if (budget instanceof Number) return toMemoryBudget(((Number)budget).longValue(), budget);
+
+        if (budget instanceof String) {
+            String budgetString = ((String)budget).trim().toUpperCase();
+            long multiplier = 1;
+            if (budgetString.endsWith("K"))         multiplier = 1024L;
+            else if (budgetString.endsWith("M"))    multiplier = 1024L * 1024;
+            else if (budgetString.endsWith("G"))    multiplier = 1024L * 1024 * 1024;
+            if (multiplier > 1) budgetString = budgetString.substring(0, budgetString.length() - 1);
+            try {
+                return toMemoryBudget(Long.parseLong(budgetString.trim()) * multiplier, budget);
+            } catch (NumberFormatException e) {
+                // fall through to exception below
+            }
+        }
+
+        throw new Exception("Unrecognized memory budget: " + budget);
+    }
+
+    private static MemoryBudget toMemoryBudget(long bytes, Object budget) throws Exception {
+        if (bytes < 0) throw new Exception("Memory budget must not be negative: " + budget);
+        return new MemoryBudget(bytes);
+    }
+
+    /** Returns the budget in bytes. */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** Returns the size above which a source file is scanned as a stream of lines rather
+     *  than read into memory in full, given the number of files that may be held at once.
+     *  A decoded file takes about twice its size in bytes, and its scan about as much again.
+     */
+    public long getStreamingThreshold(int filesHeld) {
+        return bytes / (4L * Math.max(filesHeld, 1));
+    }
+
+    /** Returns the number of rows to buffer before sending them to the database, which
+     *  is allowed a quarter of the budget. */
+    public int getBatchRows() {
+        long rows = bytes / (4L * BYTES_PER_BUFFERED_ROW);
+        return (int)Math.max(MIN_BATCH_ROWS, Math.min(MAX_BATCH_ROWS, rows));
+    }
+
+    /** Returns the size of the page cache of a file-backed database, which is allowed
+     *  half of the budget, in kilobytes. */
+    public int getDatabaseCacheKB() {
+        return (int)Math.min(Integer.MAX_VALUE, bytes / 2 / 1024);
+    }
+
+    @Override
+    public String toString() {
+        return bytes + " bytes";
+    }
+}
@@ -0,0 +1,149 @@
+package org.yesworkflow.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** Class for reading a character stream ahead of its consumer on a separate thread.
+ *  The wrapped reader is read in chunks by a thread of its own, and the chunks are passed
+ *  to the consumer through a bounded queue, so that reading, decoding and decompressing a
+ *  source overlap with scanning it while at most a fixed number of chunks are held in memory.
+ *  An exception thrown by the wrapped reader is rethrown to the consumer when it reaches
+ *  the point in the stream at which the exception occurred.
+ *
+ *  <p>Instances are not thread-safe: only one thread may consume the characters read.
+ *  Closing the reader stops the thread reading ahead and closes the wrapped reader.</p>
+ */
+public class ReadAheadReader extends Reader {
+
+    /** Default number of characters read ahead at a time. */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    /** Default number of chunks held between the thread reading ahead and the consumer. */
+    public static final int DEFAULT_CHUNK_COUNT = 8;
+
+    private static final Chunk END = new Chunk(new char[0], null);
+
+    private final Reader in;
+    private final BlockingQueue<Chunk> queue;
+    private final Thread thread;
+    private Chunk chunk = null;
+    private int position = 0;
+    private boolean ended = false;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    public ReadAheadReader(Reader in) {
+        this(in, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+    }
+
+    /** Constructs a reader and starts reading ahead.
+     *  @param in The reader to read ahead of the consumer.
+     *  @param chunkSize The number of characters read ahead at a time.
+     *  @param chunkCount The number of chunks that can be read ahead of the consumer.
+     */
+    public ReadAheadReader(Reader in, final int chunkSize, int chunkCount) {
+        this.in = in;
+        this.queue = new ArrayBlockingQueue<Chunk>(chunkCount);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead(chunkSize);
+            }
+        }, "read-ahead");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+
+        if (closed) throw new IOException("Stream closed");
+        if (length == 0) return 0;
+
+        while (chunk == null || position == chunk.chars.length) {
+            if (ended) return -1;
+            chunk = nextChunk();
+            position = 0;
+            if (chunk.failure != null) {
+                ended = true;
+                throw chunk.failure;
+            }
+            if (chunk == END) {
+                ended = true;
+                return -1;
+            }
+        }
+
+        int count = Math.min(length, chunk.chars.length - position);
+        System.arraycopy(chunk.chars, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        thread.interrupt();
+        queue.clear();
+        synchronized (this) {
+            if (finished) in.close();
+        }
+    }
+
+    private Chunk nextChunk() throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading ahead", e);
+        }
+    }
+
+    private void readAhead(int chunkSize) {
+        try {
+            char[] buffer = new char[chunkSize];
+            for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+                if (count > 0) {
+                    char[] chars = new char[count];
+                    System.arraycopy(buffer, 0, chars, 0, count);
+                    queue.put(new Chunk(chars, null));
+                }
+            }
+            queue.put(END);
+        } catch (IOException e) {
+            try {
+                queue.put(new Chunk(new char[0], e));
+            } catch (InterruptedException ie) {
+                // closed by the consumer
+            }
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        } finally {
+            synchronized (this) {
+                finished = true;
+                if (closed) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // nothing to report to a consumer that has gone
+                    }
+                }
+            }
+        }
+    }
+
+    /** Characters read ahead, or the exception thrown reading them. */
+    private static class Chunk {
+
+        final char[] chars;
+        final IOException failure;
+
+        Chunk(char[] chars, IOException failure) {
+            this.chars = chars;
+            this.failure = failure;
+        }
+    }
+}
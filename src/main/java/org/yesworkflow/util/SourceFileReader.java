@@ -0,0 +1,89 @@
+package org.yesworkflow.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Class for reading entire source files into memory via NIO.  Each file is memory-mapped
+ *  and decoded into a single {@link java.nio.CharBuffer CharBuffer} that is reused for
+ *  subsequent files read by the same instance, growing only when a larger file is read.
+ *  Characters that cannot be decoded are replaced, as they are when reading via a
+ *  {@link java.io.FileReader FileReader}.
+ *
+ *  <p>Instances are not thread-safe.  The buffer returned by {@link #read(Path) read()} is
+ *  overwritten by the next call.</p>
+ */
+public class SourceFileReader {
+
+    private final CharsetDecoder decoder;
+    private CharBuffer chars = CharBuffer.allocate(0);
+
+    /** Constructs a reader decoding files using the default character set of the platform. */
+    public SourceFileReader() {
+        this(Charset.defaultCharset());
+    }
+
+    public SourceFileReader(Charset charset) {
+        this.decoder = charset.newDecoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /** Reads and decodes the contents of a file.
+     *  @param path The path of the file to read.
+     *  @return A buffer positioned at the first character of the file and limited to its length.
+     *  @throws IOException If the file cannot be read.
+     */
+    public CharBuffer read(Path path) throws IOException {
+        return decode(map(path));
+    }
+
+    /** Maps the contents of a file into memory without decoding them.
+     *  @param path The path of the file to map.
+     *  @return A read-only buffer holding the bytes of the file.
+     *  @throws IOException If the file cannot be read.
+     */
+    public ByteBuffer map(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to read into memory: " + path);
+            }
+
+            return (size == 0) ? ByteBuffer.allocate(0) :
+                                 channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /** Decodes the remaining bytes in a buffer, e.g. one returned by {@link #map(Path) map()}.
+     *  @param bytes The bytes to decode.
+     *  @return A buffer positioned at the first decoded character and limited to the last.
+     *  @throws CharacterCodingException If the bytes cannot be decoded.
+     */
+    public CharBuffer decode(ByteBuffer bytes) throws CharacterCodingException {
+        ensureCapacity((int)Math.min(Integer.MAX_VALUE, (long)Math.ceil(bytes.remaining() * (double)decoder.maxCharsPerByte())));
+        decoder.reset();
+        chars.clear();
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (result.isUnderflow()) result = decoder.flush(chars);
+        if (!result.isUnderflow()) result.throwException();
+        chars.flip();
+        return chars;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (chars.capacity() < capacity) {
+            chars = CharBuffer.allocate((int)Math.min(Integer.MAX_VALUE, Math.max(capacity, 2L * chars.capacity())));
+        }
+    }
+}
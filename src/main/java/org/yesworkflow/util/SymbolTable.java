@@ -0,0 +1,110 @@
+package org.yesworkflow.util;
+
+import java.util.Arrays;
+
+/** Class that interns the strings occurring repeatedly in the annotations
+ *  built in one run, e.g. keywords and binding names, so that each distinct string
+ *  is held in memory only once.  Unlike {@link String#intern()}, the strings are held
+ *  only as long as the table, and are not shared with other runs.
+ *
+ *  <p>Strings can be interned directly from a range of characters in a larger text,
+ *  in which case the characters are copied only the first time they are seen.
+ *  Instances are not thread-safe.</p>
+ */
+public class SymbolTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The interned strings, in the order in which they were first interned. */
+    private String[] symbols = new String[INITIAL_CAPACITY];
+
+    /** The hash code of each interned string, indexed as the strings. */
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    /** Open-addressed hash table of string indexes plus one, with zero marking an empty slot. */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    private int size = 0;
+
+    /** Returns the index of the string formed by the given range of characters of a text,
+     *  interning a copy of the range if an equal string has not yet been interned. */
+    private int indexOf(CharSequence text, int start, int end) {
+
+        int hash = 0;
+        for (int i = start; i < end; ++i) hash = 31 * hash + text.charAt(i);
+
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                int index = add(text.subSequence(start, end).toString(), hash);
+                slots[slot] = index + 1;
+                if (size * 2 > slots.length) rehash();
+                return index;
+            }
+            int index = entry - 1;
+            if (hashes[index] == hash && regionEquals(symbols[index], text, start, end)) {
+                return index;
+            }
+        }
+    }
+
+    /** Returns the interned string equal to the given one, interning it if necessary.
+     *  @param s The string to intern, or null.
+     *  @return The interned string, or null if s is null.
+     */
+    public String intern(String s) {
+        if (s == null) return null;
+        int index = indexOf(s, 0, s.length());
+        return symbols[index];
+    }
+
+    /** Returns the interned string equal to the given range of characters of a text,
+     *  interning a copy of the range if an equal string has not yet been interned.
+     *  @param text The text containing the string.
+     *  @param start The offset of the first character of the string.
+     *  @param end The offset following the last character of the string.
+     *  @return The interned string.
+     */
+    public String intern(CharSequence text, int start, int end) {
+        int index = indexOf(text, start, end);
+        return symbols[index];
+    }
+
+    /** Returns the number of distinct strings interned. */
+    public int size() {
+        return size;
+    }
+
+    private int add(String symbol, int hash) {
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        symbols[size] = symbol;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int index = 0; index < size; ++index) {
+            int slot = spread(hashes[index]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = index + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionEquals(String s, CharSequence text, int start, int end) {
+        if (s.length() != end - start) return false;
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package org.yesworkflow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.yesworkflow.LanguageModel.MatchExtent;
+
+public class TestDelimiterTable extends YesWorkflowTestCase {
+
+    private static MatchExtent tableMatch(DelimiterTable table, String s) {
+        int state = DelimiterTable.START_STATE;
+        for (int i = 0; i < s.length(); ++i) {
+            state = table.nextState(state, s.charAt(i));
+        }
+        return table.startMatch(state);
+    }
+
+    private static List<String> candidateStrings(LanguageModel model) {
+        List<String> delimiters = new ArrayList<String>(model.getSingleCommentDelimiters());
+        delimiters.addAll(model.getPairedCommentDelimiters().keySet());
+        delimiters.addAll(model.getPairedCommentDelimiters().values());
+        List<String> candidates = new ArrayList<String>();
+        for (String delimiter : delimiters) {
+            for (int i = 1; i <= delimiter.length(); ++i) {
+                String prefix = delimiter.substring(0, i);
+                candidates.add(prefix);
+                candidates.add(prefix + "x");
+                candidates.add("x" + prefix);
+                candidates.add(prefix + delimiter);
+            }
+        }
+        candidates.add("x");
+        candidates.add(" ");
+        return candidates;
+    }
+
+    public void testStartMatch_AgreesWithCommentStartMatches_AllLanguages() {
+        for (Language language : Language.values()) {
+            LanguageModel model = new LanguageModel(language);
+            DelimiterTable table = model.getDelimiterTable();
+            for (String s : candidateStrings(model)) {
+                assertEquals(language + " '" + s + "'", model.commentStartMatches(s), tableMatch(table, s));
+            }
+        }
+    }
+
+    public void testStartMatch_SAS() {
+        DelimiterTable table = new LanguageModel(Language.SAS).getDelimiterTable();
+        assertEquals(MatchExtent.FULL_MATCH_PAIRED, tableMatch(table, "*"));
+        assertEquals(MatchExtent.PREFIX_MATCH, tableMatch(table, "/"));
+        assertEquals(MatchExtent.FULL_MATCH_PAIRED, tableMatch(table, "/*"));
+        assertEquals(MatchExtent.NO_MATCH, tableMatch(table, ";"));
+        assertEquals(";", new String(table.endDelimiter(table.nextState(DelimiterTable.START_STATE, '*'))));
+    }
+
+    public void testStartMatch_Matlab() {
+        DelimiterTable table = new LanguageModel(Language.MATLAB).getDelimiterTable();
+        assertEquals(MatchExtent.FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED, tableMatch(table, "%"));
+        assertEquals(MatchExtent.FULL_MATCH_PAIRED, tableMatch(table, "%{"));
+        assertEquals(MatchExtent.PREFIX_MATCH, tableMatch(table, ".."));
+        assertEquals(MatchExtent.FULL_MATCH_PAIRED, tableMatch(table, "..."));
+        assertEquals(MatchExtent.NO_MATCH, tableMatch(table, "%}"));
+        assertNull(table.endDelimiter(table.nextState(DelimiterTable.START_STATE, '%')));
+        assertEquals(3, table.getMaxDelimiterLength());
+    }
+
+    public void testDelimiterTable_RecompiledWhenDelimitersAdded() {
+        LanguageModel model = new LanguageModel();
+        assertEquals(MatchExtent.NO_MATCH, tableMatch(model.getDelimiterTable(), "#"));
+        model.singleDelimiter("#");
+        assertEquals(MatchExtent.FULL_MATCH_SINGLE, tableMatch(model.getDelimiterTable(), "#"));
+        model.delimiterPair("<!--", "-->");
+        DelimiterTable table = model.getDelimiterTable();
+        assertEquals(MatchExtent.PREFIX_MATCH, tableMatch(table, "<!-"));
+        int state = DelimiterTable.START_STATE;
+        for (char c : "<!--".toCharArray()) state = table.nextState(state, c);
+        assertEquals("-->", new String(table.endDelimiter(state)));
+    }
+}
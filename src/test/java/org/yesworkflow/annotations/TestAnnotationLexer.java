@@ -0,0 +1,80 @@
+package org.yesworkflow.annotations;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.YesWorkflowTestCase;
+
+public class TestAnnotationLexer extends YesWorkflowTestCase {
+
+    public void testLexer_KeywordNameAndDescription() {
+        AnnotationLexer lexer = new AnnotationLexer("@in x The longitude");
+        assertTrue(lexer.keywordMatches(Tag.IN));
+        assertEquals("@in", lexer.keyword());
+        assertEquals("x", lexer.name());
+        assertEquals("The longitude", lexer.description());
+    }
+
+    public void testLexer_KeywordOnly() {
+        AnnotationLexer lexer = new AnnotationLexer("  @end  ");
+        assertTrue(lexer.hasKeyword());
+        assertFalse(lexer.hasName());
+        assertEquals("@end", lexer.keyword());
+        assertNull(lexer.name());
+        assertNull(lexer.description());
+    }
+
+    public void testLexer_Empty() {
+        AnnotationLexer lexer = new AnnotationLexer(" \t ");
+        assertFalse(lexer.hasKeyword());
+        assertFalse(lexer.keywordMatches(Tag.IN));
+        assertNull(lexer.keyword());
+    }
+
+    public void testLexer_DescriptionWhitespaceCollapsed() {
+        AnnotationLexer lexer = new AnnotationLexer("@begin  main \t Reads   the\tdata  ");
+        assertEquals("main", lexer.name());
+        assertEquals("Reads the data", lexer.description());
+    }
+
+    public void testLexer_RangeOfText() {
+        String line = "x = 1  # @out y Result  @as z";
+        AnnotationLexer lexer = new AnnotationLexer(line, 9, 22);
+        assertTrue(lexer.keywordMatches(Tag.OUT));
+        assertEquals("y", lexer.name());
+        assertEquals("Result", lexer.description());
+    }
+
+    public void testLexer_KeywordMatches_IgnoresCase() {
+        AnnotationLexer lexer = new AnnotationLexer("@PaRaM p");
+        assertTrue(lexer.keywordMatches(Tag.PARAM));
+        assertFalse(lexer.keywordMatches(Tag.IN));
+        assertEquals("@PaRaM", lexer.keyword(Tag.PARAM));
+    }
+
+    public void testLexer_StandardKeywordNotCopied() {
+        AnnotationLexer lexer = new AnnotationLexer("@param p");
+        assertSame(YWKeywords.STANDARD_PARAM_KEYWORD, lexer.keyword(Tag.PARAM));
+    }
+
+    public void testLexer_Tag() {
+        YWKeywords keywords = new YWKeywords();
+        assertEquals(Tag.URI, new AnnotationLexer("@URI file:a.txt").tag(keywords));
+        assertEquals(Tag.AS, new AnnotationLexer("  @as b").tag(keywords));
+        assertNull(new AnnotationLexer("@input b").tag(keywords));
+    }
+
+    public void testLexer_Tag_AlternateAndDisabledKeywords() {
+        Map<String,Tag> alternateKeywords = new HashMap<String,Tag>();
+        alternateKeywords.put("@Input", Tag.IN);
+        YWKeywords keywords = new YWKeywords(alternateKeywords, Arrays.asList("@in"));
+        assertEquals(Tag.IN, new AnnotationLexer("@INPUT b").tag(keywords));
+        assertEquals(Tag.IN, keywords.getTag("x @input y", 2, 8));
+        assertNull(new AnnotationLexer("@in b").tag(keywords));
+        assertNull(keywords.getTag("@inpu", 0, 5));
+        assertEquals(Tag.OUT, new AnnotationLexer("@out c").tag(keywords));
+    }
+}
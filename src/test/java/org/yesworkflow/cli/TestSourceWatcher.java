@@ -0,0 +1,62 @@
+package org.yesworkflow.cli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.yesworkflow.YesWorkflowTestCase;
+
+public class TestSourceWatcher extends YesWorkflowTestCase {
+
+    private Path root;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        root = getTestDirectory("TestSourceWatcher");
+        Files.createDirectories(root.resolve("build"));
+        write("watched.py");
+    }
+
+    private Path write(String file) throws Exception {
+        Path path = root.resolve(file).toAbsolutePath().normalize();
+        Files.write(path, Arrays.asList("# " + file + " " + System.nanoTime()), StandardCharsets.UTF_8);
+        return path;
+    }
+
+    public void testAwaitChanges_IgnoresNonSourceAndOutputFiles() throws Exception {
+
+        List<String> sources = Arrays.asList(root.toString());
+        List<String> outputs = Arrays.asList(root.resolve("out.gv").toString(), root.resolve("cache.db").toString());
+
+        try (SourceWatcher watcher = new SourceWatcher(sources, null, null, outputs)) {
+            write("notes.txt");
+            write("out.gv");
+            write("cache.db");
+            write("cache.db-journal");
+            Thread.sleep(100);
+            Path changedSource = write("watched.py");
+            assertEquals(Collections.singleton(changedSource), watcher.awaitChanges());
+        }
+    }
+
+    public void testAwaitChanges_AppliesIncludeAndExcludeGlobs() throws Exception {
+
+        List<String> sources = Arrays.asList(root.toString());
+        List<String> outputs = Collections.emptyList();
+
+        try (SourceWatcher watcher = new SourceWatcher(sources, Arrays.asList("*.py", "*.txt"),
+                                                       Arrays.asList("build"), outputs)) {
+            write("build/generated.py");
+            write("notes.R");
+            Thread.sleep(100);
+            Path changedNotes = write("notes.txt");
+            Set<Path> changes = watcher.awaitChanges();
+            assertEquals(Collections.singleton(changedNotes), changes);
+        }
+    }
+}
@@ -5,15 +5,22 @@ package org.yesworkflow.cli;
  */
 
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import org.yesworkflow.Language;
 import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
 import org.yesworkflow.cli.ExitCode;
 import org.yesworkflow.cli.YesWorkflowCLI;
 import org.yesworkflow.config.YWConfiguration;
 import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.extract.CommentListener;
 import org.yesworkflow.extract.DefaultExtractor;
 import org.yesworkflow.extract.Extractor;
 import org.yesworkflow.query.QueryEngineModel;
@@ -115,6 +122,20 @@ public class TestYesWorkflowCLI extends YesWorkflowTestCase {
                 stderrBuffer.toString());
     }
 
+    public void testYesWorkflowCLI_Extract_NegativeMemoryBudget() throws Exception {
+
+        String[] args = {"extract", "src/main/resources/example.py", "-c", "extract.membudget=-1M"};
+        ExitCode returnValue = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream).runForArgs(args);
+        assertEquals(ExitCode.CLI_USAGE_ERROR, returnValue);
+        assertEquals("", stdoutBuffer.toString());
+        assertEquals(
+                ""                                                                      + EOL +
+                "ERROR: Memory budget must not be negative: -1M"                        + EOL +
+                ""                                                                      + EOL +
+                "Use the -h option to display help for the YW command-line interface."  + EOL,
+                stderrBuffer.toString());
+    }
+
     public void testYesWorkflowCLI_SingleConfigureOption_TopLevel() throws Exception {
 
         String[] args = { "noop", "-c", "conf0=val0"};
@@ -416,6 +437,151 @@ public class TestYesWorkflowCLI extends YesWorkflowTestCase {
          );
     }
 
+    public void testYesWorkflow_Watch_RegraphsChangedSource() throws Exception {
+
+        final Path testDirectory = getTestDirectory("TestYesWorkflowCLI_Watch");
+        final Path source = testDirectory.resolve("watched.py");
+        final Path dotFile = testDirectory.resolve("watched.gv");
+        Files.deleteIfExists(dotFile);
+        Files.write(source, Arrays.asList("# @begin watched", "# @end watched"), StandardCharsets.UTF_8);
+
+        final YesWorkflowCLI cli = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+                                       .config(new YWConfiguration());
+        final ExitCode[] exitCode = new ExitCode[1];
+        Thread watchThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    exitCode[0] = cli.runForArgs(new String[] {"watch", source.toString(),
+                                                               "-c", "graph.dotfile=" + dotFile});
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        watchThread.start();
+
+        try {
+            assertTrue(awaitFileContaining(dotFile, "watched"));
+            Files.write(source, Arrays.asList("# @begin watched", "# @begin edited_step", "# @end edited_step",
+                                              "# @end watched"), StandardCharsets.UTF_8);
+            assertTrue(awaitFileContaining(dotFile, "edited_step"));
+        } finally {
+            watchThread.interrupt();
+            watchThread.join(10000);
+        }
+
+        assertEquals(ExitCode.SUCCESS, exitCode[0]);
+        assertTrue(stderrBuffer.toString().contains("Rebuilt in "));
+    }
+
+    public void testYesWorkflow_Watch_ReportsFailedRebuildWithoutEndingWatch() throws Exception {
+
+        final Path testDirectory = getTestDirectory("TestYesWorkflowCLI_WatchFailure");
+        final Path source = testDirectory.resolve("watched.py");
+        final Path dotFile = testDirectory.resolve("watched.gv");
+        Files.deleteIfExists(dotFile);
+        Files.write(source, Arrays.asList("# @begin watched", "# @end watched"), StandardCharsets.UTF_8);
+
+        final YesWorkflowCLI cli = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+                                       .config(new YWConfiguration());
+        final ExitCode[] exitCode = new ExitCode[1];
+        Thread watchThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    exitCode[0] = cli.runForArgs(new String[] {"watch", source.toString(),
+                                                               "-c", "graph.dotfile=" + dotFile});
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        watchThread.start();
+
+        try {
+            assertTrue(awaitFileContaining(dotFile, "watched"));
+            Files.delete(source);
+            assertTrue(awaitStderrContaining("ERROR"));
+            assertFalse(stderrBuffer.toString().contains("Rebuilt in "));
+            Files.write(source, Arrays.asList("# @begin restored", "# @end restored"), StandardCharsets.UTF_8);
+            assertTrue(awaitFileContaining(dotFile, "restored"));
+        } finally {
+            watchThread.interrupt();
+            watchThread.join(10000);
+        }
+
+        assertEquals(ExitCode.SUCCESS, exitCode[0]);
+        assertTrue(stderrBuffer.toString().contains("Rebuilt in "));
+    }
+
+    public void testYesWorkflowCLI_Search_ListsIndexedComments() throws Exception {
+
+        Path testDirectory = getTestDirectory("TestYesWorkflowCLI_Search");
+        Path source = testDirectory.resolve("searched.py");
+        Path indexFile = testDirectory.resolve("index.db");
+        Files.deleteIfExists(indexFile);
+        Files.write(source, Arrays.asList("# @begin searched", "# @in raw_data @desc Sampled data",
+                                          "# @end searched"), StandardCharsets.UTF_8);
+
+        ExitCode exitCode = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+                                .config(new YWConfiguration())
+                                .runForArgs(new String[] {"extract", source.toString(), "-c", "extract.index=" + indexFile});
+        assertEquals(ExitCode.SUCCESS, exitCode);
+
+        int extractOutputLength = stdoutBuffer.toString().length();
+        exitCode = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+                       .config(new YWConfiguration())
+                       .runForArgs(new String[] {"search", "sampled data", "-c", "search.index=" + indexFile});
+        assertEquals(ExitCode.SUCCESS, exitCode);
+        assertEquals(source + ":2: @in raw_data @desc Sampled data" + EOL,
+                     stdoutBuffer.toString().substring(extractOutputLength));
+    }
+
+    public void testYesWorkflowCLI_Search_IndexNamedByBareFileName() throws Exception {
+
+        Path source = getTestDirectory("TestYesWorkflowCLI_SearchBareName").resolve("searched.py");
+        Path indexFile = Paths.get("TestYesWorkflowCLI_SearchBareName.index.db");
+        Files.deleteIfExists(indexFile);
+        Files.write(source, Arrays.asList("# @begin searched", "# @in raw_data @desc Sampled data",
+                                          "# @end searched"), StandardCharsets.UTF_8);
+
+        try {
+            ExitCode exitCode = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+                                    .config(new YWConfiguration())
+                                    .runForArgs(new String[] {"extract", source.toString(), "-c", "extract.index=" + indexFile});
+            assertEquals(ExitCode.SUCCESS, exitCode);
+
+            int extractOutputLength = stdoutBuffer.toString().length();
+            exitCode = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+                           .config(new YWConfiguration())
+                           .runForArgs(new String[] {"search", "sampled", "-c", "search.index=" + indexFile});
+            assertEquals(ExitCode.SUCCESS, exitCode);
+            assertEquals(source + ":2: @in raw_data @desc Sampled data" + EOL,
+                         stdoutBuffer.toString().substring(extractOutputLength));
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+    }
+
+    private boolean awaitStderrContaining(String text) throws Exception {
+        for (int i = 0; i < 200; ++i) {
+            if (stderrBuffer.toString().contains(text)) return true;
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static boolean awaitFileContaining(Path file, String text) throws Exception {
+        for (int i = 0; i < 200; ++i) {
+            if (Files.exists(file) && new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains(text)) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
     private static class MockExtractor implements Extractor {
 
         public boolean extracted = false;
@@ -426,6 +592,8 @@ public class TestYesWorkflowCLI extends YesWorkflowTestCase {
         @Override public Extractor configure(Map<String, Object> config) throws Exception { return this; }
         @Override public Extractor configure(String key, Object value) throws Exception { return this; }
         @Override public Extractor reader(Reader reader) { return this; }
+        @Override public Extractor commentListener(CommentListener listener) { return this; }
+        @Override public Extractor annotationListener(AnnotationListener listener) { return this; }
         @Override public String getFacts(QueryEngineModel qem) { return null; }
         @Override public String getSkeleton() { return null; }
     }
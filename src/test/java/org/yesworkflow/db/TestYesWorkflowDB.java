@@ -3,9 +3,16 @@ package org.yesworkflow.db;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.table;
 
 import org.yesworkflow.YWKeywords;
 import org.yesworkflow.db.Table;
@@ -15,6 +22,7 @@ import static org.yesworkflow.db.Column.*;
 
 import org.yesworkflow.db.View;
 import org.jooq.Result;
+import org.jooq.exception.DataAccessException;
 import org.yesworkflow.YesWorkflowTestCase;
 
 @SuppressWarnings("unchecked")
@@ -374,4 +382,267 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
             "+----+----------------+----------------+--------------+-----+--------------+-----------+-----------+",
             FileIO.localizeLineEndings(r1.toString()));
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("rawtypes")
+    public void testBatchInsertSourceLinesCommentsAnnotations() throws Exception {
+        
+        insertSources();
+        
+        try (BatchInserter inserter = new BatchInserter(ywdb, 2)) {
+            inserter.insertSourceLine(sourceId[1], 1L, "# @begin prog1 @in x");
+            inserter.insertComment(sourceId[1], 1L, 1L, "@begin prog1 @in x");
+            inserter.insertSourceLine(sourceId[1], 2L, "# @end prog1");
+            inserter.insertComment(sourceId[1], 2L, 1L, "@end prog1");
+            inserter.flush();
+            inserter.insertAnnotation(null, 1L, 1L, "BEGIN", "@begin", "prog1", null);
+            inserter.insertAnnotation(1L, 1L, 2L, "IN", "@in", "x", null);
+            inserter.insertAnnotation(null, 2L, 1L, "END", "@end", "prog1", "done");
+            inserter.commit();
+        }
+        
+        assertEquals(2, ywdb.getRowCount(Table.SOURCE_LINE));
+        assertEquals(2, ywdb.getRowCount(Table.COMMENT));
+        assertEquals(3, ywdb.getRowCount(Table.ANNOTATION));
+        
+        Result r1 = ywdb.jooq.select(ID, QUALIFIES, COMMENT_ID, RANK_IN_COMMENT, TAG, KEYWORD, VALUE, DESCRIPTION)
+                             .from(Table.ANNOTATION)
+                             .fetch();
+
+        assertEquals(
+            "+----+---------+-------+---------------+-----+-------+-----+-----------+"   + EOL +
+            "|id  |qualifies|comment|rank_in_comment|tag  |keyword|value|description|"   + EOL +
+            "+----+---------+-------+---------------+-----+-------+-----+-----------+"   + EOL +
+            "|1   |{null}   |1      |1              |BEGIN|@begin |prog1|{null}     |"   + EOL +
+            "|2   |1        |1      |2              |IN   |@in    |x    |{null}     |"   + EOL +
+            "|3   |{null}   |2      |1              |END  |@end   |prog1|done       |"   + EOL +
+            "+----+---------+-------+---------------+-----+-------+-----+-----------+",
+            FileIO.localizeLineEndings(r1.toString()));
+        
+        // auto-commit is restored so the non-batched insert methods still work
+        insertComments();
+        assertEquals(6, ywdb.getRowCount(Table.COMMENT));
+    }
+
+    public void testBatchInsert_UncommittedRowsRolledBackOnClose() throws Exception {
+
+        insertSources();
+
+        try (BatchInserter inserter = new BatchInserter(ywdb, 2)) {
+            inserter.insertSourceLine(sourceId[1], 1L, "# @begin prog1");
+            inserter.insertComment(sourceId[1], 1L, 1L, "@begin prog1");
+            inserter.commit();
+            inserter.insertSourceLine(sourceId[1], 2L, "# @end prog1");
+            inserter.insertComment(sourceId[1], 2L, 1L, "@end prog1");
+            inserter.insertSourceLine(sourceId[1], 3L, "# unfinished");
+            throw new IllegalStateException("scan failed");
+        } catch (IllegalStateException e) {
+            assertEquals("scan failed", e.getMessage());
+        }
+
+        // only the committed rows remain, including those already flushed when the scan failed
+        assertEquals(1, ywdb.getRowCount(Table.SOURCE_LINE));
+        assertEquals(1, ywdb.getRowCount(Table.COMMENT));
+        assertEquals(3, ywdb.getRowCount(Table.SOURCE));
+    }
+
+    public void testBatchInsert_CommentsWithAssignedIds() throws Exception {
+
+        insertSources();
+
+        try (BatchInserter inserter = new BatchInserter(ywdb)) {
+            inserter.insertComment(5L, sourceId[1], 1L, 1L, "@begin prog1");
+            inserter.insertComment(6L, sourceId[1], 2L, 1L, "@end prog1");
+            inserter.commit();
+        }
+
+        // ids generated afterwards do not clash with those assigned
+        assertEquals(Long.valueOf(7), ywdb.insertComment(sourceId[2], 1L, 1L, "@begin prog2"));
+
+        try (BatchInserter inserter = new BatchInserter(ywdb)) {
+            inserter.insertComment(6L, sourceId[2], 2L, 1L, "@end prog2");
+            inserter.commit();
+            fail("Expected a key violation");
+        } catch (SQLException e) {
+            assertEquals(3, ywdb.getRowCount(Table.COMMENT));
+        }
+    }
+
+    public void testBatchInsert_SQLite() throws Exception {
+        
+        YesWorkflowDB sqlitedb = YesWorkflowSQLiteDB.createInMemoryDB();
+        Long sqliteSourceId = sqlitedb.insertSource("path1");
+
+        try (BatchInserter inserter = new BatchInserter(sqlitedb)) {
+            for (long i = 1; i <= 2500; ++i) {
+                inserter.insertSourceLine(sqliteSourceId, i, "# comment " + i);
+                inserter.insertComment(sqliteSourceId, i, 1L, "comment " + i);
+            }
+            inserter.commit();
+        }
+        
+        assertEquals(2500, sqlitedb.getRowCount(Table.SOURCE_LINE));
+        assertEquals(2500, sqlitedb.getRowCount(Table.COMMENT));
+        sqlitedb.close();
+    }
+
+    private Path emptyTestDBFile(String name) throws IOException {
+        Path dbFile = getTestDirectory("TestYesWorkflowDB").resolve(name);
+        Files.deleteIfExists(dbFile);
+        return dbFile;
+    }
+
+    private int countIndexes(YesWorkflowDB db, String tableName) {
+        return db.jooq.selectCount()
+                      .from(table("sqlite_master"))
+                      .where(field("type").equal("index"))
+                      .and(field("tbl_name").equal(tableName))
+                      .fetchOne(0, Integer.class);
+    }
+
+    public void testOpenFileDB_NewFileHasLatestSchemaVersion() throws Exception {
+
+        YesWorkflowSQLiteDB sqlitedb = (YesWorkflowSQLiteDB)YesWorkflowDB.openFileDB(emptyTestDBFile("new.db"));
+        assertEquals(YesWorkflowSQLiteDB.SCHEMA_VERSION, sqlitedb.getSchemaVersion());
+        assertEquals(0, sqlitedb.migrateSchema());
+        assertEquals(1, countIndexes(sqlitedb, "signature"));
+        assertEquals(1, countIndexes(sqlitedb, "cached_source"));
+        sqlitedb.close();
+    }
+
+    public void testOpenFileDB_MigratesUnversionedFileInPlace() throws Exception {
+
+        Path dbFile = emptyTestDBFile("unversioned.db");
+        YesWorkflowDB olddb = new YesWorkflowSQLiteDB(DriverManager.getConnection("jdbc:sqlite:" + dbFile));
+        olddb.executeSqlScript(
+            "CREATE TABLE source (id INTEGER NOT NULL PRIMARY KEY, path TEXT NULL);"                        +
+            "CREATE TABLE source_line (id INTEGER NOT NULL PRIMARY KEY, source INTEGER NOT NULL, "          +
+            "    line_number INTEGER NOT NULL, line_text TEXT NOT NULL);"                                   +
+            "CREATE TABLE annotation (id INTEGER NOT NULL PRIMARY KEY, value TEXT NOT NULL);"               +
+            "CREATE TABLE code_block (id INTEGER NOT NULL PRIMARY KEY, begin_line BIGINT NULL, "            +
+            "    end_line BIGINT NULL, name VARCHAR NOT NULL DEFAULT '');"                                  +
+            "CREATE TABLE signature (id INTEGER NOT NULL PRIMARY KEY, input_or_output VARCHAR NOT NULL, "   +
+            "    variable VARCHAR NULL, alias VARCHAR NULL, in_code_block VARCHAR NOT NULL);"               +
+            "CREATE TABLE code_snippet (id INTEGER NOT NULL PRIMARY KEY, original_line BIGINT NULL, "       +
+            "    line_text VARCHAR NOT NULL, name VARCHAR NOT NULL);"                                       +
+            "INSERT INTO source (path) VALUES ('path1')");
+        olddb.close();
+
+        YesWorkflowSQLiteDB sqlitedb = (YesWorkflowSQLiteDB)YesWorkflowDB.openFileDB(dbFile);
+        assertEquals(YesWorkflowSQLiteDB.SCHEMA_VERSION, sqlitedb.getSchemaVersion());
+        assertEquals(1, sqlitedb.getRowCount(Table.SOURCE));
+        assertEquals(0, sqlitedb.getRowCount(Table.CACHED_SOURCE));
+        assertEquals(0, sqlitedb.getRowCount(Table.INDEX_POSTING));
+        assertEquals(1, countIndexes(sqlitedb, "annotation"));
+        assertEquals(1, countIndexes(sqlitedb, "source_line"));
+        assertEquals(1, countIndexes(sqlitedb, "code_block"));
+        assertEquals(1, countIndexes(sqlitedb, "signature"));
+        assertEquals(1, countIndexes(sqlitedb, "code_snippet"));
+        assertEquals(1, countIndexes(sqlitedb, "cached_source"));
+        assertEquals(1, countIndexes(sqlitedb, "cached_source_line"));
+        assertEquals(1, countIndexes(sqlitedb, "cached_comment"));
+        Long aliasId = sqlitedb.insertSourceAlias("path2", 1L);
+        assertEquals(Long.valueOf(1), sqlitedb.getLongValue(
+            sqlitedb.jooq.select(ALIAS_OF).from(Table.SOURCE).where(ID.equal(aliasId)).fetchOne(), ALIAS_OF));
+        sqlitedb.close();
+
+        // reopening applies no migrations and keeps the data
+        sqlitedb = (YesWorkflowSQLiteDB)YesWorkflowDB.openFileDB(dbFile);
+        assertEquals(0, sqlitedb.migrateSchema());
+        assertEquals(2, sqlitedb.getRowCount(Table.SOURCE));
+        sqlitedb.close();
+    }
+
+    public void testConnectionPool_LendsEachThreadItsOwnConnection() throws Exception {
+
+        final YesWorkflowDB pooledDB = YesWorkflowDB.createInMemoryDB();
+        final Connection first = pooledDB.acquireConnection();
+        assertSame(first, pooledDB.acquireConnection());
+
+        final Connection[] other = new Connection[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    other[0] = pooledDB.acquireConnection();
+                    pooledDB.releaseConnection(other[0]);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(first, other[0]);
+
+        // the connection is returned to the pool only when released as often as acquired
+        pooledDB.releaseConnection(first);
+        pooledDB.releaseConnection(first);
+        assertEquals(2, pooledDB.pool.getOpenCount());
+        pooledDB.close();
+    }
+
+    public void testConnectionPool_AcquireFailsWhenNoConnectionIsReleasedInTime() throws Exception {
+
+        final ConnectionPool pool = new ConnectionPool(DriverManager.getConnection("jdbc:sqlite::memory:"), 50);
+        Connection held = pool.acquire();
+
+        final Exception[] failure = new Exception[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pool.release(pool.acquire());
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(failure[0] instanceof DataAccessException);
+        assertTrue(failure[0].getMessage().contains("No database connection was released within 50 ms"));
+
+        // the holder may still use and release the connection
+        pool.release(held);
+        pool.release(pool.acquire());
+        pool.close();
+    }
+
+    public void testInsertSource_ConcurrentInsertsReturnTheirOwnIds() throws Exception {
+
+        final YesWorkflowDB sharedDB = YesWorkflowDB.createInMemoryDB();
+        final int threadCount = 4;
+        final int sourcesPerThread = 50;
+        final List<Long> ids = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int threadIndex = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < sourcesPerThread; ++i) {
+                            String path = "thread" + threadIndex + "/source" + i;
+                            Long id = sharedDB.insertSource(path);
+                            assertEquals(path, sharedDB.getStringValue(
+                                sharedDB.jooq.select(PATH).from(Table.SOURCE).where(ID.equal(id)).fetchOne(), PATH));
+                            ids.add(id);
+                        }
+                    } catch (Exception | AssertionError e) {
+                        failures.add(new Exception(e));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(threadCount * sourcesPerThread, new HashSet<Long>(ids).size());
+        assertEquals(threadCount * sourcesPerThread, sharedDB.getRowCount(Table.SOURCE));
+        sharedDB.close();
+    }
+}
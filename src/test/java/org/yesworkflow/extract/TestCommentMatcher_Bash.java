@@ -2,6 +2,8 @@ package org.yesworkflow.extract;
 
 import static org.yesworkflow.db.Column.*;
 
+import java.nio.CharBuffer;
+
 import org.jooq.Record;
 import org.jooq.Result;
 import org.yesworkflow.Language;
@@ -189,4 +191,33 @@ public class TestCommentMatcher_Bash extends YesWorkflowTestCase {
                 "+----+------+-----------+------------+---------------+", 
                 FileIO.localizeLineEndings(selectComments().toString()));    
         }
+
+    @SuppressWarnings({ "unchecked" })
+    private Result<Record> selectLines() {
+        return ywdb.jooq().select(ID, SOURCE_ID, LINE_NUMBER, LINE_TEXT)
+                          .from(Table.SOURCE_LINE)
+                          .orderBy(SOURCE_ID, LINE_NUMBER)
+                          .fetch();
+    }
+
+    public void test_Bash_CharBuffer_MixedLineTerminators()  throws Exception {
+        String source = "echo a # first\r\n" +
+                        "\n"                 +
+                        "# second\r"         +
+                        "echo b";
+        matcher.extractComments(null, CharBuffer.wrap(source));
+        assertEquals("first"          + EOL +
+                     "second"         + EOL,
+                     DefaultExtractor.commentsAsString(ywdb));
+        assertEquals(
+                "+----+------+-----------+--------------+"  + EOL +
+                "|id  |source|line_number|line_text     |"  + EOL +
+                "+----+------+-----------+--------------+"  + EOL +
+                "|1   |1     |1          |echo a # first|"  + EOL +
+                "|2   |1     |2          |              |"  + EOL +
+                "|3   |1     |3          |# second      |"  + EOL +
+                "|4   |1     |4          |echo b        |"  + EOL +
+                "+----+------+-----------+--------------+",
+                FileIO.localizeLineEndings(selectLines().toString()));
+    }
 }
@@ -569,4 +569,60 @@ public class TestCommentMatcher_Java extends YesWorkflowTestCase {
                 "three" + EOL,
                 DefaultExtractor.commentsAsString(ywdb));
     }    
+
+    private static String replayed(SourceScan scan) throws Exception {
+        final StringBuilder events = new StringBuilder();
+        scan.replay(1L, new CommentListener() {
+            @Override
+            public void sourceLine(Long sourceId, Long lineNumber, String lineText) {
+                events.append(lineNumber).append(": ").append(lineText).append(EOL);
+            }
+            @Override
+            public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) {
+                events.append(lineNumber).append('.').append(rankInLine).append(" ").append(commentText).append(EOL);
+            }
+        });
+        return events.toString();
+    }
+
+    private SourceScan scan(String source) throws Exception {
+        SourceScan scan = new SourceScan();
+        matcher.extractComments(null, source, scan);
+        return scan;
+    }
+
+    private void assertRescanEqualsScan(String previousSource, String editedSource, int rescannedLines) throws Exception {
+        SourceScan previous = scan(previousSource);
+        assertTrue(previous.hasScanStates());
+        SourceScan rescan = matcher.rescan(previous, editedSource);
+        assertEquals(replayed(scan(editedSource)), replayed(rescan));
+        assertTrue(rescan.hasScanStates());
+        assertEquals(rescannedLines, rescan.getRescannedLineCount());
+    }
+
+    private static final String JAVA_SOURCE =
+            "/* @begin main"            + EOL +
+            " * @in x"                  + EOL +
+            " */"                       + EOL +
+            "int x = 1; // @out y"      + EOL +
+            "int z = 2;"                + EOL +
+            "/** @begin inner"          + EOL +
+            "  @end inner */"           + EOL +
+            "// @end main"              + EOL;
+
+    public void test_Java_Rescan_UnchangedSource() throws Exception {
+        assertRescanEqualsScan(JAVA_SOURCE, JAVA_SOURCE, 0);
+    }
+
+    public void test_Java_Rescan_EditedLineOnly() throws Exception {
+        assertRescanEqualsScan(JAVA_SOURCE, JAVA_SOURCE.replace("@out y", "@out w"), 1);
+        assertRescanEqualsScan(JAVA_SOURCE, JAVA_SOURCE.replace(" * @in x", " * @in v"), 1);
+        assertRescanEqualsScan(JAVA_SOURCE, JAVA_SOURCE.replace("int z = 2;", "int z = 2;" + EOL + "// @param p"), 1);
+    }
+
+    public void test_Java_Rescan_EditOpeningCommentRescansUntilStatesAgree() throws Exception {
+        assertRescanEqualsScan(JAVA_SOURCE, JAVA_SOURCE.replace("int z = 2;", "int z = 2; /* @param p"), 2);
+        assertRescanEqualsScan(JAVA_SOURCE, JAVA_SOURCE.replace(" */" + EOL + "int x", "int x"), 3);
+        assertRescanEqualsScan(JAVA_SOURCE, "/*" + EOL + JAVA_SOURCE, 2);
+    }
 }
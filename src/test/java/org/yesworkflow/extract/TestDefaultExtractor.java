@@ -3,23 +3,40 @@ package org.yesworkflow.extract;
 import static org.yesworkflow.db.Column.*;
 
 import java.io.BufferedReader;
+import java.io.OutputStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.eclipse.jgit.api.Git;
 import org.jooq.Record;
 import org.jooq.Result;
 import org.yesworkflow.Language;
 import org.yesworkflow.LanguageModel;
 import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.AnnotationListener;
 import org.yesworkflow.annotations.Begin;
 import org.yesworkflow.annotations.End;
 import org.yesworkflow.annotations.In;
 import org.yesworkflow.annotations.Out;
 import org.yesworkflow.db.Table;
 import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.db.YesWorkflowSQLiteDB;
 import org.yesworkflow.db.Column.ANNOTATION;
+import org.yesworkflow.db.Column.COMMENT;
 import org.yesworkflow.db.Column.SOURCE;
+import org.yesworkflow.db.Column.SOURCE_LINE;
 import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.query.QueryEngine;
+import org.yesworkflow.query.QueryEngineModel;
 import org.yesworkflow.util.FileIO;
 import org.yesworkflow.YesWorkflowTestCase;
 
@@ -56,6 +73,40 @@ public class TestDefaultExtractor extends YesWorkflowTestCase {
                           .orderBy(SOURCE.ID, LINE_NUMBER, RANK_IN_COMMENT)
                           .fetch();
     }
+
+    /** Returns the annotations stored in a DB, with the sources and lines of their comments
+     *  but not the paths of the sources, one annotation per line in order of id. */
+    @SuppressWarnings("unchecked")
+    private static String annotationsAsString(YesWorkflowDB db) {
+
+        Result<Record> rows = db.jooq().select(ANNOTATION.ID, COMMENT.SOURCE_ID, COMMENT.LINE_NUMBER, QUALIFIES,
+                                               RANK_IN_COMMENT, TAG, KEYWORD, VALUE, DESCRIPTION)
+                                       .from(Table.ANNOTATION)
+                                       .join(Table.COMMENT)
+                                       .on(ANNOTATION.COMMENT_ID.equal(COMMENT.ID))
+                                       .orderBy(ANNOTATION.ID)
+                                       .fetch();
+        return rowsAsString(rows);
+    }
+
+    /** Returns the source lines stored in a DB, one per line in order of source and line number. */
+    @SuppressWarnings("unchecked")
+    private static String sourceLinesAsString(YesWorkflowDB db) {
+
+        Result<Record> rows = db.jooq().select(SOURCE_LINE.SOURCE_ID, SOURCE_LINE.LINE_NUMBER, SOURCE_LINE.LINE_TEXT)
+                                       .from(Table.SOURCE_LINE)
+                                       .orderBy(SOURCE_LINE.SOURCE_ID, SOURCE_LINE.LINE_NUMBER)
+                                       .fetch();
+        return rowsAsString(rows);
+    }
+
+    private static String rowsAsString(Result<Record> rows) {
+        StringBuilder text = new StringBuilder();
+        for (Record row : rows) {
+            text.append(Arrays.toString(row.intoArray())).append(EOL);
+        }
+        return text.toString();
+    }
     
     public void testExtract_BlankLine() throws Exception {
         
@@ -409,4 +460,729 @@ public class TestDefaultExtractor extends YesWorkflowTestCase {
             "+-------------+------+---------+-----------+---------------+-----+-------+-----+-----------+", 
             FileIO.localizeLineEndings(annotationJoinCommentJoinSourceFile().toString()));    
     }
-}
\ No newline at end of file
+
+    public void testExtract_ParallelSources_SameIdsAsSequential() throws Exception {
+        
+        List<String> sources = Arrays.asList(
+                "src/main/resources/example.py",
+                "src/main/resources/MyScript.py",
+                "src/main/resources/create_demo.py",
+                "src/main/resources/examples/simulate_data_collection/simulate_data_collection.py",
+                "src/test/resources/org/yesworkflow/testYesWorkflowCLI/javaFile.java");
+
+        YesWorkflowDB sequentialDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor sequentialExtractor = new DefaultExtractor(sequentialDB, super.stdoutStream, super.stderrStream);
+        sequentialExtractor.configure("sources", sources)
+                           .extract();
+
+        YesWorkflowDB parallelDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor parallelExtractor = new DefaultExtractor(parallelDB, super.stdoutStream, super.stderrStream);
+        parallelExtractor.configure("sources", sources)
+                         .configure("threads", "3")
+                         .extract();
+        
+        QueryEngineModel qem = new QueryEngineModel(QueryEngine.SWIPL);
+        assertEquals(sequentialExtractor.getFacts(qem), parallelExtractor.getFacts(qem));
+        assertEquals(DefaultExtractor.commentsAsString(sequentialDB), DefaultExtractor.commentsAsString(parallelDB));
+        assertEquals(sourceLinesAsString(sequentialDB), sourceLinesAsString(parallelDB));
+        assertEquals(annotationsAsString(sequentialDB), annotationsAsString(parallelDB));
+        assertEquals(sequentialExtractor.getLanguage(), parallelExtractor.getLanguage());
+        
+        sequentialDB.close();
+        parallelDB.close();
+    }
+
+    public void testExtract_Pipeline_SameResultsAsSequential() throws Exception {
+
+        List<String> sources = Arrays.asList(
+                "src/main/resources/example.py",
+                "src/main/resources/examples/simulate_data_collection/simulate_data_collection.py",
+                "src/test/resources/org/yesworkflow/testYesWorkflowCLI/javaFile.java");
+
+        final StringBuilder sequentialEvents = new StringBuilder();
+        YesWorkflowDB sequentialDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor sequentialExtractor = new DefaultExtractor(sequentialDB, super.stdoutStream, super.stderrStream);
+        sequentialExtractor.configure("sources", sources)
+                           .configure("lines", "annotated")
+                           .commentListener(new EventRecorder(sequentialEvents))
+                           .annotationListener(new EventRecorder(sequentialEvents))
+                           .extract();
+
+        final StringBuilder pipelinedEvents = new StringBuilder();
+        YesWorkflowDB pipelinedDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor pipelinedExtractor = new DefaultExtractor(pipelinedDB, super.stdoutStream, super.stderrStream);
+        pipelinedExtractor.configure("sources", sources)
+                          .configure("lines", "annotated")
+                          .configure("pipeline", "on")
+                          .commentListener(new EventRecorder(pipelinedEvents))
+                          .annotationListener(new EventRecorder(pipelinedEvents))
+                          .extract();
+
+        QueryEngineModel qem = new QueryEngineModel(QueryEngine.SWIPL);
+        assertEquals(sequentialExtractor.getFacts(qem), pipelinedExtractor.getFacts(qem));
+        assertEquals(sequentialExtractor.getSkeleton(), pipelinedExtractor.getSkeleton());
+        assertEquals(DefaultExtractor.commentsAsString(sequentialDB), DefaultExtractor.commentsAsString(pipelinedDB));
+        assertEquals(sourceLinesAsString(sequentialDB), sourceLinesAsString(pipelinedDB));
+        assertEquals(annotationsAsString(sequentialDB), annotationsAsString(pipelinedDB));
+        assertTrue(sequentialEvents.length() > 0);
+        assertEquals(sequentialEvents.toString(), pipelinedEvents.toString());
+
+        sequentialDB.close();
+        pipelinedDB.close();
+    }
+
+    public void testExtract_Pipeline_SingleConnectionDB() throws Exception {
+
+        List<String> sources = Arrays.asList(
+                "src/main/resources/example.py",
+                "src/test/resources/org/yesworkflow/testYesWorkflowCLI/javaFile.java");
+
+        YesWorkflowDB sequentialDB = YesWorkflowSQLiteDB.createInMemoryDB();
+        DefaultExtractor sequentialExtractor = new DefaultExtractor(sequentialDB, super.stdoutStream, super.stderrStream);
+        sequentialExtractor.configure("sources", sources).extract();
+
+        // an in-memory SQLite DB lends out only the connection that created it
+        YesWorkflowDB pipelinedDB = YesWorkflowSQLiteDB.createInMemoryDB();
+        assertEquals(1, pipelinedDB.getMaxConnections());
+        DefaultExtractor pipelinedExtractor = new DefaultExtractor(pipelinedDB, super.stdoutStream, super.stderrStream);
+        pipelinedExtractor.configure("sources", sources)
+                          .configure("pipeline", "on")
+                          .extract();
+
+        QueryEngineModel qem = new QueryEngineModel(QueryEngine.SWIPL);
+        assertEquals(sequentialExtractor.getFacts(qem), pipelinedExtractor.getFacts(qem));
+        assertEquals(DefaultExtractor.commentsAsString(sequentialDB), DefaultExtractor.commentsAsString(pipelinedDB));
+        assertEquals(sourceLinesAsString(sequentialDB), sourceLinesAsString(pipelinedDB));
+        assertEquals(annotationsAsString(sequentialDB), annotationsAsString(pipelinedDB));
+        assertEquals(sequentialExtractor.getSkeleton(), pipelinedExtractor.getSkeleton());
+
+        sequentialDB.close();
+        pipelinedDB.close();
+    }
+
+    /** Records the lines, comments and annotations received, in order of receipt. */
+    private static class EventRecorder implements CommentListener, AnnotationListener {
+
+        private final StringBuilder events;
+
+        EventRecorder(StringBuilder events) {
+            this.events = events;
+        }
+
+        @Override
+        public void sourceLine(Long sourceId, Long lineNumber, String lineText) {
+            events.append("line ").append(sourceId).append(':').append(lineNumber).append(EOL);
+        }
+
+        @Override
+        public void comment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) {
+            events.append("comment ").append(commentText).append(EOL);
+        }
+
+        @Override
+        public void annotation(Annotation annotation) {
+            events.append("annotation ").append(annotation.id).append(' ').append(annotation.comment).append(EOL);
+        }
+    }
+
+    public void testExtract_ScanMemo_RescansOnlyEditedLines() throws Exception {
+
+        Path source = getTestDirectory("TestDefaultExtractor_ScanMemo").resolve("edited.py");
+        Files.write(source, Arrays.asList(
+                "# @begin main",
+                "x = 1",
+                "# @in x @as first",
+                "y = 2",
+                "# @end main"), StandardCharsets.UTF_8);
+        List<String> sources = Arrays.asList("src/main/resources/example.py", source.toString());
+        SourceScanMemo scanMemo = new SourceScanMemo();
+
+        new DefaultExtractor(YesWorkflowDB.createInMemoryDB(), super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .configure("scanmemo", scanMemo)
+            .extract();
+
+        Files.write(source, Arrays.asList(
+                "# @begin main",
+                "x = 1",
+                "# @in x @as second",
+                "y = 2",
+                "# @end main"), StandardCharsets.UTF_8);
+
+        YesWorkflowDB incrementalDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor incrementalExtractor = new DefaultExtractor(incrementalDB, super.stdoutStream, super.stderrStream);
+        incrementalExtractor.configure("sources", sources)
+                            .configure("scanmemo", scanMemo)
+                            .extract();
+
+        YesWorkflowDB fullDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor fullExtractor = new DefaultExtractor(fullDB, super.stdoutStream, super.stderrStream);
+        fullExtractor.configure("sources", sources)
+                     .extract();
+
+        SourceScan editedScan = scanMemo.previous(source.toString(),
+                ExtractionCache.languageModelKey(new LanguageModel(Language.PYTHON)));
+        assertEquals(1, editedScan.getRescannedLineCount());
+        assertEquals(1, scanMemo.getHitCount());
+        assertEquals(DefaultExtractor.commentsAsString(fullDB), DefaultExtractor.commentsAsString(incrementalDB));
+        QueryEngineModel qem = new QueryEngineModel(QueryEngine.SWIPL);
+        assertEquals(fullExtractor.getFacts(qem), incrementalExtractor.getFacts(qem));
+        assertTrue(DefaultExtractor.commentsAsString(incrementalDB).contains("@in x @as second"));
+
+        incrementalDB.close();
+        fullDB.close();
+    }
+
+    public void testExtract_ScanMemo_ReportedChangesSkipReadingUnchangedFiles() throws Exception {
+
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_ScanMemoChanges");
+        Path edited = testDirectory.resolve("edited.py");
+        Path untouched = testDirectory.resolve("untouched.py");
+        Files.write(edited, Arrays.asList("# @begin edited", "# @end edited"), StandardCharsets.UTF_8);
+        Files.write(untouched, Arrays.asList("# @begin untouched", "# @end untouched"), StandardCharsets.UTF_8);
+        List<String> sources = Arrays.asList(edited.toString(), untouched.toString());
+        SourceScanMemo scanMemo = new SourceScanMemo();
+
+        new DefaultExtractor(YesWorkflowDB.createInMemoryDB(), super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .configure("scanmemo", scanMemo)
+            .extract();
+
+        // the second file is changed too but not reported, so its retained scan is replayed unread
+        Files.write(edited, Arrays.asList("# @begin edited_again", "# @end edited_again"), StandardCharsets.UTF_8);
+        Files.write(untouched, Arrays.asList("# @begin unreported", "# @end unreported"), StandardCharsets.UTF_8);
+        Set<Path> changes = Collections.singleton(edited.toAbsolutePath().normalize());
+
+        YesWorkflowDB watchedDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(watchedDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .configure("scanmemo", scanMemo)
+            .configure("changes", changes)
+            .extract();
+        String comments = DefaultExtractor.commentsAsString(watchedDB);
+        assertTrue(comments.contains("@begin edited_again"));
+        assertTrue(comments.contains("@begin untouched"));
+        assertEquals(1, scanMemo.getHitCount());
+
+        // without reported changes every file is hashed
+        YesWorkflowDB hashedDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(hashedDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .configure("scanmemo", scanMemo)
+            .extract();
+        assertTrue(DefaultExtractor.commentsAsString(hashedDB).contains("@begin unreported"));
+
+        watchedDB.close();
+        hashedDB.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testExtract_DuplicateSources_ExtractedOnceAndAliased() throws Exception {
+
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_Duplicates");
+        Files.createDirectories(testDirectory.resolve("a"));
+        Files.createDirectories(testDirectory.resolve("b"));
+        List<String> helper = Arrays.asList("# @begin helper", "# @in x", "# @end helper");
+        Path first = testDirectory.resolve("a").resolve("helper.py");
+        Path second = testDirectory.resolve("b").resolve("helper.py");
+        Path other = testDirectory.resolve("b").resolve("other.py");
+        Files.write(first, helper, StandardCharsets.UTF_8);
+        Files.write(second, helper, StandardCharsets.UTF_8);
+        Files.write(other, Arrays.asList("# @begin other", "# @end other"), StandardCharsets.UTF_8);
+        List<String> sources = Arrays.asList(first.toString(), other.toString(), second.toString());
+
+        for (int threads : new int[] { 1, 3 }) {
+
+            YesWorkflowDB db = YesWorkflowDB.createInMemoryDB();
+            DefaultExtractor extractor = new DefaultExtractor(db, super.stdoutStream, super.stderrStream);
+            extractor.configure("sources", sources)
+                     .configure("threads", threads)
+                     .extract();
+
+            assertEquals(3, db.getRowCount(Table.SOURCE));
+            assertEquals(5, db.getRowCount(Table.ANNOTATION));
+            assertEquals(5, db.getRowCount(Table.SOURCE_LINE));
+
+            Result<Record> aliases = db.jooq().select(PATH, ALIAS_OF)
+                                              .from(Table.SOURCE)
+                                              .where(ALIAS_OF.isNotNull())
+                                              .fetch();
+            assertEquals(1, aliases.size());
+            assertEquals(second.toString(), db.getStringValue(aliases.get(0), PATH));
+            assertEquals(Long.valueOf(1), db.getLongValue(aliases.get(0), ALIAS_OF));
+
+            String facts = extractor.getFacts(new QueryEngineModel(QueryEngine.SWIPL));
+            assertTrue(facts.contains("extract_source(1, '" + first + "')."));
+            assertTrue(facts.contains("extract_source(2, '" + other + "')."));
+            assertTrue(facts.contains("extract_source(3, '" + second + "')."));
+            assertTrue(facts.contains("extract_source_alias(3, 1)."));
+            assertFalse(facts.contains("extract_source_alias(2,"));
+            db.close();
+        }
+    }
+
+    public void testExtract_Cache_ReplaysUnchangedSources() throws Exception {
+        
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_Cache");
+        Path cacheFile = testDirectory.resolve("cache.db");
+        Files.deleteIfExists(cacheFile);
+        Path changingSource = testDirectory.resolve("changing.py");
+        Files.write(changingSource, Arrays.asList("# @begin changing", "# @end changing"), StandardCharsets.UTF_8);
+        
+        List<String> sources = Arrays.asList(
+                "src/main/resources/example.py",
+                "src/main/resources/examples/simulate_data_collection/simulate_data_collection.py",
+                changingSource.toString());
+
+        YesWorkflowDB uncachedDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(uncachedDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .extract();
+
+        YesWorkflowDB firstDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor firstExtractor = new DefaultExtractor(firstDB, super.stdoutStream, super.stderrStream);
+        firstExtractor.configure("sources", sources)
+                      .configure("cache", cacheFile.toString())
+                      .extract();
+        assertEquals(0, firstExtractor.getExtractionCache().getHitCount());
+        assertEquals(3, firstExtractor.getExtractionCache().getMissCount());
+
+        YesWorkflowDB secondDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor secondExtractor = new DefaultExtractor(secondDB, super.stdoutStream, super.stderrStream);
+        secondExtractor.configure("sources", sources)
+                       .configure("cache", cacheFile.toString())
+                       .extract();
+        assertEquals(3, secondExtractor.getExtractionCache().getHitCount());
+        assertEquals(0, secondExtractor.getExtractionCache().getMissCount());
+        
+        assertEquals(DefaultExtractor.commentsAsString(uncachedDB), DefaultExtractor.commentsAsString(firstDB));
+        assertEquals(DefaultExtractor.commentsAsString(uncachedDB), DefaultExtractor.commentsAsString(secondDB));
+        assertEquals(uncachedDB.getRowCount(Table.SOURCE_LINE), secondDB.getRowCount(Table.SOURCE_LINE));
+        assertEquals(uncachedDB.getRowCount(Table.ANNOTATION), secondDB.getRowCount(Table.ANNOTATION));
+        
+        Files.write(changingSource, Arrays.asList("# @begin changed", "# @end changed"), StandardCharsets.UTF_8);
+        YesWorkflowDB thirdDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor thirdExtractor = new DefaultExtractor(thirdDB, super.stdoutStream, super.stderrStream);
+        thirdExtractor.configure("sources", sources)
+                      .configure("cache", cacheFile.toString())
+                      .extract();
+        assertEquals(2, thirdExtractor.getExtractionCache().getHitCount());
+        assertEquals(1, thirdExtractor.getExtractionCache().getMissCount());
+        assertTrue(DefaultExtractor.commentsAsString(thirdDB).endsWith("@begin changed" + EOL + "@end changed" + EOL));
+        assertTrue(stderrBuffer.toString().contains("Extraction cache: 2 hits, 1 misses"));
+
+        uncachedDB.close();
+        firstDB.close();
+        secondDB.close();
+        thirdDB.close();
+    }
+
+    public void testExtract_Cache_BareFileName() throws Exception {
+
+        Path cacheFile = Paths.get("TestDefaultExtractor_BareFileName.cache.db");
+        Files.deleteIfExists(cacheFile);
+        List<String> sources = Arrays.asList("src/main/resources/example.py");
+
+        try {
+            DefaultExtractor extractor = new DefaultExtractor(YesWorkflowDB.createInMemoryDB(),
+                                                              super.stdoutStream, super.stderrStream);
+            extractor.configure("sources", sources)
+                     .configure("cache", cacheFile.toString())
+                     .extract();
+            assertEquals(1, extractor.getExtractionCache().getMissCount());
+            extractor.getExtractionCache().close();
+            assertTrue(Files.exists(cacheFile));
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testExtract_Cache_RescansStaleSourcesIncrementally() throws Exception {
+
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_CacheRescan");
+        Path cacheFile = testDirectory.resolve("cache.db");
+        Files.deleteIfExists(cacheFile);
+        Path source = testDirectory.resolve("edited.py");
+        Files.write(source, Arrays.asList(
+                "# @begin main",
+                "x = 1",
+                "# @in x @as first",
+                "y = 2",
+                "# @end main"), StandardCharsets.UTF_8);
+        List<String> sources = Arrays.asList(source.toString());
+
+        new DefaultExtractor(YesWorkflowDB.createInMemoryDB(), super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .configure("cache", cacheFile.toString())
+            .extract()
+            .getExtractionCache().close();
+        Result<Record> firstComments = cachedComments(cacheFile);
+
+        Files.write(source, Arrays.asList(
+                "# @begin main",
+                "w = 0",
+                "x = 1",
+                "# @in x @as second",
+                "y = 2",
+                "# @end main"), StandardCharsets.UTF_8);
+
+        YesWorkflowDB rescannedDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor rescanningExtractor = new DefaultExtractor(rescannedDB, super.stdoutStream, super.stderrStream);
+        rescanningExtractor.configure("sources", sources)
+                           .configure("cache", cacheFile.toString())
+                           .extract();
+        assertEquals(0, rescanningExtractor.getExtractionCache().getHitCount());
+        rescanningExtractor.getExtractionCache().close();
+        Result<Record> secondComments = cachedComments(cacheFile);
+
+        YesWorkflowDB fullDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor fullExtractor = new DefaultExtractor(fullDB, super.stdoutStream, super.stderrStream);
+        fullExtractor.configure("sources", sources)
+                     .extract();
+
+        assertEquals(DefaultExtractor.commentsAsString(fullDB), DefaultExtractor.commentsAsString(rescannedDB));
+        QueryEngineModel qem = new QueryEngineModel(QueryEngine.SWIPL);
+        assertEquals(fullExtractor.getFacts(qem), rescanningExtractor.getFacts(qem));
+
+        assertEquals(3, firstComments.size());
+        assertEquals(3, secondComments.size());
+        assertEquals(firstComments.get(0).getValue(ID), secondComments.get(0).getValue(ID));
+        assertEquals(firstComments.get(2).getValue(ID), secondComments.get(2).getValue(ID));
+        assertFalse(firstComments.get(1).getValue(ID).equals(secondComments.get(1).getValue(ID)));
+        assertEquals("@in x @as second", secondComments.get(1).getValue(COMMENT_TEXT));
+        assertEquals(6L, ((Number)secondComments.get(2).getValue(LINE_NUMBER)).longValue());
+
+        rescannedDB.close();
+        fullDB.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Result<Record> cachedComments(Path cacheFile) throws Exception {
+        YesWorkflowDB cacheDB = YesWorkflowDB.openFileDB(cacheFile);
+        Result<Record> comments = cacheDB.jooq().select(ID, LINE_NUMBER, COMMENT_TEXT)
+                                                .from(Table.CACHED_COMMENT)
+                                                .orderBy(LINE_NUMBER)
+                                                .fetch();
+        cacheDB.close();
+        return comments;
+    }
+
+    public void testExtract_AnnotatedLines_StoresOnlyBlockLines() throws Exception {
+
+        Path source = getTestDirectory("TestDefaultExtractor_AnnotatedLines").resolve("blocks.py");
+        Files.write(source, Arrays.asList(
+                "import os",
+                "# @begin main",
+                "x = 1",
+                "# @begin inner @in x",
+                "y = x",
+                "# @end inner",
+                "# @end main",
+                "z = 3"), StandardCharsets.UTF_8);
+        List<String> sources = Arrays.asList("src/main/resources/example.py", source.toString());
+
+        YesWorkflowDB allLinesDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(allLinesDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .extract();
+
+        YesWorkflowDB annotatedLinesDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(annotatedLinesDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", sources)
+            .configure("lines", "annotated")
+            .extract();
+
+        assertEquals(DefaultExtractor.commentsAsString(allLinesDB), DefaultExtractor.commentsAsString(annotatedLinesDB));
+        assertEquals(allLinesDB.getRowCount(Table.ANNOTATION), annotatedLinesDB.getRowCount(Table.ANNOTATION));
+        assertTrue(annotatedLinesDB.getRowCount(Table.SOURCE_LINE) < allLinesDB.getRowCount(Table.SOURCE_LINE));
+
+        Result<Record> lines = annotatedLinesDB.jooq().select(LINE_NUMBER, LINE_TEXT)
+                                                      .from(Table.SOURCE_LINE)
+                                                      .where(SOURCE_ID.equal(2L))
+                                                      .orderBy(LINE_NUMBER)
+                                                      .fetch();
+        assertEquals(6, lines.size());
+        assertEquals(2L, (long)annotatedLinesDB.getLongValue(lines.get(0), LINE_NUMBER));
+        assertEquals("# @begin main", annotatedLinesDB.getStringValue(lines.get(0), LINE_TEXT));
+        assertEquals(7L, (long)annotatedLinesDB.getLongValue(lines.get(5), LINE_NUMBER));
+        assertEquals("# @end main", annotatedLinesDB.getStringValue(lines.get(5), LINE_TEXT));
+
+        allLinesDB.close();
+        annotatedLinesDB.close();
+    }
+
+    public void testExtract_CodeBlocks_SameNameInDifferentSources() throws Exception {
+
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_CodeBlocks");
+        Path first = testDirectory.resolve("first.py");
+        Files.write(first, Arrays.asList(
+                "# @create step @in a",
+                "b = a",
+                "# @out b",
+                "# @end step"), StandardCharsets.UTF_8);
+        Path second = testDirectory.resolve("second.py");
+        Files.write(second, Arrays.asList(
+                "import os",
+                "",
+                "# @create outer",
+                "# @create step @in c",
+                "d = c",
+                "# @end step",
+                "# @end outer"), StandardCharsets.UTF_8);
+
+        extractor.configure("sources", Arrays.asList(first.toString(), second.toString()))
+                 .extract();
+
+        Result<Record> blocks = ywdb.jooq().select(NAME, BEGIN_LINE, END_LINE)
+                                           .from(Table.CODE_BLOCK)
+                                           .orderBy(ID)
+                                           .fetch();
+        assertEquals(3, blocks.size());
+        assertCodeBlock(blocks.get(0), "step", 1L, 4L);
+        assertCodeBlock(blocks.get(1), "outer", 3L, 7L);
+        assertCodeBlock(blocks.get(2), "step", 4L, 6L);
+
+        Result<Record> signatures = ywdb.jooq().select(INPUT_OR_OUTPUT, VARIABLE, IN_CODE_BLOCK)
+                                               .from(Table.SIGNATURE)
+                                               .orderBy(ID)
+                                               .fetch();
+        assertEquals(3, signatures.size());
+        assertEquals("IN a step|OUT b step|IN c step",
+                signatureString(signatures.get(0)) + "|" + signatureString(signatures.get(1)) + "|" +
+                signatureString(signatures.get(2)));
+    }
+
+    public void testExtract_DirectorySource_SameAsListedFiles() throws Exception {
+
+        String directory = "src/main/resources/examples/simulate_data_collection";
+
+        YesWorkflowDB listedDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor listedExtractor = new DefaultExtractor(listedDB, super.stdoutStream, super.stderrStream);
+        listedExtractor.configure("sources", directory + "/simulate_data_collection.py")
+                       .extract();
+
+        YesWorkflowDB walkedDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor walkedExtractor = new DefaultExtractor(walkedDB, super.stdoutStream, super.stderrStream);
+        walkedExtractor.configure("sources", directory)
+                       .configure("include", "*.py")
+                       .configure("exclude", "*_test.py")
+                       .configure("threads", 4)
+                       .extract();
+
+        QueryEngineModel qem = new QueryEngineModel(QueryEngine.SWIPL);
+        assertEquals(listedExtractor.getFacts(qem), walkedExtractor.getFacts(qem));
+        assertEquals(DefaultExtractor.commentsAsString(listedDB), DefaultExtractor.commentsAsString(walkedDB));
+        assertEquals(sourceLinesAsString(listedDB), sourceLinesAsString(walkedDB));
+
+        listedDB.close();
+        walkedDB.close();
+    }
+
+    public void testExtract_MemoryBudget_SameAsUnbounded() throws Exception {
+
+        List<String> sources = Arrays.asList(
+                "src/main/resources/example.py",
+                "src/main/resources/examples/simulate_data_collection/simulate_data_collection.py");
+
+        YesWorkflowDB unboundedDB = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor unboundedExtractor = new DefaultExtractor(unboundedDB, super.stdoutStream, super.stderrStream);
+        unboundedExtractor.configure("sources", sources)
+                          .extract();
+        QueryEngineModel qem = new QueryEngineModel(QueryEngine.SWIPL);
+
+        for (int threads : new int[] { 1, 3 }) {
+            YesWorkflowDB boundedDB = YesWorkflowDB.createFileBackedDB(64);
+            DefaultExtractor boundedExtractor = new DefaultExtractor(boundedDB, super.stdoutStream, super.stderrStream);
+            boundedExtractor.configure("sources", sources)
+                            .configure("membudget", "16K")
+                            .configure("threads", threads)
+                            .extract();
+
+            assertEquals(unboundedExtractor.getFacts(qem), boundedExtractor.getFacts(qem));
+            assertEquals(DefaultExtractor.commentsAsString(unboundedDB), DefaultExtractor.commentsAsString(boundedDB));
+            assertEquals(sourceLinesAsString(unboundedDB), sourceLinesAsString(boundedDB));
+            boundedDB.close();
+        }
+
+        unboundedDB.close();
+    }
+
+    public void testExtract_CompressedSources_SameAsUncompressed() throws Exception {
+
+        Path source = Paths.get("src/main/resources/examples/simulate_data_collection/simulate_data_collection.py");
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_Compressed");
+        Path gzipSource = testDirectory.resolve("simulate_data_collection.py.gz");
+        Path bzip2Source = testDirectory.resolve("simulate_data_collection.py.bz2");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipSource))) {
+            Files.copy(source, out);
+        }
+        try (OutputStream out = new BZip2CompressorOutputStream(Files.newOutputStream(bzip2Source))) {
+            Files.copy(source, out);
+        }
+
+        assertEquals(Language.PYTHON, LanguageModel.languageForFileName(gzipSource.toString()));
+        assertEquals(Language.PYTHON, LanguageModel.languageForFileName(bzip2Source.toString()));
+
+        YesWorkflowDB plainDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(plainDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", Arrays.asList(source.toString(), source.toString()))
+            .configure("dedup", "off")
+            .extract();
+
+        for (int threads : new int[] { 1, 3 }) {
+            for (String budget : new String[] { null, "16K" }) {
+                YesWorkflowDB compressedDB = YesWorkflowDB.createInMemoryDB();
+                DefaultExtractor extractor = new DefaultExtractor(compressedDB, super.stdoutStream, super.stderrStream)
+                    .configure("sources", Arrays.asList(gzipSource.toString(), bzip2Source.toString()))
+                    .configure("threads", threads);
+                if (budget != null) extractor.configure("membudget", budget);
+                extractor.extract();
+                assertEquals(DefaultExtractor.commentsAsString(plainDB), DefaultExtractor.commentsAsString(compressedDB));
+                assertEquals(sourceLinesAsString(plainDB), sourceLinesAsString(compressedDB));
+                assertEquals(annotationsAsString(plainDB), annotationsAsString(compressedDB));
+                compressedDB.close();
+            }
+        }
+
+        plainDB.close();
+    }
+
+    public void testExtract_Notebook_SameAsCodeCellsInScript() throws Exception {
+
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_Notebook");
+        Path script = testDirectory.resolve("analysis.py");
+        Path notebook = testDirectory.resolve("analysis.ipynb");
+
+        String code = "# @begin analysis"       + EOL +
+                      "# @in data @as raw_data" + EOL +
+                      "x = load('data')"        + EOL +
+                      "y = clean(x)  # @out y"  + EOL +
+                      "# @end analysis"         + EOL;
+        Files.write(script, code.getBytes(StandardCharsets.UTF_8));
+        Files.write(notebook, TestNotebookReader.notebook(
+                TestNotebookReader.codeCell("[\"# @begin analysis\\n\", \"# @in data @as raw_data\\n\", \"x = load('data')\"]", "") + "," +
+                TestNotebookReader.markdownCell("\"# Cleaning\"") + "," +
+                TestNotebookReader.codeCell("[\"y = clean(x)  # @out y\\n\", \"# @end analysis\"]",
+                        "{\"data\": {\"image/png\": \"iVBORw0KGgo\"}, \"output_type\": \"display_data\"}"),
+                TestNotebookReader.PYTHON_METADATA).getBytes(StandardCharsets.UTF_8));
+
+        YesWorkflowDB scriptDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(scriptDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", script.toString())
+            .extract();
+
+        for (int threads : new int[] { 1, 3 }) {
+            YesWorkflowDB notebookDB = YesWorkflowDB.createInMemoryDB();
+            new DefaultExtractor(notebookDB, super.stdoutStream, super.stderrStream)
+                .configure("sources", notebook.toString())
+                .configure("threads", threads)
+                .extract();
+            assertEquals(DefaultExtractor.commentsAsString(scriptDB), DefaultExtractor.commentsAsString(notebookDB));
+            assertEquals(sourceLinesAsString(scriptDB), sourceLinesAsString(notebookDB));
+            assertEquals(annotationsAsString(scriptDB), annotationsAsString(notebookDB));
+            notebookDB.close();
+        }
+
+        scriptDB.close();
+    }
+
+    public void testExtract_Notebook_RecordsCodeCellsAndKernelLanguage() throws Exception {
+
+        Path testDirectory = getTestDirectory("TestDefaultExtractor_NotebookCells");
+        Path notebook = testDirectory.resolve("analysis.ipynb");
+        Path cacheFile = testDirectory.resolve("cache.db");
+        Files.deleteIfExists(cacheFile);
+        Files.write(notebook, TestNotebookReader.notebook(
+                TestNotebookReader.codeCell("[\"# @begin analysis\\n\", \"# @in data\\n\", \"x = load('data')\"]", "") + "," +
+                TestNotebookReader.markdownCell("\"# Cleaning\"") + "," +
+                TestNotebookReader.codeCell("[\"y = clean(x)  # @out y\\n\", \"# @end analysis\"]", ""),
+                TestNotebookReader.PYTHON_METADATA).getBytes(StandardCharsets.UTF_8));
+
+        // scanned sequentially, concurrently, into the cache, and replayed from the cache
+        String[][] settings = { { "threads", "1" }, { "threads", "3" }, { "cache", cacheFile.toString() },
+                                { "cache", cacheFile.toString() } };
+        for (int i = 0; i < settings.length; ++i) {
+            String[] setting = settings[i];
+            YesWorkflowDB notebookDB = YesWorkflowDB.createInMemoryDB();
+            DefaultExtractor extractor = new DefaultExtractor(notebookDB, super.stdoutStream, super.stderrStream);
+            extractor.configure("sources", notebook.toString())
+                     .configure(setting[0], setting[1])
+                     .extract();
+            assertEquals(Language.PYTHON, extractor.getLanguage());
+            assertEquals("0:1:3 2:4:2", notebookCellsAsString(notebookDB));
+            if (i == 3) assertEquals(1, extractor.getExtractionCache().getHitCount());
+            notebookDB.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String notebookCellsAsString(YesWorkflowDB ywdb) {
+        StringBuilder cells = new StringBuilder();
+        Result<Record> rows = ywdb.jooq().select(CELL_INDEX, FIRST_LINE, LINE_COUNT)
+                                         .from(Table.NOTEBOOK_CELL)
+                                         .orderBy(FIRST_LINE)
+                                         .fetch();
+        for (Record row : rows) {
+            if (cells.length() > 0) cells.append(' ');
+            cells.append(row.getValue(CELL_INDEX)).append(':')
+                 .append(row.getValue(FIRST_LINE)).append(':')
+                 .append(row.getValue(LINE_COUNT));
+        }
+        return cells.toString();
+    }
+
+    public void testExtract_GitRevisions_ScansOnlyChangedBlobs() throws Exception {
+
+        String main = "# @begin main"         + EOL +
+                      "# @in x"               + EOL +
+                      "# @out y"              + EOL +
+                      "# @end main"           + EOL;
+        String step = "# @begin step"         + EOL +
+                      "# @end step"           + EOL;
+        String changedStep = "# @begin step"  + EOL +
+                      "# @in y"               + EOL +
+                      "# @end step"           + EOL;
+
+        try (Git git = TestGitSourceTree.createRepository("TestDefaultExtractor_GitRevisions")) {
+
+            String repository = git.getRepository().getWorkTree().getPath();
+            String first = TestGitSourceTree.commit(git, "main.py", main, "step.py", step);
+            String second = TestGitSourceTree.commit(git, "step.py", changedStep);
+            Files.write(Paths.get(repository, "main.py"), "# @begin uncommitted".getBytes(StandardCharsets.UTF_8));
+
+            BlobScanCache blobCache = new BlobScanCache();
+            String[] expectedComments = { "@begin main" + EOL + "@in x" + EOL + "@out y" + EOL + "@end main" + EOL +
+                                          "@begin step" + EOL + "@end step" + EOL,
+                                          "@begin main" + EOL + "@in x" + EOL + "@out y" + EOL + "@end main" + EOL +
+                                          "@begin step" + EOL + "@in y" + EOL + "@end step" + EOL };
+            String[] revisions = { first, second };
+
+            for (int i = 0; i < revisions.length; ++i) {
+                YesWorkflowDB revisionDB = YesWorkflowDB.createInMemoryDB();
+                new DefaultExtractor(revisionDB, super.stdoutStream, super.stderrStream)
+                    .configure("gitrepo", repository)
+                    .configure("revision", revisions[i])
+                    .configure("blobcache", blobCache)
+                    .extract();
+                assertEquals(expectedComments[i], DefaultExtractor.commentsAsString(revisionDB));
+                revisionDB.close();
+            }
+
+            assertEquals(1, blobCache.getHitCount());
+            assertEquals(3, blobCache.getMissCount());
+        }
+    }
+
+    private void assertCodeBlock(Record block, String name, Long beginLine, Long endLine) {
+        assertEquals(name, ywdb.getStringValue(block, NAME));
+        assertEquals(beginLine, ywdb.getLongValue(block, BEGIN_LINE));
+        assertEquals(endLine, ywdb.getLongValue(block, END_LINE));
+    }
+
+    private String signatureString(Record signature) {
+        return ywdb.getStringValue(signature, INPUT_OR_OUTPUT) + " " +
+               ywdb.getStringValue(signature, VARIABLE) + " " +
+               ywdb.getStringValue(signature, IN_CODE_BLOCK);
+    }
+}
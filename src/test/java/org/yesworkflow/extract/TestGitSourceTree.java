@@ -0,0 +1,130 @@
+package org.yesworkflow.extract;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.util.FileUtils;
+import org.yesworkflow.Language;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.exceptions.YWToolUsageException;
+import org.yesworkflow.extract.GitSourceTree.SourceBlob;
+
+public class TestGitSourceTree extends YesWorkflowTestCase {
+
+    private static final PersonIdent AUTHOR = new PersonIdent("YesWorkflow", "yw@example.org");
+
+    /** Creates an empty git repository in a new test directory. */
+    static Git createRepository(String testName) throws Exception {
+        Path directory = getTestDirectory(testName);
+        FileUtils.delete(directory.toFile(), FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+        return Git.init().setDirectory(directory.toFile()).call();
+    }
+
+    /** Writes the given files, each a path followed by its contents, to the working tree
+     *  of a repository and commits all changes, returning the id of the commit. */
+    static String commit(Git git, String... pathsAndContents) throws Exception {
+        File workTree = git.getRepository().getWorkTree();
+        for (int i = 0; i < pathsAndContents.length; i += 2) {
+            Path file = workTree.toPath().resolve(pathsAndContents[i]);
+            Files.createDirectories(file.getParent());
+            Files.write(file, pathsAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+        }
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage("Commit").setAuthor(AUTHOR).setCommitter(AUTHOR).call().getName();
+    }
+
+    private static List<SourceBlob> listTree(String repository, String revision, List<String> sourcePaths,
+                                             List<String> includes, List<String> excludes) throws Exception {
+        List<SourceBlob> blobs = new ArrayList<SourceBlob>();
+        try (GitSourceTree tree = new GitSourceTree(repository, revision, sourcePaths, includes, excludes)) {
+            for (SourceBlob blob = tree.next(); blob != null; blob = tree.next()) {
+                blobs.add(blob);
+            }
+        }
+        return blobs;
+    }
+
+    public void testGitSourceTree_ListsSourceFilesOfRevision() throws Exception {
+
+        try (Git git = createRepository("TestGitSourceTree_ListsSourceFilesOfRevision")) {
+
+            String repository = git.getRepository().getWorkTree().getPath();
+            String first = commit(git, "main.py", "# @begin main",
+                                       "lib/util.R", "# @begin util",
+                                       "README.txt", "Not a source file");
+            commit(git, "lib/util.R", "# @begin util" + EOL + "# @end util");
+
+            List<SourceBlob> firstBlobs = listTree(repository, first, null, null, null);
+            assertEquals(2, firstBlobs.size());
+            assertEquals("lib/util.R", firstBlobs.get(0).path);
+            assertEquals(Language.R, firstBlobs.get(0).language);
+            assertEquals("main.py", firstBlobs.get(1).path);
+            assertEquals(Language.PYTHON, firstBlobs.get(1).language);
+
+            List<SourceBlob> headBlobs = listTree(repository, "HEAD", null, null, null);
+            assertEquals(2, headBlobs.size());
+            assertFalse(firstBlobs.get(0).blobId.equals(headBlobs.get(0).blobId));
+            assertEquals(firstBlobs.get(1).blobId, headBlobs.get(1).blobId);
+
+            try (GitSourceTree tree = new GitSourceTree(repository, first, null, null, null)) {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(tree.openBlob(tree.next()), StandardCharsets.UTF_8))) {
+                    assertEquals("# @begin util", reader.readLine());
+                    assertNull(reader.readLine());
+                }
+            }
+        }
+    }
+
+    public void testGitSourceTree_SourcePathsAndPatterns() throws Exception {
+
+        try (Git git = createRepository("TestGitSourceTree_SourcePathsAndPatterns")) {
+
+            String repository = git.getRepository().getWorkTree().getPath();
+            commit(git, "main.py", "",
+                        "lib/a.py", "",
+                        "lib/b.py", "",
+                        "lib/test/test_a.py", "",
+                        "lib/notes.txt", "");
+
+            List<SourceBlob> blobs = listTree(repository, "HEAD", Arrays.asList("lib/"), null, Arrays.asList("test"));
+            assertEquals(2, blobs.size());
+            assertEquals("lib/a.py", blobs.get(0).path);
+            assertEquals("lib/b.py", blobs.get(1).path);
+
+            blobs = listTree(repository, "HEAD", Arrays.asList("main.py", "lib"), Arrays.asList("*.txt"), null);
+            assertEquals(2, blobs.size());
+            assertEquals("main.py", blobs.get(0).path);
+            assertEquals("lib/notes.txt", blobs.get(1).path);
+
+            try {
+                listTree(repository, "HEAD", Arrays.asList("missing.py"), null, null);
+                fail("Expected exception for source path missing from tree");
+            } catch (YWToolUsageException e) {
+                assertEquals("ERROR: Input file not found in git revision: missing.py", e.getMessage());
+            }
+        }
+    }
+
+    public void testGitSourceTree_RevisionNotFound() throws Exception {
+
+        try (Git git = createRepository("TestGitSourceTree_RevisionNotFound")) {
+            commit(git, "main.py", "");
+            try {
+                new GitSourceTree(git.getRepository().getWorkTree().getPath(), "no-such-branch", null, null, null);
+                fail("Expected exception for missing revision");
+            } catch (YWToolUsageException e) {
+                assertEquals("ERROR: Revision not found in git repository: no-such-branch", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.yesworkflow.extract;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.extract.KeywordMatcher.MatchExtent;
+
+public class TestKeywordMatcher extends YesWorkflowTestCase {
+
+    private KeywordMatcher matcher;
+    
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        matcher = new KeywordMatcher(new YWKeywords());
+    }
+    
+    public void testMatchesKeyword() {
+        assertEquals(MatchExtent.PREFIX_MATCH, matcher.matchesKeyword("@"));
+        assertEquals(MatchExtent.PREFIX_MATCH, matcher.matchesKeyword("@beg"));
+        assertEquals(MatchExtent.FULL_MATCH, matcher.matchesKeyword("@begin"));
+        assertEquals(MatchExtent.FULL_MATCH, matcher.matchesKeyword("@BeGiN"));
+        assertEquals(MatchExtent.NO_MATCH, matcher.matchesKeyword("@begins"));
+        assertEquals(MatchExtent.NO_MATCH, matcher.matchesKeyword("begin"));
+        assertEquals(MatchExtent.NO_MATCH, matcher.matchesKeyword("@x"));
+    }
+
+    public void testMatchesKeyword_KeywordIsPrefixOfAnother() {
+        KeywordMatcher m = new KeywordMatcher(Arrays.asList("@in", "@input"));
+        assertEquals(MatchExtent.FULL_MATCH, m.matchesKeyword("@in"));
+        assertEquals(MatchExtent.PREFIX_MATCH, m.matchesKeyword("@inp"));
+        assertEquals(MatchExtent.FULL_MATCH, m.matchesKeyword("@input"));
+    }
+
+    public void testFindKeyword() {
+        assertEquals(-1, matcher.findKeyword(""));
+        assertEquals(-1, matcher.findKeyword("no keywords here"));
+        assertEquals(0, matcher.findKeyword("@begin main"));
+        assertEquals(4, matcher.findKeyword("foo @OUT x @in y"));
+        assertEquals(1, matcher.findKeyword("@@in x"));
+        assertEquals(5, matcher.findKeyword("email@beginning"));
+    }
+
+    public void testFindKeyword_OverlappingKeywords() {
+        KeywordMatcher m = new KeywordMatcher(Arrays.asList("bcd", "abcde", "cd"));
+        assertEquals(1, m.findKeyword("xabcdex"));
+        assertEquals(2, m.findKeyword("xxbcdx"));
+        assertEquals(0, m.findKeyword("cdbcd"));
+    }
+    
+    public void testMatch() {
+        assertNull(matcher.match("just a comment", true));
+        assertEquals("@in x", matcher.match("input: @in x", true));
+        assertEquals("input: @in x", matcher.match("input: @in x", false));
+    }
+    
+    public void testFindCommentsOnLine() {
+        List<String> comments = DefaultExtractor.findCommentsOnLine(
+                "preamble @begin step @in x @as horiz @end step", matcher);
+        assertEquals(Arrays.asList("@begin step", "@in x", "@as horiz", "@end step"), comments);
+    }
+
+    public void testFindCommentsOnLine_NoKeyword() {
+        assertEquals(0, DefaultExtractor.findCommentsOnLine("nothing @here", matcher).size());
+    }
+
+    public void testFindCommentsOnLine_FailedPrefixIsNotRescanned() {
+        assertEquals(0, DefaultExtractor.findCommentsOnLine("@@in x", matcher).size());
+        assertEquals(Arrays.asList("@in x @@out y"), 
+                     DefaultExtractor.findCommentsOnLine("@in x @@out y", matcher));
+    }
+
+    public void testFindCommentsOnLine_PartialKeywordAtEndOfLine() {
+        assertEquals(Arrays.asList("@out y @be"), 
+                     DefaultExtractor.findCommentsOnLine("@out y @be", matcher));
+    }
+}
@@ -0,0 +1,126 @@
+package org.yesworkflow.extract;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.extract.NotebookReader.Cell;
+
+public class TestNotebookReader extends YesWorkflowTestCase {
+
+    static String notebook(String cells, String metadata) {
+        return "{\n" +
+               " \"cells\": [" + cells + "],\n" +
+               " \"metadata\": " + metadata + ",\n" +
+               " \"nbformat\": 4,\n" +
+               " \"nbformat_minor\": 2\n" +
+               "}\n";
+    }
+
+    static String codeCell(String source, String outputs) {
+        return "{\"cell_type\": \"code\", \"execution_count\": 1, \"metadata\": {\"tags\": []}, " +
+               "\"outputs\": [" + outputs + "], \"source\": " + source + "}";
+    }
+
+    static String markdownCell(String source) {
+        return "{\"cell_type\": \"markdown\", \"metadata\": {}, \"source\": " + source + "}";
+    }
+
+    static final String PYTHON_METADATA =
+            "{\"kernelspec\": {\"display_name\": \"Python 3\", \"language\": \"python\", \"name\": \"python3\"}, " +
+            "\"language_info\": {\"codemirror_mode\": {\"name\": \"ipython\", \"version\": 3}, \"name\": \"python\"}}";
+
+    private static String readAll(NotebookReader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        BufferedReader lines = new BufferedReader(reader);
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            text.append(line).append(EOL);
+        }
+        return text.toString();
+    }
+
+    public void testNotebookReader_CodeCellsOnly() throws Exception {
+        String json = notebook(
+                markdownCell("[\"# Title\\n\", \"Some text\"]") + "," +
+                codeCell("[\"# @begin main\\n\", \"x = 1\\n\", \"print(\\\"x\\\")\"]", "") + "," +
+                markdownCell("\"More text\"") + "," +
+                codeCell("\"# @end main\"", ""),
+                PYTHON_METADATA);
+
+        NotebookReader reader = new NotebookReader(new StringReader(json));
+        assertEquals(Language.PYTHON, reader.getKernelLanguage());
+        assertEquals(
+            "# @begin main"     + EOL +
+            "x = 1"             + EOL +
+            "print(\"x\")"      + EOL +
+            "# @end main"       + EOL,
+            readAll(reader));
+
+        List<Cell> cells = reader.getCells();
+        assertEquals(2, cells.size());
+        assertEquals(1, cells.get(0).index);
+        assertEquals(1, cells.get(0).firstLine);
+        assertEquals(3, cells.get(0).lineCount);
+        assertEquals(3, cells.get(1).index);
+        assertEquals(4, cells.get(1).firstLine);
+        assertEquals(1, cells.get(1).lineCount);
+
+        assertSame(cells.get(0), NotebookReader.cellForLine(cells, 3));
+        assertEquals(3, cells.get(0).lineInCell(3));
+        assertSame(cells.get(1), NotebookReader.cellForLine(cells, 4));
+        assertEquals(1, cells.get(1).lineInCell(4));
+        assertNull(NotebookReader.cellForLine(cells, 5));
+    }
+
+    public void testNotebookReader_OutputsSkipped() throws Exception {
+        StringBuilder image = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) image.append("iVBORw0KGgoAAAANSUhEUgAA");
+        String output = "{\"data\": {\"image/png\": \"" + image + "\", \"text/plain\": [\"<Figure>\"]}, " +
+                        "\"metadata\": {}, \"output_type\": \"display_data\"}";
+        String json = notebook(codeCell("[\"plot(x)  # @out figure\"]", output), PYTHON_METADATA);
+
+        NotebookReader reader = new NotebookReader(new StringReader(json));
+        assertEquals("plot(x)  # @out figure" + EOL, readAll(reader));
+    }
+
+    public void testNotebookReader_KernelLanguageFromMetadata() throws Exception {
+        String metadata = "{\"kernelspec\": {\"language\": \"R\", \"name\": \"ir\"}, \"language_info\": {\"name\": \"R\"}}";
+        NotebookReader reader = new NotebookReader(new StringReader(notebook(codeCell("\"x <- 1\"", ""), metadata)));
+        assertEquals(Language.R, reader.getKernelLanguage());
+        assertEquals("x <- 1" + EOL, readAll(reader));
+    }
+
+    public void testNotebookReader_NoKernelLanguage() throws Exception {
+        NotebookReader reader = new NotebookReader(new StringReader(notebook(codeCell("\"x = 1\"", ""), "{}")));
+        assertNull(reader.getKernelLanguage());
+        assertEquals("x = 1" + EOL, readAll(reader));
+    }
+
+    public void testNotebookReader_Version3() throws Exception {
+        String json = "{\"metadata\": {\"name\": \"old\"}, \"nbformat\": 3, \"worksheets\": [{\"cells\": [" +
+                      "{\"cell_type\": \"code\", \"collapsed\": false, \"input\": [\"# @begin old\\n\", \"# @end old\"], " +
+                      "\"language\": \"python\", \"metadata\": {}, \"outputs\": []}], \"metadata\": {}}]}";
+        NotebookReader reader = new NotebookReader(new StringReader(json));
+        assertEquals(Language.PYTHON, reader.getKernelLanguage());
+        assertEquals("# @begin old" + EOL + "# @end old" + EOL, readAll(reader));
+    }
+
+    public void testNotebookReader_EscapesInSource() throws Exception {
+        String json = notebook(codeCell("[\"s = \\\"\\\\t\\u00e9\\\"\\n\", \"\\tpass\"]", ""), PYTHON_METADATA);
+        NotebookReader reader = new NotebookReader(new StringReader(json));
+        assertEquals("s = \"\\t\u00e9\"" + EOL + "\tpass" + EOL, readAll(reader));
+    }
+
+    public void testNotebookReader_Truncated() throws Exception {
+        String json = notebook(codeCell("\"x = 1\"", ""), PYTHON_METADATA);
+        try {
+            readAll(new NotebookReader(new StringReader(json.substring(0, json.length() / 2))));
+            fail("Expected exception for truncated notebook");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -2,7 +2,15 @@ package org.yesworkflow.extract;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.OutputStream;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
 
 import org.yesworkflow.Language;
 import org.yesworkflow.LanguageModel;
@@ -267,4 +275,114 @@ public class TestSkeletonBuilder extends YesWorkflowTestCase {
         );
     }
 
-}
\ No newline at end of file
+
+    public void testSkeletonBuilder_AnnotationsStreamedFromExtractor() throws Exception {
+
+        SkeletonBuilder streamedSkeleton = new SkeletonBuilder("# ");
+
+        String skeleton = extractor.configure("sources", "src/main/resources/example.py")
+                                   .annotationListener(streamedSkeleton)
+                                   .extract()
+                                   .getSkeleton();
+        streamedSkeleton.end();
+
+        assertFalse(skeleton.isEmpty());
+        assertEquals(skeleton, streamedSkeleton.toString());
+    }
+
+    public void testSkeletonBuilder_WritesIncrementallyToWriter() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        SkeletonBuilder writtenSkeleton = new SkeletonBuilder("# ", writer);
+
+        String skeleton = extractor.configure("sources", "src/main/resources/example.py")
+                                   .annotationListener(writtenSkeleton)
+                                   .extract()
+                                   .getSkeleton();
+
+        assertFalse(writtenSkeleton.isEmpty());
+        assertEquals(skeleton, writer.toString() + EOL);
+        writtenSkeleton.end();
+        assertEquals(skeleton, writer.toString());
+        assertEquals("", writtenSkeleton.toString());
+    }
+
+    public void testSkeletonBuilder_SkeletonPerSourceFile() throws Exception {
+
+        Path testDirectory = getTestDirectory("testSkeletonBuilder_SkeletonPerSourceFile");
+        Path sourceDirectory = testDirectory.resolve("sources");
+        Path skeletonDirectory = testDirectory.resolve("skeletons");
+        Files.createDirectories(sourceDirectory.resolve("sub"));
+        Path python = sourceDirectory.resolve("first.py");
+        Path matlab = sourceDirectory.resolve("sub").resolve("second.m");
+        Files.write(python, ("x = 1  # @begin first @desc The first block" + EOL +
+                             "# @in a @as b" + EOL + "# @end first" + EOL).getBytes(StandardCharsets.UTF_8));
+        Files.write(matlab, ("% @begin second" + EOL + "y = 2" + EOL +
+                             "% @end second" + EOL).getBytes(StandardCharsets.UTF_8));
+
+        String relativePython = Paths.get("").toAbsolutePath().relativize(python.toAbsolutePath()).toString();
+        new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream)
+            .configure("sources", Arrays.asList(relativePython, matlab.toAbsolutePath().toString()))
+            .configure("skeletondir", skeletonDirectory.toString())
+            .extract();
+
+        assertEquals(
+            "# @begin first @desc The first block"  + EOL +
+            "# @in a  @as b"                        + EOL +
+            "# @end first"                          + EOL,
+            new String(Files.readAllBytes(DefaultExtractor.skeletonPath(skeletonDirectory, relativePython)),
+                       StandardCharsets.UTF_8));
+
+        Path matlabSkeleton = DefaultExtractor.skeletonPath(skeletonDirectory, matlab.toAbsolutePath().toString());
+        assertTrue(matlabSkeleton.startsWith(skeletonDirectory));
+        assertTrue(matlabSkeleton.endsWith(Paths.get("sub", "second.m")));
+        assertEquals(
+            "% @begin second"                       + EOL +
+            "% @end second"                         + EOL,
+            new String(Files.readAllBytes(matlabSkeleton), StandardCharsets.UTF_8));
+    }
+
+    public void testSkeletonBuilder_SkeletonPath() {
+        Path directory = Paths.get("skeletons");
+        assertEquals(Paths.get("skeletons", "a", "b.py"), DefaultExtractor.skeletonPath(directory, "a/b.py"));
+        assertEquals(Paths.get("skeletons", "b.py"), DefaultExtractor.skeletonPath(directory, "../../b.py"));
+        assertEquals(Paths.get("skeletons", "tmp", "b.py"), DefaultExtractor.skeletonPath(directory, "/tmp/b.py"));
+        assertEquals(Paths.get("skeletons", "a", "b.py"), DefaultExtractor.skeletonPath(directory, "a/b.py.gz"));
+        assertEquals(Paths.get("skeletons", "a", "b.py"), DefaultExtractor.skeletonPath(directory, "a/b.ipynb"));
+        assertEquals(Paths.get("skeletons", "a", "b.r"), DefaultExtractor.skeletonPath(directory, "a/b.ipynb.bz2", Language.R));
+    }
+
+    public void testSkeletonBuilder_SkeletonPathCollisions() throws Exception {
+
+        Path testDirectory = getTestDirectory("testSkeletonBuilder_SkeletonPathCollisions");
+        Path skeletonDirectory = testDirectory.resolve("skeletons");
+        Path plain = testDirectory.resolve("script.py");
+        Path compressed = testDirectory.resolve("script.py.gz");
+        Files.write(plain, ("# @begin plain" + EOL + "# @end plain" + EOL).getBytes(StandardCharsets.UTF_8));
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            out.write(("# @begin compressed" + EOL + "# @end compressed" + EOL).getBytes(StandardCharsets.UTF_8));
+        }
+
+        String relativePlain = Paths.get("").toAbsolutePath().relativize(plain.toAbsolutePath()).toString();
+        new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream)
+            .configure("sources", Arrays.asList(plain.toAbsolutePath().toString(), relativePlain,
+                                                compressed.toAbsolutePath().toString()))
+            .configure("dedup", "off")
+            .configure("skeletondir", skeletonDirectory.toString())
+            .extract();
+
+        // the two spellings of the plain source share one skeleton, and the compressed source is renamed
+        Path plainSkeleton = DefaultExtractor.skeletonPath(skeletonDirectory, plain.toAbsolutePath().toString());
+        Path compressedSkeleton = plainSkeleton.resolveSibling("script-2.py");
+        assertEquals(
+            "# @begin plain"                        + EOL +
+            "# @end plain"                          + EOL,
+            new String(Files.readAllBytes(plainSkeleton), StandardCharsets.UTF_8));
+        assertEquals(
+            "# @begin compressed"                   + EOL +
+            "# @end compressed"                     + EOL,
+            new String(Files.readAllBytes(compressedSkeleton), StandardCharsets.UTF_8));
+        assertTrue(stderrBuffer.toString().contains(
+            "WARNING: Skeleton of " + compressed.toAbsolutePath() + " written to " + compressedSkeleton));
+    }
+}
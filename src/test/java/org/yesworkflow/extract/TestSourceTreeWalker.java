@@ -0,0 +1,79 @@
+package org.yesworkflow.extract;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.extract.SourceTreeWalker.SourceFile;
+
+public class TestSourceTreeWalker extends YesWorkflowTestCase {
+
+    private Path root;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        root = getTestDirectory("TestSourceTreeWalker");
+        for (String file : Arrays.asList("b.py", "a.R", "notes.txt", "lib/c.java", "lib/deep/d.sh",
+                                         "build/e.py", "lib/build/f.py")) {
+            Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, Arrays.asList("# " + file), StandardCharsets.UTF_8);
+        }
+    }
+
+    private List<String> walk(List<String> sources, List<String> includes, List<String> excludes,
+                              int threadCount) throws Exception {
+        List<String> files = new ArrayList<String>();
+        try (SourceTreeWalker walker = new SourceTreeWalker(sources, includes, excludes, threadCount)) {
+            for (SourceFile file = walker.next(); file != null; file = walker.next()) {
+                Path path = Paths.get(file.path);
+                files.add((path.startsWith(root) ? root.relativize(path) : path).toString());
+            }
+        }
+        return files;
+    }
+
+    private String path(String relativePath) {
+        return root.resolve(relativePath).toString();
+    }
+
+    public void testWalk_RecognizedLanguagesByDefault_SortedDepthFirst() throws Exception {
+        assertEquals(Arrays.asList("a.R", "b.py", "build/e.py", "lib/build/f.py", "lib/c.java", "lib/deep/d.sh"),
+                     walk(Arrays.asList(root.toString()), null, null, 1));
+    }
+
+    public void testWalk_SameOrderWithManyThreads() throws Exception {
+        assertEquals(walk(Arrays.asList(root.toString()), null, null, 1),
+                     walk(Arrays.asList(root.toString()), null, null, 8));
+    }
+
+    public void testWalk_IncludeAndExcludeGlobs() throws Exception {
+        assertEquals(Arrays.asList("b.py", "lib/c.java", "notes.txt"),
+                     walk(Arrays.asList(root.toString()),
+                          Arrays.asList("*.py", "*.txt", "lib/*.java"),
+                          Arrays.asList("build", "deep"), 2));
+    }
+
+    public void testWalk_FilesPassedOnAsGiven() throws Exception {
+        List<String> files = walk(Arrays.asList(path("notes.txt"), path("lib"), "missing.py"),
+                                  null, Arrays.asList("**/build/**", "build"), 2);
+        assertEquals(Arrays.asList("notes.txt", "lib/c.java", "lib/deep/d.sh", "missing.py"), files);
+    }
+
+    public void testWalk_DetectsLanguage() throws Exception {
+        try (SourceTreeWalker walker = new SourceTreeWalker(Arrays.asList(path("lib")),
+                Collections.<String>emptyList(), Arrays.asList("build"), 1)) {
+            assertEquals(Language.JAVA, walker.next().language);
+            assertEquals(Language.BASH, walker.next().language);
+            assertNull(walker.next());
+        }
+    }
+}
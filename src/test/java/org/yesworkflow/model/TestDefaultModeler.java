@@ -1154,4 +1154,27 @@ public class TestDefaultModeler extends YesWorkflowTestCase {
         modeler.annotations(annotations)
                .model();
     }
+
+    public void testModel_AnnotationsStreamedFromExtractor() throws Exception {
+
+        extractor.configure("sources", "src/main/resources/example.py");
+        List<Annotation> annotations = extractor.extract().getAnnotations();
+        Model expected = modeler.annotations(annotations).model().getModel();
+
+        YesWorkflowDB streamingDB = YesWorkflowDB.createInMemoryDB();
+        DefaultModeler streamingModeler = new DefaultModeler(streamingDB, super.stdoutStream, super.stderrStream);
+        new DefaultExtractor(streamingDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", "src/main/resources/example.py")
+            .annotationListener(streamingModeler)
+            .extract();
+        Model streamed = streamingModeler.model().getModel();
+
+        assertEquals(expected.program.name, streamed.program.name);
+        assertEquals(expected.program.programs.length, streamed.program.programs.length);
+        assertEquals(expected.program.channels.length, streamed.program.channels.length);
+        assertEquals(expected.program.inPorts.length, streamed.program.inPorts.length);
+        assertEquals(expected.program.outPorts.length, streamed.program.outPorts.length);
+        assertEquals(expected.data.length, streamed.data.length);
+        streamingDB.close();
+    }
 }
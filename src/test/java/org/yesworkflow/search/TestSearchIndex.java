@@ -0,0 +1,160 @@
+package org.yesworkflow.search;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.search.SearchHit.MatchedAnnotation;
+
+public class TestSearchIndex extends YesWorkflowTestCase {
+
+    private Path testDirectory;
+    private Path indexFile;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        testDirectory = getTestDirectory("TestSearchIndex");
+        indexFile = testDirectory.resolve("index.db");
+        Files.deleteIfExists(indexFile);
+    }
+
+    private Path writeSource(String name, String text) throws Exception {
+        Path source = testDirectory.resolve(name);
+        Files.write(source, text.getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+
+    private void extractAndIndex(Path... sources) throws Exception {
+        YesWorkflowDB ywdb = YesWorkflowDB.createInMemoryDB();
+        String[] paths = new String[sources.length];
+        for (int i = 0; i < sources.length; ++i) paths[i] = sources[i].toString();
+        new DefaultExtractor(ywdb, super.stdoutStream, super.stderrStream)
+            .configure("sources", Arrays.asList(paths))
+            .configure("index", indexFile.toString())
+            .extract();
+        ywdb.close();
+    }
+
+    private List<SearchHit> search(int limit, String... query) throws Exception {
+        try (SearchIndex index = new SearchIndex(YesWorkflowDB.openFileDB(indexFile))) {
+            return index.search(Arrays.asList(query), limit);
+        }
+    }
+
+    public void testTokenizer_Terms() {
+        assertEquals(Arrays.asList("in", "raw_data", "as", "sampled", "data", "2"),
+                     Tokenizer.terms("@in raw_data @as Sampled-data (2)"));
+        assertEquals(Arrays.asList(), Tokenizer.terms(" -- "));
+    }
+
+    public void testSearchIndex_RanksCommentsContainingAllTerms() throws Exception {
+
+        Path source = writeSource("collect.py",
+            "# @begin collect_data @desc Collect sampled data"      + EOL +
+            "# @in sample_id @desc Id of sample"                    + EOL +
+            "# @out raw_data @desc Raw data for the sampled data"   + EOL +
+            "x = 1  # data is sampled here"                         + EOL +
+            "# @end collect_data"                                   + EOL);
+        extractAndIndex(source);
+
+        List<SearchHit> hits = search(10, "sampled", "data");
+        assertEquals(3, hits.size());
+        assertEquals(Long.valueOf(4), hits.get(0).lineNumber);
+        assertEquals(source.toString(), hits.get(0).path);
+        assertEquals("data is sampled here", hits.get(0).commentText);
+        assertEquals(Long.valueOf(3), hits.get(1).lineNumber);
+        assertEquals(Long.valueOf(1), hits.get(2).lineNumber);
+        assertTrue(hits.get(0).score > hits.get(1).score);
+        assertTrue(hits.get(1).score > hits.get(2).score);
+
+        assertEquals(1, search(1, "sampled", "data").size());
+        assertEquals(0, search(10, "sampled", "nothing").size());
+        assertEquals(1, search(10, "SAMPLE_ID").size());
+    }
+
+    public void testSearchIndex_PhraseQuery() throws Exception {
+
+        extractAndIndex(writeSource("phrases.py",
+            "# the sampled data"                                    + EOL +
+            "# data is sampled"                                     + EOL +
+            "# sampled raw data"                                    + EOL));
+
+        List<SearchHit> hits = search(10, "sampled data");
+        assertEquals(1, hits.size());
+        assertEquals(Long.valueOf(1), hits.get(0).lineNumber);
+
+        assertEquals(3, search(10, "sampled", "data").size());
+        assertEquals(1, search(10, "\"raw data\"").size());
+    }
+
+    public void testSearchIndex_TermsAttributedToAnnotations() throws Exception {
+
+        extractAndIndex(writeSource("annotated.py",
+            "# Collection step: @begin collect @desc Collect data"  + EOL +
+            "# @in sample @as specimen"                             + EOL +
+            "# @end collect"                                        + EOL));
+
+        List<MatchedAnnotation> annotations = search(10, "collect", "data").get(0).annotations;
+        assertEquals(1, annotations.size());
+        assertEquals("@begin collect", annotations.get(0).toString());
+        assertEquals("BEGIN", annotations.get(0).tag);
+        assertEquals(Long.valueOf(1), annotations.get(0).rankInComment);
+
+        annotations = search(10, "specimen").get(0).annotations;
+        assertEquals(1, annotations.size());
+        assertEquals("@as specimen", annotations.get(0).toString());
+        assertEquals(Long.valueOf(2), annotations.get(0).rankInComment);
+
+        assertEquals(2, search(10, "sample", "specimen").get(0).annotations.size());
+        assertEquals(Arrays.asList(), search(10, "step").get(0).annotations);
+    }
+
+    public void testSearchIndex_ReextractionReplacesEntries() throws Exception {
+
+        Path first = writeSource("first.py", "# @begin first @desc Old description" + EOL + "# @end first" + EOL);
+        Path second = writeSource("second.py", "# @begin second @desc Old description" + EOL + "# @end second" + EOL);
+        extractAndIndex(first, second);
+        assertEquals(2, search(10, "old").size());
+
+        writeSource("first.py", "# @begin first @desc New description" + EOL + "# @end first" + EOL);
+        extractAndIndex(first);
+
+        List<SearchHit> hits = search(10, "old");
+        assertEquals(1, hits.size());
+        assertEquals(second.toString(), hits.get(0).path);
+        assertEquals(first.toString(), search(10, "new").get(0).path);
+        assertEquals(2, search(10, "description").size());
+        assertEquals(0, search(10, "old", "new").size());
+    }
+
+    public void testSearchIndex_DuplicateSourcesIndexedUnderEachPath() throws Exception {
+
+        String text = "# @begin helper @desc Shared helper" + EOL + "# @end helper" + EOL;
+        Path first = writeSource("helper_a.py", text);
+        Path other = writeSource("other.py", "# @begin other @desc Other step" + EOL + "# @end other" + EOL);
+        Path second = writeSource("helper_b.py", text);
+        extractAndIndex(first, other, second);
+
+        List<SearchHit> hits = search(10, "shared", "helper");
+        assertEquals(2, hits.size());
+        assertEquals(first.toString(), hits.get(0).path);
+        assertEquals(second.toString(), hits.get(1).path);
+        assertEquals(hits.get(0).lineNumber, hits.get(1).lineNumber);
+        assertEquals("@begin helper", hits.get(1).annotations.get(0).toString());
+        assertEquals(1, search(10, "other", "step").size());
+
+        extractAndIndex(first, other, second);
+        assertEquals(2, search(10, "shared", "helper").size());
+    }
+
+    public void testDefaultSearcher_ParseQuery() {
+        assertEquals(Arrays.asList("sampled data", "raw", "x y"),
+                     DefaultSearcher.parseQuery(" \"sampled data\" raw \"x y"));
+    }
+}
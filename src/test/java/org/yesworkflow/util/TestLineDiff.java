@@ -0,0 +1,35 @@
+package org.yesworkflow.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+
+public class TestLineDiff extends YesWorkflowTestCase {
+
+    private static List<String> lines(String... lines) {
+        return Arrays.asList(lines);
+    }
+
+    public void testLineDiff_IdenticalTexts() {
+        assertEquals("[0, 1, 2]", Arrays.toString(LineDiff.match(lines("a", "b", "c"), lines("a", "b", "c"))));
+        assertEquals("[]", Arrays.toString(LineDiff.match(lines(), lines())));
+    }
+
+    public void testLineDiff_SingleEdits() {
+        assertEquals("[0, -1, 2]", Arrays.toString(LineDiff.match(lines("a", "b", "c"), lines("a", "x", "c"))));
+        assertEquals("[0, -1, 1, 2]", Arrays.toString(LineDiff.match(lines("a", "b", "c"), lines("a", "x", "b", "c"))));
+        assertEquals("[0, 2]", Arrays.toString(LineDiff.match(lines("a", "b", "c"), lines("a", "c"))));
+        assertEquals("[-1, -1]", Arrays.toString(LineDiff.match(lines(), lines("a", "b"))));
+    }
+
+    public void testLineDiff_SeparateEditsMatchUniqueLinesBetween() {
+        assertEquals("[0, -1, 2, 3, 4, -1, 6]", Arrays.toString(LineDiff.match(
+                lines("begin", "x = 1", "}", "middle", "}", "y = 2", "end"),
+                lines("begin", "x = 3", "}", "middle", "}", "y = 4", "end"))));
+    }
+
+    public void testLineDiff_MovedLinesMatchedInLongestOrder() {
+        assertEquals("[1, 2, -1]", Arrays.toString(LineDiff.match(lines("a", "b", "c"), lines("b", "c", "a"))));
+    }
+}
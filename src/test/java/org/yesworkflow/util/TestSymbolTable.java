@@ -0,0 +1,56 @@
+package org.yesworkflow.util;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.annotations.In;
+import org.yesworkflow.annotations.Out;
+
+public class TestSymbolTable extends YesWorkflowTestCase {
+
+    public void testSymbolTable_SizeCountsDistinctStrings() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.intern("x");
+        symbols.intern("y");
+        symbols.intern(new String("x"));
+        assertEquals(2, symbols.size());
+    }
+
+    public void testSymbolTable_InternReturnsFirstInstance() {
+        SymbolTable symbols = new SymbolTable();
+        String first = new String("binding");
+        assertSame(first, symbols.intern(first));
+        assertSame(first, symbols.intern(new String("binding")));
+        assertNull(symbols.intern(null));
+    }
+
+    public void testSymbolTable_InternRangeOfText() {
+        SymbolTable symbols = new SymbolTable();
+        String interned = symbols.intern("@in data_file", 4, 13);
+        assertEquals("data_file", interned);
+        assertSame(interned, symbols.intern("@out data_file", 5, 14));
+        assertSame(interned, symbols.intern(new StringBuilder("data_file"), 0, 9));
+        assertEquals(1, symbols.size());
+    }
+
+    public void testSymbolTable_ManySymbols() {
+        SymbolTable symbols = new SymbolTable();
+        String[] interned = new String[10000];
+        for (int i = 0; i < 10000; ++i) {
+            interned[i] = symbols.intern("symbol_" + i);
+            assertEquals("symbol_" + i, interned[i]);
+        }
+        for (int i = 0; i < 10000; ++i) {
+            assertSame(interned[i], symbols.intern("symbol_" + i));
+        }
+        assertEquals(10000, symbols.size());
+    }
+
+    public void testSymbolTable_AnnotationsShareNamesButNotDescriptions() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        Out out = new Out(1L, 1L, 1L, "@OUT   data  Sampled data", symbols);
+        In in = new In(2L, 1L, 2L, "@IN data Sampled data", symbols);
+        assertSame(out.name, in.name);
+        assertNotSame(out.description(), in.description());
+        assertEquals(out.description(), in.description());
+        assertEquals("Sampled data", in.description());
+    }
+}